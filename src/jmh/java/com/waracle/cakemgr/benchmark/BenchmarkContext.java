@@ -0,0 +1,55 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.waracle.cakemgr.CakeManagerApplication;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boots the application against its own in-memory H2 database, with the remote seed switched off so every
+ * benchmark controls exactly what is in the catalogue.
+ */
+final class BenchmarkContext {
+
+    private static final int INSERT_BATCH = 5_000;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String database, String... extraProperties) {
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                "cakemgr.seed.enabled=false",
+                "cakemgr.cache.enabled=false",
+                "logging.level.root=WARN"));
+        properties.addAll(List.of(extraProperties));
+        return new SpringApplicationBuilder(CakeManagerApplication.class)
+                .logStartupInfo(false)
+                .properties(properties.toArray(new String[0]))
+                .run();
+    }
+
+    static void insertCakes(ConfigurableApplicationContext context, int rows) {
+        CakeJdbcRepository repository = context.getBean(CakeJdbcRepository.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        List<CakeEntity> batch = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < rows; i++) {
+            batch.add(cake(i));
+            if (batch.size() == INSERT_BATCH || i == rows - 1) {
+                transactionTemplate.executeWithoutResult(status -> repository.batchInsert(batch));
+                batch.clear();
+            }
+        }
+    }
+
+    static CakeEntity cake(int i) {
+        return new CakeEntity(null, "Cake " + i, "Description of cake number " + i,
+                "https://images.example.com/recipes/cakes/large/" + i + ".jpg");
+    }
+}
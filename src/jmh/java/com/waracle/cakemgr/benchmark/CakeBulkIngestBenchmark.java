@@ -0,0 +1,72 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import com.waracle.cakemgr.seed.CakeBulkLoader;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seed-style ingestion of a local JSON document into an empty Cake table through {@link CakeBulkLoader}.
+ * Every fourth row repeats an earlier title, like the published cake document does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CakeBulkIngestBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"JDBC_BATCH", "JPA"})
+    public String insertMode;
+
+    private ConfigurableApplicationContext context;
+    private CakeBulkLoader loader;
+    private JdbcTemplate jdbcTemplate;
+    private Path document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start("ingest" + rows + insertMode, "cakemgr.seed.insert-mode=" + insertMode);
+        loader = context.getBean(CakeBulkLoader.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        document = Files.createTempFile("cakes", ".json");
+        try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(Files.newOutputStream(document))) {
+            generator.writeStartArray();
+            for (int i = 0; i < rows; i++) {
+                generator.writePOJO(BenchmarkContext.cake(i % 4 == 3 ? i - 1 : i));
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTable() {
+        jdbcTemplate.update("DELETE FROM CAKE");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        Files.deleteIfExists(document);
+    }
+
+    @Benchmark
+    public BulkLoadResult loadFromLocalFile() throws IOException {
+        try (InputStream in = Files.newInputStream(document)) {
+            return loader.load(in);
+        }
+    }
+}
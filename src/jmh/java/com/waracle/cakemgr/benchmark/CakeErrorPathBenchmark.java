@@ -0,0 +1,74 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import com.waracle.cakemgr.service.CakeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the answers behind a 404 and a 409: looking up an id that does not exist, and adding a cake whose title
+ * is taken. Both go through the {@link CakeService} the controller uses, with the read cache on as it is by
+ * default, and cycle through a fixed set of ids and titles the way a client retrying or probing would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CakeErrorPathBenchmark {
+
+    private static final int ROWS = 1_000;
+    private static final int PROBES = 1_000;
+
+    private ConfigurableApplicationContext context;
+    private CakeService cakeService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // warnings and errors still go to a file, as they would in production, but not over the JMH output
+        context = BenchmarkContext.start("errors", "cakemgr.cache.enabled=true", "cakemgr.images.enabled=false",
+                "logging.pattern.console=", "logging.file.name=target/jmh-error-path.log");
+        BenchmarkContext.insertCakes(context, ROWS);
+        // as a real seed would; the title filter is rebuilt from the table in the background, well within warmup
+        context.publishEvent(new CakeSeedCompletedEvent("benchmark", new BulkLoadResult(ROWS, 0, 0, Duration.ZERO)));
+        cakeService = context.getBean(CakeService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object missingCake() {
+        try {
+            // ids 1..ROWS exist on a fresh database
+            return cakeService.retrieveCakeById(ROWS + 1 + ThreadLocalRandom.current().nextInt(PROBES));
+        } catch (RecordNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object duplicateTitle() {
+        CakeEntityDTO cake = new CakeEntityDTO();
+        cake.setTitle(BenchmarkContext.cake(ThreadLocalRandom.current().nextInt(PROBES)).getTitle());
+        cake.setDescription("Resubmitted");
+        cake.setImageUrl("https://images.example.com/resubmitted.jpg");
+        try {
+            cakeService.addCake(cake);
+            return cake;
+        } catch (RecordAlreadyExistsException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.waracle.cakemgr.dto.CakeColumns;
+import com.waracle.cakemgr.entity.CakeEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the cake list as returned by getAllCakes, without any database or HTTP cost, in each
+ * representation a client can ask for. The columnar case includes building the per-field arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CakeSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"json", "smile", "cbor", "columnar"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+    private List<CakeEntity> cakes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = switch (format) {
+            case "smile" -> SmileMapper.builder().build();
+            case "cbor" -> CBORMapper.builder().build();
+            default -> JsonMapper.builder().build();
+        };
+        cakes = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            CakeEntity cake = BenchmarkContext.cake(i);
+            cake.setCakeId(i + 1);
+            cakes.add(cake);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeCakeList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(format.equals("columnar") ? CakeColumns.of(cakes) : cakes);
+    }
+}
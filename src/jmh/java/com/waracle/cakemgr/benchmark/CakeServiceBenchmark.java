@@ -0,0 +1,52 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database-backed reads through {@link CakeServiceImpl}, with no cache in front, at increasing catalogue sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CakeServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private CakeServiceImpl cakeService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("service" + rows);
+        BenchmarkContext.insertCakes(context, rows);
+        cakeService = context.getBean(CakeServiceImpl.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<CakeEntity> retrieveAllCakes() {
+        return cakeService.retrieveAllCakes();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CakeEntity retrieveCakeById() {
+        // the JDBC writer hands out ids 1..rows with no gaps on a fresh database
+        return cakeService.retrieveCakeById(ThreadLocalRandom.current().nextInt(1, rows + 1));
+    }
+}
@@ -0,0 +1,42 @@
+package com.waracle.cakemgr.benchmark;
+
+import com.waracle.cakemgr.service.EmployeeDetailsService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-authentication user lookup done by form login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeDetailsBenchmark {
+
+    @Param({"true", "false"})
+    public boolean userCache;
+
+    private ConfigurableApplicationContext context;
+    private EmployeeDetailsService employeeDetailsService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("employees", "cakemgr.security.user-cache.enabled=" + userCache);
+        employeeDetailsService = context.getBean(EmployeeDetailsService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return employeeDetailsService.loadUserByUsername("tester");
+    }
+}
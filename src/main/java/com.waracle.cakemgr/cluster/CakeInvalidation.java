@@ -0,0 +1,54 @@
+package com.waracle.cakemgr.cluster;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+
+import java.util.List;
+
+/**
+ * One message on the {@link InvalidationBus}: which cakes a node changed and to which version, never the cakes
+ * themselves. Receivers read the cakes back from the shared database, so a message stays small, and applying it
+ * twice, or after a newer one, leaves the same result.
+ *
+ * @param origin   the node that sent it
+ * @param sequence numbered per origin from 1; a heartbeat carries the last number used instead of a new one
+ * @param entries  empty unless the kind is CHANGES; at most {@link #MAX_ENTRIES}
+ */
+public record CakeInvalidation(String origin, long sequence, Kind kind, List<Entry> entries) {
+
+    /** Most entries in one message, so an encoded message fits a single unfragmented UDP datagram. */
+    public static final int MAX_ENTRIES = 100;
+
+    public enum Kind {
+        /** The listed cakes changed. */
+        CHANGES,
+        /** Too much changed to list, as after a seed: receivers reload everything. */
+        RESYNC,
+        /** Nothing changed; tells receivers the last sequence number sent. */
+        HEARTBEAT
+    }
+
+    /**
+     * @param version the cake's version after the change; a receiver waits until the database shows at least this,
+     *                or for a deletion no row at all
+     */
+    public record Entry(CakeChangeEvent.Type type, int cakeId, long version) {
+
+        static Entry of(CakeChangeEvent change) {
+            CakeEntity cake = change.cake();
+            // bulk deletes carry no cake; a deletion is settled by the row being gone, whatever its version was
+            long version = cake == null || cake.getVersion() == null ? 0 : cake.getVersion();
+            return new Entry(change.type(), change.cakeId(), version);
+        }
+
+        /**
+         * @param stored the cake as the database holds it now, or null if it has none
+         */
+        boolean isShownBy(CakeEntity stored) {
+            if (type == CakeChangeEvent.Type.DELETED) {
+                return stored == null;
+            }
+            return stored != null && stored.getVersion() != null && stored.getVersion() >= version;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.waracle.cakemgr.cluster;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the in-process caches of several nodes sharing one database coherent, without a shared cache. Every change
+ * this node publishes goes out on the {@link InvalidationBus} as the ids and versions it touched. Every message from
+ * another node is applied by reading those cakes back from the database and publishing them here through
+ * {@link CakeServiceImpl#publishExternalChanges}, so the read cache, the snapshot engine, the search index and the
+ * change feed follow the same events they would for a local write.
+ * <p>
+ * Applying is idempotent: the database, not the message, says what a cake now looks like, and the snapshot engine
+ * and search index ignore a cake older than the one they hold. The relay also remembers the versions this node
+ * published for the last {@code settle-timeout}, and skips a cake read back older than one of those, or read back
+ * after this node deleted it, as this node's own change is already newer. A change the database does not show yet, such as one still in the
+ * sender's write-behind queue, is read again until it does or {@code settle-timeout} passes. Messages are numbered
+ * per sender; a repeat is dropped, and a gap, noticed on the next message or heartbeat, means something was lost,
+ * so the node reloads everything as it would after a seed.
+ */
+@Component
+@ConditionalOnExpression("!'${cakemgr.cluster.bus:none}'.equalsIgnoreCase('none')")
+public class CakeInvalidationRelay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeInvalidationRelay.class);
+
+    static final String SENT = "cakes.invalidation.sent";
+    static final String RECEIVED = "cakes.invalidation.received";
+    static final String RESYNCS = "cakes.invalidation.resyncs";
+
+    // a change needing more messages than this is sent as one RESYNC: a reload is cheaper than that many lookups
+    private static final int MAX_MESSAGES_PER_CHANGE = 10;
+    private static final long RETRY_MILLIS = 50;
+    // what is left of a message's origin after the "-" and eight hex digits added per start
+    static final int MAX_NODE_ID_BYTES = UdpInvalidationBus.MAX_ORIGIN_BYTES - 9;
+
+    private final InvalidationBus bus;
+    private final CakeServiceImpl cakeService;
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId;
+    private final long settleNanos;
+
+    // applies everything received, one message at a time in arrival order, and sends the heartbeats
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("cake-invalidation").factory());
+
+    // numbers are taken and sent under the lock, so they leave in order. Not synchronized: publishing may block
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private long sequence;
+
+    // last number seen from each node, only touched on the executor thread. One entry per node start, too small
+    // to be worth expiring
+    private final Map<String, Long> lastSeen = new HashMap<>();
+
+    // set while publishing what another node changed, so it is not sent back out
+    private final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> false);
+
+    // cake id -> newest version this node published for it, a deletion as Long.MAX_VALUE; kept for settle-timeout,
+    // the time allowed for a change to reach the database
+    private final Cache<Integer, Long> publishedVersions;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter applied;
+    private final Counter duplicates;
+
+    public CakeInvalidationRelay(InvalidationBus bus, CakeServiceImpl cakeService, CakeJdbcRepository cakeJdbcRepository,
+                                 ApplicationEventPublisher eventPublisher, CakeManagerProperties properties,
+                                 MeterRegistry meterRegistry) {
+        CakeManagerProperties.Cluster settings = properties.getCluster();
+        this.bus = bus;
+        this.cakeService = cakeService;
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.eventPublisher = eventPublisher;
+        String configuredId = Objects.requireNonNullElse(settings.getNodeId(), "node");
+        // refused here rather than on the first send, which would fail every message after the node had started
+        if (configuredId.getBytes(StandardCharsets.UTF_8).length > MAX_NODE_ID_BYTES) {
+            throw new IllegalArgumentException(String.format("cakemgr.cluster.node-id '%s' is longer than %d bytes",
+                    configuredId, MAX_NODE_ID_BYTES));
+        }
+        // numbering starts again with each start, so a restarted node must not look like its earlier self
+        this.nodeId = configuredId + "-"
+                + HexFormat.of().toHexDigits(new SecureRandom().nextInt());
+        this.settleNanos = settings.getSettleTimeout().toNanos();
+        this.publishedVersions = Caffeine.newBuilder()
+                .expireAfterWrite(settings.getSettleTimeout())
+                .build();
+        this.meterRegistry = meterRegistry;
+        this.applied = received("applied");
+        this.duplicates = received("duplicate");
+
+        bus.subscribe(this::onMessage);
+        long heartbeat = settings.getHeartbeatInterval().toMillis();
+        executor.scheduleWithFixedDelay(() -> send(CakeInvalidation.Kind.HEARTBEAT, List.of()),
+                heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        LOG.info("Sending and applying cake invalidations as node {} on the {} bus", nodeId, settings.getBus());
+    }
+
+    private Counter received(String result) {
+        return Counter.builder(RECEIVED).tag("result", result)
+                .description("Invalidation messages received from other nodes; duplicates were already applied")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        sendChanges(List.of(event));
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        sendChanges(event.changes());
+    }
+
+    @EventListener
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        if (!applying.get()) {
+            send(CakeInvalidation.Kind.RESYNC, List.of());
+        }
+    }
+
+    private void sendChanges(List<CakeChangeEvent> changes) {
+        if (applying.get()) {
+            return;
+        }
+        for (CakeChangeEvent change : changes) {
+            Long version = change.type() == CakeChangeEvent.Type.DELETED ? Long.valueOf(Long.MAX_VALUE)
+                    : change.cake() == null ? null : change.cake().getVersion();
+            if (version != null && change.restored()) {
+                // the version shown before was never written, so the database will not reach it
+                publishedVersions.put(change.cakeId(), version);
+            } else if (version != null) {
+                publishedVersions.asMap().merge(change.cakeId(), version, Math::max);
+            }
+        }
+        if (changes.size() > CakeInvalidation.MAX_ENTRIES * MAX_MESSAGES_PER_CHANGE) {
+            send(CakeInvalidation.Kind.RESYNC, List.of());
+            return;
+        }
+        List<CakeInvalidation.Entry> entries = changes.stream().map(CakeInvalidation.Entry::of).toList();
+        for (int from = 0; from < entries.size(); from += CakeInvalidation.MAX_ENTRIES) {
+            send(CakeInvalidation.Kind.CHANGES, entries.subList(from, Math.min(entries.size(), from + CakeInvalidation.MAX_ENTRIES)));
+        }
+    }
+
+    private void send(CakeInvalidation.Kind kind, List<CakeInvalidation.Entry> entries) {
+        sendLock.lock();
+        try {
+            long number = kind == CakeInvalidation.Kind.HEARTBEAT ? sequence : ++sequence;
+            bus.publish(new CakeInvalidation(nodeId, number, kind, List.copyOf(entries)));
+        } catch (RuntimeException ex) {
+            // the write has been committed; peers see the gap and reload
+            LOG.warn("Could not send a cake invalidation: {}", ex.getMessage());
+            return;
+        } finally {
+            sendLock.unlock();
+        }
+        Counter.builder(SENT).tag("kind", kind.name())
+                .description("Invalidation messages sent to other nodes")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void onMessage(CakeInvalidation message) {
+        if (!nodeId.equals(message.origin())) {
+            try {
+                executor.execute(() -> receive(message));
+            } catch (RejectedExecutionException ex) {
+                // shut down but the bus not closed yet; on the local bus, throwing would keep the message from
+                // the buses after this one
+                LOG.debug("Ignoring a cake invalidation from node {} while shutting down", message.origin());
+            }
+        }
+    }
+
+    private void receive(CakeInvalidation message) {
+        Long last = lastSeen.get(message.origin());
+        if (last == null || message.sequence() > last) {
+            lastSeen.put(message.origin(), message.sequence());
+        }
+        if (message.kind() == CakeInvalidation.Kind.HEARTBEAT) {
+            if (last != null && message.sequence() > last) {
+                resync("missed", message.origin());
+            }
+            return;
+        }
+        if (last != null && message.sequence() <= last) {
+            duplicates.increment();
+            return;
+        }
+        applied.increment();
+        if (last != null && message.sequence() > last + 1) {
+            resync("missed", message.origin());
+        }
+        switch (message.kind()) {
+            case RESYNC -> resync("requested", message.origin());
+            case CHANGES -> apply(message.entries(), System.nanoTime() + settleNanos);
+            default -> { }
+        }
+    }
+
+    private void apply(List<CakeInvalidation.Entry> entries, long deadline) {
+        boolean expired = System.nanoTime() - deadline >= 0;
+        Map<Integer, CakeEntity> stored;
+        try {
+            stored = cakeJdbcRepository.findByIds(entries.stream().map(CakeInvalidation.Entry::cakeId).toList());
+        } catch (RuntimeException ex) {
+            if (expired) {
+                LOG.error("Gave up applying {} cake invalidations: {}", entries.size(), ex.getMessage());
+            } else {
+                retry(entries, deadline);
+            }
+            return;
+        }
+
+        List<CakeChangeEvent> changes = new ArrayList<>();
+        List<CakeInvalidation.Entry> unsettled = new ArrayList<>();
+        int late = 0;
+        for (CakeInvalidation.Entry entry : entries) {
+            CakeEntity cake = stored.get(entry.cakeId());
+            boolean shown = entry.isShownBy(cake);
+            if (shown || expired) {
+                // after the timeout the database is taken as it is: the sender's write may have failed
+                late += shown ? 0 : 1;
+                if (cake == null ? entry.type() == CakeChangeEvent.Type.ADDED : isOlderThanPublished(cake)) {
+                    // a cake added and gone again was never here; an older one would undo this node's own change
+                    continue;
+                }
+                changes.add(cake == null
+                        ? new CakeChangeEvent(CakeChangeEvent.Type.DELETED, entry.cakeId(), null)
+                        : new CakeChangeEvent(entry.type() == CakeChangeEvent.Type.ADDED
+                                ? CakeChangeEvent.Type.ADDED : CakeChangeEvent.Type.UPDATED, entry.cakeId(), cake));
+            } else {
+                unsettled.add(entry);
+            }
+        }
+        if (late > 0) {
+            LOG.warn("Applied {} cake invalidations as the database has them after waiting {} for it to catch up",
+                    late, Duration.ofNanos(settleNanos));
+        }
+        if (!changes.isEmpty()) {
+            whileApplying(() -> cakeService.publishExternalChanges(changes));
+        }
+        if (!unsettled.isEmpty()) {
+            retry(unsettled, deadline);
+        }
+    }
+
+    private boolean isOlderThanPublished(CakeEntity cake) {
+        Long published = publishedVersions.getIfPresent(cake.getCakeId());
+        return published != null && cake.getVersion() != null && cake.getVersion() < published;
+    }
+
+    private void retry(List<CakeInvalidation.Entry> entries, long deadline) {
+        executor.schedule(() -> apply(entries, deadline), RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void resync(String cause, String origin) {
+        Counter.builder(RESYNCS).tag("cause", cause)
+                .description("Full reloads after messages from another node were missed, or after it asked for one")
+                .register(meterRegistry)
+                .increment();
+        LOG.info("Reloading the catalogue after {} from node {}",
+                cause.equals("missed") ? "missing messages" : "a reload request", origin);
+        // the same reload a seed triggers: caches dropped, snapshot and search index rebuilt, feed clients reset
+        whileApplying(() -> eventPublisher.publishEvent(new CakeSeedCompletedEvent("node " + origin,
+                new BulkLoadResult(0, 0, 0, Duration.ZERO))));
+    }
+
+    private void whileApplying(Runnable publish) {
+        applying.set(true);
+        try {
+            publish.run();
+        } catch (RuntimeException ex) {
+            LOG.error("Error applying changes from another node: {}", ex.getMessage());
+        } finally {
+            applying.set(false);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.waracle.cakemgr.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link CakeInvalidation}s between the nodes that share one database. Delivery is best effort: a message
+ * may be lost, repeated or overtaken, and {@link CakeInvalidationRelay} copes with all three, so an implementation
+ * needs no acknowledgements or retries of its own.
+ */
+public interface InvalidationBus extends AutoCloseable {
+
+    /**
+     * Sends the message to every other node; never blocks on a slow or missing one.
+     */
+    void publish(CakeInvalidation message);
+
+    /**
+     * @param subscriber called with each message received, on the bus's own thread, so it should hand off slow work
+     */
+    void subscribe(Consumer<CakeInvalidation> subscriber);
+
+    @Override
+    void close();
+}
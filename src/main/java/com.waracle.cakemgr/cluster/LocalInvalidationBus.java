@@ -0,0 +1,53 @@
+package com.waracle.cakemgr.cluster;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Bus within one JVM: a message published on one bus is handed, on the publishing thread, to the subscribers of
+ * every other bus attached to the same {@link Hub}. Nothing is lost or reordered, which makes it the bus for tests
+ * and for several application contexts started in one process.
+ */
+public final class LocalInvalidationBus implements InvalidationBus {
+
+    private final Hub hub;
+    private final List<Consumer<CakeInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    public LocalInvalidationBus(Hub hub) {
+        this.hub = hub;
+        hub.buses.add(this);
+    }
+
+    @Override
+    public void publish(CakeInvalidation message) {
+        for (LocalInvalidationBus bus : hub.buses) {
+            if (bus != this) {
+                bus.subscribers.forEach(subscriber -> subscriber.accept(message));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CakeInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void close() {
+        hub.buses.remove(this);
+    }
+
+    /**
+     * The buses that hear each other.
+     */
+    public static final class Hub {
+
+        /** Used by every application context in the JVM with {@code cakemgr.cluster.bus=local}. */
+        public static final Hub JVM = new Hub();
+
+        private final Set<LocalInvalidationBus> buses = ConcurrentHashMap.newKeySet();
+    }
+}
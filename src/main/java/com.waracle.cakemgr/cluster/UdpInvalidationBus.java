@@ -0,0 +1,168 @@
+package com.waracle.cakemgr.cluster;
+
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Sends each message as one UDP datagram to every listed peer, and receives on a port of its own. Nothing is
+ * acknowledged or sent again: a lost datagram shows up at the receiver as a gap in the sender's sequence numbers.
+ * Peers are listed rather than found through a multicast group, so several nodes on one host (127.0.0.1, a port
+ * each) work the same as nodes on separate hosts, with no multicast routing needed. The list is also who may send:
+ * a datagram from any other address is dropped unread, since a forged one could make every node reload or apply
+ * stale cakes.
+ * <p>
+ * Messages are written in a fixed binary layout of 13 bytes per cake, so the largest one fits a 1500-byte MTU
+ * without fragmentation.
+ */
+public final class UdpInvalidationBus implements InvalidationBus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UdpInvalidationBus.class);
+
+    // "CAKE", then a layout version, so a datagram from anything else on the port is dropped
+    private static final int MAGIC = 0x43414B45;
+    private static final byte LAYOUT = 1;
+
+    static final int MAX_ORIGIN_BYTES = 64;
+    // an Ethernet frame less the IP and UDP headers
+    static final int MAX_DATAGRAM = 1472;
+
+    private static final CakeInvalidation.Kind[] KINDS = CakeInvalidation.Kind.values();
+    private static final CakeChangeEvent.Type[] TYPES = CakeChangeEvent.Type.values();
+
+    private final DatagramChannel channel;
+    private final List<InetSocketAddress> peers;
+    private final List<Consumer<CakeInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    public UdpInvalidationBus(InetSocketAddress bind, List<InetSocketAddress> peers) throws IOException {
+        this(DatagramChannel.open().bind(bind), peers);
+    }
+
+    // for tests, which need every node's port before any of them knows its peers
+    UdpInvalidationBus(DatagramChannel channel, List<InetSocketAddress> peers) throws IOException {
+        this.channel = channel;
+        this.peers = List.copyOf(peers);
+        Thread.ofVirtual().name("cake-invalidation-udp").start(this::receive);
+        LOG.info("Receiving cake invalidations on {}, sending to {}", channel.getLocalAddress(), this.peers);
+    }
+
+    InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void publish(CakeInvalidation message) {
+        ByteBuffer datagram = encode(message);
+        for (InetSocketAddress peer : peers) {
+            try {
+                channel.send(datagram.duplicate(), peer);
+            } catch (IOException e) {
+                // the peer sees the gap and reloads; nothing to retry here
+                LOG.warn("Could not send cake invalidation {} to {}: {}", message.sequence(), peer, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CakeInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing the cake invalidation channel: {}", e.getMessage());
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        while (channel.isOpen()) {
+            buffer.clear();
+            SocketAddress source;
+            try {
+                source = channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOG.warn("Error receiving a cake invalidation: {}", e.getMessage());
+                continue;
+            }
+            if (!peers.contains(source)) {
+                LOG.debug("Ignored a datagram from {}, which is not a listed peer", source);
+                continue;
+            }
+            buffer.flip();
+            CakeInvalidation message;
+            try {
+                message = decode(buffer);
+            } catch (RuntimeException e) {
+                LOG.warn("Ignored a malformed cake invalidation datagram: {}", e.toString());
+                continue;
+            }
+            for (Consumer<CakeInvalidation> subscriber : subscribers) {
+                try {
+                    subscriber.accept(message);
+                } catch (RuntimeException e) {
+                    LOG.error("Error handling cake invalidation {} from {}: {}", message.sequence(), message.origin(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    static ByteBuffer encode(CakeInvalidation message) {
+        byte[] origin = message.origin().getBytes(StandardCharsets.UTF_8);
+        if (origin.length > MAX_ORIGIN_BYTES) {
+            throw new IllegalArgumentException(String.format("Node id '%s' is longer than %d bytes", message.origin(), MAX_ORIGIN_BYTES));
+        }
+        if (message.entries().size() > CakeInvalidation.MAX_ENTRIES) {
+            throw new IllegalArgumentException(String.format("%d entries exceed the limit of %d per message",
+                    message.entries().size(), CakeInvalidation.MAX_ENTRIES));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM)
+                .putInt(MAGIC)
+                .put(LAYOUT)
+                .put((byte) origin.length)
+                .put(origin)
+                .putLong(message.sequence())
+                .put((byte) message.kind().ordinal())
+                .putShort((short) message.entries().size());
+        for (CakeInvalidation.Entry entry : message.entries()) {
+            buffer.put((byte) entry.type().ordinal()).putInt(entry.cakeId()).putLong(entry.version());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * @throws RuntimeException if the datagram is not a message in this layout
+     */
+    static CakeInvalidation decode(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.get() != LAYOUT) {
+            throw new IllegalArgumentException("not a cake invalidation");
+        }
+        byte[] origin = new byte[buffer.get()];
+        buffer.get(origin);
+        long sequence = buffer.getLong();
+        CakeInvalidation.Kind kind = KINDS[buffer.get()];
+        int count = buffer.getShort();
+        List<CakeInvalidation.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new CakeInvalidation.Entry(TYPES[buffer.get()], buffer.getInt(), buffer.getLong()));
+        }
+        return new CakeInvalidation(new String(origin, StandardCharsets.UTF_8), sequence, kind, List.copyOf(entries));
+    }
+}
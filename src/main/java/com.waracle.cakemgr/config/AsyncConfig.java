@@ -0,0 +1,13 @@
+package com.waracle.cakemgr.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/**
+ * Runs @Async methods on Boot's applicationTaskExecutor, the same executor used for streamed MVC responses. With
+ * spring.threads.virtual.enabled=true that executor starts a virtual thread per task instead of using a pool.
+ */
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+}
@@ -0,0 +1,391 @@
+package com.waracle.cakemgr.config;
+
+import com.waracle.cakemgr.security.Role;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "cakemgr")
+public class CakeManagerProperties {
+
+    private Service service = new Service();
+
+    private Pagination pagination = new Pagination();
+
+    private Seed seed = new Seed();
+
+    private Cache cache = new Cache();
+
+    private ResponseCache responseCache = new ResponseCache();
+
+    private Bulk bulk = new Bulk();
+
+    private Transfer transfer = new Transfer();
+
+    private Search search = new Search();
+
+    private Images images = new Images();
+
+    private Feed feed = new Feed();
+
+    private Security security = new Security();
+
+    private RateLimit rateLimit = new RateLimit();
+
+    private Cluster cluster = new Cluster();
+
+    @Data
+    public static class Service {
+
+        /** Which CakeService implementation answers requests. */
+        private Engine engine = Engine.JPA;
+
+        private WriteBehind writeBehind = new WriteBehind();
+
+        public enum Engine {
+            /** Every read goes to the database, optionally through the read-through cache. */
+            JPA,
+            /** Reads are served from an immutable in-memory snapshot; writes still go to the database. */
+            SNAPSHOT
+        }
+
+        @Data
+        public static class WriteBehind {
+
+            /** Whether the snapshot engine acknowledges single-cake writes before they reach the database. */
+            private boolean enabled = false;
+
+            /** Most cakes with a write waiting to be flushed; further writers wait for room. */
+            private int maxPending = 10_000;
+
+            /** How long a writer waits for room in a full queue before being turned away. */
+            private Duration enqueueTimeout = Duration.ofSeconds(1);
+
+            /** How long the flusher lets writes gather after the first one arrives, unless a batch fills first. */
+            private Duration flushInterval = Duration.ofMillis(50);
+
+            /** Statements per JDBC batch when flushing. */
+            private int batchSize = 500;
+
+            /** Attempts to write a flush as one transaction before falling back to one transaction per cake. */
+            private int maxAttempts = 3;
+        }
+    }
+
+    @Data
+    public static class Pagination {
+
+        /** Page size used when the client does not request one. */
+        private int defaultPageSize = 100;
+
+        /** Upper bound on the page size a client may request. */
+        private int maxPageSize = 1000;
+    }
+
+    @Data
+    public static class Bulk {
+
+        /** Largest number of items accepted by one bulk create, update or delete request. */
+        private int maxItems = 50_000;
+    }
+
+    @Data
+    public static class Transfer {
+
+        /** Cakes per bulk add while importing; capped at cakemgr.bulk.max-items. */
+        private int batchSize = 1000;
+
+        /** Batches being written at once while the next is read; with the batch size, bounds what an import holds. */
+        private int maxInFlight = 2;
+
+        /** Rows read between two progress lines in the import response. */
+        private int progressInterval = 10_000;
+    }
+
+    @Data
+    public static class Search {
+
+        /** Number of results returned when the client does not ask for a limit. */
+        private int defaultLimit = 10;
+
+        /** Upper bound on the number of results a client may ask for. */
+        private int maxLimit = 100;
+
+        /** Query words shorter than this only match whole words, so one letter cannot expand to most of the index. */
+        private int minPrefixLength = 2;
+    }
+
+    @Data
+    public static class Images {
+
+        /** Whether cake image URLs are checked in the background after the seed and after every write. */
+        private boolean enabled = true;
+
+        /** Most image requests in flight at once, across all hosts. */
+        private int maxConcurrency = 64;
+
+        /** Most image requests in flight at once to any one host. */
+        private int perHostConcurrency = 4;
+
+        /** Most checks waiting or running; checks triggered by writes are skipped rather than queued beyond this. */
+        private int maxQueued = 10_000;
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /** Time allowed for the response headers of one image request. */
+        private Duration requestTimeout = Duration.ofSeconds(5);
+
+        /** Maximum number of image URLs whose result is kept. */
+        private long maximumSize = 100_000;
+
+        /** How long a working image is trusted before it is checked again. */
+        private Duration expireAfterWrite = Duration.ofHours(6);
+
+        /** How long a broken image is remembered, kept short so a fixed image is noticed soon. */
+        private Duration brokenExpireAfterWrite = Duration.ofMinutes(10);
+
+        /** Whether URLs on loopback, private or link-local addresses may be fetched; off so cake data cannot probe the internal network. */
+        private boolean allowPrivateAddresses = false;
+    }
+
+    @Data
+    public static class Feed {
+
+        /** Number of recent changes kept, and so how far back a reconnecting client can resume from its Last-Event-ID. */
+        private int bufferSize = 10_000;
+
+        /** Most clients subscribed at once; further subscriptions are refused with 503. */
+        private int maxSubscribers = 10_000;
+
+        /** How long a quiet stream waits before sending a comment, so proxies keep it open and dead clients are noticed. */
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+        /** How long one stream stays open; the client then reconnects and resumes where it left off. */
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class RateLimit {
+
+        /** Whether authenticated requests are held to a request rate per user and a concurrency limit per role. */
+        private boolean enabled = true;
+
+        /** Most users whose request rate is tracked at once; the least recently seen are forgotten first. */
+        private long maxClients = 100_000;
+
+        private Limits user = new Limits(50, 100, 8, 16);
+
+        private Limits chef = new Limits(200, 400, 8, 32);
+
+        public Limits forRole(Role role) {
+            return role == Role.CHEF ? chef : user;
+        }
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Limits {
+
+            /** Requests one user may make per second, on average. */
+            private double requestsPerSecond;
+
+            /** Requests one user may make back to back after a quiet spell, before the average rate applies. */
+            private int burst;
+
+            /** Whole-catalogue reads (getAllCakes, streamAllCakes, exportCakes) in progress at once for all users with the role. */
+            private int bulkReads;
+
+            /** Adds, updates and deletes in progress at once for all users with the role. */
+            private int writes;
+        }
+    }
+
+    @Data
+    public static class Cluster {
+
+        /** How this node tells the other nodes sharing its database which cakes it changed. */
+        private Bus bus = Bus.NONE;
+
+        /** Names this node in the messages it sends and in peers' logs, at most 55 bytes; a random suffix is added per start. */
+        private String nodeId;
+
+        /** How often a node sends the last sequence number it used, so a peer notices lost messages even when no more follow. */
+        private Duration heartbeatInterval = Duration.ofSeconds(1);
+
+        /** How long a node waits for the database to show a change it was told about, e.g. one still in the sender's write-behind queue. */
+        private Duration settleTimeout = Duration.ofSeconds(5);
+
+        private Udp udp = new Udp();
+
+        public enum Bus {
+            /** A single node: nothing is sent or received. */
+            NONE,
+            /** Application contexts in the same JVM, for tests. */
+            LOCAL,
+            /** One UDP datagram per message to each listed peer. */
+            UDP
+        }
+
+        @Data
+        public static class Udp {
+
+            /** Host and port this node receives datagrams on. */
+            private String bind = "127.0.0.1:7600";
+
+            /** Host and port of every other node. */
+            private List<String> peers = new ArrayList<>();
+        }
+    }
+
+    @Data
+    public static class Cache {
+
+        /** Whether cake reads are served through the in-process read-through cache (jpa engine only). */
+        private boolean enabled = true;
+
+        /** Maximum number of cakes kept for by-id lookups. */
+        private long maximumSize = 10_000;
+
+        /** How long a by-id entry may be served before it is reloaded. */
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+        /** How long an id with no cake is remembered, so a client probing missing ids does not query each time. */
+        private Duration negativeExpireAfterWrite = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class ResponseCache {
+
+        /** Whether JSON catalogue and by-id responses are encoded once per version and then sent as stored bytes. */
+        private boolean enabled = true;
+
+        /** Largest encoded catalogue kept; a bigger one is encoded again for every request. */
+        private DataSize maxCatalogueSize = DataSize.ofMegabytes(64);
+
+        /** Maximum number of encoded cakes kept for by-id responses. */
+        private long maximumSize = 10_000;
+    }
+
+    @Data
+    public static class Security {
+
+        /** How requests are authenticated. */
+        private Mode mode = Mode.SESSION;
+
+        private Token token = new Token();
+
+        private UserCache userCache = new UserCache();
+
+        public enum Mode {
+            /** Form login backed by a server-side HTTP session. */
+            SESSION,
+            /** Signed bearer tokens issued by /auth/token; no HTTP session is created or read. */
+            TOKEN
+        }
+
+        @Data
+        public static class Token {
+
+            /** HMAC-SHA256 key shared by every node; at least 32 bytes. Required in token mode. */
+            private String secret;
+
+            /**
+             * How long an issued token stays valid. A revocation only reaches the node that received it, so this is
+             * also how long a revoked token may still be accepted by the other nodes; keep it short.
+             */
+            private Duration ttl = Duration.ofMinutes(5);
+        }
+
+        @Data
+        public static class UserCache {
+
+            /** Whether authentication lookups are answered from memory instead of the employee table. */
+            private boolean enabled = true;
+
+            /** Maximum number of usernames, known or unknown, kept in the cache. */
+            private long maximumSize = 10_000;
+
+            /** How long a known employee is served from the cache before being read again. */
+            private Duration expireAfterWrite = Duration.ofMinutes(15);
+
+            /** How long an unknown username is remembered, so repeated failed logins do not each hit the table. */
+            private Duration negativeExpireAfterWrite = Duration.ofSeconds(30);
+        }
+    }
+
+    @Data
+    public static class Seed {
+
+        /** Whether to seed the catalogue in the background once the application is ready. */
+        private boolean enabled = true;
+
+        /** Location of the cake document: an http(s) URL, or a classpath: / file: resource. */
+        private String source;
+
+        /** Location used when the source cannot be read, so the application can boot offline. */
+        private String fallback = "classpath:cakes.json";
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /** Maximum time to wait for data on an open connection to the source. */
+        private Duration readTimeout = Duration.ofSeconds(5);
+
+        /** Attempts made against the source before falling back. */
+        private int maxAttempts = 3;
+
+        /** Delay before the first retry; doubled on every further attempt. */
+        private Duration initialBackoff = Duration.ofMillis(500);
+
+        /** Number of cakes written per JDBC batch (and per transaction). */
+        private int batchSize = 500;
+
+        /** Number of threads writing batches while the document is still being parsed. */
+        private int writerThreads = 2;
+
+        private InsertMode insertMode = InsertMode.JDBC_BATCH;
+
+        private Snapshot snapshot = new Snapshot();
+
+        private Sync sync = new Sync();
+
+        public enum InsertMode {
+            /** Plain JDBC batches with ids reserved in blocks from CAKE_SEQ. */
+            JDBC_BATCH,
+            /** Repository saveAll, batched by Hibernate through the same pooled sequence. */
+            JPA
+        }
+
+        @Data
+        public static class Snapshot {
+
+            /** Whether to keep a local copy of the seeded catalogue and use it instead of seeding again. */
+            private boolean enabled = false;
+
+            /** File the catalogue is exported to and restored from. */
+            private String path = "data/cakes.snapshot";
+
+            /** How long after a seed from the source its snapshot still counts as current. */
+            private Duration maxAge = Duration.ofHours(24);
+
+            /** Whether to export the catalogue again on shutdown, so the snapshot includes writes since the seed. */
+            private boolean exportOnShutdown = true;
+        }
+
+        @Data
+        public static class Sync {
+
+            /** Whether the source is read again periodically and its changes applied to the catalogue. */
+            private boolean enabled = false;
+
+            /** Time between the end of one refresh and the start of the next; an unchanged HTTP source costs one 304. */
+            private Duration interval = Duration.ofMinutes(15);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.waracle.cakemgr.config;
+
+import com.waracle.cakemgr.cluster.InvalidationBus;
+import com.waracle.cakemgr.cluster.LocalInvalidationBus;
+import com.waracle.cakemgr.cluster.UdpInvalidationBus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Picks the {@link InvalidationBus} named by {@code cakemgr.cluster.bus}. With the default, none, there is no bus
+ * and no relay, and a node behaves exactly as a single instance.
+ */
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "cakemgr.cluster", name = "bus", havingValue = "local")
+    public InvalidationBus localInvalidationBus() {
+        return new LocalInvalidationBus(LocalInvalidationBus.Hub.JVM);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "cakemgr.cluster", name = "bus", havingValue = "udp")
+    public InvalidationBus udpInvalidationBus(CakeManagerProperties properties) throws IOException {
+        CakeManagerProperties.Cluster.Udp udp = properties.getCluster().getUdp();
+        return new UdpInvalidationBus(address(udp.getBind()),
+                udp.getPeers().stream().map(ClusterConfig::address).toList());
+    }
+
+    static InetSocketAddress address(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException(String.format("'%s' is not a host:port address", hostAndPort));
+        }
+        return new InetSocketAddress(hostAndPort.substring(0, colon).trim(),
+                Integer.parseInt(hostAndPort.substring(colon + 1).trim()));
+    }
+}
@@ -1,12 +1,28 @@
 package com.waracle.cakemgr.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.waracle.cakemgr.exception.CustomAccessDeniedHandler;
+import com.waracle.cakemgr.ratelimit.RateLimitFilter;
+import com.waracle.cakemgr.ratelimit.RequestRateLimiter;
+import com.waracle.cakemgr.security.BearerTokenFilter;
+import com.waracle.cakemgr.security.TokenService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,11 +35,15 @@ public class SecurityConfig implements WebMvcConfigurer {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http, CustomAccessDeniedHandler accessDeniedHandler) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, CustomAccessDeniedHandler accessDeniedHandler,
+                                           CakeManagerProperties properties, ObjectProvider<TokenService> tokenService,
+                                           ObjectProvider<RequestRateLimiter> rateLimiter, ObjectMapper objectMapper) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/login", "/error").permitAll()
+                            .requestMatchers(HttpMethod.POST, "/auth/token").permitAll()
+                            .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
                             .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").authenticated()
                             .requestMatchers(HttpMethod.GET, "/rest/cakes/**").hasAnyRole("USER", "CHEF")
                             .requestMatchers(HttpMethod.GET, "/rest/cakes/getAllCakes").hasAnyRole("USER", "CHEF")
@@ -31,21 +51,52 @@ public class SecurityConfig implements WebMvcConfigurer {
                             .requestMatchers(HttpMethod.POST, "/rest/cakes/addNewCake").hasAnyRole("USER", "CHEF")
                             .requestMatchers(HttpMethod.PUT, "/rest/cakes/updateCake/**").hasRole("CHEF")
                             .requestMatchers(HttpMethod.DELETE, "/rest/cakes/deleteCake/**").hasRole("CHEF")
+                            .requestMatchers(HttpMethod.POST, "/rest/cakes/addNewCakes").hasAnyRole("USER", "CHEF")
+                            .requestMatchers(HttpMethod.PUT, "/rest/cakes/updateCakes").hasRole("CHEF")
+                            .requestMatchers(HttpMethod.DELETE, "/rest/cakes/deleteCakes").hasRole("CHEF")
+                            .requestMatchers(HttpMethod.POST, "/rest/cakes/importCakes").hasRole("CHEF")
                             .anyRequest().authenticated()
 
                 )
                 .exceptionHandling( ex -> ex.accessDeniedHandler(accessDeniedHandler))
-                .logout(logout -> logout
-                        .logoutUrl("/logout")
-                        .invalidateHttpSession(true)
-                        .deleteCookies("JSESSIONID")
-                        .logoutSuccessUrl("/login")
-                        .permitAll()
-                )
-                .formLogin(form -> form.defaultSuccessUrl("/swagger-ui/index.html", true))
                 .httpBasic(org.springframework.security.config.Customizer.withDefaults())
                 .httpBasic(AbstractHttpConfigurer::disable);
 
+        if (properties.getSecurity().getMode() == CakeManagerProperties.Security.Mode.TOKEN) {
+            // every request carries its own proof of identity: no session is created, read or required
+            http
+                    .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                    .requestCache(AbstractHttpConfigurer::disable)
+                    .logout(AbstractHttpConfigurer::disable)
+                    .addFilterBefore(new BearerTokenFilter(tokenService.getObject()), UsernamePasswordAuthenticationFilter.class)
+                    .exceptionHandling(ex -> ex.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)));
+        } else {
+            http
+                    .logout(logout -> logout
+                            .logoutUrl("/logout")
+                            .invalidateHttpSession(true)
+                            .deleteCookies("JSESSIONID")
+                            .logoutSuccessUrl("/login")
+                            .permitAll()
+                    )
+                    .formLogin(form -> form.defaultSuccessUrl("/swagger-ui/index.html", true));
+        }
+
+        RequestRateLimiter limiter = rateLimiter.getIfAvailable();
+        if (limiter != null) {
+            // after authorization, so only requests that will be served count against a user's allowance
+            http.addFilterAfter(new RateLimitFilter(limiter, objectMapper), AuthorizationFilter.class);
+        }
+
         return http.build();
     }
+
+    // used by /auth/token to check credentials the same way form login does
+    @Bean
+    @ConditionalOnProperty(prefix = "cakemgr.security", name = "mode", havingValue = "token")
+    public AuthenticationManager authenticationManager(UserDetailsService userDetailsService) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        return new ProviderManager(provider);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.waracle.cakemgr.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record BulkItemResult(
+
+        @Schema(description = "Position of the item in the request array")
+        int index,
+
+        @Schema(description = "Id of the cake the item applied to, when known")
+        Integer cakeId,
+
+        @Schema(description = "What happened to the item")
+        Status status,
+
+        @Schema(description = "Why the item was not applied; null when it was")
+        String message) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        CONFLICT,
+        NOT_FOUND,
+        INVALID
+    }
+
+    public static BulkItemResult applied(int index, Integer cakeId, Status status) {
+        return new BulkItemResult(index, cakeId, status, null);
+    }
+}
@@ -0,0 +1,43 @@
+package com.waracle.cakemgr.dto;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * The catalogue laid out as one array per field, so field names appear once per response instead of once per
+ * cake. The nth entry of every array belongs to the same cake.
+ */
+public record CakeColumns(
+
+        @Schema(description = "Cake ids, in catalogue order")
+        int[] cakeId,
+
+        @Schema(description = "Titles, in the same order as cakeId")
+        String[] title,
+
+        @Schema(description = "Descriptions, in the same order as cakeId")
+        String[] desc,
+
+        @Schema(description = "Image URLs, in the same order as cakeId")
+        String[] image) {
+
+    public static final String MEDIA_TYPE = "application/vnd.cakemgr.columnar+json";
+
+    public static CakeColumns of(List<CakeEntity> cakes) {
+        int size = cakes.size();
+        int[] ids = new int[size];
+        String[] titles = new String[size];
+        String[] descriptions = new String[size];
+        String[] images = new String[size];
+        for (int i = 0; i < size; i++) {
+            CakeEntity cake = cakes.get(i);
+            ids[i] = cake.getCakeId();
+            titles[i] = cake.getTitle();
+            descriptions[i] = cake.getDesc();
+            images[i] = cake.getImage();
+        }
+        return new CakeColumns(ids, titles, descriptions, images);
+    }
+}
@@ -0,0 +1,34 @@
+package com.waracle.cakemgr.dto;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Body of one event on the cake change feed. Its position in the feed travels as the event's id rather than here,
+ * so the body can be written before the position is known.
+ */
+public record CakeFeedEvent(
+
+        @Schema(description = "What happened; RESET means changes were missed and the catalogue should be read again")
+        Type type,
+
+        @Schema(description = "Id of the changed cake, or null for RESET")
+        Integer cakeId,
+
+        @Schema(description = "Version of the cake after the change, matching its ETag; null for DELETED and RESET")
+        Long version,
+
+        @Schema(description = "The cake after the change; null for DELETED and RESET")
+        CakeEntity cake) {
+
+    public enum Type {
+        ADDED,
+        UPDATED,
+        DELETED,
+        RESET
+    }
+
+    public static CakeFeedEvent reset() {
+        return new CakeFeedEvent(Type.RESET, null, null, null);
+    }
+}
@@ -0,0 +1,36 @@
+package com.waracle.cakemgr.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * One line of the newline-delimited JSON an import answers with while it runs. Every line carries the running
+ * totals, so the last one received says how far the import got even if the connection drops.
+ */
+public record CakeImportEvent(
+
+        @Schema(description = "PROGRESS every few thousand rows, ERROR for a row that was not imported, then DONE, "
+                + "or FAILED if the import stopped early")
+        Type type,
+
+        @Schema(description = "Line of the document the row starts on, counting from 1; only for ERROR")
+        Long line,
+
+        @Schema(description = "Why the row was not imported, or why the import stopped; null for PROGRESS and DONE")
+        String message,
+
+        @Schema(description = "Rows read so far, the CSV header and blank lines not included")
+        long read,
+
+        @Schema(description = "Cakes added so far")
+        long imported,
+
+        @Schema(description = "Rows rejected so far, each reported in its own ERROR line")
+        long rejected) {
+
+    public enum Type {
+        PROGRESS,
+        ERROR,
+        DONE,
+        FAILED
+    }
+}
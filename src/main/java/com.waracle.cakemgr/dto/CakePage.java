@@ -0,0 +1,14 @@
+package com.waracle.cakemgr.dto;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+public record CakePage(
+
+        @Schema(description = "Cakes on this page, ordered by cake id")
+        List<CakeEntity> cakes,
+
+        @Schema(description = "Opaque token for the next page, or null when this is the last page")
+        String nextToken) {}
@@ -0,0 +1,21 @@
+package com.waracle.cakemgr.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+public class CakePatchDTO {
+
+    @Schema(description = "Id of the cake to update", example = "1")
+    private Integer cakeId;
+
+    @Schema(description = "New title, or null to keep the current one", example = "Lemon cheesecake")
+    private String title;
+
+    @Schema(description = "New description, or null to keep the current one", example = "A cheesecake made of lemon")
+    private String description;
+
+    @Schema(description = "New image URL, or null to keep the current one", example = "https://example.com/cake.jpg")
+    private String imageUrl;
+
+}
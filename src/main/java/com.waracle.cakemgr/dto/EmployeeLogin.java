@@ -0,0 +1,8 @@
+package com.waracle.cakemgr.dto;
+
+import com.waracle.cakemgr.security.Role;
+
+/**
+ * The two columns authentication needs from an employee, read without loading the entity.
+ */
+public record EmployeeLogin(String username, Role role) {}
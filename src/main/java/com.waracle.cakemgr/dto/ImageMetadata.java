@@ -0,0 +1,34 @@
+package com.waracle.cakemgr.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+public record ImageMetadata(
+
+        @Schema(description = "The image URL that was checked")
+        String url,
+
+        @Schema(description = "HTTP status of the image request, or null if no response was received")
+        Integer status,
+
+        @Schema(description = "Content-Type reported for the image")
+        String contentType,
+
+        @Schema(description = "Size of the image in bytes, when the server reported it")
+        Long contentLength,
+
+        @Schema(description = "When the image was checked")
+        Instant checkedAt,
+
+        @Schema(description = "Why the image cannot be shown, or null if it looks fine")
+        String problem) {
+
+    public static ImageMetadata broken(String url, String problem) {
+        return new ImageMetadata(url, null, null, null, Instant.now(), problem);
+    }
+
+    public boolean isBroken() {
+        return problem != null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.waracle.cakemgr.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+public record TokenResponse(
+
+        @Schema(description = "Signed bearer token to send as 'Authorization: Bearer <token>'")
+        String token,
+
+        @Schema(description = "Always 'Bearer'", example = "Bearer")
+        String tokenType,
+
+        @Schema(description = "When the token stops being accepted")
+        Instant expiresAt) {}
@@ -1,5 +1,6 @@
 package com.waracle.cakemgr.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -14,24 +15,43 @@ import java.io.Serializable;
 @DynamicUpdate
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "Cake", uniqueConstraints = {@UniqueConstraint(columnNames = "ID")})
+@Table(name = "Cake")
 public class CakeEntity implements Serializable {
 
     @Serial
     private static final long serialVersionUID = -1798070786993154676L;
 
+    /** Must match the INCREMENT BY of CAKE_SEQ; ids are handed out in blocks of this size. */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    public static final int TITLE_LENGTH = 100;
+    public static final int DESCRIPTION_LENGTH = 100;
+    public static final int IMAGE_LENGTH = 300;
+
+    // pooled sequence rather than IDENTITY so Hibernate and the JDBC bulk writers can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "ID", unique = true, nullable = false)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cake_seq")
+    @SequenceGenerator(name = "cake_seq", sequenceName = "CAKE_SEQ", allocationSize = ID_ALLOCATION_SIZE)
+    @Column(name = "ID", nullable = false)
     private Integer cakeId;
 
-    @Column(name = "TITLE", unique = true, nullable = false, length = 100)
+    @Column(name = "TITLE", unique = true, nullable = false, length = TITLE_LENGTH)
     private String title;
 
-    @Column(name = "DESCRIPTION", nullable = false, length = 100)
+    @Column(name = "DESCRIPTION", nullable = false, length = DESCRIPTION_LENGTH)
     private String desc;
 
-    @Column(name = "IMAGE", nullable = false, length = 300)
+    @Column(name = "IMAGE", nullable = false, length = IMAGE_LENGTH)
     private String image;
 
+    // bumped on every update; published to clients as the cake's ETag rather than in the body
+    @Version
+    @JsonIgnore
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
+    public CakeEntity(Integer cakeId, String title, String desc, String image) {
+        this(cakeId, title, desc, image, null);
+    }
+
 }
\ No newline at end of file
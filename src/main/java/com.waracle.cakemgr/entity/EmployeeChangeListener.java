@@ -0,0 +1,29 @@
+package com.waracle.cakemgr.entity;
+
+import com.waracle.cakemgr.event.EmployeeChangeEvent;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns every write to the employee table made through JPA into an {@link EmployeeChangeEvent}. Hibernate obtains
+ * this listener from the Spring context, so it can publish through the application's event publisher.
+ */
+@Component
+public class EmployeeChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public EmployeeChangeListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(EmployeeEntity employee) {
+        eventPublisher.publishEvent(new EmployeeChangeEvent(employee.getUsername()));
+    }
+}
@@ -8,12 +8,13 @@ import org.hibernate.annotations.DynamicUpdate;
 @Data
 @Entity
 @DynamicUpdate
-@Table(name = "Employee", uniqueConstraints = {@UniqueConstraint(columnNames = "ID"), @UniqueConstraint(columnNames = "EMAIL")})
+@EntityListeners(EmployeeChangeListener.class)
+@Table(name = "Employee", uniqueConstraints = {@UniqueConstraint(columnNames = "EMAIL")})
 public class EmployeeEntity {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "ID", unique = true, nullable = false)
+    @Column(name = "ID", nullable = false)
     private Integer employeeId;
 
     @Column(name = "EMAIL", unique = true, nullable = false, length = 100)
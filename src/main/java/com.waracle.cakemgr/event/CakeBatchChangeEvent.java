@@ -0,0 +1,11 @@
+package com.waracle.cakemgr.event;
+
+import java.util.List;
+
+/**
+ * Published once by the cake service after a bulk request has been committed, carrying every change it made in
+ * request order, so listeners can apply the whole batch in one step instead of once per cake.
+ * <p>
+ * Bulk deletes do not read the rows they remove, so the {@code cake} of a DELETED change here is null.
+ */
+public record CakeBatchChangeEvent(List<CakeChangeEvent> changes) {}
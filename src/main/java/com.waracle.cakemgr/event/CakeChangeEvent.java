@@ -0,0 +1,24 @@
+package com.waracle.cakemgr.event;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+
+/**
+ * Published by the cake service after a change has been written to the database.
+ *
+ * @param cake     the cake as stored after the change; for deletions, the cake as it was before being removed
+ * @param restored set when a queued write to the cake was refused and it is being put back to what the database
+ *                 holds. The stored row can be at a lower version than the one that was shown, so it replaces the
+ *                 cake whatever version is held
+ */
+public record CakeChangeEvent(Type type, Integer cakeId, CakeEntity cake, boolean restored) {
+
+    public CakeChangeEvent(Type type, Integer cakeId, CakeEntity cake) {
+        this(type, cakeId, cake, false);
+    }
+
+    public enum Type {
+        ADDED,
+        UPDATED,
+        DELETED
+    }
+}
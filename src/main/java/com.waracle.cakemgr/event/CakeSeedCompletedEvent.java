@@ -0,0 +1,8 @@
+package com.waracle.cakemgr.event;
+
+import com.waracle.cakemgr.seed.BulkLoadResult;
+
+/**
+ * Published once the background seed has written the cake document to the database.
+ */
+public record CakeSeedCompletedEvent(String location, BulkLoadResult result) {}
@@ -0,0 +1,8 @@
+package com.waracle.cakemgr.event;
+
+/**
+ * Published when an employee record is inserted, updated or deleted.
+ *
+ * @param username the employee's username after the change
+ */
+public record EmployeeChangeEvent(String username) {}
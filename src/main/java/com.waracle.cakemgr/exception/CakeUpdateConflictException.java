@@ -0,0 +1,8 @@
+package com.waracle.cakemgr.exception;
+
+// an answer to the client, not a fault: no stack trace, as for CakeVersionMismatchException
+public class CakeUpdateConflictException extends RuntimeException {
+    public CakeUpdateConflictException(String message) {
+        super(message, null, false, false);
+    }
+}
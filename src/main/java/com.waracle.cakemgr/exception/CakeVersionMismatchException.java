@@ -0,0 +1,8 @@
+package com.waracle.cakemgr.exception;
+
+// an answer to the client, not a fault: no stack trace, as for RecordNotFoundException
+public class CakeVersionMismatchException extends RuntimeException {
+    public CakeVersionMismatchException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,7 @@
+package com.waracle.cakemgr.exception;
+
+public class FeedFullException extends RuntimeException {
+    public FeedFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.waracle.cakemgr.exception;
+
+public class InvalidCakeException extends RuntimeException {
+    public InvalidCakeException(String message) {
+        super(message);
+    }
+}
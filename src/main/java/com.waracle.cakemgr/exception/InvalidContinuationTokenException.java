@@ -0,0 +1,7 @@
+package com.waracle.cakemgr.exception;
+
+public class InvalidContinuationTokenException extends RuntimeException {
+    public InvalidContinuationTokenException(String message) {
+        super(message);
+    }
+}
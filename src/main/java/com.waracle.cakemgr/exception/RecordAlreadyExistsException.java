@@ -1,7 +1,15 @@
 package com.waracle.cakemgr.exception;
 
+/**
+ * Thrown when a write would take a title another cake holds. Like {@link RecordNotFoundException}, it is an
+ * answer to the client and carries no stack trace.
+ */
 public class RecordAlreadyExistsException extends Exception {
     public RecordAlreadyExistsException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
-}
\ No newline at end of file
+
+    public static RecordAlreadyExistsException forTitle(String title) {
+        return new RecordAlreadyExistsException(String.format("Cake with title '%s' already exists", title));
+    }
+}
@@ -1,7 +1,15 @@
 package com.waracle.cakemgr.exception;
 
+/**
+ * Thrown for an id that is not in the catalogue. Clients probing ids make this an everyday answer rather than a
+ * fault, so it carries no stack trace: capturing one cost more than the lookup that failed.
+ */
 public class RecordNotFoundException extends RuntimeException {
     public RecordNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
-}
\ No newline at end of file
+
+    public static RecordNotFoundException forCake(Integer id) {
+        return new RecordNotFoundException(String.format("Cake with id '%d' not found", id));
+    }
+}
@@ -0,0 +1,313 @@
+package com.waracle.cakemgr.feed;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.CakeFeedEvent;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.FeedFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Feed of cake changes for clients that would otherwise poll the whole catalogue, sent as server-sent events.
+ * Every change the cake service publishes gets the next sequence number and is kept in a ring of the last
+ * {@code buffer-size} events. The event's id is that number behind a token for this feed instance, since numbering
+ * starts again on every node and after every restart. A client that reconnects with a {@code Last-Event-ID} still
+ * in the ring carries on from there; one that fell further behind, or whose id came from another instance, is sent
+ * a RESET and should read the catalogue again before applying later events.
+ * <p>
+ * Publishing never waits on clients: a change is rendered to its event text once, stored in the ring and a single
+ * waker thread is nudged. Each client has its own virtual thread that follows the ring from its own position and
+ * writes everything it has not seen in one go, so a slow client only delays itself and a burst of changes costs a
+ * fast one a single write.
+ * <p>
+ * Changes to one cake can be published from different request threads, so their order in the feed is not always
+ * the order they were committed in; clients should keep the highest {@code version} seen for each cake.
+ */
+@Component
+public class CakeChangeFeed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeChangeFeed.class);
+
+    static final String SUBSCRIBERS = "cakes.feed.subscribers";
+    static final String RESETS = "cakes.feed.resets";
+
+    // most buffered events sent to one client in a single write
+    private static final int MAX_EVENTS_PER_WRITE = 256;
+
+    private static final String HEARTBEAT = ":keep-alive\n\n";
+
+    private final ObjectMapper objectMapper;
+    private final CakeManagerProperties.Feed settings;
+    // random rather than the start time, so two nodes started together behind one address still differ
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE,
+            Character.MAX_RADIX);
+
+    // slot (sequence % buffer-size) holds that event until a later one takes its place
+    private final AtomicReferenceArray<Frame> ring;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // the newest sequence handed out; only written under appendLock, after its frame is in the ring
+    private volatile long head;
+
+    private final Semaphore places;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Thread waker;
+    private volatile boolean closed;
+
+    private final Counter resets;
+
+    /**
+     * One event as the exact text written to the stream, so it is serialised once however many clients get it.
+     */
+    private record Frame(long sequence, String text) {}
+
+    public CakeChangeFeed(ObjectMapper objectMapper, CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.settings = properties.getFeed();
+        this.ring = new AtomicReferenceArray<>(Math.max(1, settings.getBufferSize()));
+        this.places = new Semaphore(settings.getMaxSubscribers());
+
+        Gauge.builder(SUBSCRIBERS, subscribers, Set::size)
+                .description("Clients following the cake change feed")
+                .register(meterRegistry);
+        this.resets = Counter.builder(RESETS)
+                .description("Clients told to read the catalogue again because the changes they missed are gone")
+                .register(meterRegistry);
+
+        this.waker = Thread.ofVirtual().name("cake-feed-waker").start(this::wakeSubscribers);
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        append(List.of(event));
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        append(event.changes());
+    }
+
+    @EventListener
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        // the seed writes without publishing changes, so followers can only be told to start over
+        appendRendered(List.of(render(CakeFeedEvent.reset())));
+    }
+
+    /**
+     * Opens a stream of changes for one client.
+     *
+     * @param lastEventId the id of the last event the client received, or null for changes from now on
+     * @throws FeedFullException if {@code max-subscribers} clients are already following the feed
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        return subscribe(lastEventId, new SseEmitter(settings.getTimeout().toMillis()));
+    }
+
+    SseEmitter subscribe(String lastEventId, SseEmitter emitter) {
+        if (closed || !places.tryAcquire()) {
+            throw new FeedFullException(String.format(
+                    "%d clients are already following cake changes; try again shortly", settings.getMaxSubscribers()));
+        }
+        Subscriber subscriber = new Subscriber(emitter, startAfter(lastEventId));
+        emitter.onCompletion(subscriber::close);
+        emitter.onError(ex -> subscriber.close());
+        emitter.onTimeout(() -> {
+            subscriber.close();
+            emitter.complete();
+        });
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        LockSupport.unpark(waker);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void append(List<CakeChangeEvent> changes) {
+        List<Frame> rendered = new ArrayList<>(changes.size());
+        for (CakeChangeEvent change : changes) {
+            CakeEntity cake = change.type() == CakeChangeEvent.Type.DELETED ? null : change.cake();
+            rendered.add(render(new CakeFeedEvent(CakeFeedEvent.Type.valueOf(change.type().name()), change.cakeId(),
+                    cake == null ? null : cake.getVersion(), cake)));
+        }
+        appendRendered(rendered);
+    }
+
+    // frames arrive without an id; the id is prefixed here, once the sequence is known
+    private void appendRendered(List<Frame> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            for (Frame frame : frames) {
+                long sequence = head + 1;
+                ring.set(slot(sequence), new Frame(sequence, "id:" + eventId(sequence) + "\n" + frame.text()));
+                head = sequence;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        LockSupport.unpark(waker);
+    }
+
+    private Frame render(CakeFeedEvent event) {
+        String name = event.type() == CakeFeedEvent.Type.RESET ? "reset" : "cake";
+        try {
+            return new Frame(0, "event:" + name + "\ndata:" + objectMapper.writeValueAsString(event) + "\n\n");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(String.format("Cannot write feed event for cake with id '%s'", event.cakeId()), e);
+        }
+    }
+
+    // <instance>-<sequence>
+    String eventId(long sequence) {
+        return instance + "-" + sequence;
+    }
+
+    // where a new client starts: after the newest event, or after its Last-Event-ID when that can be resumed from
+    private long startAfter(String lastEventId) {
+        long newest = head;
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return newest;
+        }
+        String id = lastEventId.trim();
+        int separator = id.lastIndexOf('-');
+        if (separator > 0 && id.substring(0, separator).equals(instance)) {
+            try {
+                long last = Long.parseLong(id.substring(separator + 1));
+                if (last >= 0 && last <= newest) {
+                    // if it has already left the ring, the subscriber finds that out on its first read
+                    return last;
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring malformed Last-Event-ID '{}'", lastEventId);
+            }
+        }
+        // from another node, from before a restart, or not ours: the client cannot know what it missed
+        return Long.MAX_VALUE;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length());
+    }
+
+    // one thread does the waking, so a publishing request never pays for the number of clients; a nudge that lands
+    // while it is busy leaves the permit set, and the next pass picks it up
+    private void wakeSubscribers() {
+        while (!closed) {
+            LockSupport.park(this);
+            for (Subscriber subscriber : subscribers) {
+                LockSupport.unpark(subscriber.thread);
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Thread thread;
+        private final AtomicBoolean done = new AtomicBoolean();
+        // the last sequence written to this client; only touched by its own thread once started
+        private long cursor;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+            this.thread = Thread.ofVirtual().name("cake-feed-subscriber").unstarted(this::run);
+        }
+
+        void close() {
+            if (done.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                places.release();
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void run() {
+            long heartbeat = settings.getHeartbeatInterval().toNanos();
+            // nothing reaches the client until the first write, so a quiet feed opens with a heartbeat
+            long lastWrite = System.nanoTime() - heartbeat;
+            try {
+                while (!done.get()) {
+                    long newest = head;
+                    if (cursor == newest) {
+                        long quiet = System.nanoTime() - lastWrite;
+                        if (quiet < heartbeat) {
+                            LockSupport.parkNanos(this, heartbeat - quiet);
+                            continue;
+                        }
+                        write(HEARTBEAT);
+                    } else {
+                        write(cursor > newest ? resetTo(newest) : framesUpTo(newest));
+                    }
+                    lastWrite = System.nanoTime();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away or the stream was completed under us
+                LOG.debug("Cake feed client dropped: {}", e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        private String framesUpTo(long newest) {
+            long last = Math.min(newest, cursor + MAX_EVENTS_PER_WRITE);
+            StringBuilder text = new StringBuilder();
+            for (long sequence = cursor + 1; sequence <= last; sequence++) {
+                Frame frame = ring.get(slot(sequence));
+                if (frame == null || frame.sequence() != sequence) {
+                    // overwritten: this client is more than a whole ring behind
+                    return resetTo(head);
+                }
+                text.append(frame.text());
+            }
+            cursor = last;
+            return text.toString();
+        }
+
+        // the reset takes the id of the newest event, so a client that reloads and reconnects resumes after it
+        private String resetTo(long newest) {
+            resets.increment();
+            cursor = newest;
+            return "id:" + eventId(newest) + "\n" + render(CakeFeedEvent.reset()).text();
+        }
+
+        private void write(String text) throws IOException {
+            emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(text, MediaType.TEXT_PLAIN)));
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.waracle.cakemgr.image;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.ImageMetadata;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that cake image URLs answer with an image, in the background: after each seed, and for every cake a
+ * write adds or changes. Each check is a HEAD request (falling back to a one-byte ranged GET for servers that
+ * refuse HEAD) recording the status, content type and size.
+ * <p>
+ * Checks run on virtual threads, bounded three ways: by how many may be queued, how many may be in flight, and
+ * how many may be in flight to one host. Results are cached by URL, so a URL shared by many cakes is fetched once,
+ * and a URL already being checked is not fetched twice. A write never waits: once the queue is full its check is
+ * skipped, while the seed waits for room instead.
+ * <p>
+ * Redirects are followed here rather than by the HTTP client, so every {@code Location} is held to the same rules
+ * as the URL itself: a public URL may not redirect the check onto a private network.
+ */
+@Service
+public class ImageCheckService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageCheckService.class);
+
+    static final String IMAGE_CACHE = "cakes.images";
+    static final String CHECKS = "cakes.image.checks";
+
+    // as many as the JDK client follows by itself
+    static final int MAX_REDIRECTS = 5;
+
+    private final CakeServiceImpl cakeService;
+    private final CakeManagerProperties.Images settings;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+    private final AsyncCache<String, ImageMetadata> results;
+
+    private final Semaphore queued;
+    private final Semaphore inFlight;
+    // only hosts with a check running or waiting, so URLs naming ever more hosts cannot grow it
+    private final Map<String, HostLimit> inFlightByHost = new ConcurrentHashMap<>();
+
+    private final Counter working;
+    private final Counter broken;
+    private final Counter skipped;
+
+    /**
+     * The checks one host may have in flight, shared by every check of the host that is running or waiting.
+     */
+    private final class HostLimit {
+
+        private final Semaphore permits = new Semaphore(settings.getPerHostConcurrency());
+        // only changed inside a compute on the map entry, which serialises it
+        private int checks;
+    }
+
+    public ImageCheckService(CakeServiceImpl cakeService, CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.cakeService = cakeService;
+        this.settings = properties.getImages();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(settings.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.results = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfter(new Expiry<String, ImageMetadata>() {
+                    @Override
+                    public long expireAfterCreate(String url, ImageMetadata image, long currentTime) {
+                        return (image.isBroken() ? settings.getBrokenExpireAfterWrite() : settings.getExpireAfterWrite()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String url, ImageMetadata image, long currentTime, long currentDuration) {
+                        return expireAfterCreate(url, image, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String url, ImageMetadata image, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .executor(executor)
+                .recordStats()
+                .buildAsync();
+        this.queued = new Semaphore(settings.getMaxQueued());
+        this.inFlight = new Semaphore(settings.getMaxConcurrency());
+        CaffeineCacheMetrics.monitor(meterRegistry, results.synchronous(), IMAGE_CACHE);
+
+        this.working = checks(meterRegistry, "working");
+        this.broken = checks(meterRegistry, "broken");
+        this.skipped = checks(meterRegistry, "skipped");
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(CHECKS).tag("result", result)
+                .description("Cake image checks by result; skipped checks found the queue full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the result of the last check of this URL, if there is one; otherwise a check is started and the
+     * result is empty
+     */
+    public Optional<ImageMetadata> lookup(String url) {
+        if (!settings.isEnabled() || url == null) {
+            return Optional.empty();
+        }
+        CompletableFuture<ImageMetadata> result = results.getIfPresent(url);
+        if (result == null) {
+            check(url, false);
+            return Optional.empty();
+        }
+        return result.isDone() && !result.isCompletedExceptionally() ? Optional.of(result.join()) : Optional.empty();
+    }
+
+    /**
+     * Checks the URL unless a result for it is cached or a check is already running.
+     *
+     * @param wait whether to wait for room in the queue rather than skip the check when it is full
+     * @return the pending or finished result; completes exceptionally if the check was skipped
+     */
+    CompletableFuture<ImageMetadata> check(String url, boolean wait) {
+        CompletableFuture<ImageMetadata> known = results.getIfPresent(url);
+        if (known != null) {
+            return known;
+        }
+        // the permit is taken before going into the cache, whose mapping function runs under a map lock
+        if (wait) {
+            queued.acquireUninterruptibly();
+        } else if (!queued.tryAcquire()) {
+            skipped.increment();
+            return CompletableFuture.failedFuture(new IllegalStateException("Image check queue is full"));
+        }
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<ImageMetadata> result = results.get(url, (key, ignored) -> {
+            started.set(true);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    ImageMetadata image = fetch(key);
+                    (image.isBroken() ? broken : working).increment();
+                    return image;
+                } finally {
+                    queued.release();
+                }
+            }, executor);
+        });
+        if (!started.get()) {
+            // another caller started the same check in the meantime
+            queued.release();
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        if (settings.isEnabled() && event.type() != CakeChangeEvent.Type.DELETED) {
+            checkImageOf(event.cake());
+        }
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        if (settings.isEnabled()) {
+            event.changes().stream()
+                    .filter(change -> change.type() != CakeChangeEvent.Type.DELETED)
+                    .forEach(change -> checkImageOf(change.cake()));
+        }
+    }
+
+    private void checkImageOf(CakeEntity cake) {
+        if (cake.getImage() != null) {
+            check(cake.getImage(), false);
+        }
+    }
+
+    @EventListener
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        if (settings.isEnabled()) {
+            Thread.ofVirtual().name("cake-image-check").start(this::checkAll);
+        }
+    }
+
+    void checkAll() {
+        // read in one go before queueing, so no database connection is held while waiting for room in the queue
+        List<String> urls = cakeService.retrieveDistinctImages();
+        for (String url : urls) {
+            check(url, true);
+        }
+        LOG.info("Queued image checks for {} distinct image URLs", urls.size());
+    }
+
+    ImageMetadata fetch(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException ex) {
+            return ImageMetadata.broken(url, "not a valid URL");
+        }
+        String refused = refuse(uri);
+        if (refused != null) {
+            return ImageMetadata.broken(url, refused);
+        }
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        HostLimit hostLimit = inFlightByHost.compute(host, (h, limit) -> {
+            HostLimit joined = limit == null ? new HostLimit() : limit;
+            joined.checks++;
+            return joined;
+        });
+        try {
+            inFlight.acquire();
+            try {
+                hostLimit.permits.acquire();
+                try {
+                    return request(url, uri);
+                } finally {
+                    hostLimit.permits.release();
+                }
+            } finally {
+                inFlight.release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return ImageMetadata.broken(url, "check interrupted");
+        } finally {
+            // the last check of the host drops its entry
+            inFlightByHost.computeIfPresent(host, (h, limit) -> --limit.checks == 0 ? null : limit);
+        }
+    }
+
+    int hostsInFlight() {
+        return inFlightByHost.size();
+    }
+
+    /**
+     * @return why the check may not request this URL, or null if it may
+     */
+    private String refuse(URI uri) {
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!(scheme.equals("http") || scheme.equals("https")) || uri.getHost() == null) {
+            return "not an http(s) URL";
+        }
+        try {
+            if (!settings.isAllowPrivateAddresses() && isPrivate(uri.getHost().toLowerCase(Locale.ROOT))) {
+                return "host is on a private network";
+            }
+        } catch (UnknownHostException ex) {
+            return "unknown host";
+        }
+        return null;
+    }
+
+    private ImageMetadata request(String url, URI uri) throws InterruptedException {
+        try {
+            URI target = uri;
+            boolean ranged = false;
+            int redirects = 0;
+            while (true) {
+                HttpResponse<?> response = send(target, ranged);
+                Optional<String> location = response.headers().firstValue("Location");
+                if (isRedirect(response.statusCode()) && location.isPresent()) {
+                    if (++redirects > MAX_REDIRECTS) {
+                        return ImageMetadata.broken(url, String.format("more than %d redirects", MAX_REDIRECTS));
+                    }
+                    try {
+                        target = target.resolve(location.get());
+                    } catch (IllegalArgumentException ex) {
+                        return ImageMetadata.broken(url, "redirected to an invalid URL");
+                    }
+                    String refused = refuse(target);
+                    if (refused != null) {
+                        return ImageMetadata.broken(url, String.format("redirected: %s", refused));
+                    }
+                } else if (!ranged && (response.statusCode() == 405 || response.statusCode() == 501)) {
+                    // HEAD not supported: ask for the first byte only
+                    ranged = true;
+                } else {
+                    return describe(url, response, ranged && response.statusCode() == 206 ? totalSize(response)
+                            : response.headers().firstValueAsLong("Content-Length"));
+                }
+            }
+        } catch (HttpTimeoutException ex) {
+            return ImageMetadata.broken(url, "timed out");
+        } catch (IOException ex) {
+            LOG.debug("Image check of '{}' failed: {}", url, ex.toString());
+            return ImageMetadata.broken(url, String.format("request failed: %s", ex.getClass().getSimpleName()));
+        }
+    }
+
+    private HttpResponse<?> send(URI uri, boolean ranged) throws IOException, InterruptedException {
+        if (!ranged) {
+            return httpClient.send(HttpRequest.newBuilder(uri)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(settings.getRequestTimeout())
+                    .build(), HttpResponse.BodyHandlers.discarding());
+        }
+        HttpResponse<InputStream> get = httpClient.send(HttpRequest.newBuilder(uri)
+                .header("Range", "bytes=0-0")
+                .timeout(settings.getRequestTimeout())
+                .build(), HttpResponse.BodyHandlers.ofInputStream());
+        // the headers are all the check needs, so the body is closed without reading it
+        get.body().close();
+        return get;
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    // Content-Range: bytes 0-0/12345, or bytes 0-0/* when the server does not know the size
+    private static OptionalLong totalSize(HttpResponse<?> response) {
+        Optional<String> range = response.headers().firstValue("Content-Range");
+        if (range.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(range.get().substring(range.get().lastIndexOf('/') + 1).trim()));
+        } catch (NumberFormatException ex) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static ImageMetadata describe(String url, HttpResponse<?> response, OptionalLong size) {
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        String problem = null;
+        if (response.statusCode() >= 400) {
+            problem = String.format("HTTP %d", response.statusCode());
+        } else if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("image/")) {
+            problem = String.format("not an image (%s)", contentType);
+        }
+        return new ImageMetadata(url, response.statusCode(), contentType,
+                size.isPresent() && size.getAsLong() >= 0 ? size.getAsLong() : null, Instant.now(), problem);
+    }
+
+    // checked before connecting to the URL and to every redirect; a name that resolves differently by the time of
+    // the request is not caught
+    boolean isPrivate(String host) throws UnknownHostException {
+        for (InetAddress address : InetAddress.getAllByName(host)) {
+            if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                    || address.isAnyLocalAddress() || address.isMulticastAddress() || isUnlisted(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ranges the InetAddress checks leave out: IPv6 unique-local fc00::/7, where cloud metadata endpoints such as
+    // fd00:ec2::254 live (isSiteLocalAddress only knows the retired fec0::/10), and carrier-grade NAT 100.64.0.0/10
+    private static boolean isUnlisted(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet6Address) {
+            return (bytes[0] & 0xfe) == 0xfc;
+        }
+        return bytes[0] == 100 && (bytes[1] & 0xc0) == 64;
+    }
+}
@@ -0,0 +1,90 @@
+package com.waracle.cakemgr.metrics;
+
+import com.waracle.cakemgr.exception.BatchTooLargeException;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+import com.waracle.cakemgr.exception.InvalidContinuationTokenException;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.service.CachingCakeService;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import com.waracle.cakemgr.service.SnapshotCakeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every {@link com.waracle.cakemgr.service.CakeService} call as {@code cakes.operations}, tagged with the
+ * operation, the layer that answered it (cache, snapshot or database) and its outcome. Each layer is timed on its
+ * own, so a cache hit and the database read behind a miss show up separately. The timers publish percentile
+ * histograms, which Prometheus can aggregate across instances for latency SLOs.
+ */
+@Aspect
+@Component
+public class CakeServiceMetricsAspect {
+
+    static final String TIMER = "cakes.operations";
+
+    private final MeterRegistry meterRegistry;
+
+    // built once per operation, layer and outcome rather than looked up in the registry on every call
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private record TimerKey(Class<?> target, String operation, String outcome) {}
+
+    public CakeServiceMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.waracle.cakemgr.service.CakeService.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timer(joinPoint.getTarget(), joinPoint.getSignature().getName(), outcome(failure))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(Object target, String operation, String outcome) {
+        return timers.computeIfAbsent(new TimerKey(target.getClass(), operation, outcome), key -> Timer.builder(TIMER)
+                .description("Time taken by cake service operations")
+                .tags("operation", operation, "layer", layer(target), "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    static String layer(Object target) {
+        return switch (target) {
+            case CachingCakeService ignored -> "cache";
+            case SnapshotCakeService ignored -> "snapshot";
+            case CakeServiceImpl ignored -> "database";
+            default -> target.getClass().getSimpleName();
+        };
+    }
+
+    static String outcome(Throwable failure) {
+        return switch (failure) {
+            case null -> "success";
+            case RecordNotFoundException ignored -> "not-found";
+            case RecordAlreadyExistsException ignored -> "conflict";
+            case CakeVersionMismatchException ignored -> "conflict";
+            // refused before any work was done; kept apart so bad requests do not count against the error budget
+            case BatchTooLargeException ignored -> "invalid";
+            case InvalidContinuationTokenException ignored -> "invalid";
+            default -> "error";
+        };
+    }
+}
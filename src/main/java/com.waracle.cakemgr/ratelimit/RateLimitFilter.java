@@ -0,0 +1,157 @@
+package com.waracle.cakemgr.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.exception.ErrorResponse;
+import com.waracle.cakemgr.security.Role;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Applies the {@link RequestRateLimiter} to authenticated requests, answering 429 with {@code Retry-After} when
+ * the user is over their rate or the role's bulkhead is full. Anonymous requests (login, token issue, health) pass
+ * through untouched.
+ * <p>
+ * Runs after authorization, so requests that would be refused anyway do not use up an allowance. A bulkhead place
+ * is held until the response is complete, including for responses streamed after the request thread is released.
+ * The security configuration only adds it when rate limiting is enabled.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String CAKES = "/rest/cakes/";
+
+    private final RequestRateLimiter limiter;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitFilter(RequestRateLimiter limiter, ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Role role = roleOf(authentication);
+        if (role == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Duration wait = limiter.tryAcquire(authentication.getName(), role);
+        if (!wait.isZero()) {
+            reject(response, wait, String.format("User '%s' is sending requests too quickly; try again in %d s",
+                    authentication.getName(), retryAfterSeconds(wait)));
+            return;
+        }
+
+        RequestRateLimiter.Kind kind = kindOf(request);
+        if (kind == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestRateLimiter.Permit permit = limiter.tryEnter(role, kind);
+        if (permit == null) {
+            reject(response, Duration.ofSeconds(1), String.format(
+                    "Too many %s requests are in progress for role %s; try again shortly",
+                    kind == RequestRateLimiter.Kind.BULK_READ ? "whole-catalogue read" : "write", role));
+            return;
+        }
+        boolean handedOver = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(permit));
+                handedOver = true;
+            }
+        } finally {
+            if (!handedOver) {
+                permit.close();
+            }
+        }
+    }
+
+    private static Role roleOf(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        Role role = null;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (("ROLE_" + Role.CHEF.name()).equals(authority.getAuthority())) {
+                return Role.CHEF;
+            }
+            if (("ROLE_" + Role.USER.name()).equals(authority.getAuthority())) {
+                role = Role.USER;
+            }
+        }
+        return role;
+    }
+
+    private static RequestRateLimiter.Kind kindOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(CAKES)) {
+            return null;
+        }
+        String method = request.getMethod();
+        if (HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)) {
+            String endpoint = path.substring(CAKES.length());
+            return endpoint.equals("getAllCakes") || endpoint.equals("streamAllCakes")
+                    || endpoint.equals("exportCakes")
+                    ? RequestRateLimiter.Kind.BULK_READ
+                    : null;
+        }
+        return HttpMethod.OPTIONS.matches(method) ? null : RequestRateLimiter.Kind.WRITE;
+    }
+
+    private void reject(HttpServletResponse response, Duration wait, String message) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds(wait)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(message));
+    }
+
+    // Retry-After is in whole seconds; rounding down would invite a retry that is refused again
+    private static long retryAfterSeconds(Duration wait) {
+        return Math.max(1, (wait.toNanos() + 999_999_999L) / 1_000_000_000L);
+    }
+
+    private record ReleaseOnCompletion(RequestRateLimiter.Permit permit) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a restarted async cycle replaces the listeners, so carry this one over
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
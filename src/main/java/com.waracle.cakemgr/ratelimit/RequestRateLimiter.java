@@ -0,0 +1,164 @@
+package com.waracle.cakemgr.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.security.Role;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps one client from taking the server away from everyone else. Each authenticated user has a
+ * {@link TokenBucket} sized by their role, so a user hammering an endpoint is turned away while other users are
+ * not. Separately, each role has a bulkhead for whole-catalogue reads and one for writes: a fixed number of
+ * requests of that kind may run at once, so USER clients reading the catalogue cannot fill the request threads a
+ * CHEF needs to update it.
+ * <p>
+ * Nothing here waits: a request over a limit is refused at once, and the client is told when to try again.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cakemgr.rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RequestRateLimiter {
+
+    static final String REJECTED = "cakes.ratelimit.rejected";
+    static final String ACTIVE = "cakes.bulkhead.active";
+
+    /**
+     * The kinds of request that have a bulkhead of their own.
+     */
+    public enum Kind {
+        /** Reads of the whole catalogue, the most expensive request a client can send. */
+        BULK_READ,
+        /** Adds, updates and deletes, single and bulk. */
+        WRITE
+    }
+
+    /**
+     * A place in a bulkhead, given back on {@link #close}; closing more than once gives it back once.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final Semaphore bulkhead;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private record Client(String username, Role role) {}
+
+    private final CakeManagerProperties.RateLimit settings;
+    private final Cache<Client, TokenBucket> buckets;
+    private final Map<Role, Map<Kind, Semaphore>> bulkheads = new EnumMap<>(Role.class);
+    private final Map<Role, Counter> rateRejections = new EnumMap<>(Role.class);
+    private final Map<Role, Map<Kind, Counter>> bulkheadRejections = new EnumMap<>(Role.class);
+
+    public RequestRateLimiter(CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getRateLimit();
+
+        long fillNanos = 1_000_000_000L;
+        for (Role role : Role.values()) {
+            CakeManagerProperties.RateLimit.Limits limits = settings.forRole(role);
+            // checks the limits now rather than on the first request
+            fillNanos = Math.max(fillNanos, new TokenBucket(limits.getRequestsPerSecond(), limits.getBurst(), 0).fillNanos());
+            String roleTag = role.name().toLowerCase(Locale.ROOT);
+
+            Gauge.builder("cakes.ratelimit.limit", limits, CakeManagerProperties.RateLimit.Limits::getRequestsPerSecond)
+                    .tag("role", roleTag)
+                    .description("Requests per second allowed to each user with the role")
+                    .register(meterRegistry);
+            rateRejections.put(role, Counter.builder(REJECTED)
+                    .tag("role", roleTag)
+                    .tag("limit", "rate")
+                    .description("Requests refused with 429 because a limit was reached")
+                    .register(meterRegistry));
+
+            Map<Kind, Semaphore> roleBulkheads = new EnumMap<>(Kind.class);
+            Map<Kind, Counter> roleRejections = new EnumMap<>(Kind.class);
+            for (Kind kind : Kind.values()) {
+                int size = kind == Kind.BULK_READ ? limits.getBulkReads() : limits.getWrites();
+                Semaphore bulkhead = new Semaphore(size);
+                String kindTag = kind.name().toLowerCase(Locale.ROOT).replace('_', '-');
+                roleBulkheads.put(kind, bulkhead);
+                roleRejections.put(kind, Counter.builder(REJECTED)
+                        .tag("role", roleTag)
+                        .tag("limit", kindTag)
+                        .description("Requests refused with 429 because a limit was reached")
+                        .register(meterRegistry));
+                Gauge.builder(ACTIVE, bulkhead, b -> size - b.availablePermits())
+                        .tag("role", roleTag)
+                        .tag("bulkhead", kindTag)
+                        .description("Requests of this kind in progress for the role")
+                        .register(meterRegistry);
+                Gauge.builder("cakes.bulkhead.limit", () -> size)
+                        .tag("role", roleTag)
+                        .tag("bulkhead", kindTag)
+                        .description("Requests of this kind allowed in progress at once for the role")
+                        .register(meterRegistry);
+            }
+            bulkheads.put(role, roleBulkheads);
+            bulkheadRejections.put(role, roleRejections);
+        }
+
+        // a bucket left alone this long is full again, so forgetting it loses nothing
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(settings.getMaxClients())
+                .expireAfterAccess(Duration.ofNanos(fillNanos))
+                .build();
+        Gauge.builder("cakes.ratelimit.clients", buckets, Cache::estimatedSize)
+                .description("Users whose request rate is being tracked")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes one request from the user's allowance.
+     *
+     * @return {@link Duration#ZERO} if the request may go ahead, otherwise how long until it would be allowed
+     */
+    public Duration tryAcquire(String username, Role role) {
+        return tryAcquire(username, role, System.nanoTime());
+    }
+
+    Duration tryAcquire(String username, Role role, long now) {
+        CakeManagerProperties.RateLimit.Limits limits = settings.forRole(role);
+        TokenBucket bucket = buckets.get(new Client(username, role),
+                client -> new TokenBucket(limits.getRequestsPerSecond(), limits.getBurst(), now));
+        long wait = bucket.tryTake(now);
+        if (wait > 0) {
+            rateRejections.get(role).increment();
+        }
+        return Duration.ofNanos(wait);
+    }
+
+    /**
+     * Takes a place in the role's bulkhead for this kind of request.
+     *
+     * @return the place, to be closed when the request completes, or null if the bulkhead is full
+     */
+    public Permit tryEnter(Role role, Kind kind) {
+        Semaphore bulkhead = bulkheads.get(role).get(kind);
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejections.get(role).get(kind).increment();
+            return null;
+        }
+        return new Permit(bulkhead);
+    }
+}
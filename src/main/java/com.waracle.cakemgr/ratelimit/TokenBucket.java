@@ -0,0 +1,55 @@
+package com.waracle.cakemgr.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket holding up to {@code burst} requests and refilled at {@code requestsPerSecond}, kept as the single
+ * instant at which it will next be full (the generic cell rate algorithm). Taking a token is one compare-and-set,
+ * with no lock and no refill thread, so a bucket per user costs one long.
+ */
+final class TokenBucket {
+
+    // time one token takes to come back
+    private final long interval;
+    // time an empty bucket takes to fill
+    private final long window;
+    // System.nanoTime() at which the bucket is full again, given the tokens taken so far
+    private final AtomicLong fullAt;
+
+    TokenBucket(double requestsPerSecond, int burst, long now) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "A rate limit needs a positive rate and burst, not %s/s and %d", requestsPerSecond, burst));
+        }
+        this.interval = Math.max(1, Math.round(1_000_000_000d / requestsPerSecond));
+        this.window = interval * burst;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes one token if there is one.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until one will be there
+     */
+    long tryTake(long now) {
+        while (true) {
+            long full = fullAt.get();
+            // an idle bucket does not fill beyond burst, so anything older than now counts as now
+            long next = (full - now < 0 ? now : full) + interval;
+            long wait = next - now - window;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return how long an emptied bucket takes to fill, after which forgetting it changes nothing
+     */
+    long fillNanos() {
+        return window;
+    }
+}
@@ -0,0 +1,243 @@
+package com.waracle.cakemgr.repository;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to the Cake table for bulk work, where going through the JPA persistence context
+ * would cost a round trip (and a managed entity) per row.
+ */
+@Repository
+public class CakeJdbcRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO CAKE (ID, TITLE, DESCRIPTION, IMAGE, VERSION) VALUES (?, ?, ?, ?, 0)";
+    private static final String UPDATE_SQL = "UPDATE CAKE SET TITLE = ?, DESCRIPTION = ?, IMAGE = ?, VERSION = VERSION + 1 WHERE ID = ? AND VERSION = ?";
+    private static final String DELETE_SQL = "DELETE FROM CAKE WHERE ID = ?";
+    private static final String INSERT_AT_VERSION_SQL = "INSERT INTO CAKE (ID, TITLE, DESCRIPTION, IMAGE, VERSION) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_TO_VERSION_SQL = "UPDATE CAKE SET TITLE = ?, DESCRIPTION = ?, IMAGE = ?, VERSION = ? WHERE ID = ?";
+    private static final String MOVE_TITLE_ASIDE_SQL = "UPDATE CAKE SET TITLE = CONCAT(?, ID) WHERE ID = ?";
+
+    // starts with a control character no client sends, so a moved-aside title does not clash with a real one
+    private static final String TITLE_ASIDE_PREFIX = "\u0001moving:";
+
+    // keeps IN lists well below driver and planner limits
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    // rows fetched per round trip by forEachCake, as streamAllOrderedById does through JPA
+    private static final int CURSOR_FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // current block of ids reserved from CAKE_SEQ; a lock rather than synchronized so a virtual thread
+    // waiting on the sequence query does not pin its carrier
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextId;
+    private long blockEnd = -1;
+
+    public CakeJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Set<String> findAllTitles() {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT TITLE FROM CAKE", String.class));
+    }
+
+    /**
+     * Hands every title to the consumer as it is read, without holding them all in memory.
+     */
+    public void forEachTitle(Consumer<String> consumer) {
+        jdbcTemplate.query("SELECT TITLE FROM CAKE", rs -> {
+            consumer.accept(rs.getString(1));
+        });
+    }
+
+    /**
+     * Hands every cake to the consumer in id order through a forward-only, read-only cursor, so the table is
+     * never held in memory and no entity is managed. The cursor keeps its connection until the last row is handed
+     * over, so a slow consumer holds one pooled connection for as long as it takes.
+     */
+    public void forEachCake(Consumer<CakeEntity> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT ID, TITLE, DESCRIPTION, IMAGE, VERSION FROM CAKE ORDER BY ID",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(CURSOR_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            consumer.accept(new CakeEntity(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getLong(5)));
+        });
+    }
+
+    /**
+     * Inserts the cakes as a single JDBC batch at version 0, assigning ids to any cake that does not have one yet.
+     */
+    public void batchInsert(List<CakeEntity> cakes) {
+        for (CakeEntity cake : cakes) {
+            if (cake.getCakeId() == null) {
+                cake.setCakeId(nextId());
+            }
+            cake.setVersion(0L);
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, cakes, cakes.size(), (ps, cake) -> {
+            ps.setInt(1, cake.getCakeId());
+            ps.setString(2, cake.getTitle());
+            ps.setString(3, cake.getDesc());
+            ps.setString(4, cake.getImage());
+        });
+    }
+
+    public void insert(CakeEntity cake) {
+        batchInsert(List.of(cake));
+    }
+
+    /**
+     * Writes title, description and image of every cake as a single JDBC batch, moving each row to the version the
+     * cake carries. A row is only written while it is still at the version before that one.
+     *
+     * @return the update count per cake, in order; 0 where the cake no longer exists or was changed since it was read
+     */
+    public int[] batchUpdate(List<CakeEntity> cakes) {
+        return flatten(jdbcTemplate.batchUpdate(UPDATE_SQL, cakes, Math.max(1, cakes.size()), (ps, cake) -> {
+            ps.setString(1, cake.getTitle());
+            ps.setString(2, cake.getDesc());
+            ps.setString(3, cake.getImage());
+            ps.setInt(4, cake.getCakeId());
+            ps.setLong(5, cake.getVersion() - 1);
+        }));
+    }
+
+    /**
+     * Deletes the cakes by id as a single JDBC batch, without loading them first.
+     *
+     * @return the update count per id, in order; 0 where there was no such cake
+     */
+    public int[] batchDelete(List<Integer> ids) {
+        return flatten(jdbcTemplate.batchUpdate(DELETE_SQL, ids, Math.max(1, ids.size()),
+                (ps, id) -> ps.setInt(1, id)));
+    }
+
+    /**
+     * Inserts the cakes as a single JDBC batch, keeping the id and version each one already has.
+     */
+    public void batchInsertAtVersion(List<CakeEntity> cakes) {
+        jdbcTemplate.batchUpdate(INSERT_AT_VERSION_SQL, cakes, Math.max(1, cakes.size()), (ps, cake) -> {
+            ps.setInt(1, cake.getCakeId());
+            ps.setString(2, cake.getTitle());
+            ps.setString(3, cake.getDesc());
+            ps.setString(4, cake.getImage());
+            ps.setLong(5, cake.getVersion());
+        });
+    }
+
+    /**
+     * Overwrites title, description, image and version of every cake as a single JDBC batch. Unlike
+     * {@link #batchUpdate} the version is set to the cake's own rather than bumped, for writers that have
+     * already decided it.
+     *
+     * @return the update count per cake, in order; 0 where the cake no longer exists
+     */
+    public int[] batchUpdateToVersion(List<CakeEntity> cakes) {
+        return flatten(jdbcTemplate.batchUpdate(UPDATE_TO_VERSION_SQL, cakes, Math.max(1, cakes.size()), (ps, cake) -> {
+            ps.setString(1, cake.getTitle());
+            ps.setString(2, cake.getDesc());
+            ps.setString(3, cake.getImage());
+            ps.setLong(4, cake.getVersion());
+            ps.setInt(5, cake.getCakeId());
+        }));
+    }
+
+    /**
+     * Gives each cake a temporary title unique to its id, so that within one transaction titles can be swapped
+     * or handed from one cake to another without tripping the unique constraint part way through.
+     */
+    public void batchMoveTitlesAside(List<Integer> ids) {
+        jdbcTemplate.batchUpdate(MOVE_TITLE_ASIDE_SQL, ids, Math.max(1, ids.size()), (ps, id) -> {
+            ps.setString(1, TITLE_ASIDE_PREFIX);
+            ps.setInt(2, id);
+        });
+    }
+
+    public Map<Integer, CakeEntity> findByIds(Collection<Integer> ids) {
+        Map<Integer, CakeEntity> cakes = HashMap.newHashMap(ids.size());
+        for (List<Integer> chunk : chunks(ids)) {
+            jdbcTemplate.query("SELECT ID, TITLE, DESCRIPTION, IMAGE, VERSION FROM CAKE WHERE ID IN (" + placeholders(chunk.size()) + ")",
+                    rs -> {
+                        CakeEntity cake = new CakeEntity(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                                rs.getLong(5));
+                        cakes.put(cake.getCakeId(), cake);
+                    }, chunk.toArray());
+        }
+        return cakes;
+    }
+
+    /**
+     * @return the id of each cake holding one of the titles; titles nobody holds are absent
+     */
+    public Map<String, Integer> findIdsByTitle(Collection<String> titles) {
+        Map<String, Integer> ids = HashMap.newHashMap(titles.size());
+        for (List<String> chunk : chunks(titles)) {
+            jdbcTemplate.query("SELECT TITLE, ID FROM CAKE WHERE TITLE IN (" + placeholders(chunk.size()) + ")",
+                    rs -> {
+                        ids.put(rs.getString(1), rs.getInt(2));
+                    }, chunk.toArray());
+        }
+        return ids;
+    }
+
+    /**
+     * Hands out ids the same way Hibernate's pooled optimizer does: a sequence value {@code v} reserves the
+     * ids {@code v - ID_ALLOCATION_SIZE + 1 .. v}, so ids assigned here never collide with ones assigned by JPA.
+     */
+    public int nextId() {
+        idLock.lock();
+        try {
+            if (nextId > blockEnd) {
+                long hi = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR CAKE_SEQ", Long.class);
+                nextId = Math.max(1, hi - CakeEntity.ID_ALLOCATION_SIZE + 1);
+                blockEnd = hi;
+            }
+            return Math.toIntExact(nextId++);
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    /**
+     * Moves CAKE_SEQ on so the next block it hands out starts after {@code maxId}, for cakes inserted with ids
+     * that did not come from the sequence. Also drops any block already reserved here, which may overlap them.
+     */
+    public void restartIdsAfter(int maxId) {
+        idLock.lock();
+        try {
+            // a sequence value v reserves v - ID_ALLOCATION_SIZE + 1 .. v, see nextId
+            jdbcTemplate.execute("ALTER SEQUENCE CAKE_SEQ RESTART WITH " + ((long) maxId + CakeEntity.ID_ALLOCATION_SIZE));
+            blockEnd = -1;
+            nextId = 0;
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    private static <T> List<List<T>> chunks(Collection<T> values) {
+        List<T> list = List.copyOf(new LinkedHashSet<>(values));
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += IN_CHUNK_SIZE) {
+            chunks.add(list.subList(from, Math.min(list.size(), from + IN_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static int[] flatten(int[][] counts) {
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).toArray();
+    }
+}
@@ -1,8 +1,42 @@
 package com.waracle.cakemgr.repository;
 
 import com.waracle.cakemgr.entity.CakeEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface CakeRepository extends JpaRepository<CakeEntity, Integer> {}
+public interface CakeRepository extends JpaRepository<CakeEntity, Integer> {
+
+    // keyset page: seeks straight to the primary key instead of counting past an OFFSET
+    List<CakeEntity> findByCakeIdGreaterThanOrderByCakeIdAsc(Integer cakeId, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from CakeEntity c order by c.cakeId")
+    Stream<CakeEntity> streamAllOrderedById();
+
+    // scalar read for conditional requests: answers an ETag check without loading the entity
+    @Query("select c.version from CakeEntity c where c.cakeId = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+
+    // served by CAKE_TITLE_KEY_IDX on the generated lower-case copy of TITLE (see V2__title_key_index.sql)
+    @Query(value = "SELECT ID, TITLE, DESCRIPTION, IMAGE, VERSION FROM CAKE WHERE TITLE_KEY = LOWER(:title) ORDER BY ID",
+            nativeQuery = true)
+    List<CakeEntity> findByTitleIgnoringCase(@Param("title") String title);
+
+    // projection: checking every image needs each URL once, not every cake
+    @Query("select distinct c.image from CakeEntity c")
+    List<String> findDistinctImages();
+}
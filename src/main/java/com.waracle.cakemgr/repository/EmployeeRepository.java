@@ -1,10 +1,16 @@
 package com.waracle.cakemgr.repository;
 
+import com.waracle.cakemgr.dto.EmployeeLogin;
 import com.waracle.cakemgr.entity.EmployeeEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface EmployeeRepository extends JpaRepository<EmployeeEntity, Long> {
-    Optional<EmployeeEntity> findByUsername(String username);
+
+    // projection: a login reads two columns through the USERNAME unique index and hydrates no entity
+    @Query("select new com.waracle.cakemgr.dto.EmployeeLogin(e.username, e.role) from EmployeeEntity e where e.username = :username")
+    Optional<EmployeeLogin> findLoginByUsername(@Param("username") String username);
 }
@@ -0,0 +1,64 @@
+package com.waracle.cakemgr.rest;
+
+import com.waracle.cakemgr.dto.TokenResponse;
+import com.waracle.cakemgr.security.Role;
+import com.waracle.cakemgr.security.TokenClaims;
+import com.waracle.cakemgr.security.TokenService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+
+@RestController
+@RequestMapping("auth")
+@ConditionalOnProperty(prefix = "cakemgr.security", name = "mode", havingValue = "token")
+public class AuthController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthController.class);
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final AuthenticationManager authenticationManager;
+    private final TokenService tokenService;
+
+    public AuthController(AuthenticationManager authenticationManager, TokenService tokenService) {
+        this.authenticationManager = authenticationManager;
+        this.tokenService = tokenService;
+    }
+
+    @PostMapping("/token")
+    @Operation(summary = "Exchanges a username and password for a signed bearer token")
+    @ApiResponse(responseCode = "401", description = "Unknown user or wrong password")
+    public ResponseEntity<TokenResponse> issueToken(@RequestParam String username, @RequestParam String password) {
+        Authentication authentication = authenticationManager.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated(username, password));
+        Role role = authentication.getAuthorities().stream()
+                .map(authority -> Role.valueOf(authority.getAuthority().substring(ROLE_PREFIX.length())))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(String.format("User '%s' has no role", username)));
+
+        TokenService.IssuedToken issued = tokenService.issue(authentication.getName(), role);
+        LOG.info("Issued bearer token '{}' to '{}'", issued.claims().jti(), issued.claims().sub());
+        return new ResponseEntity<>(new TokenResponse(issued.token(), "Bearer",
+                Instant.ofEpochSecond(issued.claims().exp())), HttpStatus.OK);
+    }
+
+    @PostMapping("/revoke")
+    @Operation(summary = "Revokes the bearer token this request was made with")
+    public ResponseEntity<String> revokeToken(Authentication authentication) {
+        if (!(authentication.getDetails() instanceof TokenClaims claims)) {
+            return new ResponseEntity<>("Request was not authenticated with a bearer token", HttpStatus.BAD_REQUEST);
+        }
+        tokenService.revoke(claims);
+        return new ResponseEntity<>("Token revoked", HttpStatus.OK);
+    }
+}
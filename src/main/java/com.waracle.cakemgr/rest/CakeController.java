@@ -1,18 +1,38 @@
 package com.waracle.cakemgr.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeColumns;
 import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
+import com.waracle.cakemgr.dto.ImageMetadata;
 import com.waracle.cakemgr.entity.CakeEntity;
 import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.feed.CakeChangeFeed;
+import com.waracle.cakemgr.image.ImageCheckService;
+import com.waracle.cakemgr.service.CakeSearchIndex;
 import com.waracle.cakemgr.service.CakeService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -23,37 +43,210 @@ public class CakeController {
 
     private static final Logger LOG = LoggerFactory.getLogger(CakeController.class);
 
+    private static final String SMILE_VALUE = "application/x-jackson-smile";
+
     private final CakeService cakeService;
+    private final CakeSearchIndex cakeSearchIndex;
+    private final ImageCheckService imageCheckService;
+    private final CakeChangeFeed cakeChangeFeed;
+    private final ObjectMapper objectMapper;
+    private final CakeResponseCache cakeResponseCache;
 
-    public CakeController(CakeService cakeService) {
+    public CakeController(CakeService cakeService, CakeSearchIndex cakeSearchIndex,
+                          ImageCheckService imageCheckService, CakeChangeFeed cakeChangeFeed,
+                          ObjectMapper objectMapper, CakeResponseCache cakeResponseCache) {
         this.cakeService = cakeService;
+        this.cakeSearchIndex = cakeSearchIndex;
+        this.imageCheckService = imageCheckService;
+        this.cakeChangeFeed = cakeChangeFeed;
+        this.objectMapper = objectMapper;
+        this.cakeResponseCache = cakeResponseCache;
     }
 
+    // JSON, answered from bytes encoded once per catalogue version. Declared without produces so that a request
+    // with no Accept, or */*, lands here rather than on the CBOR and Smile handler
     @GetMapping("/getAllCakes")
     @Operation(summary = "Retrieves all cakes from the database")
-    public ResponseEntity<List<CakeEntity>> getAllCakes() {
-        return new ResponseEntity<>(cakeService.retrieveAllCakes(), HttpStatus.OK);
+    @ApiResponse(responseCode = "304", description = "Catalogue unchanged since the ETag in If-None-Match")
+    public ResponseEntity<byte[]> getAllCakes(
+            WebRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        // read the version before the cakes: a change landing in between leaves an older tag on newer data,
+        // which only costs the client one extra full response
+        long version = cakeService.catalogueVersion();
+        if (request.checkNotModified(CakeETags.catalogue(version))) {
+            return null;
+        }
+        CakeResponseCache.EncodedCatalogue catalogue = cakeResponseCache.catalogue(version, cakeService::retrieveAllCakes);
+        // the bytes may have been encoded at a later version than this request read, and their tag says so
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(CakeETags.catalogue(catalogue.version()))
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (catalogue.gzip() != null && acceptsGzip(acceptEncoding)) {
+            // Tomcat leaves a response that already has a Content-Encoding alone
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(catalogue.gzip());
+        }
+        return response.body(catalogue.json());
+    }
+
+    @GetMapping(value = "/getAllCakes", produces = {MediaType.APPLICATION_CBOR_VALUE, SMILE_VALUE})
+    @Operation(summary = "Retrieves all cakes from the database as CBOR or Smile")
+    @ApiResponse(responseCode = "304", description = "Catalogue unchanged since the ETag in If-None-Match")
+    public ResponseEntity<List<CakeEntity>> getAllCakesBinary(WebRequest request) {
+        String etag = CakeETags.catalogue(cakeService.catalogueVersion());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(cakeService.retrieveAllCakes());
+    }
+
+    @GetMapping(value = "/getAllCakes", produces = CakeColumns.MEDIA_TYPE)
+    @Operation(summary = "Retrieves all cakes as one array per field, naming each field once rather than per cake")
+    @ApiResponse(responseCode = "304", description = "Catalogue unchanged since the ETag in If-None-Match")
+    public ResponseEntity<CakeColumns> getAllCakesColumnar(WebRequest request) {
+        String etag = CakeETags.catalogueColumns(cakeService.catalogueVersion());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT)
+                .body(CakeColumns.of(cakeService.retrieveAllCakes()));
+    }
+
+    @GetMapping("/getCakesPage")
+    @Operation(summary = "Retrieves one page of cakes ordered by id, continuing from an optional token")
+    public ResponseEntity<CakePage> getCakesPage(
+            @RequestParam(required = false) String continuationToken,
+            @RequestParam(required = false) Integer pageSize) {
+        return new ResponseEntity<>(cakeService.retrieveCakePage(continuationToken, pageSize), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/streamAllCakes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Streams all cakes as newline-delimited JSON while they are read from the database")
+    public ResponseEntity<StreamingResponseBody> streamAllCakes() {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                cakeService.streamAllCakes(cake -> {
+                    try {
+                        writer.writeValue(generator, cake);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Streams cake additions, updates and deletions as server-sent events, resuming after Last-Event-ID")
+    @ApiResponse(responseCode = "503", description = "Too many clients are already following the feed")
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return cakeChangeFeed.subscribe(lastEventId);
+    }
+
+    @GetMapping("/searchCakes")
+    @Operation(summary = "Finds the best matching cakes for words or word prefixes in their title and description")
+    public ResponseEntity<List<CakeEntity>> searchCakes(
+            @RequestParam String query,
+            @RequestParam(required = false) Integer limit) {
+        return new ResponseEntity<>(cakeSearchIndex.search(query, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/findCakesByTitle")
+    @Operation(summary = "Retrieves the cakes with a title, ignoring case")
+    public ResponseEntity<List<CakeEntity>> findCakesByTitle(@RequestParam String title) {
+        return new ResponseEntity<>(cakeService.findCakesByTitle(title), HttpStatus.OK);
     }
 
     @GetMapping("/getCakeById/{id}")
     @Operation(summary = "Retrieves a specific cake from the database")
-    public ResponseEntity<CakeEntity> getCakeById(@PathVariable Integer id) {
-        return new ResponseEntity<>(cakeService.retrieveCakeById(id), HttpStatus.OK);
+    @ApiResponse(responseCode = "304", description = "Cake unchanged since the ETag in If-None-Match")
+    public ResponseEntity<byte[]> getCakeById(@PathVariable Integer id, WebRequest request) {
+        if (isCakeNotModified(id, request)) {
+            return null;
+        }
+        CakeEntity cake = cakeService.retrieveCakeById(id);
+        return cakeResponse(id, cake).contentType(MediaType.APPLICATION_JSON).body(cakeResponseCache.cake(cake));
+    }
+
+    @GetMapping(value = "/getCakeById/{id}", produces = {MediaType.APPLICATION_CBOR_VALUE, SMILE_VALUE})
+    @Operation(summary = "Retrieves a specific cake from the database as CBOR or Smile")
+    @ApiResponse(responseCode = "304", description = "Cake unchanged since the ETag in If-None-Match")
+    public ResponseEntity<CakeEntity> getCakeByIdBinary(@PathVariable Integer id, WebRequest request) {
+        if (isCakeNotModified(id, request)) {
+            return null;
+        }
+        CakeEntity cake = cakeService.retrieveCakeById(id);
+        return cakeResponse(id, cake).body(cake);
+    }
+
+    private boolean isCakeNotModified(Integer id, WebRequest request) {
+        // only a conditional request pays for the separate version lookup
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(CakeETags.cake(id, cakeService.cakeVersion(id)));
+    }
+
+    private static ResponseEntity.BodyBuilder cakeResponse(Integer id, CakeEntity cake) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (cake.getVersion() != null) {
+            response.eTag(CakeETags.cake(id, cake.getVersion()));
+        }
+        return response;
+    }
+
+    // gzip named without q=0, or failing that any coding (*) named without it
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean anyCoding = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean refused = Arrays.stream(parts).skip(1).map(String::trim)
+                    .anyMatch(param -> param.matches("(?i)q\\s*=\\s*0(\\.0{0,3})?"));
+            if (name.equalsIgnoreCase("gzip")) {
+                return !refused;
+            }
+            if (name.equals("*")) {
+                anyCoding = !refused;
+            }
+        }
+        return anyCoding;
+    }
+
+    @GetMapping("/getImageStatus/{id}")
+    @Operation(summary = "Reports the result of the last background check of a cake's image URL")
+    @ApiResponse(responseCode = "200", description = "Image checked; 'problem' says why it cannot be shown, if it cannot")
+    @ApiResponse(responseCode = "202", description = "Image not checked yet; a check has been started")
+    public ResponseEntity<ImageMetadata> getImageStatus(@PathVariable Integer id) {
+        CakeEntity cake = cakeService.retrieveCakeById(id);
+        return imageCheckService.lookup(cake.getImage())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.accepted().build());
     }
 
     @PutMapping("/updateCake/{id}") // use PUT for idempotency
     @Operation(summary = "Updates a cake in the database")
     @ApiResponse(responseCode = "200", description = "Cake updated successfully")
+    @ApiResponse(responseCode = "412", description = "Cake is no longer at the version in If-Match")
     public ResponseEntity<String> updateCake(
             @PathVariable Integer id,
             @RequestParam(required = false) String title,
             @RequestParam(required = false) String description,
-            @RequestParam(required = false) String imageUrl) throws RecordAlreadyExistsException {
+            @RequestParam(required = false) String imageUrl,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws RecordAlreadyExistsException {
         if (Stream.of(title, description, imageUrl).allMatch(Objects::isNull)) {
             LOG.error("No fields provided for update on cake with id {}", id);
             return new ResponseEntity<>(String.format("No fields provided for update on cake with id '%d'", id), HttpStatus.BAD_REQUEST);
         }
-        List<String> updatedFields = cakeService.updateCake(id, title, description, imageUrl);
+        Long expectedVersion = ifMatch == null ? null : CakeETags.expectedVersion(ifMatch, id);
+        List<String> updatedFields = cakeService.updateCake(id, title, description, imageUrl, expectedVersion);
         return new ResponseEntity<>(String.format("Successfully updated '%s' on cake with id %d", updatedFields, id), HttpStatus.OK);
     }
 
@@ -72,4 +265,25 @@ public class CakeController {
         cakeService.deleteCake(id);
         return new ResponseEntity<>(String.format("Cake with id '%d' deleted successfully", id), HttpStatus.OK);
     }
+
+    @PostMapping("/addNewCakes")
+    @Operation(summary = "Adds many cakes in one transaction, reporting the outcome of each")
+    @ApiResponse(responseCode = "200", description = "Batch processed; see the per-item results")
+    public ResponseEntity<List<BulkItemResult>> addNewCakes(@RequestBody List<CakeEntityDTO> cakes) throws RecordAlreadyExistsException {
+        return new ResponseEntity<>(cakeService.addCakes(cakes), HttpStatus.OK);
+    }
+
+    @PutMapping("/updateCakes")
+    @Operation(summary = "Updates many cakes in one transaction, reporting the outcome of each")
+    @ApiResponse(responseCode = "200", description = "Batch processed; see the per-item results")
+    public ResponseEntity<List<BulkItemResult>> updateCakes(@RequestBody List<CakePatchDTO> patches) throws RecordAlreadyExistsException {
+        return new ResponseEntity<>(cakeService.updateCakes(patches), HttpStatus.OK);
+    }
+
+    @DeleteMapping("/deleteCakes")
+    @Operation(summary = "Removes many cakes by id in one transaction, reporting the outcome of each")
+    @ApiResponse(responseCode = "200", description = "Batch processed; see the per-item results")
+    public ResponseEntity<List<BulkItemResult>> deleteCakes(@RequestBody List<Integer> ids) {
+        return new ResponseEntity<>(cakeService.deleteCakes(ids), HttpStatus.OK);
+    }
 }
@@ -0,0 +1,51 @@
+package com.waracle.cakemgr.rest;
+
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+
+/**
+ * Entity tags for the catalogue and for single cakes. The catalogue version is an in-memory counter, so its tag also
+ * carries an id for this run of the application; a cake's version is stored with the cake.
+ * <p>
+ * Catalogue tags are weak: the same version is sent as JSON, CBOR or Smile and gzipped or not, and Tomcat will not
+ * compress a response with a strong tag. Cake tags stay strong because If-Match needs a strong comparison.
+ */
+final class CakeETags {
+
+    private static final String INSTANCE = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private CakeETags() {
+    }
+
+    static String catalogue(long version) {
+        return String.format("W/\"catalogue-%s-%d\"", INSTANCE, version);
+    }
+
+    // a different body from the same catalogue version, so it needs a tag of its own
+    static String catalogueColumns(long version) {
+        return String.format("W/\"catalogue-columns-%s-%d\"", INSTANCE, version);
+    }
+
+    static String cake(int id, long version) {
+        return String.format("\"cake-%d-%d\"", id, version);
+    }
+
+    /**
+     * @return the version named by an If-Match header for this cake, or null for {@code *} (any version)
+     * @throws CakeVersionMismatchException if the header is not a tag for this cake
+     */
+    static Long expectedVersion(String ifMatch, int id) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        String prefix = String.format("\"cake-%d-", id);
+        if (tag.startsWith(prefix) && tag.endsWith("\"")) {
+            try {
+                return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // falls through to the rejection below
+            }
+        }
+        throw new CakeVersionMismatchException(String.format("If-Match %s does not match cake with id '%d'", ifMatch, id));
+    }
+}
@@ -0,0 +1,211 @@
+package com.waracle.cakemgr.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps JSON responses already encoded, so an unchanged catalogue or cake is answered by copying bytes rather than
+ * by running Jackson over every cake again. The catalogue is kept with the catalogue version it was read at, and
+ * gzipped as well when it is big enough for Tomcat to have compressed it. The first request after a write encodes
+ * it again, and any other request for that version waits for the one encoding instead of starting its own.
+ * <p>
+ * A cake is kept with its own version and only as plain JSON: its tag is strong, so it may not be sent compressed,
+ * and it is too small to gain from it anyway.
+ */
+@Component
+public class CakeResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeResponseCache.class);
+
+    static final String CATALOGUE_CACHE = "cakes.response.all";
+    static final String BY_ID_CACHE = "cakes.response.byId";
+
+    private static final String GETS_DESCRIPTION = "The number of times an encoded response was sent as kept (hit) or had to be encoded (miss).";
+
+    /**
+     * The catalogue as sent for one version. {@code gzip} is null when compression is off or the JSON is below
+     * {@code server.compression.min-response-size}.
+     */
+    record EncodedCatalogue(long version, byte[] json, byte[] gzip) {}
+
+    private record EncodedCake(long version, byte[] json) {}
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long maxCatalogueBytes;
+    // null when Tomcat would not compress a response of this type at all
+    private final DataSize gzipMinSize;
+
+    private final AtomicReference<EncodedCatalogue> catalogue = new AtomicReference<>();
+    // one encoding per version; not synchronized, as encoding a large catalogue can take a while
+    private final ReentrantLock encodeLock = new ReentrantLock();
+    // set while the catalogue is too big to keep, so requests stop queueing for an encoding that is thrown away
+    private volatile boolean oversize;
+    private final Cache<Integer, EncodedCake> cakesById;
+
+    private final Counter catalogueHits;
+    private final Counter catalogueMisses;
+    private final Counter cakeHits;
+    private final Counter cakeMisses;
+
+    public CakeResponseCache(ObjectMapper objectMapper, CakeManagerProperties properties, ServerProperties serverProperties,
+                             MeterRegistry meterRegistry) {
+        CakeManagerProperties.ResponseCache settings = properties.getResponseCache();
+        Compression compression = serverProperties.getCompression();
+        this.objectMapper = objectMapper;
+        this.enabled = settings.isEnabled();
+        this.maxCatalogueBytes = settings.getMaxCatalogueSize().toBytes();
+        this.gzipMinSize = compression.getEnabled() && List.of(compression.getMimeTypes()).contains("application/json")
+                ? compression.getMinResponseSize() : null;
+        this.cakesById = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .build();
+
+        this.catalogueHits = gets(CATALOGUE_CACHE, "hit", meterRegistry);
+        this.catalogueMisses = gets(CATALOGUE_CACHE, "miss", meterRegistry);
+        this.cakeHits = gets(BY_ID_CACHE, "hit", meterRegistry);
+        this.cakeMisses = gets(BY_ID_CACHE, "miss", meterRegistry);
+    }
+
+    private static Counter gets(String cache, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("cache.gets").tags("cache", cache, "result", result)
+                .description(GETS_DESCRIPTION)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param version the catalogue version read before the cakes, as for the catalogue tag
+     * @param cakes   reads the catalogue, called only when nothing at this version or later is kept
+     * @return the catalogue encoded at this version or a later one; its own version names the tag to send
+     */
+    EncodedCatalogue catalogue(long version, Supplier<List<CakeEntity>> cakes) {
+        EncodedCatalogue current = catalogue.get();
+        if (current != null && current.version() >= version) {
+            catalogueHits.increment();
+            return current;
+        }
+        if (!enabled || oversize) {
+            return encodeCatalogue(version, cakes);
+        }
+        encodeLock.lock();
+        try {
+            // another request may have encoded this version while this one waited
+            current = catalogue.get();
+            if (current != null && current.version() >= version) {
+                catalogueHits.increment();
+                return current;
+            }
+            return encodeCatalogue(version, cakes);
+        } finally {
+            encodeLock.unlock();
+        }
+    }
+
+    private EncodedCatalogue encodeCatalogue(long version, Supplier<List<CakeEntity>> cakes) {
+        catalogueMisses.increment();
+        byte[] json = encode(cakes.get());
+        EncodedCatalogue encoded = new EncodedCatalogue(version, json,
+                gzipMinSize != null && json.length >= gzipMinSize.toBytes() ? gzip(json) : null);
+        if (enabled) {
+            boolean fits = json.length <= maxCatalogueBytes;
+            if (fits == oversize) {
+                LOG.info("{} the encoded catalogue of {}, against a limit of {}", fits ? "Keeping" : "Not keeping",
+                        DataSize.ofBytes(json.length), DataSize.ofBytes(maxCatalogueBytes));
+                oversize = !fits;
+            }
+            if (fits) {
+                // an encoding that took longer must not replace a later one
+                catalogue.accumulateAndGet(encoded, (kept, next) ->
+                        kept != null && kept.version() >= next.version() ? kept : next);
+            } else {
+                catalogue.set(null);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the cake as JSON, encoded again only when its version has moved on since it was last sent
+     */
+    byte[] cake(CakeEntity cake) {
+        Long version = cake.getVersion();
+        if (!enabled || version == null) {
+            return encode(cake);
+        }
+        EncodedCake cached = cakesById.getIfPresent(cake.getCakeId());
+        if (cached != null && cached.version() == version) {
+            cakeHits.increment();
+            return cached.json();
+        }
+        cakeMisses.increment();
+        byte[] json = encode(cake);
+        cakesById.put(cake.getCakeId(), new EncodedCake(version, json));
+        return json;
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        cakesById.invalidate(event.cakeId());
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        cakesById.invalidateAll(event.changes().stream().map(CakeChangeEvent::cakeId).toList());
+    }
+
+    @EventListener
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        clear();
+    }
+
+    // changes are caught by their versions; this only frees what a reload has made useless
+    void clear() {
+        catalogue.set(null);
+        cakesById.invalidateAll();
+    }
+
+    private byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        // compressed once per version rather than per response, so the slowest, smallest level is worth it
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
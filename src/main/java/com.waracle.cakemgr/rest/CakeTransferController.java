@@ -0,0 +1,121 @@
+package com.waracle.cakemgr.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.dto.CakeImportEvent;
+import com.waracle.cakemgr.transfer.CakeExporter;
+import com.waracle.cakemgr.transfer.CakeImporter;
+import com.waracle.cakemgr.transfer.CakeTransferFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Moves whole catalogues in and out as NDJSON or CSV, streamed in both directions so that neither the document
+ * nor the catalogue is ever held in memory.
+ */
+@RestController
+@RequestMapping("rest/cakes")
+public class CakeTransferController {
+
+    private final CakeExporter cakeExporter;
+    private final CakeImporter cakeImporter;
+    private final ObjectMapper objectMapper;
+
+    public CakeTransferController(CakeExporter cakeExporter, CakeImporter cakeImporter, ObjectMapper objectMapper) {
+        this.cakeExporter = cakeExporter;
+        this.cakeImporter = cakeImporter;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping(value = "/exportCakes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Downloads every cake as newline-delimited JSON, read through a database cursor")
+    public ResponseEntity<StreamingResponseBody> exportCakesNdjson() {
+        return export(CakeTransferFormat.NDJSON);
+    }
+
+    @GetMapping(value = "/exportCakes", produces = CakeTransferFormat.CSV_VALUE)
+    @Operation(summary = "Downloads every cake as CSV with an id,title,desc,image header, read through a database cursor")
+    public ResponseEntity<StreamingResponseBody> exportCakesCsv() {
+        return export(CakeTransferFormat.CSV);
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(CakeTransferFormat format) {
+        return ResponseEntity.ok()
+                .contentType(format.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(format.fileName()).build().toString())
+                .body(out -> cakeExporter.export(format, out));
+    }
+
+    /**
+     * Runs on the request thread rather than as a streamed body: the document is read while the report is
+     * written, and an import of millions of rows can outlast the async request timeout.
+     */
+    @PostMapping(value = "/importCakes", consumes = {MediaType.APPLICATION_NDJSON_VALUE, CakeTransferFormat.CSV_VALUE})
+    @Operation(summary = "Adds the cakes in an NDJSON or CSV document as it arrives, answering with progress and "
+            + "each rejected line as newline-delimited JSON")
+    @ApiResponse(responseCode = "200", description = "Import ran; the last line is DONE, or FAILED if it stopped early")
+    @ApiResponse(responseCode = "400", description = "A CSV header does not name the title, desc and image columns")
+    public void importCakes(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream document,
+                            HttpServletResponse response) throws IOException {
+        CakeTransferFormat format = CakeTransferFormat.of(contentType);
+        ImportReport report = new ImportReport(response);
+        try {
+            cakeImporter.importCakes(document, format, report);
+        } catch (UncheckedIOException ex) {
+            // the client stopped reading the report; the import stops with it
+            throw ex.getCause();
+        } finally {
+            report.close();
+        }
+    }
+
+    /**
+     * Writes each event as a line and flushes it, so the client sees progress as it happens. The response is only
+     * started by the first event, which leaves a header error free to become a 400.
+     */
+    private final class ImportReport implements Consumer<CakeImportEvent> {
+
+        private final HttpServletResponse response;
+        private JsonGenerator generator;
+
+        private ImportReport(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void accept(CakeImportEvent event) {
+            try {
+                if (generator == null) {
+                    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+                    generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.setRootValueSeparator(null);
+                }
+                objectMapper.writeValue(generator, event);
+                generator.writeRaw('\n');
+                generator.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void close() throws IOException {
+            if (generator != null) {
+                generator.close();
+            }
+        }
+    }
+}
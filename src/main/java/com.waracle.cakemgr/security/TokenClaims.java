@@ -0,0 +1,10 @@
+package com.waracle.cakemgr.security;
+
+/**
+ * What a bearer token asserts. Field names follow the JWT registered claims.
+ *
+ * @param sub the employee's username
+ * @param exp expiry, in epoch seconds
+ * @param jti unique id of this token, used to revoke it
+ */
+public record TokenClaims(String sub, Role role, long exp, String jti) {}
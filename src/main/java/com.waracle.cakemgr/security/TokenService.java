@@ -0,0 +1,129 @@
+package com.waracle.cakemgr.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and checks stateless bearer tokens of the form {@code base64url(claims).base64url(HMAC-SHA256)}. Checking
+ * a token needs only the shared key, so any node can authenticate any request without a session or a database
+ * read.
+ * <p>
+ * Revoked token ids are held in memory until the token would have expired anyway, so the list stays as short as
+ * the token lifetime allows. Revocations are local to the node that received them: the other nodes accept a revoked
+ * token until it expires, so the configured ttl is the revocation window across nodes. They are not sent over the
+ * invalidation bus, which is lossy, and a lost revocation could not be recovered by a reload as a cake change can.
+ */
+@Service
+@ConditionalOnProperty(prefix = "cakemgr.security", name = "mode", havingValue = "token")
+public class TokenService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+
+    // initialised once with the key; each signature works on a clone, since a Mac is not thread-safe
+    private final Mac prototype;
+
+    // token id -> expiry in epoch seconds
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public record IssuedToken(String token, TokenClaims claims) {}
+
+    public TokenService(CakeManagerProperties properties, ObjectMapper objectMapper) {
+        CakeManagerProperties.Security.Token settings = properties.getSecurity().getToken();
+        byte[] secret = settings.getSecret() == null ? new byte[0] : settings.getSecret().getBytes(StandardCharsets.UTF_8);
+        if (secret.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException(String.format(
+                    "cakemgr.security.token.secret must be at least %d bytes in token mode", MIN_SECRET_BYTES));
+        }
+        this.objectMapper = objectMapper;
+        this.ttl = settings.getTtl();
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(new SecretKeySpec(secret, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    public IssuedToken issue(String username, Role role) {
+        TokenClaims claims = new TokenClaims(username, role, Instant.now().plus(ttl).getEpochSecond(),
+                UUID.randomUUID().toString());
+        try {
+            String payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+            return new IssuedToken(payload + "." + ENCODER.encodeToString(sign(payload)), claims);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write token claims", e);
+        }
+    }
+
+    /**
+     * @return the token's claims, or null if it is malformed, not signed with our key, expired or revoked
+     */
+    public TokenClaims verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                LOG.debug("Rejected bearer token with a bad signature");
+                return null;
+            }
+            TokenClaims claims = objectMapper.readValue(DECODER.decode(payload), TokenClaims.class);
+            if (claims.exp() <= Instant.now().getEpochSecond() || revoked.containsKey(claims.jti())) {
+                return null;
+            }
+            return claims;
+        } catch (IllegalArgumentException | IOException e) {
+            LOG.debug("Rejected malformed bearer token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void revoke(TokenClaims claims) {
+        long now = Instant.now().getEpochSecond();
+        // expired entries would be refused on expiry alone, so there is no need to remember them
+        revoked.values().removeIf(exp -> exp <= now);
+        revoked.put(claims.jti(), claims.exp());
+        LOG.info("Revoked token '{}' issued to '{}'", claims.jti(), claims.sub());
+    }
+
+    int revokedCount() {
+        return revoked.size();
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC-SHA256 provider does not support cloning", e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.waracle.cakemgr.seed;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a bulk load.
+ *
+ * @param inserted   cakes written to the database
+ * @param duplicates cakes skipped because their title was already in the catalogue or earlier in the document
+ * @param rejected   cakes that were missing mandatory fields or refused by a database constraint
+ * @param elapsed    wall-clock time of the whole load, parsing included
+ */
+public record BulkLoadResult(long inserted, long duplicates, long rejected, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return (inserted + duplicates + rejected) * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,225 @@
+package com.waracle.cakemgr.seed;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.repository.CakeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams a JSON array of cakes into the database. The document is parsed one object at a time, titles are
+ * de-duplicated in memory, and the surviving cakes are written in fixed-size batches by a small pool of writers
+ * while parsing carries on, so memory is bounded by the batch size rather than by the document.
+ * <p>
+ * Because the phases overlap, each load records how long was spent in each of them rather than when they ran:
+ * {@code download} is time blocked reading the document, {@code parse} is the rest of the parsing thread's time
+ * apart from waiting for a free writer, and {@code persist} is the writers' time summed, which can exceed the
+ * wall-clock time of the load.
+ */
+@Component
+public class CakeBulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeBulkLoader.class);
+
+    static final String PHASE_TIMER = "cakes.seed.phase";
+
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final CakeRepository cakeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CakeManagerProperties.Seed settings;
+    private final MeterRegistry meterRegistry;
+
+    public CakeBulkLoader(CakeJdbcRepository cakeJdbcRepository, CakeRepository cakeRepository,
+                          TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                          CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.cakeRepository = cakeRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getSeed();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public BulkLoadResult load(InputStream json) throws IOException {
+        long start = System.nanoTime();
+        int batchSize = Math.max(1, settings.getBatchSize());
+        int writers = Math.max(1, settings.getWriterThreads());
+
+        Set<String> seenTitles = cakeJdbcRepository.findAllTitles();
+        AtomicLong inserted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        AtomicLong persistNanos = new AtomicLong();
+        long duplicates = 0;
+        long waitNanos = 0;
+        long parseNanos;
+        TimedInputStream body = new TimedInputStream(json);
+
+        // one permit per writer: parsing blocks once every writer is busy, so at most `writers` batches are in flight
+        Semaphore inFlight = new Semaphore(writers);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long parseStart = System.nanoTime();
+
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected the cake document to be a JSON array");
+            }
+            List<CakeEntity> batch = new ArrayList<>(batchSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT && failure.get() == null) {
+                CakeEntity cake = objectMapper.readValue(parser, CakeEntity.class);
+                if (!hasMandatoryFields(cake)) {
+                    rejected.incrementAndGet();
+                } else if (!seenTitles.add(cake.getTitle())) {
+                    duplicates++;
+                } else {
+                    cake.setCakeId(null);
+                    batch.add(cake);
+                    if (batch.size() == batchSize) {
+                        waitNanos += submit(executor, inFlight, batch, inserted, rejected, persistNanos, failure);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                waitNanos += submit(executor, inFlight, batch, inserted, rejected, persistNanos, failure);
+            }
+            parseNanos = System.nanoTime() - parseStart - body.readNanos - waitNanos;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading cakes", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        recordPhase(meterRegistry, "download", body.readNanos);
+        recordPhase(meterRegistry, "parse", parseNanos);
+        recordPhase(meterRegistry, "persist", persistNanos.get());
+
+        BulkLoadResult result = new BulkLoadResult(inserted.get(), duplicates, rejected.get(),
+                Duration.ofNanos(System.nanoTime() - start));
+        LOG.info("Bulk load finished: {} cakes inserted, {} duplicate titles rejected, {} invalid rows rejected in {} ms ({} rows/sec)",
+                result.inserted(), result.duplicates(), result.rejected(), result.elapsed().toMillis(),
+                String.format("%.0f", result.rowsPerSecond()));
+        return result;
+    }
+
+    /**
+     * @return how long the parsing thread waited for a free writer
+     */
+    private long submit(ExecutorService executor, Semaphore inFlight, List<CakeEntity> batch,
+                        AtomicLong inserted, AtomicLong rejected, AtomicLong persistNanos,
+                        AtomicReference<RuntimeException> failure) throws InterruptedException {
+        long waitStart = System.nanoTime();
+        inFlight.acquire();
+        long waited = System.nanoTime() - waitStart;
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                writeBatch(batch, inserted, rejected);
+            } catch (RuntimeException e) {
+                LOG.error("Error writing batch of {} cakes: {}", batch.size(), e.getMessage());
+                failure.compareAndSet(null, e);
+            } finally {
+                persistNanos.addAndGet(System.nanoTime() - start);
+                inFlight.release();
+            }
+        });
+        return waited;
+    }
+
+    private void writeBatch(List<CakeEntity> batch, AtomicLong inserted, AtomicLong rejected) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            inserted.addAndGet(batch.size());
+        } catch (DataIntegrityViolationException ex) {
+            // one bad row (e.g. a title added concurrently through the API) fails the whole batch; retry row by row
+            LOG.warn("Batch of {} cakes hit a constraint violation, retrying individually", batch.size());
+            for (CakeEntity cake : batch) {
+                // forget what the rolled-back attempt assigned, so the row is inserted as new
+                cake.setCakeId(null);
+                cake.setVersion(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(cake)));
+                    inserted.incrementAndGet();
+                } catch (DataIntegrityViolationException rowEx) {
+                    LOG.warn("Rejected cake '{}': {}", cake.getTitle(), rowEx.getMostSpecificCause().getMessage());
+                    rejected.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void insert(List<CakeEntity> cakes) {
+        switch (settings.getInsertMode()) {
+            case JDBC_BATCH -> cakeJdbcRepository.batchInsert(cakes);
+            case JPA -> cakeRepository.saveAll(cakes);
+        }
+    }
+
+    static boolean hasMandatoryFields(CakeEntity cake) {
+        return cake.getTitle() != null && !cake.getTitle().isBlank()
+                && cake.getDesc() != null && cake.getImage() != null;
+    }
+
+    static void recordPhase(MeterRegistry meterRegistry, String phase, long nanos) {
+        Timer.builder(PHASE_TIMER)
+                .description("Time spent in each phase of the cake seed")
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+    }
+
+    // counts the time the parser spends blocked on the source; only the parsing thread reads it
+    private static final class TimedInputStream extends FilterInputStream {
+
+        private long readNanos;
+
+        private TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
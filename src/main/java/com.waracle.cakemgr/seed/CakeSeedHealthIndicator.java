@@ -0,0 +1,53 @@
+package com.waracle.cakemgr.seed;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Reports DOWN until the background seed has finished, so the readiness probe only lets traffic in once the
+ * catalogue is loaded. Contributes to health as "cakeSeed".
+ */
+@Component
+public class CakeSeedHealthIndicator implements HealthIndicator {
+
+    private volatile Health health = Health.down().withDetail("state", "PENDING").build();
+
+    void markRunning() {
+        health = Health.down().withDetail("state", "RUNNING").build();
+    }
+
+    void markCompleted(String location, BulkLoadResult result) {
+        health = Health.up()
+                .withDetail("state", "COMPLETED")
+                .withDetail("source", location)
+                .withDetail("inserted", result.inserted())
+                .withDetail("duplicates", result.duplicates())
+                .withDetail("rejected", result.rejected())
+                .withDetail("elapsedMillis", result.elapsed().toMillis())
+                .build();
+    }
+
+    void markCurrent(String location, Instant seededAt) {
+        health = Health.up()
+                .withDetail("state", "CURRENT")
+                .withDetail("source", location)
+                .withDetail("seededAt", seededAt.toString())
+                .build();
+    }
+
+    void markFailed(Exception ex) {
+        health = Health.down().withDetail("state", "FAILED").withDetail("error", String.valueOf(ex.getMessage())).build();
+    }
+
+    void markDisabled() {
+        health = Health.up().withDetail("state", "DISABLED").build();
+    }
+
+    @Override
+    public Health health() {
+        return health;
+    }
+}
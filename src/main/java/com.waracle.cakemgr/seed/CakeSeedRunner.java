@@ -0,0 +1,117 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Seeds the cake catalogue on a background virtual thread once the application is ready, so the server is
+ * listening straight away whatever the state of the remote source. While the {@link CakeSnapshotStore} holds a
+ * current snapshot the source is not read at all: the catalogue is restored from the snapshot if the database is
+ * empty, and left as it is otherwise.
+ */
+@Component
+public class CakeSeedRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeSeedRunner.class);
+
+    private final CakeSeedSource cakeSeedSource;
+    private final CakeBulkLoader cakeBulkLoader;
+    private final CakeSnapshotStore snapshotStore;
+    private final CakeSeedHealthIndicator healthIndicator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CakeManagerProperties.Seed settings;
+    private final MeterRegistry meterRegistry;
+
+    public CakeSeedRunner(CakeSeedSource cakeSeedSource, CakeBulkLoader cakeBulkLoader,
+                          CakeSnapshotStore snapshotStore, CakeSeedHealthIndicator healthIndicator,
+                          ApplicationEventPublisher eventPublisher, CakeManagerProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.cakeSeedSource = cakeSeedSource;
+        this.cakeBulkLoader = cakeBulkLoader;
+        this.snapshotStore = snapshotStore;
+        this.healthIndicator = healthIndicator;
+        this.eventPublisher = eventPublisher;
+        this.settings = properties.getSeed();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!settings.isEnabled()) {
+            LOG.info("Automatic cake seed is disabled");
+            healthIndicator.markDisabled();
+            return;
+        }
+        Thread.ofVirtual().name("cake-seed").start(this::seed);
+    }
+
+    void seed() {
+        Optional<CakeSnapshotFile.Header> snapshot = snapshotStore.current();
+        if (snapshot.isEmpty() || !useSnapshot(snapshot.get())) {
+            loadFromRemote();
+        }
+    }
+
+    /**
+     * @return whether the catalogue is now in the database; if not, the caller seeds from the source instead
+     */
+    private boolean useSnapshot(CakeSnapshotFile.Header snapshot) {
+        if (snapshotStore.databaseHasCakes()) {
+            LOG.info("Catalogue seeded from '{}' at {} is already in the database; skipping the seed",
+                    snapshot.source(), snapshot.seededAt());
+            snapshotStore.adopt(snapshot);
+            healthIndicator.markCurrent(snapshot.source(), snapshot.seededAt());
+            return true;
+        }
+        healthIndicator.markRunning();
+        try {
+            BulkLoadResult result = snapshotStore.restore();
+            String location = String.format("snapshot of %s", snapshot.source());
+            LOG.info("Restored {} cakes from the catalogue snapshot seeded from '{}' at {} in {} ms",
+                    result.inserted(), snapshot.source(), snapshot.seededAt(), result.elapsed().toMillis());
+            healthIndicator.markCompleted(location, result);
+            eventPublisher.publishEvent(new CakeSeedCompletedEvent(location, result));
+            return true;
+        } catch (Exception ex) {
+            // nothing was written, as the restore is one transaction
+            LOG.warn("Could not restore the catalogue snapshot, seeding from the source instead: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    public void loadFromRemote() {
+        LOG.info("Starting automatic load of cakes into the database...");
+        healthIndicator.markRunning();
+        try {
+            // connecting, retries and fallback included; reading the body is timed by the loader as it streams
+            long connectStart = System.nanoTime();
+            CakeSeedSource.SeedDocument document = cakeSeedSource.open();
+            CakeBulkLoader.recordPhase(meterRegistry, "connect", System.nanoTime() - connectStart);
+            BulkLoadResult result;
+            try (InputStream body = document.body()) {
+                result = cakeBulkLoader.load(body);
+            }
+            LOG.info("Cake JSON download and persistence completed successfully from '{}'! Total unique cakes from JSON: {}",
+                    document.location(), result.inserted());
+            healthIndicator.markCompleted(document.location(), result);
+            eventPublisher.publishEvent(new CakeSeedCompletedEvent(document.location(), result));
+            snapshotStore.exportSeed(document.location());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            healthIndicator.markFailed(ex);
+        } catch (Exception ex) {
+            LOG.error("Error during cake JSON download and persistence: {} ", ex.getMessage());
+            healthIndicator.markFailed(ex);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Opens the cake document. Remote sources get connect/read timeouts and retries with exponential backoff;
+ * when the source cannot be read at all the configured fallback (by default a copy on the classpath) is used.
+ */
+@Component
+public class CakeSeedSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeSeedSource.class);
+
+    private final ResourceLoader resourceLoader;
+    private final CakeManagerProperties.Seed settings;
+
+    public CakeSeedSource(ResourceLoader resourceLoader, CakeManagerProperties properties) {
+        this.resourceLoader = resourceLoader;
+        this.settings = properties.getSeed();
+    }
+
+    public record SeedDocument(String location, InputStream body) {}
+
+    /**
+     * What the source said about a version of the document, sent back to ask whether it has changed since. A
+     * {@code file:} or {@code classpath:} source has no ETag; its last-modified time stands in for Last-Modified.
+     */
+    public record Validators(String etag, String lastModified) {
+
+        public static final Validators NONE = new Validators(null, null);
+    }
+
+    public record Revision(Validators validators, InputStream body) {}
+
+    /**
+     * @throws IOException if neither the source nor the fallback could be read, or neither is configured
+     */
+    public SeedDocument open() throws IOException, InterruptedException {
+        String source = settings.getSource();
+        String fallback = settings.getFallback();
+        boolean hasFallback = fallback != null && !fallback.isBlank();
+        if (source != null && !source.isBlank()) {
+            try {
+                return new SeedDocument(source, openWithRetries(source));
+            } catch (IOException ex) {
+                if (!hasFallback) {
+                    throw ex;
+                }
+                LOG.warn("Cake source '{}' unavailable ({}), falling back to '{}'", source, ex.getMessage(), fallback);
+            }
+        }
+        if (!hasFallback) {
+            throw new IOException("No cake document to seed from: set cakemgr.seed.source or cakemgr.seed.fallback");
+        }
+        return new SeedDocument(fallback, openOnce(fallback));
+    }
+
+    private InputStream openWithRetries(String location) throws IOException, InterruptedException {
+        int attempts = Math.max(1, settings.getMaxAttempts());
+        Duration backoff = settings.getInitialBackoff();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return openOnce(location);
+            } catch (IOException ex) {
+                if (attempt >= attempts) {
+                    throw ex;
+                }
+                LOG.warn("Attempt {}/{} to read cake source '{}' failed: {}. Retrying in {} ms",
+                        attempt, attempts, location, ex.getMessage(), backoff.toMillis());
+                Thread.sleep(backoff);
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+    }
+
+    /**
+     * Reads the source once, with no retries or fallback, unless it is unchanged since the validators were given;
+     * a refresh that fails simply waits for the next one.
+     *
+     * @return empty if the source is unchanged, which for HTTP is a 304 with no body
+     */
+    public Optional<Revision> openIfChanged(Validators known) throws IOException {
+        String location = settings.getSource();
+        if (!location.startsWith("http://") && !location.startsWith("https://")) {
+            Resource resource = resourceLoader.getResource(location);
+            Validators current = new Validators(null, String.valueOf(resource.lastModified()));
+            return current.equals(known) ? Optional.empty() : Optional.of(new Revision(current, resource.getInputStream()));
+        }
+        HttpURLConnection connection = (HttpURLConnection) URI.create(location).toURL().openConnection();
+        connection.setConnectTimeout(Math.toIntExact(settings.getConnectTimeout().toMillis()));
+        connection.setReadTimeout(Math.toIntExact(settings.getReadTimeout().toMillis()));
+        if (known.etag() != null) {
+            connection.setRequestProperty("If-None-Match", known.etag());
+        }
+        if (known.lastModified() != null) {
+            // sent back exactly as received, so the comparison does not depend on the two clocks
+            connection.setRequestProperty("If-Modified-Since", known.lastModified());
+        }
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.disconnect();
+            return Optional.empty();
+        }
+        if (status / 100 != 2) {
+            connection.disconnect();
+            throw new IOException(String.format("Cake source responded with HTTP %d", status));
+        }
+        Validators current = new Validators(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        return Optional.of(new Revision(current, connection.getInputStream()));
+    }
+
+    InputStream openOnce(String location) throws IOException {
+        if (!location.startsWith("http://") && !location.startsWith("https://")) {
+            return resourceLoader.getResource(location).getInputStream();
+        }
+        // HttpURLConnection rather than HttpClient: it has a real socket read timeout while the body is streamed
+        HttpURLConnection connection = (HttpURLConnection) URI.create(location).toURL().openConnection();
+        connection.setConnectTimeout(Math.toIntExact(settings.getConnectTimeout().toMillis()));
+        connection.setReadTimeout(Math.toIntExact(settings.getReadTimeout().toMillis()));
+        int status = connection.getResponseCode();
+        if (status / 100 != 2) {
+            connection.disconnect();
+            throw new IOException(String.format("Cake source responded with HTTP %d", status));
+        }
+        return connection.getInputStream();
+    }
+}
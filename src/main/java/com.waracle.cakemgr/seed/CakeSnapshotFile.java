@@ -0,0 +1,132 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary copy of the catalogue: a header saying where and when it was seeded from, then one record per
+ * cake, gzipped. Fields are written with {@link DataOutputStream}, so reading it back is a tight loop with no
+ * parsing, and the header can be read without touching the rest of the file.
+ * <p>
+ * Files are written to a temporary file and moved into place, so a reader never sees a partial snapshot; a count
+ * at the end catches one truncated some other way.
+ */
+final class CakeSnapshotFile {
+
+    private static final int MAGIC = 0x43414B45; // "CAKE"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * @param source     where the catalogue was seeded from
+     * @param seededAt   when that seed ran; later exports of the same catalogue keep it
+     * @param exportedAt when this file was written
+     */
+    record Header(String source, Instant seededAt, Instant exportedAt) {}
+
+    /**
+     * Cakes to write; called once with a sink that takes each cake in turn.
+     */
+    @FunctionalInterface
+    interface CakeSource {
+        void forEach(Consumer<CakeEntity> sink);
+    }
+
+    private CakeSnapshotFile() {
+    }
+
+    /**
+     * @return the number of cakes written
+     */
+    static long write(Path path, Header header, CakeSource cakes) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            long count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(header.source());
+                out.writeLong(header.seededAt().toEpochMilli());
+                out.writeLong(header.exportedAt().toEpochMilli());
+                long[] written = {0};
+                try {
+                    cakes.forEach(cake -> {
+                        try {
+                            out.writeBoolean(true);
+                            out.writeInt(cake.getCakeId());
+                            out.writeLong(cake.getVersion());
+                            out.writeUTF(cake.getTitle());
+                            out.writeUTF(cake.getDesc());
+                            out.writeUTF(cake.getImage());
+                            written[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                count = written[0];
+                out.writeBoolean(false);
+                out.writeLong(count);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static Header readHeader(Path path) throws IOException {
+        try (DataInputStream in = open(path)) {
+            return readHeader(in, path);
+        }
+    }
+
+    /**
+     * Hands every cake in the file to the consumer, in the order they were written.
+     *
+     * @return the file's header
+     * @throws IOException if the file is not a snapshot, or ends early
+     */
+    static Header read(Path path, Consumer<CakeEntity> consumer) throws IOException {
+        try (DataInputStream in = open(path)) {
+            Header header = readHeader(in, path);
+            long count = 0;
+            while (in.readBoolean()) {
+                int id = in.readInt();
+                long version = in.readLong();
+                consumer.accept(new CakeEntity(id, in.readUTF(), in.readUTF(), in.readUTF(), version));
+                count++;
+            }
+            long expected = in.readLong();
+            if (count != expected) {
+                throw new IOException(String.format("Snapshot '%s' holds %d cakes but says %d", path, count, expected));
+            }
+            return header;
+        } catch (EOFException e) {
+            throw new IOException(String.format("Snapshot '%s' is truncated", path), e);
+        }
+    }
+
+    private static DataInputStream open(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path), 64 * 1024)));
+    }
+
+    private static Header readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException(String.format("'%s' is not a cake snapshot this version can read", path));
+        }
+        return new Header(in.readUTF(), Instant.ofEpochMilli(in.readLong()), Instant.ofEpochMilli(in.readLong()));
+    }
+}
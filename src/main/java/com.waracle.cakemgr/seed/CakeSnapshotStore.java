@@ -0,0 +1,181 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.repository.CakeRepository;
+import com.waracle.cakemgr.service.CakeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps a {@link CakeSnapshotFile} of the seeded catalogue so a restart does not have to seed again. The file is
+ * written after every seed and, optionally, on shutdown. While it is current (seeded from the configured source
+ * within {@code max-age}) the seed runner skips the source: a database that already holds the catalogue is left
+ * alone, and an empty one is restored from the file.
+ */
+@Component
+public class CakeSnapshotStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeSnapshotStore.class);
+
+    private final CakeService cakeService;
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final CakeRepository cakeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CakeManagerProperties.Seed settings;
+    private final MeterRegistry meterRegistry;
+
+    // the seed behind the catalogue now in the database, once known; exports carry it forward
+    private volatile CakeSnapshotFile.Header seed;
+
+    public CakeSnapshotStore(CakeService cakeService, CakeJdbcRepository cakeJdbcRepository,
+                             CakeRepository cakeRepository, TransactionTemplate transactionTemplate,
+                             CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.cakeService = cakeService;
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.cakeRepository = cakeRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.settings = properties.getSeed();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return the header of the snapshot file, if snapshots are enabled and the file holds a seed from the
+     * configured source that is younger than {@code max-age}
+     */
+    Optional<CakeSnapshotFile.Header> current() {
+        if (!settings.getSnapshot().isEnabled()) {
+            return Optional.empty();
+        }
+        Path path = path();
+        try {
+            CakeSnapshotFile.Header header = CakeSnapshotFile.readHeader(path);
+            Duration age = Duration.between(header.seededAt(), Instant.now());
+            if (!header.source().equals(settings.getSource())) {
+                LOG.info("Cake snapshot '{}' was seeded from '{}', not '{}'; seeding again", path, header.source(),
+                        settings.getSource());
+                return Optional.empty();
+            }
+            if (age.compareTo(settings.getSnapshot().getMaxAge()) > 0) {
+                LOG.info("Cake snapshot '{}' was seeded {} ago; seeding again", path, age);
+                return Optional.empty();
+            }
+            return Optional.of(header);
+        } catch (NoSuchFileException e) {
+            LOG.info("No cake snapshot at '{}'", path);
+        } catch (IOException e) {
+            LOG.warn("Cannot read cake snapshot '{}': {}", path, e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return whether the database already holds cakes, in which case a current snapshot only needs recording
+     */
+    boolean databaseHasCakes() {
+        return cakeRepository.count() > 0;
+    }
+
+    /**
+     * Records that the catalogue in the database came from the snapshot's seed, without reading the file.
+     */
+    void adopt(CakeSnapshotFile.Header header) {
+        seed = header;
+    }
+
+    /**
+     * Loads the snapshot into the (empty) cake table in one transaction, keeping each cake's id and version.
+     */
+    BulkLoadResult restore() throws IOException {
+        long start = System.nanoTime();
+        int batchSize = Math.max(1, settings.getBatchSize());
+        long[] restored = {0};
+        int[] maxId = {0};
+        CakeSnapshotFile.Header header;
+        try {
+            header = transactionTemplate.execute(status -> {
+                List<CakeEntity> batch = new ArrayList<>(batchSize);
+                try {
+                    CakeSnapshotFile.Header read = CakeSnapshotFile.read(path(), cake -> {
+                        batch.add(cake);
+                        maxId[0] = Math.max(maxId[0], cake.getCakeId());
+                        if (batch.size() == batchSize) {
+                            cakeJdbcRepository.batchInsertAtVersion(batch);
+                            restored[0] += batch.size();
+                            batch.clear();
+                        }
+                    });
+                    if (!batch.isEmpty()) {
+                        cakeJdbcRepository.batchInsertAtVersion(batch);
+                        restored[0] += batch.size();
+                    }
+                    cakeJdbcRepository.restartIdsAfter(maxId[0]);
+                    return read;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        long elapsed = System.nanoTime() - start;
+        CakeBulkLoader.recordPhase(meterRegistry, "restore", elapsed);
+        seed = header;
+        return new BulkLoadResult(restored[0], 0, 0, Duration.ofNanos(elapsed));
+    }
+
+    /**
+     * Exports the catalogue as it is now, as the result of the given seed.
+     */
+    void exportSeed(String source) {
+        Instant now = Instant.now();
+        seed = new CakeSnapshotFile.Header(source, now, now);
+        export();
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void onShutdown() {
+        if (settings.getSnapshot().isExportOnShutdown()) {
+            export();
+        }
+    }
+
+    private void export() {
+        CakeSnapshotFile.Header known = seed;
+        if (!settings.getSnapshot().isEnabled() || known == null) {
+            return;
+        }
+        Path path = path();
+        long start = System.nanoTime();
+        try {
+            long count = CakeSnapshotFile.write(path,
+                    new CakeSnapshotFile.Header(known.source(), known.seededAt(), Instant.now()),
+                    cakeService::streamAllCakes);
+            LOG.info("Exported {} cakes to snapshot '{}' ({} KB) in {} ms", count, path, Files.size(path) / 1024,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not export the cake snapshot to '{}': {}", path, e.getMessage());
+        }
+    }
+
+    private Path path() {
+        return Path.of(settings.getSnapshot().getPath());
+    }
+}
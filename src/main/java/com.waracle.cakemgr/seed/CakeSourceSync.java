@@ -0,0 +1,261 @@
+package com.waracle.cakemgr.seed;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.service.CakeService;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the seed source again every {@code cakemgr.seed.sync.interval} and applies only what changed. Each request
+ * carries the ETag and Last-Modified of the last document applied, so an unchanged source answers 304 and nothing
+ * else happens: no parsing, no queries, no writes.
+ * <p>
+ * A changed document is diffed in two steps. First, each cake's content hash is compared with the hash the same
+ * title had in the last document, and a cake the source did not change is skipped without a query. The rest are
+ * compared with the catalogue by title, and the resulting inserts, updates and deletes go to the database in one
+ * transaction, followed by one batch of change events. Writes still queued by the snapshot engine are flushed
+ * first, so the diff is taken against what the catalogue serves, and an update only lands if the row is still at
+ * the version that was read; a cake changed in between is left for the next refresh. The source owns only the
+ * titles it lists: a cake added
+ * through the API is never touched, and a cake is deleted only when a title the last document listed has been
+ * dropped from the source. A local edit to a listed cake stands until the source changes that cake. The first
+ * refresh after a start has no earlier document to compare with, so it brings every listed cake into line.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cakemgr.seed.sync", name = "enabled", havingValue = "true")
+public class CakeSourceSync {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeSourceSync.class);
+
+    static final String REFRESHES = "cakes.seed.sync.refreshes";
+    static final String CHANGES = "cakes.seed.sync.changes";
+
+    /**
+     * @param notModified whether the source was unchanged, in which case nothing was read or written
+     */
+    record Result(boolean notModified, int inserted, int updated, int deleted) {
+
+        static final Result NOT_MODIFIED = new Result(true, 0, 0, 0);
+    }
+
+    private final CakeSeedSource cakeSeedSource;
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final CakeServiceImpl cakeService;
+    // the engine serving requests, whose queued writes have to reach the table before it is compared
+    private final CakeService engine;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CakeManagerProperties.Seed settings;
+    private final MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("cake-source-sync").factory());
+
+    // both only touched by refresh(), which runs on the executor thread one call at a time
+    private CakeSeedSource.Validators validators = CakeSeedSource.Validators.NONE;
+    // title -> content hash of every cake in the last document applied
+    private Map<String, Long> sourceHashes = Map.of();
+
+    public CakeSourceSync(CakeSeedSource cakeSeedSource, CakeJdbcRepository cakeJdbcRepository,
+                          CakeServiceImpl cakeService, CakeService engine, TransactionTemplate transactionTemplate,
+                          ObjectMapper objectMapper, CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.cakeSeedSource = cakeSeedSource;
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.cakeService = cakeService;
+        this.engine = engine;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getSeed();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (settings.getSource() == null || settings.getSource().isBlank()) {
+            LOG.warn("Source sync is enabled but no cakemgr.seed.source is set; nothing to refresh");
+            return;
+        }
+        // the seed has just read the source, so the first refresh waits a whole interval
+        long interval = settings.getSync().getInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::refreshQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception ex) {
+            // nothing was applied; the validators are kept, so the next refresh reads the document again
+            count(REFRESHES, "result", "failed", 1);
+            LOG.error("Error refreshing cakes from '{}': {}", settings.getSource(), ex.getMessage());
+        }
+    }
+
+    Result refresh() throws IOException {
+        Optional<CakeSeedSource.Revision> revision = cakeSeedSource.openIfChanged(validators);
+        if (revision.isEmpty()) {
+            count(REFRESHES, "result", "not-modified", 1);
+            LOG.debug("Cake source '{}' is unchanged", settings.getSource());
+            return Result.NOT_MODIFIED;
+        }
+        Map<String, CakeEntity> incoming;
+        try (InputStream body = revision.get().body()) {
+            incoming = parse(body);
+        }
+        Map<String, Long> hashes = HashMap.newHashMap(incoming.size());
+        List<CakeEntity> candidates = new ArrayList<>();
+        incoming.forEach((title, cake) -> {
+            long hash = contentHash(cake);
+            hashes.put(title, hash);
+            if (!Objects.equals(sourceHashes.get(title), hash)) {
+                candidates.add(cake);
+            }
+        });
+        List<String> dropped = sourceHashes.keySet().stream().filter(title -> !incoming.containsKey(title)).toList();
+
+        List<CakeChangeEvent> changes = new ArrayList<>();
+        int[] counts = new int[3];
+        if (!candidates.isEmpty() || !dropped.isEmpty()) {
+            engine.awaitQueuedWrites();
+        }
+        transactionTemplate.executeWithoutResult(status -> apply(candidates, dropped, changes, counts));
+
+        validators = revision.get().validators();
+        sourceHashes = hashes;
+        if (!changes.isEmpty()) {
+            cakeService.publishExternalChanges(changes);
+        }
+        Result result = new Result(false, counts[0], counts[1], counts[2]);
+        count(REFRESHES, "result", "modified", 1);
+        count(CHANGES, "type", "inserted", result.inserted());
+        count(CHANGES, "type", "updated", result.updated());
+        count(CHANGES, "type", "deleted", result.deleted());
+        LOG.info("Refreshed cakes from '{}': {} listed, {} changed in the source, {} inserted, {} updated, {} deleted",
+                settings.getSource(), incoming.size(), candidates.size() + dropped.size(),
+                result.inserted(), result.updated(), result.deleted());
+        return result;
+    }
+
+    private void apply(List<CakeEntity> candidates, List<String> dropped, List<CakeChangeEvent> changes, int[] counts) {
+        if (candidates.isEmpty() && dropped.isEmpty()) {
+            return;
+        }
+        List<String> titles = new ArrayList<>(candidates.size() + dropped.size());
+        candidates.forEach(cake -> titles.add(cake.getTitle()));
+        titles.addAll(dropped);
+        Map<String, Integer> ids = cakeJdbcRepository.findIdsByTitle(titles);
+        Map<Integer, CakeEntity> stored = cakeJdbcRepository.findByIds(candidates.stream()
+                .map(cake -> ids.get(cake.getTitle())).filter(Objects::nonNull).toList());
+
+        List<CakeEntity> inserts = new ArrayList<>();
+        List<CakeEntity> updates = new ArrayList<>();
+        for (CakeEntity cake : candidates) {
+            Integer id = ids.get(cake.getTitle());
+            CakeEntity current = id == null ? null : stored.get(id);
+            if (current == null) {
+                inserts.add(new CakeEntity(null, cake.getTitle(), cake.getDesc(), cake.getImage()));
+            } else if (contentHash(current) != contentHash(cake)) {
+                updates.add(new CakeEntity(current.getCakeId(), cake.getTitle(), cake.getDesc(), cake.getImage(),
+                        current.getVersion() + 1));
+            }
+        }
+        List<Integer> deletes = dropped.stream().map(ids::get).filter(Objects::nonNull).toList();
+
+        if (!inserts.isEmpty()) {
+            cakeJdbcRepository.batchInsert(inserts);
+            inserts.forEach(cake -> changes.add(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, cake.getCakeId(), cake)));
+        }
+        if (!updates.isEmpty()) {
+            // a cake changed since it was read keeps the change; the version each one carries is the one stored
+            int[] updated = cakeJdbcRepository.batchUpdate(updates);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] > 0) {
+                    changes.add(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, updates.get(i).getCakeId(), updates.get(i)));
+                    counts[1]++;
+                }
+            }
+        }
+        if (!deletes.isEmpty()) {
+            int[] deleted = cakeJdbcRepository.batchDelete(deletes);
+            for (int i = 0; i < deleted.length; i++) {
+                if (deleted[i] > 0) {
+                    changes.add(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, deletes.get(i), null));
+                    counts[2]++;
+                }
+            }
+        }
+        counts[0] = inserts.size();
+    }
+
+    /**
+     * @return the valid cakes in the document by title, keeping the first of any repeated title as the seed does
+     */
+    private Map<String, CakeEntity> parse(InputStream json) throws IOException {
+        Map<String, CakeEntity> cakes = new LinkedHashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected the cake document to be a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                CakeEntity cake = objectMapper.readValue(parser, CakeEntity.class);
+                // an over-long field would fail the whole transaction, and so every refresh after it
+                if (CakeBulkLoader.hasMandatoryFields(cake) && cake.getTitle().length() <= CakeEntity.TITLE_LENGTH
+                        && cake.getDesc().length() <= CakeEntity.DESCRIPTION_LENGTH
+                        && cake.getImage().length() <= CakeEntity.IMAGE_LENGTH) {
+                    cakes.putIfAbsent(cake.getTitle(), cake);
+                }
+            }
+        }
+        return cakes;
+    }
+
+    /**
+     * 64-bit FNV-1a over title, description and image, each followed by a separator no field can hold, so
+     * ("ab", "c") and ("a", "bc") differ.
+     */
+    static long contentHash(CakeEntity cake) {
+        long hash = 0xcbf29ce484222325L;
+        for (String field : new String[]{cake.getTitle(), cake.getDesc(), cake.getImage()}) {
+            for (int i = 0; i < field.length(); i++) {
+                hash = (hash ^ field.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void count(String name, String tag, String value, int amount) {
+        Counter.builder(name).tag(tag, value)
+                .description(name.equals(REFRESHES)
+                        ? "Refreshes of the cake source by outcome; not-modified ones read and wrote nothing"
+                        : "Cakes changed in the catalogue by source refreshes")
+                .register(meterRegistry)
+                .increment(amount);
+    }
+}
@@ -0,0 +1,210 @@
+package com.waracle.cakemgr.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of {@link CakeServiceImpl}. By-id lookups go through a bounded, TTL-evicting map;
+ * the full list is held as one snapshot tagged with the catalogue version it was read at. Writes are passed
+ * straight through, and the {@link CakeChangeEvent}s they publish evict exactly the entries they affect.
+ * <p>
+ * An id with no cake is remembered too, for {@code negative-expire-after-write}, so a client probing missing ids
+ * gets its 404 without a query each time. Adding a cake evicts its id, in case it was probed first.
+ */
+@Service
+@Primary
+@ConditionalOnExpression("${cakemgr.cache.enabled:true} and '${cakemgr.service.engine:jpa}'.equalsIgnoreCase('jpa')")
+public class CachingCakeService implements CakeService {
+
+    static final String BY_ID_CACHE = "cakes.byId";
+    static final String ALL_CAKES_CACHE = "cakes.all";
+
+    // same meter as the Caffeine binder registers for the by-id cache, so both caches share one description
+    private static final String GETS_DESCRIPTION = "The number of times cache lookup methods have returned a cached (hit) or uncached (newly loaded or null) value (miss).";
+
+    private final CakeServiceImpl delegate;
+    // id -> the cake, or empty for an id known to have none
+    private final Cache<Integer, Optional<CakeEntity>> cakesById;
+
+    // bumped on every change; a snapshot read at an older version is never served
+    private final AtomicLong catalogueVersion = new AtomicLong();
+    private final AtomicReference<CatalogueSnapshot> allCakes = new AtomicReference<>();
+
+    private final Counter snapshotHits;
+    private final Counter snapshotMisses;
+    private final Counter snapshotEvictions;
+
+    private record CatalogueSnapshot(long version, List<CakeEntity> cakes) {}
+
+    public CachingCakeService(CakeServiceImpl delegate, CakeManagerProperties properties, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        CakeManagerProperties.Cache settings = properties.getCache();
+        this.cakesById = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfter(new Expiry<Integer, Optional<CakeEntity>>() {
+                    @Override
+                    public long expireAfterCreate(Integer id, Optional<CakeEntity> cake, long currentTime) {
+                        return (cake.isPresent() ? settings.getExpireAfterWrite() : settings.getNegativeExpireAfterWrite()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer id, Optional<CakeEntity> cake, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, cake, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer id, Optional<CakeEntity> cake, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cakesById, BY_ID_CACHE);
+
+        this.snapshotHits = Counter.builder("cache.gets").tags("cache", ALL_CAKES_CACHE, "result", "hit")
+                .description(GETS_DESCRIPTION)
+                .register(meterRegistry);
+        this.snapshotMisses = Counter.builder("cache.gets").tags("cache", ALL_CAKES_CACHE, "result", "miss")
+                .description(GETS_DESCRIPTION)
+                .register(meterRegistry);
+        this.snapshotEvictions = Counter.builder("cache.evictions").tags("cache", ALL_CAKES_CACHE)
+                .description("The number of times the cached cake list was invalidated by a change")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<CakeEntity> retrieveAllCakes() {
+        long version = catalogueVersion.get();
+        CatalogueSnapshot snapshot = allCakes.get();
+        if (snapshot != null && snapshot.version() == version) {
+            snapshotHits.increment();
+            return snapshot.cakes();
+        }
+        snapshotMisses.increment();
+        List<CakeEntity> cakes = List.copyOf(delegate.retrieveAllCakes());
+        // only keep the snapshot if no change landed while it was being read
+        if (catalogueVersion.get() == version) {
+            allCakes.compareAndSet(snapshot, new CatalogueSnapshot(version, cakes));
+        }
+        return cakes;
+    }
+
+    @Override
+    public CakeEntity retrieveCakeById(Integer id) {
+        return cakesById.get(id, delegate::findCakeById).orElseThrow(() -> RecordNotFoundException.forCake(id));
+    }
+
+    @Override
+    public List<CakeEntity> findCakesByTitle(String title) {
+        return delegate.findCakesByTitle(title);
+    }
+
+    @Override
+    public long catalogueVersion() {
+        return delegate.catalogueVersion();
+    }
+
+    @Override
+    public long cakeVersion(Integer id) {
+        Optional<CakeEntity> cached = cakesById.getIfPresent(id);
+        if (cached == null) {
+            return delegate.cakeVersion(id);
+        }
+        return cached.orElseThrow(() -> RecordNotFoundException.forCake(id)).getVersion();
+    }
+
+    @Override
+    public CakePage retrieveCakePage(String continuationToken, Integer pageSize) {
+        return delegate.retrieveCakePage(continuationToken, pageSize);
+    }
+
+    @Override
+    public void streamAllCakes(Consumer<CakeEntity> consumer) {
+        delegate.streamAllCakes(consumer);
+    }
+
+    @Override
+    public void addCake(CakeEntityDTO cakeEntity) throws RecordAlreadyExistsException {
+        delegate.addCake(cakeEntity);
+    }
+
+    @Override
+    public List<String> updateCake(Integer id, String title, String description, String imageUrl, Long expectedVersion)
+            throws RecordAlreadyExistsException {
+        return delegate.updateCake(id, title, description, imageUrl, expectedVersion);
+    }
+
+    @Override
+    public void deleteCake(Integer id) {
+        delegate.deleteCake(id);
+    }
+
+    @Override
+    public List<BulkItemResult> addCakes(List<CakeEntityDTO> cakes) throws RecordAlreadyExistsException {
+        return delegate.addCakes(cakes);
+    }
+
+    @Override
+    public List<BulkItemResult> updateCakes(List<CakePatchDTO> patches) throws RecordAlreadyExistsException {
+        return delegate.updateCakes(patches);
+    }
+
+    @Override
+    public List<BulkItemResult> deleteCakes(List<Integer> ids) {
+        return delegate.deleteCakes(ids);
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        invalidateCatalogue();
+        cakesById.invalidate(event.cakeId());
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        invalidateCatalogue();
+        cakesById.invalidateAll(event.changes().stream().map(CakeChangeEvent::cakeId).toList());
+    }
+
+    // before CakeServiceImpl bumps the catalogue version for the seed
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        invalidateCatalogue();
+        cakesById.invalidateAll();
+    }
+
+    private void invalidateCatalogue() {
+        catalogueVersion.incrementAndGet();
+        if (allCakes.getAndSet(null) != null) {
+            snapshotEvictions.increment();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+
+import java.util.*;
+
+/**
+ * Immutable view of the whole catalogue. Cakes are held in parallel arrays sorted by id, so a by-id lookup is a
+ * binary search over a primitive {@code int[]} with no boxing, and the id-ordered list handed to callers is a
+ * read-only view over the same array. Titles are indexed in a hash map for duplicate checks.
+ * <p>
+ * Every change produces a new snapshot; instances are never modified once built.
+ */
+final class CakeCatalogueSnapshot {
+
+    static final CakeCatalogueSnapshot EMPTY = new CakeCatalogueSnapshot(new int[0], new CakeEntity[0], Map.of());
+
+    private final int[] ids;
+    private final CakeEntity[] cakes;
+    private final Map<String, Integer> idsByTitle;
+    private final List<CakeEntity> view;
+
+    private CakeCatalogueSnapshot(int[] ids, CakeEntity[] cakes, Map<String, Integer> idsByTitle) {
+        this.ids = ids;
+        this.cakes = cakes;
+        this.idsByTitle = idsByTitle;
+        this.view = Collections.unmodifiableList(Arrays.asList(cakes));
+    }
+
+    static CakeCatalogueSnapshot of(Collection<CakeEntity> catalogue) {
+        CakeEntity[] cakes = catalogue.toArray(new CakeEntity[0]);
+        Arrays.sort(cakes, Comparator.comparingInt(CakeEntity::getCakeId));
+        int[] ids = new int[cakes.length];
+        Map<String, Integer> idsByTitle = HashMap.newHashMap(cakes.length);
+        for (int i = 0; i < cakes.length; i++) {
+            ids[i] = cakes[i].getCakeId();
+            idsByTitle.put(cakes[i].getTitle(), ids[i]);
+        }
+        return new CakeCatalogueSnapshot(ids, cakes, idsByTitle);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    List<CakeEntity> cakes() {
+        return view;
+    }
+
+    CakeEntity get(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? cakes[index] : null;
+    }
+
+    /**
+     * @return the id of the cake holding this title, or null if the title is free
+     */
+    Integer idOfTitle(String title) {
+        return idsByTitle.get(title);
+    }
+
+    /**
+     * @return the cakes whose title matches ignoring case, in id order. A scan: unlike exact titles these are not
+     * indexed, as nothing on the write path needs them
+     */
+    List<CakeEntity> withTitleIgnoringCase(String title) {
+        List<CakeEntity> matches = new ArrayList<>(1);
+        for (CakeEntity cake : cakes) {
+            if (cake.getTitle().equalsIgnoreCase(title)) {
+                matches.add(cake);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return up to {@code limit} cakes with an id greater than {@code afterId}, in id order
+     */
+    List<CakeEntity> pageAfter(int afterId, int limit) {
+        int index = Arrays.binarySearch(ids, afterId);
+        int from = index >= 0 ? index + 1 : -index - 1;
+        return view.subList(from, Math.min(ids.length, from + limit));
+    }
+
+    /**
+     * @return a copy of this snapshot with the cake added, or replacing the cake with the same id; this snapshot if
+     * it already holds a later version of the cake
+     */
+    CakeCatalogueSnapshot with(CakeEntity cake) {
+        return with(cake, false);
+    }
+
+    /**
+     * @param restored whether the cake is being put back to its stored state, which replaces even a later version
+     */
+    CakeCatalogueSnapshot with(CakeEntity cake, boolean restored) {
+        int id = cake.getCakeId();
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0 && !restored && isOlder(cake, cakes[index])) {
+            return this;
+        }
+        Map<String, Integer> titles = new HashMap<>(idsByTitle);
+        int[] newIds;
+        CakeEntity[] newCakes;
+        if (index >= 0) {
+            titles.remove(cakes[index].getTitle());
+            newIds = ids;
+            newCakes = cakes.clone();
+            newCakes[index] = cake;
+        } else {
+            int at = -index - 1;
+            newIds = new int[ids.length + 1];
+            newCakes = new CakeEntity[cakes.length + 1];
+            System.arraycopy(ids, 0, newIds, 0, at);
+            System.arraycopy(cakes, 0, newCakes, 0, at);
+            newIds[at] = id;
+            newCakes[at] = cake;
+            System.arraycopy(ids, at, newIds, at + 1, ids.length - at);
+            System.arraycopy(cakes, at, newCakes, at + 1, cakes.length - at);
+        }
+        titles.put(cake.getTitle(), id);
+        return new CakeCatalogueSnapshot(newIds, newCakes, titles);
+    }
+
+    /**
+     * @return a copy of this snapshot without the cake, or this snapshot if there is no such cake
+     */
+    CakeCatalogueSnapshot without(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return this;
+        }
+        Map<String, Integer> titles = new HashMap<>(idsByTitle);
+        titles.remove(cakes[index].getTitle());
+        int[] newIds = new int[ids.length - 1];
+        CakeEntity[] newCakes = new CakeEntity[cakes.length - 1];
+        System.arraycopy(ids, 0, newIds, 0, index);
+        System.arraycopy(cakes, 0, newCakes, 0, index);
+        System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+        System.arraycopy(cakes, index + 1, newCakes, index, cakes.length - index - 1);
+        return new CakeCatalogueSnapshot(newIds, newCakes, titles);
+    }
+
+    /**
+     * @return a copy of this snapshot with every change applied in order, built in a single pass rather than one
+     * copy per change
+     */
+    CakeCatalogueSnapshot withChanges(List<CakeChangeEvent> changes) {
+        Map<Integer, CakeEntity> byId = HashMap.newHashMap(cakes.length + changes.size());
+        for (CakeEntity cake : cakes) {
+            byId.put(cake.getCakeId(), cake);
+        }
+        for (CakeChangeEvent change : changes) {
+            switch (change.type()) {
+                case ADDED, UPDATED -> {
+                    if (change.restored() || !isOlder(change.cake(), byId.get(change.cakeId()))) {
+                        byId.put(change.cakeId(), change.cake());
+                    }
+                }
+                case DELETED -> byId.remove(change.cakeId());
+            }
+        }
+        return of(byId.values());
+    }
+
+    // a cake read back from the database for another node's change can arrive after a later change made here;
+    // applying it would roll the cake back. A restore is the exception: what was held never reached the database
+    private static boolean isOlder(CakeEntity incoming, CakeEntity held) {
+        return held != null && incoming.getVersion() != null && held.getVersion() != null
+                && incoming.getVersion() < held.getVersion();
+    }
+}
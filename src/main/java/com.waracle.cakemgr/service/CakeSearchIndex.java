@@ -0,0 +1,287 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over cake titles and descriptions. Text is split on anything that is not a letter or
+ * digit, lower-cased and stripped of accents; each query word matches every indexed word it is a prefix of, and
+ * a cake must match all query words. Results are ranked by a simple score (title words count three times a
+ * description word, and an exact word match counts double a prefix match) and only the top few are kept.
+ * <p>
+ * The index follows the {@link CakeChangeEvent}s published by every write, and is rebuilt from the table on a
+ * background thread at startup and after each seed. Changes that land while a rebuild is reading the table are
+ * replayed onto the new index before it replaces the old one, so none are lost. As in the snapshot engine, a cake
+ * older than the one indexed is ignored, so a change read back for another node cannot roll it back.
+ */
+@Component
+public class CakeSearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeSearchIndex.class);
+
+    private static final int TITLE_WEIGHT = 3;
+    private static final int EXACT_MATCH_BOOST = 2;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final CakeServiceImpl cakeService;
+    private final CakeManagerProperties.Search settings;
+
+    // many concurrent searches, one writer at a time. Not synchronized, for the same reason as the snapshot engine
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // serialises rebuilds; taken before lock, never while holding it
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // both guarded by lock
+    private Index index = new Index();
+    private List<CakeChangeEvent> changesDuringRebuild;
+
+    public CakeSearchIndex(CakeServiceImpl cakeService, CakeManagerProperties properties) {
+        this.cakeService = cakeService;
+        this.settings = properties.getSearch();
+    }
+
+    public List<CakeEntity> search(String query, Integer limit) {
+        int size = limit == null ? settings.getDefaultLimit() : Math.clamp(limit, 1, settings.getMaxLimit());
+        List<String> words = tokenize(query).stream().distinct().toList();
+        if (words.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            return index.search(words, size, settings.getMinPrefixLength());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildInBackground();
+    }
+
+    @EventListener
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        rebuildInBackground();
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        apply(List.of(event));
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        apply(event.changes());
+    }
+
+    private void apply(List<CakeChangeEvent> changes) {
+        lock.writeLock().lock();
+        try {
+            changes.forEach(index::apply);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.addAll(changes);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildInBackground() {
+        Thread.ofVirtual().name("cake-search-index").start(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException ex) {
+                LOG.error("Error rebuilding the cake search index: {}", ex.getMessage());
+            }
+        });
+    }
+
+    void rebuild() {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // searches keep using the old index while the table is read
+            Index rebuilt = new Index();
+            int indexedCakes = 0;
+            int indexedWords = 0;
+            boolean complete = false;
+            try {
+                cakeService.streamAllCakes(rebuilt::put);
+                complete = true;
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    if (complete) {
+                        // a change may already be in what was read; applying it again leaves the same result
+                        changesDuringRebuild.forEach(rebuilt::apply);
+                        index = rebuilt;
+                        indexedCakes = rebuilt.cakes.size();
+                        indexedWords = rebuilt.postings.size();
+                    }
+                    changesDuringRebuild = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            LOG.info("Indexed {} cakes ({} distinct words) for search in {} ms",
+                    indexedCakes, indexedWords, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        // decomposing only matters for text with accents, so plain ASCII skips it
+        String folded = text.chars().allMatch(c -> c < 0x80) ? text
+                : COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        folded = folded.toLowerCase(Locale.ROOT);
+
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            words.add(folded.substring(start));
+        }
+        return words;
+    }
+
+    /**
+     * The index itself; not thread-safe, guarded by the enclosing lock.
+     */
+    private static final class Index {
+
+        // word -> cake id -> weight of the word in that cake; sorted so a prefix is one contiguous range
+        private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+        private final Map<Integer, CakeEntity> cakes = new HashMap<>();
+
+        void apply(CakeChangeEvent change) {
+            switch (change.type()) {
+                case ADDED, UPDATED -> {
+                    if (change.restored() || !isOlder(change.cake(), cakes.get(change.cakeId()))) {
+                        put(change.cake());
+                    }
+                }
+                case DELETED -> remove(change.cakeId());
+            }
+        }
+
+        private static boolean isOlder(CakeEntity incoming, CakeEntity held) {
+            return held != null && incoming.getVersion() != null && held.getVersion() != null
+                    && incoming.getVersion() < held.getVersion();
+        }
+
+        void put(CakeEntity cake) {
+            remove(cake.getCakeId());
+            cakes.put(cake.getCakeId(), cake);
+            weights(cake).forEach((word, weight) ->
+                    postings.computeIfAbsent(word, w -> new HashMap<>()).put(cake.getCakeId(), weight));
+        }
+
+        void remove(Integer id) {
+            CakeEntity previous = cakes.remove(id);
+            if (previous == null) {
+                return;
+            }
+            for (String word : weights(previous).keySet()) {
+                Map<Integer, Integer> cakesWithWord = postings.get(word);
+                cakesWithWord.remove(id);
+                if (cakesWithWord.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+
+        List<CakeEntity> search(List<String> words, int limit, int minPrefixLength) {
+            // intersect starting from the rarest word, so the candidate set only shrinks
+            List<Map<Integer, Integer>> matches = words.stream()
+                    .map(word -> matches(word, minPrefixLength))
+                    .sorted(Comparator.comparingInt(Map::size))
+                    .toList();
+            Map<Integer, Integer> scores = new HashMap<>(matches.getFirst());
+            for (Map<Integer, Integer> next : matches.subList(1, matches.size())) {
+                Iterator<Map.Entry<Integer, Integer>> candidates = scores.entrySet().iterator();
+                while (candidates.hasNext()) {
+                    Map.Entry<Integer, Integer> candidate = candidates.next();
+                    Integer score = next.get(candidate.getKey());
+                    if (score == null) {
+                        candidates.remove();
+                    } else {
+                        candidate.setValue(candidate.getValue() + score);
+                    }
+                }
+            }
+
+            // highest score first, then lowest id; the heap keeps the worst of the current top entries at its head
+            Comparator<Map.Entry<Integer, Integer>> ranking = Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey());
+            PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(limit + 1, ranking.reversed());
+            for (Map.Entry<Integer, Integer> scored : scores.entrySet()) {
+                top.offer(scored);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(top);
+            ranked.sort(ranking);
+            return ranked.stream().map(scored -> cakes.get(scored.getKey())).toList();
+        }
+
+        /**
+         * @return the best score of any indexed word the query word matches, for each cake containing one
+         */
+        private Map<Integer, Integer> matches(String word, int minPrefixLength) {
+            Map<Integer, Integer> best = new HashMap<>();
+            if (word.length() < minPrefixLength) {
+                postings.getOrDefault(word, Map.of())
+                        .forEach((id, weight) -> best.put(id, weight * EXACT_MATCH_BOOST));
+                return best;
+            }
+            for (Map.Entry<String, Map<Integer, Integer>> indexed
+                    : postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()) {
+                int boost = indexed.getKey().equals(word) ? EXACT_MATCH_BOOST : 1;
+                indexed.getValue().forEach((id, weight) -> best.merge(id, weight * boost, Math::max));
+            }
+            return best;
+        }
+
+        private static Map<String, Integer> weights(CakeEntity cake) {
+            Map<String, Integer> weights = new HashMap<>();
+            tokenize(cake.getTitle()).forEach(word -> weights.merge(word, TITLE_WEIGHT, Integer::sum));
+            tokenize(cake.getDesc()).forEach(word -> weights.merge(word, 1, Integer::sum));
+            return weights;
+        }
+    }
+}
@@ -1,22 +1,93 @@
 package com.waracle.cakemgr.service;
 
+import com.waracle.cakemgr.dto.BulkItemResult;
 import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
 import com.waracle.cakemgr.entity.CakeEntity;
 import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
 import com.waracle.cakemgr.exception.RecordNotFoundException;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface CakeService {
 
     List<CakeEntity> retrieveAllCakes();
 
+    CakePage retrieveCakePage(String continuationToken, Integer pageSize);
+
+    /**
+     * Hands every cake to the consumer in id order while it is being read, without buffering the catalogue.
+     */
+    void streamAllCakes(Consumer<CakeEntity> consumer);
+
     CakeEntity retrieveCakeById(Integer id) throws RecordNotFoundException;
 
+    /**
+     * @return the cakes whose title matches ignoring case, in id order; titles differing only in case are allowed,
+     * so there can be more than one
+     */
+    List<CakeEntity> findCakesByTitle(String title);
+
+    /**
+     * @return a number that increases every time any cake is added, updated or deleted; only meaningful within
+     * this running instance
+     */
+    long catalogueVersion();
+
+    /**
+     * @return the stored version of the cake, read without loading the cake itself
+     */
+    long cakeVersion(Integer id) throws RecordNotFoundException;
+
     void addCake(CakeEntityDTO cakeEntity) throws RecordAlreadyExistsException;
 
-    List<String> updateCake(Integer id, String title, String description, String imageUrl) throws RecordAlreadyExistsException;
+    default List<String> updateCake(Integer id, String title, String description, String imageUrl) throws RecordAlreadyExistsException {
+        return updateCake(id, title, description, imageUrl, null);
+    }
+
+    /**
+     * @param expectedVersion the version the caller last saw, or null to update whatever is stored
+     * @throws com.waracle.cakemgr.exception.CakeVersionMismatchException if the cake is not at the expected
+     * version, or was changed by another request while this one was applying
+     * @throws com.waracle.cakemgr.exception.CakeUpdateConflictException if no version was expected and the cake
+     * was changed by other requests on every attempt to apply this one
+     */
+    List<String> updateCake(Integer id, String title, String description, String imageUrl, Long expectedVersion)
+            throws RecordAlreadyExistsException;
 
     void deleteCake(Integer id);
 
+    /**
+     * Creates every valid cake whose title is free, in one transaction written as a JDBC batch.
+     *
+     * @return one result per item, in request order
+     * @throws RecordAlreadyExistsException if a concurrent write took one of the titles; nothing is applied
+     */
+    List<BulkItemResult> addCakes(List<CakeEntityDTO> cakes) throws RecordAlreadyExistsException;
+
+    /**
+     * Applies the patches in request order, in one transaction written as a JDBC batch. Null fields are left as
+     * they are.
+     *
+     * @return one result per item, in request order
+     * @throws RecordAlreadyExistsException if a concurrent write took one of the titles; nothing is applied
+     */
+    List<BulkItemResult> updateCakes(List<CakePatchDTO> patches) throws RecordAlreadyExistsException;
+
+    /**
+     * Deletes the cakes by id in one transaction, without reading them first.
+     *
+     * @return one result per id, in request order
+     */
+    List<BulkItemResult> deleteCakes(List<Integer> ids);
+
+    /**
+     * Waits until every write accepted so far is in the database, for callers that read or write the table
+     * directly. Engines that write through have nothing to wait for.
+     */
+    default void awaitQueuedWrites() {
+    }
+
 }
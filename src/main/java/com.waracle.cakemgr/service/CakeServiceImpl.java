@@ -1,40 +1,92 @@
 package com.waracle.cakemgr.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.BatchTooLargeException;
+import com.waracle.cakemgr.exception.CakeUpdateConflictException;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+import com.waracle.cakemgr.exception.InvalidContinuationTokenException;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
 import com.waracle.cakemgr.repository.CakeRepository;
 import com.waracle.cakemgr.dto.CakeEntityDTO;
 import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
 import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
 import com.waracle.cakemgr.exception.RecordNotFoundException;
-import jakarta.annotation.PostConstruct;
-import jakarta.xml.ws.http.HTTPException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class CakeServiceImpl implements CakeService {
 
     private static final Logger LOG = LoggerFactory.getLogger(CakeServiceImpl.class);
 
+    private static final String TOKEN_PREFIX = "cake:";
+
+    static final String CONFLICTS = "cakes.conflicts";
+
+    // for an update without If-Match that keeps losing to other writers
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
     private final CakeRepository cakeRepository;
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CakeManagerProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
 
-    public CakeServiceImpl(CakeRepository cakeRepository) {
-        this.cakeRepository = cakeRepository;
-    }
+    // bumped only after a change is committed and its listeners have run, so a version read before loading the
+    // catalogue never labels data older than itself
+    private final AtomicLong catalogueVersion = new AtomicLong();
+
+    // counted once at startup and after each reload, then moved by the changes published here, so a scrape never
+    // reads the table
+    private final AtomicLong catalogueSize = new AtomicLong();
 
-    @PostConstruct
-    private void loadCakes() throws HTTPException {
-        LOG.info("Starting automatic load of cakes into in-memory database...");
-        loadFromRemote();
+    private final CakeTitleFilter titleFilter = new CakeTitleFilter();
+    private final ConflictLog conflictLog = new ConflictLog(LOG, Duration.ofSeconds(10));
+
+    public CakeServiceImpl(CakeRepository cakeRepository, CakeJdbcRepository cakeJdbcRepository,
+                           EntityManager entityManager, TransactionTemplate transactionTemplate,
+                           CakeManagerProperties properties, ApplicationEventPublisher eventPublisher,
+                           MeterRegistry meterRegistry) {
+        this.cakeRepository = cakeRepository;
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cakes.catalogue.size", catalogueSize, AtomicLong::get)
+                .description("Number of cakes in the catalogue")
+                .register(meterRegistry);
     }
 
     @Override
@@ -48,10 +100,90 @@ public class CakeServiceImpl implements CakeService {
         }
     }
 
+    @Override
+    public CakePage retrieveCakePage(String continuationToken, Integer pageSize) {
+        int size = resolvePageSize(pageSize, properties.getPagination());
+        int afterId = continuationToken == null ? 0 : decodeToken(continuationToken);
+
+        // fetch one extra row to find out whether another page exists without a COUNT query
+        List<CakeEntity> cakes = cakeRepository.findByCakeIdGreaterThanOrderByCakeIdAsc(afterId, Limit.of(size + 1));
+        if (cakes.size() <= size) {
+            return new CakePage(cakes, null);
+        }
+        List<CakeEntity> page = cakes.subList(0, size);
+        return new CakePage(page, encodeToken(page.get(size - 1).getCakeId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllCakes(Consumer<CakeEntity> consumer) {
+        try (Stream<CakeEntity> cakes = cakeRepository.streamAllOrderedById()) {
+            cakes.forEach(cake -> {
+                consumer.accept(cake);
+                // evict each row once written so the persistence context stays empty however big the table is
+                entityManager.detach(cake);
+            });
+        }
+    }
+
     @Override
     public CakeEntity retrieveCakeById(Integer id) {
-        return cakeRepository.findById(id)
-                .orElseThrow(() -> new RecordNotFoundException(String.format("Cake with id '%d' not found", id)));
+        return findCakeById(id).orElseThrow(() -> RecordNotFoundException.forCake(id));
+    }
+
+    /**
+     * @return the cake, or empty if there is none with the id; for callers that treat a missing cake as an answer
+     */
+    public Optional<CakeEntity> findCakeById(Integer id) {
+        return cakeRepository.findById(id);
+    }
+
+    @Override
+    public List<CakeEntity> findCakesByTitle(String title) {
+        return cakeRepository.findByTitleIgnoringCase(title);
+    }
+
+    /**
+     * @return every image URL in the catalogue once, read without loading the cakes
+     */
+    public List<String> retrieveDistinctImages() {
+        return cakeRepository.findDistinctImages();
+    }
+
+    @Override
+    public long catalogueVersion() {
+        return catalogueVersion.get();
+    }
+
+    @Override
+    public long cakeVersion(Integer id) {
+        return cakeRepository.findVersionById(id)
+                .orElseThrow(() -> RecordNotFoundException.forCake(id));
+    }
+
+    // after the engines' own seed listeners, which rebuild their read state first
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        recountCatalogue();
+        catalogueVersion.incrementAndGet();
+        rebuildTitleFilterInBackground();
+    }
+
+    // a persistent database already holds titles before any seed runs
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        recountCatalogue();
+        rebuildTitleFilterInBackground();
+    }
+
+    private void recountCatalogue() {
+        try {
+            catalogueSize.set(cakeRepository.count());
+        } catch (RuntimeException ex) {
+            // the gauge keeps its last figure; the next reload counts again
+            LOG.warn("Could not count the catalogue: {}", ex.getMessage());
+        }
     }
 
     @Override
@@ -62,92 +194,410 @@ public class CakeServiceImpl implements CakeService {
         entity.setDesc(newCake.getDescription());
         entity.setImage(newCake.getImageUrl());
 
+        if (titleTakenByAnother(newCake.getTitle(), null)) {
+            countConflict("addCake", "title");
+            conflictLog.warn("Refused new cake with title '{}', which is already taken", newCake.getTitle());
+            throw RecordAlreadyExistsException.forTitle(newCake.getTitle());
+        }
         try {
             cakeRepository.save(entity);
             LOG.info("Added new cake entity: '{}'", newCake.getTitle());
         } catch (DataIntegrityViolationException ex) {
-            LOG.error("Data integrity violation for cake '{}': ", newCake.getTitle(), ex);
-            throw new RecordAlreadyExistsException(String.format("Cake with title '%s' already exists", newCake.getTitle()));
+            countConflict("addCake", "constraint");
+            conflictLog.warn("Data integrity violation adding cake '{}'", newCake.getTitle());
+            LOG.debug("Data integrity violation adding cake '{}'", newCake.getTitle(), ex);
+            throw RecordAlreadyExistsException.forTitle(newCake.getTitle());
         } catch (Exception e) {
             LOG.error("Error adding cake to in-memory database: {} ", e.getMessage());
             throw new RuntimeException("Failed to add cake to database", e);
         }
+        publishChange(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, entity.getCakeId(), entity));
     }
 
     @Override
     public void deleteCake(Integer id) throws RecordNotFoundException {
-        CakeEntity cake = retrieveCakeById(id);
+        CakeEntity cake;
         try {
-            cakeRepository.delete(cake);
+            // as in updateCake: removing a cake read in the same transaction needs no second SELECT
+            cake = transactionTemplate.execute(status -> {
+                CakeEntity existing = retrieveCakeById(id);
+                cakeRepository.delete(existing);
+                return existing;
+            });
             LOG.info("Deleted cake entity: '{}'", cake.getTitle());
+        } catch (RecordNotFoundException ex) {
+            throw ex;
         } catch (Exception e) {
             LOG.error("Error deleting cake from in-memory database: {}", e.getMessage());
             throw new RuntimeException("Failed to delete cake from database", e);
         }
+        publishChange(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, id, cake));
     }
+
     @Override
-    public List<String> updateCake(Integer id, String title, String description, String imageUrl)
+    public List<String> updateCake(Integer id, String title, String description, String imageUrl, Long expectedVersion)
             throws RecordAlreadyExistsException, RecordNotFoundException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return updateCakeOnce(id, title, description, imageUrl, expectedVersion);
+            } catch (OptimisticLockingFailureException ex) {
+                if (expectedVersion != null) {
+                    countConflict("updateCake", "version");
+                    LOG.warn("Cake with id '{}' was changed by another request during update", id);
+                    throw new CakeVersionMismatchException(String.format("Cake with id '%d' was changed by another request", id));
+                }
+                // the client asked for no precondition, so the last writer wins: read the cake again and reapply
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    countConflict("updateCake", "version");
+                    LOG.warn("Cake with id '{}' kept changing during update; gave up after {} attempts", id, attempt);
+                    throw new CakeUpdateConflictException(String.format(
+                            "Cake with id '%d' kept being changed by other requests; try again", id));
+                }
+                LOG.debug("Cake with id '{}' was changed by another request during update; trying again", id);
+            }
+        }
+    }
 
-        CakeEntity existingCake = retrieveCakeById(id);
-
+    private List<String> updateCakeOnce(Integer id, String title, String description, String imageUrl,
+                                        Long expectedVersion) throws RecordAlreadyExistsException {
         List<String> updatedFields = new ArrayList<>();
-
-        Optional.ofNullable(title).ifPresent(t -> {
-            existingCake.setTitle(t);
-            updatedFields.add("title");
-        });
-        Optional.ofNullable(description).ifPresent(d -> {
-            existingCake.setDesc(d);
-            updatedFields.add("description");
-        });
-        Optional.ofNullable(imageUrl).ifPresent(i -> {
-            existingCake.setImage(i);
-            updatedFields.add("imageUrl");
-        });
-
+        // set when the new title belongs to another cake; a checked exception cannot leave the callback
+        boolean[] titleTaken = {false};
+        CakeEntity savedCake;
         try {
-            cakeRepository.save(existingCake);
-            LOG.info("Updated '{}' on cake entity with ID: '{}'", updatedFields, existingCake.getCakeId());
+            // read and write in one transaction: the cake stays managed, so save has nothing to merge and the
+            // UPDATE goes out on commit, one SELECT and one UPDATE in all
+            savedCake = transactionTemplate.execute(status -> {
+                CakeEntity existingCake = retrieveCakeById(id);
+                if (expectedVersion != null && !expectedVersion.equals(existingCake.getVersion())) {
+                    throw new CakeVersionMismatchException(String.format(
+                            "Cake with id '%d' is at version %d, not %d", id, existingCake.getVersion(), expectedVersion));
+                }
+                if (titleTakenByAnother(title, id)) {
+                    titleTaken[0] = true;
+                    return null;
+                }
+
+                Optional.ofNullable(title).ifPresent(t -> {
+                    existingCake.setTitle(t);
+                    updatedFields.add("title");
+                });
+                Optional.ofNullable(description).ifPresent(d -> {
+                    existingCake.setDesc(d);
+                    updatedFields.add("description");
+                });
+                Optional.ofNullable(imageUrl).ifPresent(i -> {
+                    existingCake.setImage(i);
+                    updatedFields.add("imageUrl");
+                });
+                // the version is bumped on this instance when the update is flushed
+                return cakeRepository.save(existingCake);
+            });
+            if (titleTaken[0]) {
+                countConflict("updateCake", "title");
+                conflictLog.warn("Refused to rename a cake to '{}', which is already taken", title);
+                throw RecordAlreadyExistsException.forTitle(title);
+            }
+            LOG.info("Updated '{}' on cake entity with ID: '{}'", updatedFields, id);
+        } catch (RecordNotFoundException | CakeVersionMismatchException | RecordAlreadyExistsException
+                 | OptimisticLockingFailureException ex) {
+            throw ex;
         } catch (DataIntegrityViolationException  ex) {
-            LOG.error("Constraint violation updating cake '{}': ", existingCake.getTitle(), ex);
-            throw new RecordAlreadyExistsException(
-                    String.format("Cake with title '%s' already exists", existingCake.getTitle()));
+            countConflict("updateCake", "constraint");
+            conflictLog.warn("Constraint violation updating cake '{}'", title);
+            LOG.debug("Constraint violation updating cake '{}'", title, ex);
+            throw RecordAlreadyExistsException.forTitle(title);
         } catch (Exception e) {
             LOG.error("Error updating cake in in-memory database: {} ", e.getMessage());
             throw new RuntimeException("Failed to update cake in database", e);
         }
+        publishChange(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, id, savedCake));
         return updatedFields;
     }
 
-    protected void loadFromRemote() throws HTTPException {
+    @Override
+    public List<BulkItemResult> addCakes(List<CakeEntityDTO> newCakes) throws RecordAlreadyExistsException {
+        checkBatchSize(newCakes.size());
+        BulkItemResult[] results = new BulkItemResult[newCakes.size()];
+        List<CakeChangeEvent> changes = new ArrayList<>();
 
-        HashSet<CakeEntity> cakes = new HashSet<>();
+        inBulkTransaction("addCakes", () -> {
+            // one lookup for every title in the batch instead of a failed INSERT per duplicate
+            Set<String> takenTitles = new HashSet<>(cakeJdbcRepository.findIdsByTitle(newCakes.stream()
+                    .map(CakeEntityDTO::getTitle).filter(Objects::nonNull).toList()).keySet());
+            List<CakeEntity> accepted = new ArrayList<>();
+            for (int i = 0; i < newCakes.size(); i++) {
+                CakeEntityDTO newCake = newCakes.get(i);
+                String invalid = Stream.of(newCake.getTitle(), newCake.getDescription(), newCake.getImageUrl()).anyMatch(Objects::isNull)
+                        ? "title, description and imageUrl are required"
+                        : checkFields(newCake.getTitle(), newCake.getDescription(), newCake.getImageUrl());
+                if (invalid != null) {
+                    results[i] = new BulkItemResult(i, null, BulkItemResult.Status.INVALID, invalid);
+                } else if (!takenTitles.add(newCake.getTitle())) {
+                    results[i] = new BulkItemResult(i, null, BulkItemResult.Status.CONFLICT,
+                            String.format("Cake with title '%s' already exists", newCake.getTitle()));
+                } else {
+                    CakeEntity cake = new CakeEntity(null, newCake.getTitle(), newCake.getDescription(), newCake.getImageUrl());
+                    accepted.add(cake);
+                    // filled in with the assigned id once the batch is written
+                    results[i] = new BulkItemResult(i, null, BulkItemResult.Status.CREATED, null);
+                }
+            }
+            cakeJdbcRepository.batchInsert(accepted);
+
+            Iterator<CakeEntity> written = accepted.iterator();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].status() == BulkItemResult.Status.CREATED) {
+                    CakeEntity cake = written.next();
+                    results[i] = BulkItemResult.applied(i, cake.getCakeId(), BulkItemResult.Status.CREATED);
+                    changes.add(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, cake.getCakeId(), cake));
+                }
+            }
+        });
+        LOG.info("Bulk add created {} of {} cakes", changes.size(), newCakes.size());
+        publishBatch(changes);
+        return Arrays.asList(results);
+    }
 
-        try (HttpClient client = HttpClient.newHttpClient()) {
-            LOG.info("Downloading cake JSON from remote URL...");
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://gist.githubusercontent.com/hart88/198f29ec5114a3ec3460/raw/8dd19a88f9b8d24c23d9960f3300d0c917a4f07c/cake.json"))
-                    .build();
+    @Override
+    public List<BulkItemResult> updateCakes(List<CakePatchDTO> patches) throws RecordAlreadyExistsException {
+        checkBatchSize(patches.size());
+        BulkItemResult[] results = new BulkItemResult[patches.size()];
+        List<CakeChangeEvent> changes = new ArrayList<>();
 
-            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        inBulkTransaction("updateCakes", () -> {
+            Map<Integer, CakeEntity> cakes = cakeJdbcRepository.findByIds(patches.stream()
+                    .map(CakePatchDTO::getCakeId).filter(Objects::nonNull).toList());
+            // who holds each title as the patches are applied in order, so a title freed earlier in the batch can
+            // be taken by a later patch
+            Map<String, Integer> titleOwners = new HashMap<>(cakeJdbcRepository.findIdsByTitle(patches.stream()
+                    .map(CakePatchDTO::getTitle).filter(Objects::nonNull).toList()));
+            cakes.values().forEach(cake -> titleOwners.put(cake.getTitle(), cake.getCakeId()));
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            cakes = objectMapper.readValue(
-                    response.body(),
-                    objectMapper.getTypeFactory().constructCollectionType(Set.class, CakeEntity.class));
+            List<CakeEntity> updated = new ArrayList<>();
+            List<Integer> updatedIndexes = new ArrayList<>();
+            for (int i = 0; i < patches.size(); i++) {
+                CakePatchDTO patch = patches.get(i);
+                Integer id = patch.getCakeId();
+                String invalid = id == null ? "cakeId is required"
+                        : Stream.of(patch.getTitle(), patch.getDescription(), patch.getImageUrl()).allMatch(Objects::isNull)
+                        ? String.format("No fields provided for update on cake with id '%d'", id)
+                        : checkFields(patch.getTitle(), patch.getDescription(), patch.getImageUrl());
+                if (invalid != null) {
+                    results[i] = new BulkItemResult(i, id, BulkItemResult.Status.INVALID, invalid);
+                    continue;
+                }
+                CakeEntity current = cakes.get(id);
+                if (current == null) {
+                    results[i] = new BulkItemResult(i, id, BulkItemResult.Status.NOT_FOUND,
+                            String.format("Cake with id '%d' not found", id));
+                    continue;
+                }
+                Integer titleOwner = patch.getTitle() == null ? null : titleOwners.get(patch.getTitle());
+                if (titleOwner != null && !titleOwner.equals(id)) {
+                    results[i] = new BulkItemResult(i, id, BulkItemResult.Status.CONFLICT,
+                            String.format("Cake with title '%s' already exists", patch.getTitle()));
+                    continue;
+                }
+                CakeEntity next = new CakeEntity(id,
+                        Objects.requireNonNullElse(patch.getTitle(), current.getTitle()),
+                        Objects.requireNonNullElse(patch.getDescription(), current.getDesc()),
+                        Objects.requireNonNullElse(patch.getImageUrl(), current.getImage()),
+                        current.getVersion() + 1);
+                titleOwners.remove(current.getTitle());
+                titleOwners.put(next.getTitle(), id);
+                cakes.put(id, next);
+                updated.add(next);
+                updatedIndexes.add(i);
+            }
 
-            for (CakeEntity cakeEntity : cakes) {
-                try {
-                    cakeRepository.save(cakeEntity);
-                    LOG.info("Added cake entity: '{}'", cakeEntity.getTitle());
-                } catch (DataIntegrityViolationException ex) {
-                    LOG.error("Encountered data integrity violation for cake '{}': ", cakeEntity.getTitle(), ex);
+            int[] counts = cakeJdbcRepository.batchUpdate(updated);
+            List<Integer> missed = new ArrayList<>();
+            for (int k = 0; k < counts.length; k++) {
+                if (counts[k] == 0) {
+                    missed.add(updated.get(k).getCakeId());
+                }
+            }
+            // only read when a row was deleted or changed by someone else since it was read, to tell which
+            Set<Integer> stillStored = missed.isEmpty() ? Set.of() : cakeJdbcRepository.findByIds(missed).keySet();
+            for (int k = 0; k < counts.length; k++) {
+                CakeEntity cake = updated.get(k);
+                int index = updatedIndexes.get(k);
+                if (counts[k] == 0 && stillStored.contains(cake.getCakeId())) {
+                    results[index] = new BulkItemResult(index, cake.getCakeId(), BulkItemResult.Status.CONFLICT,
+                            String.format("Cake with id '%d' was changed by another request", cake.getCakeId()));
+                } else if (counts[k] == 0) {
+                    results[index] = new BulkItemResult(index, cake.getCakeId(), BulkItemResult.Status.NOT_FOUND,
+                            String.format("Cake with id '%d' not found", cake.getCakeId()));
+                } else {
+                    results[index] = BulkItemResult.applied(index, cake.getCakeId(), BulkItemResult.Status.UPDATED);
+                    changes.add(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, cake.getCakeId(), cake));
                 }
             }
-        } catch (Exception ex) {
-            LOG.error("Error during cake JSON download and persistence: {} ", ex.getMessage());
+        });
+        LOG.info("Bulk update applied {} of {} patches", changes.size(), patches.size());
+        publishBatch(changes);
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public List<BulkItemResult> deleteCakes(List<Integer> ids) {
+        checkBatchSize(ids.size());
+        BulkItemResult[] results = new BulkItemResult[ids.size()];
+        List<Integer> toDelete = new ArrayList<>();
+        List<Integer> deleteIndexes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (ids.get(i) == null) {
+                results[i] = new BulkItemResult(i, null, BulkItemResult.Status.INVALID, "cakeId is required");
+            } else {
+                toDelete.add(ids.get(i));
+                deleteIndexes.add(i);
+            }
+        }
+
+        // the update counts say which ids existed, so nothing is read before deleting
+        int[] counts = transactionTemplate.execute(status -> cakeJdbcRepository.batchDelete(toDelete));
+        List<CakeChangeEvent> changes = new ArrayList<>();
+        for (int k = 0; k < counts.length; k++) {
+            Integer id = toDelete.get(k);
+            int index = deleteIndexes.get(k);
+            if (counts[k] == 0) {
+                results[index] = new BulkItemResult(index, id, BulkItemResult.Status.NOT_FOUND,
+                        String.format("Cake with id '%d' not found", id));
+            } else {
+                results[index] = BulkItemResult.applied(index, id, BulkItemResult.Status.DELETED);
+                changes.add(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, id, null));
+            }
+        }
+        LOG.info("Bulk delete removed {} of {} cakes", changes.size(), ids.size());
+        publishBatch(changes);
+        return Arrays.asList(results);
+    }
+
+    private void checkBatchSize(int size) {
+        int maxItems = properties.getBulk().getMaxItems();
+        if (size > maxItems) {
+            throw new BatchTooLargeException(String.format("Batch of %d items exceeds the limit of %d", size, maxItems));
+        }
+    }
+
+    private void inBulkTransaction(String operation, Runnable work) throws RecordAlreadyExistsException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> work.run());
+        } catch (DataIntegrityViolationException ex) {
+            countConflict(operation, "constraint");
+            // the title checks ran inside the transaction, so only a concurrent writer can get here
+            LOG.error("Bulk write rolled back after a constraint violation: {}", ex.getMessage());
+            throw new RecordAlreadyExistsException("A concurrent change took a title used in this batch; no changes were applied");
+        }
+    }
+
+    /**
+     * Checks the title filter, and the TITLE index only when the filter cannot rule the title out.
+     *
+     * @param id the cake being renamed, which may keep its own title; null for a new cake
+     */
+    private boolean titleTakenByAnother(String title, Integer id) {
+        if (title == null || !titleFilter.mightContain(title)) {
+            return false;
+        }
+        Integer owner = cakeJdbcRepository.findIdsByTitle(List.of(title)).get(title);
+        return owner != null && !owner.equals(id);
+    }
+
+    private void rebuildTitleFilterInBackground() {
+        Thread.ofVirtual().name("cake-title-filter").start(() -> {
+            try {
+                titleFilter.rebuild(cakeJdbcRepository::forEachTitle);
+            } catch (RuntimeException ex) {
+                // duplicates are still refused by the unique constraint, only more slowly
+                LOG.error("Error rebuilding the cake title filter: {}", ex.getMessage());
+            }
+        });
+    }
+
+    private void countConflict(String operation, String cause) {
+        Counter.builder(CONFLICTS)
+                .description("Writes refused because a title was taken or the cake changed concurrently")
+                .tags("operation", operation, "cause", cause)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // package-private for the write-behind path, which publishes changes before they reach the database
+    void publishChange(CakeChangeEvent change) {
+        noteTitle(change);
+        countChange(change);
+        eventPublisher.publishEvent(change);
+        catalogueVersion.incrementAndGet();
+    }
+
+    /**
+     * Publishes changes committed without going through this service, by another node or by the source sync, as if
+     * they were made here, so every cache, snapshot, index and feed on this node follows them and the catalogue
+     * version moves on.
+     */
+    public void publishExternalChanges(List<CakeChangeEvent> changes) {
+        publishBatch(changes);
+    }
+
+    private void publishBatch(List<CakeChangeEvent> changes) {
+        if (!changes.isEmpty()) {
+            changes.forEach(this::noteTitle);
+            changes.forEach(this::countChange);
+            eventPublisher.publishEvent(new CakeBatchChangeEvent(List.copyOf(changes)));
+            catalogueVersion.incrementAndGet();
+        }
+    }
+
+    private void countChange(CakeChangeEvent change) {
+        switch (change.type()) {
+            case ADDED -> catalogueSize.incrementAndGet();
+            case DELETED -> catalogueSize.decrementAndGet();
+            default -> { }
+        }
+    }
+
+    private void noteTitle(CakeChangeEvent change) {
+        if (change.cake() != null && change.cake().getTitle() != null && change.type() != CakeChangeEvent.Type.DELETED) {
+            titleFilter.add(change.cake().getTitle());
+        }
+    }
+
+    /**
+     * @return why the supplied fields cannot be stored, or null if they can; null fields are not checked
+     */
+    static String checkFields(String title, String description, String imageUrl) {
+        if (title != null && (title.isBlank() || title.length() > CakeEntity.TITLE_LENGTH)) {
+            return String.format("title must be between 1 and %d characters", CakeEntity.TITLE_LENGTH);
+        }
+        if (description != null && description.length() > CakeEntity.DESCRIPTION_LENGTH) {
+            return String.format("description must be at most %d characters", CakeEntity.DESCRIPTION_LENGTH);
+        }
+        if (imageUrl != null && imageUrl.length() > CakeEntity.IMAGE_LENGTH) {
+            return String.format("imageUrl must be at most %d characters", CakeEntity.IMAGE_LENGTH);
+        }
+        return null;
+    }
+
+    static int resolvePageSize(Integer requested, CakeManagerProperties.Pagination pagination) {
+        return requested == null ? pagination.getDefaultPageSize() : Math.clamp(requested, 1, pagination.getMaxPageSize());
+    }
+
+    static String encodeToken(int lastCakeId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((TOKEN_PREFIX + lastCakeId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decodeToken(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (decoded.startsWith(TOKEN_PREFIX)) {
+                return Integer.parseInt(decoded.substring(TOKEN_PREFIX.length()));
+            }
+        } catch (IllegalArgumentException ignored) {
+            // falls through to the rejection below; NumberFormatException is an IllegalArgumentException
         }
-        LOG.info("Cake JSON download and persistence completed successfully! Total unique cakes from JSON: {}", cakes.size());
+        throw new InvalidContinuationTokenException(String.format("Continuation token '%s' is not valid", token));
     }
 }
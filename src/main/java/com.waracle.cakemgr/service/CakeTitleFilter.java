@@ -0,0 +1,77 @@
+package com.waracle.cakemgr.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Bloom filter over the titles in the catalogue, used to answer "could this title be taken?" without a query.
+ * A "no" is certain for every title added since the last {@link #rebuild}, so a new title goes straight to its
+ * INSERT. A "maybe" is confirmed against the TITLE index before the write is refused. That turns a resubmitted
+ * duplicate into one indexed read instead of a failed INSERT, a rolled-back transaction and the exception chain
+ * that comes with them.
+ * <p>
+ * Bits are only ever set, so deleted and renamed titles linger as false "maybe"s until the next rebuild. A title
+ * added while a rebuild is reading the table may be missed by the new filter; its duplicates then fall back to
+ * the unique constraint, which is still correct, only slower.
+ */
+final class CakeTitleFilter {
+
+    // 2^23 bits, 1 MB: about 3% false "maybe"s at a million titles
+    private static final int BITS_LOG2 = 23;
+    private static final int MASK = (1 << BITS_LOG2) - 1;
+    private static final int HASHES = 3;
+
+    private final AtomicReference<AtomicLongArray> bits = new AtomicReference<>(newBits());
+
+    void add(String title) {
+        set(bits.get(), title);
+    }
+
+    boolean mightContain(String title) {
+        AtomicLongArray current = bits.get();
+        int h1 = title.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & MASK;
+            if ((current.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the filter with one holding exactly the titles the source hands over, dropping deleted ones.
+     */
+    void rebuild(Consumer<Consumer<String>> titles) {
+        AtomicLongArray rebuilt = newBits();
+        titles.accept(title -> set(rebuilt, title));
+        bits.set(rebuilt);
+    }
+
+    private static void set(AtomicLongArray target, String title) {
+        int h1 = title.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & MASK;
+            long mask = 1L << bit;
+            target.getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    // a second, independent-looking hash derived from the first (the murmur3 finaliser); kept odd so the probes
+    // never repeat the same bit
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+    private static AtomicLongArray newBits() {
+        return new AtomicLongArray(1 << (BITS_LOG2 - 6));
+    }
+}
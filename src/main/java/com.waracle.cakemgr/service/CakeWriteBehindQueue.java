@@ -0,0 +1,342 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.exception.WriteQueueFullException;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Queue of cake writes that have been acknowledged to the client but not yet written to the database, used by
+ * {@link SnapshotCakeService} when {@code cakemgr.service.write-behind.enabled} is set.
+ * <p>
+ * The queue holds at most one entry per cake: the state the cake should end up in, or a delete. A later write to
+ * a cake that is still waiting replaces the earlier one, so a burst of updates costs one row write. A single
+ * flusher thread takes everything waiting and writes it in one transaction, in JDBC batches. Whether each entry is
+ * an insert, an update or a delete is decided against the rows as they are at flush time, which also makes a
+ * retried flush safe.
+ * <p>
+ * Room is reserved with a {@link Slot} before the caller takes any lock of its own, so a full queue makes writers
+ * wait (up to {@code enqueue-timeout}) without blocking the flusher. Everything queued is written before shutdown.
+ */
+@Component
+@ConditionalOnExpression("${cakemgr.service.write-behind.enabled:false} and '${cakemgr.service.engine:jpa}'.equalsIgnoreCase('snapshot')")
+public class CakeWriteBehindQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeWriteBehindQueue.class);
+
+    static final String FLUSH_TIMER = "cakes.write-behind.flush";
+    static final String COALESCED = "cakes.write-behind.coalesced";
+    static final String DROPPED = "cakes.write-behind.dropped";
+
+    private final CakeServiceImpl cakeService;
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CakeManagerProperties.Service.WriteBehind settings;
+
+    // one permit per cake that is reserved, waiting or being flushed
+    private final Semaphore room;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // all guarded by lock. Insertion order is kept so a flush writes cakes roughly in the order they were accepted
+    private LinkedHashMap<Integer, PendingWrite> pending = new LinkedHashMap<>();
+    private long flushesStarted;
+    private long flushesFinished;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final Timer flushTimer;
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Thread flusher;
+
+    /**
+     * The state a cake should be left in by the next flush; a null cake means it should not exist.
+     */
+    private record PendingWrite(Integer cakeId, CakeEntity cake) {}
+
+    public CakeWriteBehindQueue(CakeServiceImpl cakeService, CakeJdbcRepository cakeJdbcRepository,
+                                TransactionTemplate transactionTemplate, CakeManagerProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.cakeService = cakeService;
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.settings = properties.getService().getWriteBehind();
+        this.room = new Semaphore(settings.getMaxPending());
+
+        Gauge.builder("cakes.write-behind.pending", room, r -> settings.getMaxPending() - r.availablePermits())
+                .description("Cakes with an acknowledged write that is not yet in the database")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(FLUSH_TIMER)
+                .description("Time to write one flush of queued cake changes")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder(COALESCED)
+                .description("Writes folded into one already waiting for the same cake")
+                .register(meterRegistry);
+        this.dropped = Counter.builder(DROPPED)
+                .description("Acknowledged writes the database refused; the cake was reset to its stored state")
+                .register(meterRegistry);
+
+        this.flusher = Thread.ofVirtual().name("cake-write-behind").start(this::run);
+    }
+
+    /**
+     * Reserves room for one write, waiting up to {@code enqueue-timeout} if the queue is full.
+     *
+     * @throws WriteQueueFullException if no room became free in time, or the application is shutting down
+     */
+    Slot reserve() {
+        try {
+            if (!room.tryAcquire(settings.getEnqueueTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new WriteQueueFullException(String.format(
+                        "%d cake writes are waiting for the database; try again shortly", settings.getMaxPending()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteQueueFullException("Interrupted waiting for room in the write queue");
+        }
+        return new Slot();
+    }
+
+    int nextId() {
+        return cakeJdbcRepository.nextId();
+    }
+
+    /**
+     * Waits until every write queued before this call is in the database.
+     */
+    void awaitFlushed() {
+        lock.lock();
+        try {
+            long target = pending.isEmpty() ? flushesStarted : flushesStarted + 1;
+            if (!pending.isEmpty()) {
+                // no point lingering for more writes while someone is waiting on these
+                flushRequested = true;
+                changed.signal();
+            }
+            while (flushesFinished < target) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+    }
+
+    /**
+     * Room for one write, released again on {@link #close} unless {@link #enqueue} used it.
+     */
+    final class Slot implements AutoCloseable {
+
+        private boolean used;
+
+        /**
+         * Queues the change, replacing any change still waiting for the same cake. The caller must enqueue changes
+         * to one cake in the order it applies them.
+         */
+        void enqueue(CakeChangeEvent change) {
+            PendingWrite write = new PendingWrite(change.cakeId(),
+                    change.type() == CakeChangeEvent.Type.DELETED ? null : change.cake());
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new WriteQueueFullException("Shutting down; no more cake writes are accepted");
+                }
+                if (pending.put(write.cakeId(), write) != null) {
+                    // the cake already holds a permit
+                    coalesced.increment();
+                    room.release();
+                }
+                used = true;
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!used) {
+                room.release();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<PendingWrite> writes;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    changed.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                lingerForBurst();
+                writes = List.copyOf(pending.values());
+                pending = new LinkedHashMap<>();
+                flushRequested = false;
+                flushesStarted++;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                flushTimer.record(() -> flush(writes));
+            } catch (RuntimeException ex) {
+                LOG.error("Unexpected error flushing {} cake writes: {}", writes.size(), ex.getMessage());
+            } finally {
+                room.release(writes.size());
+                lock.lock();
+                try {
+                    flushesFinished++;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // gives a burst the chance to land in one flush; called holding lock
+    private void lingerForBurst() {
+        long wait = settings.getFlushInterval().toNanos();
+        try {
+            while (!closed && !flushRequested && pending.size() < settings.getBatchSize() && wait > 0) {
+                wait = changed.awaitNanos(wait);
+            }
+        } catch (InterruptedException e) {
+            // nothing interrupts the flusher on purpose; flush what there is
+            LOG.debug("Cake write flusher interrupted while waiting for a batch to fill");
+        }
+    }
+
+    private void flush(List<PendingWrite> writes) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(writes));
+                LOG.debug("Flushed {} queued cake writes", writes.size());
+                return;
+            } catch (RuntimeException ex) {
+                if (attempt >= settings.getMaxAttempts()) {
+                    LOG.warn("Flush of {} cake writes failed {} times ({}); writing them one at a time",
+                            writes.size(), attempt, ex.getMessage());
+                    break;
+                }
+                LOG.warn("Flush of {} cake writes failed ({}); retrying", writes.size(), ex.getMessage());
+                backOff(attempt);
+            }
+        }
+        // one bad write should not take the rest of the flush down with it
+        for (PendingWrite write : writes) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(List.of(write)));
+            } catch (RuntimeException ex) {
+                LOG.error("Database refused the queued write to cake with id '{}'; discarding it: {}",
+                        write.cakeId(), ex.getMessage());
+                dropped.increment();
+                restoreStoredState(write);
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> writes) {
+        Map<Integer, CakeEntity> stored = cakeJdbcRepository.findByIds(writes.stream().map(PendingWrite::cakeId).toList());
+        List<Integer> deletes = new ArrayList<>();
+        List<Integer> retitled = new ArrayList<>();
+        List<CakeEntity> updates = new ArrayList<>();
+        List<CakeEntity> inserts = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            CakeEntity current = stored.get(write.cakeId());
+            if (write.cake() == null) {
+                if (current != null) {
+                    deletes.add(write.cakeId());
+                }
+            } else if (current == null) {
+                inserts.add(write.cake());
+            } else {
+                updates.add(write.cake());
+                if (!current.getTitle().equals(write.cake().getTitle())) {
+                    retitled.add(write.cakeId());
+                }
+            }
+        }
+        // deletes and moved-aside titles first, so each title is free before the cake that now owns it is written
+        inBatches(deletes, cakeJdbcRepository::batchDelete);
+        inBatches(retitled, cakeJdbcRepository::batchMoveTitlesAside);
+        inBatches(updates, cakeJdbcRepository::batchUpdateToVersion);
+        inBatches(inserts, cakeJdbcRepository::batchInsertAtVersion);
+    }
+
+    private <T> void inBatches(List<T> items, Consumer<List<T>> writer) {
+        for (int from = 0; from < items.size(); from += settings.getBatchSize()) {
+            writer.accept(items.subList(from, Math.min(items.size(), from + settings.getBatchSize())));
+        }
+    }
+
+    /**
+     * Puts the cake back to what the database holds, so the snapshot does not keep showing a write that was lost.
+     */
+    private void restoreStoredState(PendingWrite write) {
+        Integer id = write.cakeId();
+        lock.lock();
+        try {
+            if (pending.containsKey(id)) {
+                // a newer write is already waiting and will decide what the cake looks like
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            CakeEntity stored = cakeJdbcRepository.findByIds(List.of(id)).get(id);
+            cakeService.publishChange(stored == null
+                    ? new CakeChangeEvent(CakeChangeEvent.Type.DELETED, id, null)
+                    // a lost deletion brings the cake back, which listeners counting the catalogue need to hear as such
+                    : new CakeChangeEvent(write.cake() == null ? CakeChangeEvent.Type.ADDED : CakeChangeEvent.Type.UPDATED,
+                            id, stored, true));
+        } catch (RuntimeException ex) {
+            LOG.error("Could not read back cake with id '{}' after a failed write: {}", id, ex.getMessage());
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(100L << Math.min(attempt, 6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
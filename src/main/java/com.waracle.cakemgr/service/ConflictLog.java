@@ -0,0 +1,43 @@
+package com.waracle.cakemgr.service;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs write conflicts at most once per interval, noting how many were skipped in between. A client resubmitting
+ * the same duplicate in a loop would otherwise fill the log and spend more on logging than on the request.
+ * Every conflict is still counted in {@code cakes.conflicts}.
+ */
+final class ConflictLog {
+
+    private final Logger log;
+    private final long intervalNanos;
+    private final AtomicLong nextAt;
+    private final AtomicLong skipped = new AtomicLong();
+
+    ConflictLog(Logger log, Duration interval) {
+        this.log = log;
+        this.intervalNanos = interval.toNanos();
+        this.nextAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @param message a log message with one {@code {}} placeholder, for the title or id in conflict
+     */
+    void warn(String message, Object subject) {
+        long now = System.nanoTime();
+        long next = nextAt.get();
+        if (now - next < 0 || !nextAt.compareAndSet(next, now + intervalNanos)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        long missed = skipped.getAndSet(0);
+        if (missed == 0) {
+            log.warn(message, subject);
+        } else {
+            log.warn(message + " ({} more conflicts not logged)", subject, missed);
+        }
+    }
+}
@@ -1,27 +1,76 @@
 package com.waracle.cakemgr.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.EmployeeLogin;
 import com.waracle.cakemgr.entity.EmployeeEntity;
+import com.waracle.cakemgr.event.EmployeeChangeEvent;
 import com.waracle.cakemgr.repository.EmployeeRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.security.core.userdetails.*;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class EmployeeDetailsService implements UserDetailsService {
 
     private static final Logger LOG = LoggerFactory.getLogger(EmployeeDetailsService.class);
+
+    static final String USER_CACHE = "employees.auth";
+
     private final EmployeeRepository repo;
 
-    public EmployeeDetailsService(EmployeeRepository repo) {
+    // username -> who they are, or empty for a username with no employee; null when caching is switched off.
+    // Only what authentication needs, never a UserDetails: Spring Security erases the password of the
+    // principal it is handed, which would break every later login served from a cached instance
+    private final Cache<String, Optional<EmployeeLogin>> users;
+
+    public EmployeeDetailsService(EmployeeRepository repo, CakeManagerProperties properties, MeterRegistry meterRegistry) {
         this.repo = repo;
+        CakeManagerProperties.Security.UserCache settings = properties.getSecurity().getUserCache();
+        if (settings.isEnabled()) {
+            this.users = Caffeine.newBuilder()
+                    .maximumSize(settings.getMaximumSize())
+                    .expireAfter(new Expiry<String, Optional<EmployeeLogin>>() {
+                        @Override
+                        public long expireAfterCreate(String username, Optional<EmployeeLogin> employee, long currentTime) {
+                            return (employee.isPresent() ? settings.getExpireAfterWrite() : settings.getNegativeExpireAfterWrite()).toNanos();
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(String username, Optional<EmployeeLogin> employee, long currentTime, long currentDuration) {
+                            return expireAfterCreate(username, employee, currentTime);
+                        }
+
+                        @Override
+                        public long expireAfterRead(String username, Optional<EmployeeLogin> employee, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, users, USER_CACHE);
+            Gauge.builder("cache.hit.ratio", users, cache -> cache.stats().hitRate())
+                    .tag("cache", USER_CACHE)
+                    .description("Share of authentication lookups answered without querying the employee table")
+                    .register(meterRegistry);
+        } else {
+            this.users = null;
+        }
     }
 
     @PostConstruct
@@ -37,15 +86,31 @@ public class EmployeeDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        EmployeeEntity emp = repo.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        Optional<EmployeeLogin> employee = users == null ? findEmployee(username) : users.get(username, this::findEmployee);
+        EmployeeLogin emp = employee.orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        return User.withUsername(emp.getUsername())
+        return User.withUsername(emp.username())
                 .password("{noop}waracle")  // for mock purposes, password is not important
-                .roles(emp.getRole().name())
+                .roles(emp.role().name())
                 .build();
     }
 
+    /**
+     * Drops every cached lookup once an employee write has committed. The whole cache goes rather than one entry,
+     * since a renamed employee leaves nothing in the event that names the old username.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChanged(EmployeeChangeEvent event) {
+        if (users != null) {
+            users.invalidateAll();
+            LOG.debug("Employee '{}' changed, cleared the authentication cache", event.username());
+        }
+    }
+
+    private Optional<EmployeeLogin> findEmployee(String username) {
+        return repo.findLoginByUsername(username);
+    }
+
     protected void importEmployeesFromJson() {
 
         List<EmployeeEntity> employees;
@@ -0,0 +1,327 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+import com.waracle.cakemgr.exception.InvalidCakeException;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Cake service engine that answers every read from an immutable in-memory {@link CakeCatalogueSnapshot},
+ * published through a single volatile reference so reads are lock-free. Writes still go to the database through
+ * {@link CakeServiceImpl}; the {@link CakeChangeEvent} each write publishes swaps in a new snapshot before the
+ * write call returns. Selected with {@code cakemgr.service.engine=snapshot}.
+ * <p>
+ * With {@code cakemgr.service.write-behind.enabled} single-cake writes are checked against the snapshot, applied to
+ * it and acknowledged straight away, and reach the database later through the {@link CakeWriteBehindQueue}. Bulk
+ * writes still go straight to the database, after everything queued ahead of them has been flushed.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "cakemgr.service", name = "engine", havingValue = "snapshot")
+public class SnapshotCakeService implements CakeService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotCakeService.class);
+
+    private final CakeServiceImpl delegate;
+    private final CakeManagerProperties properties;
+    private final CakeWriteBehindQueue writeBehind;
+
+    private volatile CakeCatalogueSnapshot snapshot = CakeCatalogueSnapshot.EMPTY;
+
+    // serialises snapshot swaps; readers never take it. Not synchronized: reload() holds it across a database
+    // read, which would pin a virtual thread's carrier
+    private final ReentrantLock swapLock = new ReentrantLock();
+
+    public SnapshotCakeService(CakeServiceImpl delegate, CakeManagerProperties properties,
+                               Optional<CakeWriteBehindQueue> writeBehind) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.writeBehind = writeBehind.orElse(null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    // before CakeServiceImpl bumps the catalogue version for the seed
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSeedCompleted(CakeSeedCompletedEvent event) {
+        reload();
+    }
+
+    @EventListener
+    public void onCakeChanged(CakeChangeEvent event) {
+        swapLock.lock();
+        try {
+            snapshot = switch (event.type()) {
+                case ADDED, UPDATED -> snapshot.with(event.cake(), event.restored());
+                case DELETED -> snapshot.without(event.cakeId());
+            };
+        } finally {
+            swapLock.unlock();
+        }
+    }
+
+    @EventListener
+    public void onCakesChanged(CakeBatchChangeEvent event) {
+        swapLock.lock();
+        try {
+            snapshot = snapshot.withChanges(event.changes());
+        } finally {
+            swapLock.unlock();
+        }
+    }
+
+    void reload() {
+        // queued writes are in the snapshot already; the database has to catch up before it replaces it
+        awaitQueuedWrites();
+        // the database read happens under the lock so a change event cannot be overwritten by an older read
+        swapLock.lock();
+        try {
+            snapshot = CakeCatalogueSnapshot.of(delegate.retrieveAllCakes());
+        } finally {
+            swapLock.unlock();
+        }
+        LOG.info("Loaded {} cakes into the in-memory catalogue snapshot", snapshot.size());
+    }
+
+    @Override
+    public List<CakeEntity> retrieveAllCakes() {
+        return snapshot.cakes();
+    }
+
+    @Override
+    public CakeEntity retrieveCakeById(Integer id) {
+        CakeEntity cake = snapshot.get(id);
+        if (cake == null) {
+            throw RecordNotFoundException.forCake(id);
+        }
+        return cake;
+    }
+
+    @Override
+    public List<CakeEntity> findCakesByTitle(String title) {
+        return snapshot.withTitleIgnoringCase(title);
+    }
+
+    @Override
+    public long catalogueVersion() {
+        return delegate.catalogueVersion();
+    }
+
+    @Override
+    public long cakeVersion(Integer id) {
+        return retrieveCakeById(id).getVersion();
+    }
+
+    @Override
+    public CakePage retrieveCakePage(String continuationToken, Integer pageSize) {
+        int size = CakeServiceImpl.resolvePageSize(pageSize, properties.getPagination());
+        int afterId = continuationToken == null ? 0 : CakeServiceImpl.decodeToken(continuationToken);
+        List<CakeEntity> cakes = snapshot.pageAfter(afterId, size + 1);
+        if (cakes.size() <= size) {
+            return new CakePage(cakes, null);
+        }
+        List<CakeEntity> page = cakes.subList(0, size);
+        return new CakePage(page, CakeServiceImpl.encodeToken(page.get(size - 1).getCakeId()));
+    }
+
+    @Override
+    public void streamAllCakes(Consumer<CakeEntity> consumer) {
+        snapshot.cakes().forEach(consumer);
+    }
+
+    @Override
+    public void addCake(CakeEntityDTO cakeEntity) throws RecordAlreadyExistsException {
+        if (writeBehind != null) {
+            addCakeBehind(cakeEntity);
+            return;
+        }
+        // the title index answers the common duplicate case without a failed INSERT; the unique constraint still
+        // backs it up for a race between two writers
+        if (snapshot.idOfTitle(cakeEntity.getTitle()) != null) {
+            throw RecordAlreadyExistsException.forTitle(cakeEntity.getTitle());
+        }
+        delegate.addCake(cakeEntity);
+    }
+
+    @Override
+    public List<String> updateCake(Integer id, String title, String description, String imageUrl, Long expectedVersion)
+            throws RecordAlreadyExistsException {
+        if (writeBehind != null) {
+            return updateCakeBehind(id, title, description, imageUrl, expectedVersion);
+        }
+        CakeCatalogueSnapshot current = snapshot;
+        CakeEntity stored = current.get(id);
+        if (stored == null) {
+            throw RecordNotFoundException.forCake(id);
+        }
+        if (expectedVersion != null && !expectedVersion.equals(stored.getVersion())) {
+            throw new CakeVersionMismatchException(String.format(
+                    "Cake with id '%d' is at version %d, not %d", id, stored.getVersion(), expectedVersion));
+        }
+        Integer titleOwner = title == null ? null : current.idOfTitle(title);
+        if (titleOwner != null && !titleOwner.equals(id)) {
+            throw RecordAlreadyExistsException.forTitle(title);
+        }
+        return delegate.updateCake(id, title, description, imageUrl, expectedVersion);
+    }
+
+    @Override
+    public void deleteCake(Integer id) {
+        if (writeBehind != null) {
+            deleteCakeBehind(id);
+            return;
+        }
+        if (snapshot.get(id) == null) {
+            throw RecordNotFoundException.forCake(id);
+        }
+        delegate.deleteCake(id);
+    }
+
+    @Override
+    public List<BulkItemResult> addCakes(List<CakeEntityDTO> cakes) throws RecordAlreadyExistsException {
+        awaitQueuedWrites();
+        return delegate.addCakes(cakes);
+    }
+
+    @Override
+    public List<BulkItemResult> updateCakes(List<CakePatchDTO> patches) throws RecordAlreadyExistsException {
+        awaitQueuedWrites();
+        return delegate.updateCakes(patches);
+    }
+
+    @Override
+    public List<BulkItemResult> deleteCakes(List<Integer> ids) {
+        awaitQueuedWrites();
+        return delegate.deleteCakes(ids);
+    }
+
+    private void addCakeBehind(CakeEntityDTO newCake) throws RecordAlreadyExistsException {
+        String invalid = newCake.getTitle() == null || newCake.getDescription() == null || newCake.getImageUrl() == null
+                ? "title, description and imageUrl are required"
+                : CakeServiceImpl.checkFields(newCake.getTitle(), newCake.getDescription(), newCake.getImageUrl());
+        if (invalid != null) {
+            throw new InvalidCakeException(invalid);
+        }
+        // taken before the lock as it may query the sequence; a refused add wastes the id, as a failed INSERT would
+        CakeEntity cake = new CakeEntity(writeBehind.nextId(), newCake.getTitle(), newCake.getDescription(),
+                newCake.getImageUrl(), 0L);
+        try (CakeWriteBehindQueue.Slot slot = writeBehind.reserve()) {
+            swapLock.lock();
+            try {
+                if (snapshot.idOfTitle(cake.getTitle()) != null) {
+                    throw RecordAlreadyExistsException.forTitle(cake.getTitle());
+                }
+                accept(slot, new CakeChangeEvent(CakeChangeEvent.Type.ADDED, cake.getCakeId(), cake));
+            } finally {
+                swapLock.unlock();
+            }
+        }
+        LOG.info("Accepted new cake entity: '{}'", cake.getTitle());
+    }
+
+    private List<String> updateCakeBehind(Integer id, String title, String description, String imageUrl,
+                                          Long expectedVersion) throws RecordAlreadyExistsException {
+        String invalid = CakeServiceImpl.checkFields(title, description, imageUrl);
+        if (invalid != null) {
+            throw new InvalidCakeException(invalid);
+        }
+        List<String> updatedFields = new ArrayList<>();
+        try (CakeWriteBehindQueue.Slot slot = writeBehind.reserve()) {
+            swapLock.lock();
+            try {
+                // checked and applied under the lock, so two writers cannot both pass the same check
+                CakeCatalogueSnapshot current = snapshot;
+                CakeEntity stored = current.get(id);
+                if (stored == null) {
+                    throw RecordNotFoundException.forCake(id);
+                }
+                if (expectedVersion != null && !expectedVersion.equals(stored.getVersion())) {
+                    throw new CakeVersionMismatchException(String.format(
+                            "Cake with id '%d' is at version %d, not %d", id, stored.getVersion(), expectedVersion));
+                }
+                Integer titleOwner = title == null ? null : current.idOfTitle(title);
+                if (titleOwner != null && !titleOwner.equals(id)) {
+                    throw RecordAlreadyExistsException.forTitle(title);
+                }
+                if (title != null) {
+                    updatedFields.add("title");
+                }
+                if (description != null) {
+                    updatedFields.add("description");
+                }
+                if (imageUrl != null) {
+                    updatedFields.add("imageUrl");
+                }
+                CakeEntity updated = new CakeEntity(id,
+                        Objects.requireNonNullElse(title, stored.getTitle()),
+                        Objects.requireNonNullElse(description, stored.getDesc()),
+                        Objects.requireNonNullElse(imageUrl, stored.getImage()),
+                        stored.getVersion() + 1);
+                accept(slot, new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, id, updated));
+            } finally {
+                swapLock.unlock();
+            }
+        }
+        LOG.info("Accepted update of '{}' on cake entity with ID: '{}'", updatedFields, id);
+        return updatedFields;
+    }
+
+    private void deleteCakeBehind(Integer id) {
+        try (CakeWriteBehindQueue.Slot slot = writeBehind.reserve()) {
+            swapLock.lock();
+            try {
+                CakeEntity stored = snapshot.get(id);
+                if (stored == null) {
+                    throw RecordNotFoundException.forCake(id);
+                }
+                accept(slot, new CakeChangeEvent(CakeChangeEvent.Type.DELETED, id, stored));
+            } finally {
+                swapLock.unlock();
+            }
+        }
+        LOG.info("Accepted deletion of cake entity with ID: '{}'", id);
+    }
+
+    // called holding swapLock, so changes reach the queue and the listeners in the order they were applied; the
+    // listener for this class swaps in the new snapshot before publishChange returns
+    private void accept(CakeWriteBehindQueue.Slot slot, CakeChangeEvent change) {
+        slot.enqueue(change);
+        delegate.publishChange(change);
+    }
+
+    @Override
+    public void awaitQueuedWrites() {
+        if (writeBehind != null) {
+            writeBehind.awaitFlushed();
+        }
+    }
+}
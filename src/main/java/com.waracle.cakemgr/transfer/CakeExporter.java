@@ -0,0 +1,117 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the whole catalogue as NDJSON or CSV while it is read from the database through a forward-only cursor,
+ * so neither the rows nor the document are ever held in full. The database is read directly rather than through
+ * the cake service, so the export shows what is committed: with write-behind on, a write acknowledged in the last
+ * moments before the export may not be in it yet.
+ */
+@Component
+public class CakeExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeExporter.class);
+
+    static final String CSV_HEADER = "id,title,desc,image";
+
+    private final CakeJdbcRepository cakeJdbcRepository;
+    private final ObjectMapper objectMapper;
+
+    public CakeExporter(CakeJdbcRepository cakeJdbcRepository, ObjectMapper objectMapper) {
+        this.cakeJdbcRepository = cakeJdbcRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the number of cakes written
+     */
+    public long export(CakeTransferFormat format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long[] written = new long[1];
+        try {
+            switch (format) {
+                case NDJSON -> writeNdjson(out, written);
+                case CSV -> writeCsv(out, written);
+            }
+        } catch (UncheckedIOException ex) {
+            // typically the client going away; the cursor has been closed by then
+            throw ex.getCause();
+        }
+        LOG.info("Exported {} cakes as {} in {} ms", written[0], format, (System.nanoTime() - start) / 1_000_000);
+        return written[0];
+    }
+
+    private void writeNdjson(OutputStream out, long[] written) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            cakeJdbcRepository.forEachCake(cake -> {
+                try {
+                    writer.writeValue(generator, cake);
+                    generator.writeRaw('\n');
+                    written[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void writeCsv(OutputStream out, long[] written) throws IOException {
+        // flushed, not closed: the servlet container owns the response stream
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write(CSV_HEADER);
+        csv.write("\r\n");
+        cakeJdbcRepository.forEachCake(cake -> {
+            try {
+                writeCsvRow(csv, cake);
+                written[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        csv.flush();
+    }
+
+    static void writeCsvRow(Writer csv, CakeEntity cake) throws IOException {
+        csv.write(Integer.toString(cake.getCakeId()));
+        for (String field : new String[]{cake.getTitle(), cake.getDesc(), cake.getImage()}) {
+            csv.write(',');
+            writeCsvField(csv, field);
+        }
+        csv.write("\r\n");
+    }
+
+    private static void writeCsvField(Writer csv, String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            csv.write(field);
+            return;
+        }
+        csv.write('"');
+        csv.write(field.replace("\"", "\"\""));
+        csv.write('"');
+    }
+}
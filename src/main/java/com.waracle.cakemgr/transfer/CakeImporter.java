@@ -0,0 +1,208 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakeImportEvent;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.service.CakeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Adds the cakes in an NDJSON or CSV document to the catalogue while it is still arriving. Rows are read one at a
+ * time and handed to the bulk add in batches, which writes each batch as one JDBC batch and publishes its changes,
+ * so the caches, change feed and other nodes follow as usual. While a batch is written the next is read, up to
+ * {@code cakemgr.transfer.max-in-flight} batches at once; reading then waits, so an import holds at most that many
+ * batches however long the document is.
+ * <p>
+ * Nothing is rolled back across batches: a row is rejected on its own, for being unreadable, invalid or taking a
+ * title already in use, and the import carries on. Each rejection is reported with its line number as it happens,
+ * with running totals every {@code cakemgr.transfer.progress-interval} rows and once at the end.
+ */
+@Component
+public class CakeImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeImporter.class);
+
+    static final String ROWS = "cakes.import.rows";
+
+    // a batch refused because a concurrent write took one of its titles is tried again; the next attempt's title
+    // lookup then finds the title taken and rejects only that row
+    static final int MAX_ATTEMPTS = 3;
+
+    private final CakeService cakeService;
+    private final ObjectMapper objectMapper;
+    private final CakeManagerProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public CakeImporter(CakeService cakeService, ObjectMapper objectMapper, CakeManagerProperties properties,
+                        MeterRegistry meterRegistry) {
+        this.cakeService = cakeService;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param report receives the progress, the rejected rows and then one DONE or FAILED event, one call at a time
+     * @return the last event reported
+     * @throws com.waracle.cakemgr.exception.InvalidCakeException if a CSV document's header does not name the
+     *                                                            columns; nothing has been reported or imported
+     */
+    public CakeImportEvent importCakes(InputStream document, CakeTransferFormat format,
+                                       Consumer<CakeImportEvent> report) throws IOException {
+        CakeRowReader rows = CakeRowReader.of(format, document, objectMapper);
+        return new Run(report).importRows(rows, format);
+    }
+
+    private final class Run {
+
+        private final Consumer<CakeImportEvent> report;
+        private final ReentrantLock reportLock = new ReentrantLock();
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        private Run(Consumer<CakeImportEvent> report) {
+            this.report = report;
+        }
+
+        private CakeImportEvent importRows(CakeRowReader rows, CakeTransferFormat format) throws IOException {
+            long start = System.nanoTime();
+            CakeManagerProperties.Transfer settings = properties.getTransfer();
+            int batchSize = Math.clamp(settings.getBatchSize(), 1, Math.max(1, properties.getBulk().getMaxItems()));
+            int progressInterval = Math.max(1, settings.getProgressInterval());
+
+            // one permit per batch being written: reading blocks once the window is full
+            Semaphore inFlight = new Semaphore(Math.max(1, settings.getMaxInFlight()));
+            IOException readFailure = null;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<CakeRowReader.Row> batch = new ArrayList<>(batchSize);
+                try {
+                    CakeRowReader.Row row;
+                    while (failure.get() == null && (row = rows.next()) != null) {
+                        if (row.problem() != null) {
+                            reject(row.line(), row.problem());
+                        } else {
+                            batch.add(row);
+                            if (batch.size() == batchSize) {
+                                submit(executor, inFlight, batch);
+                                batch = new ArrayList<>(batchSize);
+                            }
+                        }
+                        if (read.incrementAndGet() % progressInterval == 0) {
+                            emit(CakeImportEvent.Type.PROGRESS, null, null);
+                        }
+                    }
+                    if (!batch.isEmpty() && failure.get() == null) {
+                        submit(executor, inFlight, batch);
+                    }
+                } catch (IOException ex) {
+                    // the batches already handed over are still written
+                    readFailure = ex;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    readFailure = new IOException("Interrupted while importing cakes", ex);
+                }
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            String stoppedBy = readFailure != null ? readFailure.getMessage()
+                    : failure.get() != null ? failure.get().getMessage()
+                    : null;
+            if (stoppedBy != null) {
+                LOG.error("Import of {} stopped after {} rows: {} cakes imported, {} rows rejected: {}",
+                        format, read.get(), imported.get(), rejected.get(), stoppedBy);
+                return emit(CakeImportEvent.Type.FAILED, null, String.format("Import stopped: %s", stoppedBy));
+            }
+            LOG.info("Import of {} finished: {} rows read, {} cakes imported, {} rows rejected in {} ms",
+                    format, read.get(), imported.get(), rejected.get(), millis);
+            return emit(CakeImportEvent.Type.DONE, null, null);
+        }
+
+        private void submit(ExecutorService executor, Semaphore inFlight, List<CakeRowReader.Row> batch)
+                throws InterruptedException {
+            inFlight.acquire();
+            executor.execute(() -> {
+                try {
+                    write(batch);
+                } catch (RuntimeException ex) {
+                    LOG.error("Error importing a batch of {} cakes from line {}: {}",
+                            batch.size(), batch.getFirst().line(), ex.getMessage());
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        private void write(List<CakeRowReader.Row> batch) {
+            List<CakeEntityDTO> cakes = batch.stream().map(CakeRowReader.Row::cake).toList();
+            List<BulkItemResult> results = null;
+            for (int attempt = 1; results == null; attempt++) {
+                try {
+                    results = cakeService.addCakes(cakes);
+                } catch (RecordAlreadyExistsException ex) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        batch.forEach(row -> reject(row.line(), ex.getMessage()));
+                        return;
+                    }
+                }
+            }
+            long created = 0;
+            for (BulkItemResult result : results) {
+                if (result.status() == BulkItemResult.Status.CREATED) {
+                    created++;
+                } else {
+                    reject(batch.get(result.index()).line(), result.message());
+                }
+            }
+            imported.addAndGet(created);
+            count("imported", created);
+        }
+
+        private void reject(long line, String message) {
+            rejected.incrementAndGet();
+            count("rejected", 1);
+            emit(CakeImportEvent.Type.ERROR, line, message);
+        }
+
+        private CakeImportEvent emit(CakeImportEvent.Type type, Long line, String message) {
+            reportLock.lock();
+            try {
+                // totals read under the lock, so the events a client sees never count backwards
+                CakeImportEvent event = new CakeImportEvent(type, line, message, read.get(), imported.get(), rejected.get());
+                report.accept(event);
+                return event;
+            } finally {
+                reportLock.unlock();
+            }
+        }
+    }
+
+    private void count(String result, long amount) {
+        Counter.builder(ROWS)
+                .description("Rows of imported documents by outcome")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment(amount);
+    }
+}
@@ -0,0 +1,109 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an import document one row at a time. A row that cannot be read is returned with the problem instead of a
+ * cake, and reading carries on at the next row, so one bad line does not cost the rest of the file. Every row is
+ * bounded in length, so neither a huge document nor a missing line break makes the reader hold more than one row.
+ */
+abstract class CakeRowReader {
+
+    /**
+     * @param line    the line the row starts on, counting from 1
+     * @param cake    the cake the row holds, or null if it could not be read
+     * @param problem why the row could not be read, or null if it could
+     */
+    record Row(long line, CakeEntityDTO cake, String problem) {
+
+        static Row problem(long line, String format, Object... args) {
+            return new Row(line, null, String.format(format, args));
+        }
+    }
+
+    static final int EOF = -1;
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean started;
+
+    // the line the next character is on
+    protected long line = 1;
+
+    CakeRowReader(InputStream in) {
+        this.in = new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    static CakeRowReader of(CakeTransferFormat format, InputStream in, ObjectMapper objectMapper) throws IOException {
+        return switch (format) {
+            case NDJSON -> new NdjsonRowReader(in, objectMapper);
+            case CSV -> new CsvRowReader(in);
+        };
+    }
+
+    /**
+     * @return the next row, or null once the document is finished
+     */
+    abstract Row next() throws IOException;
+
+    protected int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            position++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+
+    protected int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Drops the rest of the current line, line break included, after a row that could not be read.
+     */
+    protected void skipLine() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != EOF && c != '\n');
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read == EOF) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        // spreadsheets often start a UTF-8 file with a byte order mark, which would otherwise become part of the
+        // first column name
+        if (!started) {
+            started = true;
+            if (buffer[0] == BYTE_ORDER_MARK) {
+                position = 1;
+                return limit > 1 || fill();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+package com.waracle.cakemgr.transfer;
+
+import com.waracle.cakemgr.exception.InvalidCakeException;
+import org.springframework.http.MediaType;
+
+/**
+ * The formats whole catalogues are exported and imported in. Both carry one cake per row, so either can be read
+ * or written a row at a time.
+ */
+public enum CakeTransferFormat {
+
+    /** One JSON object per line, shaped as {@code getAllCakes} returns each cake. */
+    NDJSON(MediaType.APPLICATION_NDJSON, "cakes.ndjson"),
+
+    /** RFC 4180 CSV with a header row naming the columns; quoted fields may hold commas, quotes and line breaks. */
+    CSV(new MediaType("text", "csv"), "cakes.csv");
+
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+    private final String fileName;
+
+    CakeTransferFormat(MediaType mediaType, String fileName) {
+        this.mediaType = mediaType;
+        this.fileName = fileName;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+
+    /**
+     * @throws InvalidCakeException if the content type is neither format
+     */
+    public static CakeTransferFormat of(String contentType) {
+        MediaType type;
+        try {
+            type = MediaType.parseMediaType(contentType);
+        } catch (IllegalArgumentException ex) {
+            type = null;
+        }
+        for (CakeTransferFormat format : values()) {
+            if (type != null && format.mediaType.equalsTypeAndSubtype(type)) {
+                return format;
+            }
+        }
+        throw new InvalidCakeException(String.format("Cannot import '%s'; send %s or %s",
+                contentType, MediaType.APPLICATION_NDJSON_VALUE, CSV_VALUE));
+    }
+}
@@ -0,0 +1,151 @@
+package com.waracle.cakemgr.transfer;
+
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.exception.InvalidCakeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * RFC 4180 CSV whose first row names the columns. The {@code title}, {@code desc} and {@code image} columns may
+ * come in any order, matched ignoring case; other columns, such as the exported {@code id}, are ignored. A quoted
+ * field may hold commas, doubled quotes and line breaks. Rows may end in CRLF or LF, and blank lines are skipped.
+ */
+final class CsvRowReader extends CakeRowReader {
+
+    static final List<String> COLUMNS = List.of("title", "desc", "image");
+
+    // far beyond a valid field; keeps an unclosed quote from reading the rest of the file into one field
+    static final int MAX_FIELD_LENGTH = 4 * 1024;
+
+    static final int MAX_FIELDS = 64;
+
+    private final int[] columns = new int[COLUMNS.size()];
+    private final int width;
+
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * @throws InvalidCakeException if the header row is unreadable or does not name every column
+     */
+    CsvRowReader(InputStream in) throws IOException {
+        super(in);
+        String problem = readRecord();
+        if (problem != null) {
+            throw new InvalidCakeException(String.format("Unreadable CSV header: %s", problem));
+        }
+        int widest = -1;
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            columns[i] = indexOf(COLUMNS.get(i));
+            if (columns[i] < 0) {
+                throw new InvalidCakeException(String.format("The CSV header must name the columns %s; found %s",
+                        COLUMNS, fields));
+            }
+            widest = Math.max(widest, columns[i]);
+        }
+        width = widest + 1;
+    }
+
+    private int indexOf(String column) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).trim().toLowerCase(Locale.ROOT).equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    Row next() throws IOException {
+        while (true) {
+            if (peek() == EOF) {
+                return null;
+            }
+            long lineNumber = line;
+            String problem = readRecord();
+            if (problem != null) {
+                return Row.problem(lineNumber, "%s", problem);
+            }
+            if (fields.size() == 1 && fields.getFirst().isEmpty()) {
+                continue;
+            }
+            if (fields.size() < width) {
+                return Row.problem(lineNumber, "Expected at least %d fields, found %d", width, fields.size());
+            }
+            CakeEntityDTO cake = new CakeEntityDTO();
+            cake.setTitle(fields.get(columns[0]));
+            cake.setDescription(fields.get(columns[1]));
+            cake.setImageUrl(fields.get(columns[2]));
+            return new Row(lineNumber, cake, null);
+        }
+    }
+
+    /**
+     * Reads one record into {@link #fields}, leaving the reader at the start of the next.
+     *
+     * @return why the record could not be read, or null if it could; the rest of its line has then been skipped
+     */
+    private String readRecord() throws IOException {
+        fields.clear();
+        while (true) {
+            field.setLength(0);
+            int c;
+            if (peek() == '"') {
+                read();
+                while (true) {
+                    c = read();
+                    if (c == EOF) {
+                        return "Quoted field is not closed";
+                    }
+                    if (c == '"') {
+                        if (peek() != '"') {
+                            break;
+                        }
+                        read();
+                    }
+                    if (field.length() == MAX_FIELD_LENGTH) {
+                        skipLine();
+                        return String.format("Field is longer than %d characters", MAX_FIELD_LENGTH);
+                    }
+                    field.append((char) c);
+                }
+                c = read();
+                if (c == '\r' && peek() == '\n') {
+                    c = read();
+                }
+                if (c != ',' && c != '\n' && c != EOF) {
+                    skipLine();
+                    return "Unexpected character after a quoted field";
+                }
+            } else {
+                c = read();
+                while (c != ',' && c != '\n' && c != EOF) {
+                    if (c == '\r' && peek() == '\n') {
+                        c = read();
+                        break;
+                    }
+                    if (field.length() == MAX_FIELD_LENGTH) {
+                        skipLine();
+                        return String.format("Field is longer than %d characters", MAX_FIELD_LENGTH);
+                    }
+                    field.append((char) c);
+                    c = read();
+                }
+            }
+            if (fields.size() == MAX_FIELDS) {
+                if (c == ',') {
+                    skipLine();
+                }
+                return String.format("Row has more than %d fields", MAX_FIELDS);
+            }
+            fields.add(field.toString());
+            if (c != ',') {
+                return null;
+            }
+        }
+    }
+}
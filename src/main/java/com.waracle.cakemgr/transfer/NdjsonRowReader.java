@@ -0,0 +1,75 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.entity.CakeEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * One cake per line as a JSON object with {@code title}, {@code desc} and {@code image}, the shape
+ * {@code exportCakes} writes; other fields, such as the exported {@code cakeId}, are ignored. Blank lines are
+ * skipped. Each line gets its own streaming parser, so a malformed line is reported without losing the next.
+ */
+final class NdjsonRowReader extends CakeRowReader {
+
+    // far beyond a valid cake, whose three fields hold at most 500 characters between them
+    static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final StringBuilder text = new StringBuilder();
+
+    NdjsonRowReader(InputStream in, ObjectMapper objectMapper) {
+        super(in);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    Row next() throws IOException {
+        while (true) {
+            long lineNumber = line;
+            text.setLength(0);
+            int c = read();
+            if (c == EOF) {
+                return null;
+            }
+            while (c != EOF && c != '\n') {
+                if (text.length() == MAX_LINE_LENGTH) {
+                    skipLine();
+                    return Row.problem(lineNumber, "Line is longer than %d characters", MAX_LINE_LENGTH);
+                }
+                text.append((char) c);
+                c = read();
+            }
+            if (!text.isEmpty() && text.charAt(text.length() - 1) == '\r') {
+                text.setLength(text.length() - 1);
+            }
+            if (!text.toString().isBlank()) {
+                return parse(lineNumber);
+            }
+        }
+    }
+
+    private Row parse(long lineNumber) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(text.toString())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Row.problem(lineNumber, "Expected a JSON object");
+            }
+            CakeEntity cake = objectMapper.readValue(parser, CakeEntity.class);
+            if (parser.nextToken() != null) {
+                return Row.problem(lineNumber, "Expected one JSON object, found more after it");
+            }
+            CakeEntityDTO dto = new CakeEntityDTO();
+            dto.setTitle(cake.getTitle());
+            dto.setDescription(cake.getDesc());
+            dto.setImageUrl(cake.getImage());
+            return new Row(lineNumber, dto, null);
+        } catch (JsonProcessingException ex) {
+            return Row.problem(lineNumber, "Invalid JSON: %s", ex.getOriginalMessage());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+-- The schema Hibernate generated from the entities before migrations were introduced.
+
+-- pooled: one NEXT VALUE reserves a block of 50 ids (CakeEntity.ID_ALLOCATION_SIZE)
+CREATE SEQUENCE CAKE_SEQ START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE CAKE (
+    ID          INTEGER      NOT NULL,
+    VERSION     BIGINT       NOT NULL,
+    DESCRIPTION VARCHAR(100) NOT NULL,
+    TITLE       VARCHAR(100) NOT NULL UNIQUE,
+    IMAGE       VARCHAR(300) NOT NULL,
+    PRIMARY KEY (ID)
+);
+
+CREATE TABLE EMPLOYEE (
+    ID         INTEGER GENERATED BY DEFAULT AS IDENTITY,
+    USERNAME   VARCHAR(50)  NOT NULL UNIQUE,
+    EMAIL      VARCHAR(100) NOT NULL UNIQUE,
+    FIRST_NAME VARCHAR(100) NOT NULL,
+    LAST_NAME  VARCHAR(300) NOT NULL,
+    ROLE       ENUM ('CHEF', 'USER'),
+    PRIMARY KEY (ID)
+);
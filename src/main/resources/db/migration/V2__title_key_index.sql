@@ -0,0 +1,8 @@
+-- Case-insensitive title lookups. H2 cannot index an expression, so the lower-cased title is kept in a generated
+-- column that the database maintains on every insert and update, and that column is indexed.
+ALTER TABLE CAKE ADD COLUMN TITLE_KEY VARCHAR(100) GENERATED ALWAYS AS (LOWER(TITLE));
+
+CREATE INDEX CAKE_TITLE_KEY_IDX ON CAKE (TITLE_KEY);
+
+-- Exact lookups need nothing new: the UNIQUE constraints on CAKE.TITLE and EMPLOYEE.USERNAME each come with their
+-- own index, which is what findIdsByTitle and the login lookup use.
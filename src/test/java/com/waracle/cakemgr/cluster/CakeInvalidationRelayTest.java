@@ -0,0 +1,233 @@
+package com.waracle.cakemgr.cluster;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class CakeInvalidationRelayTest {
+
+    @Mock
+    private CakeServiceImpl cakeServiceA;
+
+    @Mock
+    private CakeServiceImpl cakeServiceB;
+
+    @Mock
+    private CakeJdbcRepository repository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisherB;
+
+    private final LocalInvalidationBus.Hub hub = new LocalInvalidationBus.Hub();
+    private CakeInvalidationRelay nodeA;
+    private CakeInvalidationRelay nodeB;
+    // publishes straight onto the hub as a third node, for messages a relay would never send itself
+    private LocalInvalidationBus wire;
+    private SimpleMeterRegistry meterRegistryB;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 3L);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistryB = new SimpleMeterRegistry();
+        nodeA = new CakeInvalidationRelay(new LocalInvalidationBus(hub), cakeServiceA, repository,
+                mock(ApplicationEventPublisher.class), properties("a"), new SimpleMeterRegistry());
+        nodeB = new CakeInvalidationRelay(new LocalInvalidationBus(hub), cakeServiceB, repository,
+                eventPublisherB, properties("b"), meterRegistryB);
+        wire = new LocalInvalidationBus(hub);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    private static CakeManagerProperties properties(String nodeId) {
+        CakeManagerProperties properties = new CakeManagerProperties();
+        properties.getCluster().setNodeId(nodeId);
+        properties.getCluster().setHeartbeatInterval(Duration.ofHours(1));
+        properties.getCluster().setSettleTimeout(Duration.ofSeconds(2));
+        return properties;
+    }
+
+    private static CakeInvalidation changes(long sequence, CakeInvalidation.Entry... entries) {
+        return new CakeInvalidation("c", sequence, CakeInvalidation.Kind.CHANGES, List.of(entries));
+    }
+
+    @Test
+    void change_isReadBackFromTheDatabaseAndPublishedOnTheOtherNode() {
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, lemon));
+
+        nodeA.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+
+        verify(cakeServiceB, timeout(1000)).publishExternalChanges(
+                List.of(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon)));
+        verify(cakeServiceA, after(100).never()).publishExternalChanges(any());
+    }
+
+    @Test
+    void appliedChange_isNotSentBackOut() {
+        // as the real service does: the changes it publishes reach the relay's own listener
+        doAnswer(invocation -> {
+            nodeB.onCakesChanged(new CakeBatchChangeEvent(invocation.getArgument(0)));
+            return null;
+        }).when(cakeServiceB).publishExternalChanges(any());
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, lemon));
+
+        nodeA.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+
+        verify(cakeServiceB, timeout(1000)).publishExternalChanges(any());
+        verify(repository, after(200).times(1)).findByIds(anyCollection());
+        verify(cakeServiceA, never()).publishExternalChanges(any());
+    }
+
+    @Test
+    void restartedNode_isNotMistakenForItsEarlierSelf() {
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, lemon));
+        nodeA.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        nodeA.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        verify(cakeServiceB, timeout(1000).times(2)).publishExternalChanges(any());
+
+        // same node id, numbering from 1 again
+        nodeA.shutdown();
+        nodeA = new CakeInvalidationRelay(new LocalInvalidationBus(hub), cakeServiceA, repository,
+                mock(ApplicationEventPublisher.class), properties("a"), new SimpleMeterRegistry());
+        nodeA.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+
+        verify(cakeServiceB, timeout(1000).times(3)).publishExternalChanges(any());
+    }
+
+    @Test
+    void repeatedMessage_isAppliedOnce() {
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, lemon));
+        CakeInvalidation message = changes(1, new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 1, 3));
+
+        wire.publish(message);
+        wire.publish(message);
+
+        verify(cakeServiceB, after(300).times(1)).publishExternalChanges(any());
+        assertEquals(1.0, meterRegistryB.get(CakeInvalidationRelay.RECEIVED).tag("result", "duplicate").counter().count());
+    }
+
+    @Test
+    void changeNotYetInTheDatabase_isReadAgainUntilItIs() {
+        CakeEntity older = new CakeEntity(1, "Lemon cheesecake", "Before the change", "img", 2L);
+        // the sender's write-behind queue has not flushed the change on the first two reads
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, older), Map.of(1, older), Map.of(1, lemon));
+
+        wire.publish(changes(1, new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 1, 3)));
+
+        verify(cakeServiceB, timeout(1000)).publishExternalChanges(
+                List.of(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon)));
+        verify(cakeServiceB, times(1)).publishExternalChanges(any());
+    }
+
+    @Test
+    void deletion_isPublishedOnceTheRowIsGone() {
+        when(repository.findByIds(List.of(1))).thenReturn(Map.of(1, lemon), Map.of());
+
+        wire.publish(changes(1, new CakeInvalidation.Entry(CakeChangeEvent.Type.DELETED, 1, 0)));
+
+        verify(cakeServiceB, timeout(1000)).publishExternalChanges(
+                List.of(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, null)));
+    }
+
+    @Test
+    void cakeReadBackOlderThanThisNodesOwnChange_isSkipped() {
+        CakeEntity older = new CakeEntity(1, "Lemon cheesecake", "Before the change", "img", 2L);
+        CakeEntity carrot = new CakeEntity(5, "Carrot cake", "Bugs bunnys favourite", "img", 0L);
+        when(repository.findByIds(any())).thenReturn(Map.of(1, older, 5, carrot));
+        // this node has already published a later version of one cake, and deleted the other
+        nodeB.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        nodeB.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, carrot));
+
+        wire.publish(changes(1,
+                new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 1, 2),
+                new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 5, 0)));
+
+        verify(cakeServiceB, after(300).never()).publishExternalChanges(any());
+    }
+
+    @Test
+    void cakeAddedAndDeletedAgain_isNotPublished() {
+        when(repository.findByIds(List.of(7))).thenReturn(Map.of());
+
+        wire.publish(changes(1,
+                new CakeInvalidation.Entry(CakeChangeEvent.Type.ADDED, 7, 0),
+                new CakeInvalidation.Entry(CakeChangeEvent.Type.DELETED, 7, 0)));
+
+        verify(cakeServiceB, timeout(1000)).publishExternalChanges(
+                List.of(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 7, null)));
+    }
+
+    @Test
+    void gapInSequence_reloadsTheCatalogue() {
+        when(repository.findByIds(any())).thenReturn(Map.of(1, lemon));
+
+        wire.publish(changes(1, new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 1, 3)));
+        verify(eventPublisherB, after(100).never()).publishEvent(any(CakeSeedCompletedEvent.class));
+
+        wire.publish(changes(3, new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, 1, 3)));
+        verify(eventPublisherB, timeout(1000)).publishEvent(any(CakeSeedCompletedEvent.class));
+        assertEquals(1.0, meterRegistryB.get(CakeInvalidationRelay.RESYNCS).tag("cause", "missed").counter().count());
+    }
+
+    @Test
+    void heartbeatAheadOfLastMessage_reloadsTheCatalogue() {
+        wire.publish(new CakeInvalidation("c", 4, CakeInvalidation.Kind.HEARTBEAT, List.of()));
+        wire.publish(new CakeInvalidation("c", 4, CakeInvalidation.Kind.HEARTBEAT, List.of()));
+        verify(eventPublisherB, after(100).never()).publishEvent(any(CakeSeedCompletedEvent.class));
+
+        // message 5 was lost
+        wire.publish(new CakeInvalidation("c", 5, CakeInvalidation.Kind.HEARTBEAT, List.of()));
+        verify(eventPublisherB, timeout(1000)).publishEvent(any(CakeSeedCompletedEvent.class));
+    }
+
+    @Test
+    void nodeIdTooLongForTheRandomSuffix_isRefusedAtStartup() {
+        CakeManagerProperties tooLong = properties("n".repeat(CakeInvalidationRelay.MAX_NODE_ID_BYTES + 1));
+        LocalInvalidationBus bus = new LocalInvalidationBus(hub);
+
+        assertThrows(IllegalArgumentException.class, () -> new CakeInvalidationRelay(bus, cakeServiceA, repository,
+                mock(ApplicationEventPublisher.class), tooLong, new SimpleMeterRegistry()));
+        // the longest allowed id still fits a datagram once the suffix is added
+        new CakeInvalidationRelay(bus, cakeServiceA, repository, mock(ApplicationEventPublisher.class),
+                properties("n".repeat(CakeInvalidationRelay.MAX_NODE_ID_BYTES)), new SimpleMeterRegistry()).shutdown();
+    }
+
+    @Test
+    void largeBatch_isSentAsOneResync() {
+        List<CakeChangeEvent> changes = IntStream.rangeClosed(1, 1001)
+                .mapToObj(id -> new CakeChangeEvent(CakeChangeEvent.Type.DELETED, id, null))
+                .toList();
+
+        nodeA.onCakesChanged(new CakeBatchChangeEvent(changes));
+
+        verify(eventPublisherB, timeout(1000)).publishEvent(any(CakeSeedCompletedEvent.class));
+        verify(repository, never()).findByIds(any());
+    }
+}
@@ -0,0 +1,87 @@
+package com.waracle.cakemgr.cluster;
+
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UdpInvalidationBusTest {
+
+    private UdpInvalidationBus receiver;
+    private UdpInvalidationBus sender;
+    private final BlockingQueue<CakeInvalidation> received = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // port 0: any free port on the loopback address; both are bound first, so each can list the other
+        DatagramChannel receiverChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel senderChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        receiver = new UdpInvalidationBus(receiverChannel, List.of((InetSocketAddress) senderChannel.getLocalAddress()));
+        receiver.subscribe(received::add);
+        sender = new UdpInvalidationBus(senderChannel, List.of(receiver.localAddress()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    void publish_deliversTheMessageToEachPeer() throws InterruptedException {
+        List<CakeInvalidation.Entry> entries = IntStream.rangeClosed(1, CakeInvalidation.MAX_ENTRIES)
+                .mapToObj(id -> new CakeInvalidation.Entry(CakeChangeEvent.Type.UPDATED, id, id * 10L))
+                .toList();
+        CakeInvalidation message = new CakeInvalidation("node-a", 7, CakeInvalidation.Kind.CHANGES, entries);
+
+        sender.publish(message);
+
+        assertEquals(message, received.poll(5, TimeUnit.SECONDS));
+        assertTrue(UdpInvalidationBus.encode(message).remaining() <= UdpInvalidationBus.MAX_DATAGRAM);
+    }
+
+    @Test
+    void strayDatagram_isIgnored() throws IOException, InterruptedException {
+        try (DatagramChannel stray = DatagramChannel.open()) {
+            stray.send(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)), receiver.localAddress());
+        }
+        CakeInvalidation heartbeat = new CakeInvalidation("node-a", 7, CakeInvalidation.Kind.HEARTBEAT, List.of());
+        sender.publish(heartbeat);
+
+        assertEquals(heartbeat, received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void messageFromAnAddressThatIsNotAPeer_isIgnored() throws IOException, InterruptedException {
+        CakeInvalidation forged = new CakeInvalidation("node-x", 1, CakeInvalidation.Kind.RESYNC, List.of());
+        try (DatagramChannel stranger = DatagramChannel.open()) {
+            stranger.send(UdpInvalidationBus.encode(forged), receiver.localAddress());
+        }
+        CakeInvalidation heartbeat = new CakeInvalidation("node-a", 7, CakeInvalidation.Kind.HEARTBEAT, List.of());
+        sender.publish(heartbeat);
+
+        assertEquals(heartbeat, received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void encode_refusesAnOverlongNodeId() {
+        CakeInvalidation message = new CakeInvalidation("n".repeat(65), 1, CakeInvalidation.Kind.HEARTBEAT, List.of());
+
+        assertThrows(IllegalArgumentException.class, () -> UdpInvalidationBus.encode(message));
+    }
+}
@@ -0,0 +1,191 @@
+package com.waracle.cakemgr.feed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.FeedFullException;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CakeChangeFeedTest {
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static final String HEARTBEAT = ":keep-alive\n\n";
+
+    private CakeChangeFeed feed;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 3L);
+    private final CakeEntity carrot = new CakeEntity(5, "Carrot cake", "Bugs bunnys favourite", "img", 0L);
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    void subscribe_streamsChangesPublishedAfterIt() throws InterruptedException {
+        start();
+        feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        RecordingEmitter client = subscribe(null);
+
+        feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+
+        String written = client.next();
+        assertTrue(written.startsWith("id:" + feed.eventId(2) + "\nevent:cake\ndata:{\"type\":\"ADDED\",\"cakeId\":5,\"version\":0,"), written);
+        assertTrue(written.endsWith("}\n\n"), written);
+    }
+
+    @Test
+    void subscribe_resumesAfterLastEventId_inOneWrite() throws InterruptedException {
+        start();
+        feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+        feed.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon),
+                new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, null))));
+
+        String written = subscribe(feed.eventId(1)).next();
+
+        assertFalse(written.contains("id:" + feed.eventId(1) + "\n"), written);
+        assertTrue(written.contains("id:" + feed.eventId(2) + "\nevent:cake\ndata:{\"type\":\"UPDATED\",\"cakeId\":1,\"version\":3,"), written);
+        assertTrue(written.contains("id:" + feed.eventId(3) + "\nevent:cake\ndata:{\"type\":\"DELETED\",\"cakeId\":5,\"version\":null,\"cake\":null}\n\n"), written);
+    }
+
+    @Test
+    void subscribe_sendsReset_whenLastEventIdHasLeftTheBuffer() throws InterruptedException {
+        properties.getFeed().setBufferSize(2);
+        start();
+        for (int i = 0; i < 5; i++) {
+            feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        }
+
+        assertEquals("id:" + feed.eventId(5) + "\nevent:reset\ndata:{\"type\":\"RESET\",\"cakeId\":null,\"version\":null,\"cake\":null}\n\n",
+                subscribe(feed.eventId(1)).next());
+        assertEquals(1, meterRegistry.get(CakeChangeFeed.RESETS).counter().count());
+    }
+
+    @Test
+    void subscribe_sendsReset_forLastEventIdThisFeedNeverHandedOut() throws InterruptedException {
+        start();
+        feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+
+        assertTrue(subscribe("999").next().startsWith("id:" + feed.eventId(1) + "\nevent:reset\n"));
+    }
+
+    @Test
+    void subscribe_sendsReset_forLastEventIdFromAnotherFeedInstance() throws InterruptedException {
+        start();
+        CakeChangeFeed otherNode = new CakeChangeFeed(new ObjectMapper(), properties, new SimpleMeterRegistry());
+        for (int i = 0; i < 3; i++) {
+            feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        }
+
+        // the same sequence number, handed out by another node or before a restart
+        String written = subscribe(otherNode.eventId(1)).next();
+
+        assertTrue(written.startsWith("id:" + feed.eventId(3) + "\nevent:reset\n"), written);
+        assertNotEquals(feed.eventId(1), otherNode.eventId(1));
+        otherNode.shutdown();
+    }
+
+    @Test
+    void onSeedCompleted_tellsFollowersToStartOver() throws InterruptedException {
+        start();
+        RecordingEmitter client = subscribe(null);
+
+        feed.onSeedCompleted(new CakeSeedCompletedEvent("classpath:cakes.json", new BulkLoadResult(20, 0, 0, Duration.ZERO)));
+
+        assertTrue(client.next().startsWith("id:" + feed.eventId(1) + "\nevent:reset\n"));
+    }
+
+    @Test
+    void quietStream_opensWithHeartbeat_andKeepsSendingThem() throws InterruptedException {
+        properties.getFeed().setHeartbeatInterval(Duration.ofMillis(20));
+        start();
+        RecordingEmitter client = subscribe(null);
+
+        assertEquals(HEARTBEAT, client.nextWrite());
+        assertEquals(HEARTBEAT, client.nextWrite());
+    }
+
+    @Test
+    void subscribe_refusesClientsBeyondLimit_untilOneGoesAway() throws InterruptedException {
+        properties.getFeed().setMaxSubscribers(1);
+        start();
+        RecordingEmitter gone = subscribe(null);
+        assertThrows(FeedFullException.class, () -> subscribe(null));
+
+        // the next write to a disconnected client fails and frees its place
+        gone.disconnect();
+        feed.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get(CakeChangeFeed.SUBSCRIBERS).gauge().value() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(subscribe(feed.eventId(0)).next().startsWith("id:" + feed.eventId(1) + "\nevent:cake\n"));
+    }
+
+    private void start() {
+        feed = new CakeChangeFeed(new ObjectMapper(), properties, meterRegistry);
+    }
+
+    private RecordingEmitter subscribe(String lastEventId) {
+        RecordingEmitter emitter = new RecordingEmitter();
+        feed.subscribe(lastEventId, emitter);
+        return emitter;
+    }
+
+    /**
+     * Keeps what the feed writes instead of sending it to a response.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<String> writes = new LinkedBlockingQueue<>();
+        private volatile boolean disconnected;
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            if (disconnected) {
+                throw new IOException("Broken pipe");
+            }
+            for (DataWithMediaType item : items) {
+                writes.add(item.getData().toString());
+            }
+        }
+
+        String next() throws InterruptedException {
+            String written;
+            do {
+                written = nextWrite();
+            } while (written.equals(HEARTBEAT));
+            return written;
+        }
+
+        String nextWrite() throws InterruptedException {
+            String written = writes.poll(5, TimeUnit.SECONDS);
+            assertNotNull(written, "nothing written to the client");
+            return written;
+        }
+
+        void disconnect() {
+            disconnected = true;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.waracle.cakemgr.image;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.ImageMetadata;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCheckServiceTest {
+
+    @Mock
+    private CakeServiceImpl cakeService;
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ImageCheckService imageCheckService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/ok.jpg", exchange -> respond(exchange, 200, "image/jpeg", 1234));
+        server.createContext("/missing.jpg", exchange -> respond(exchange, 404, "text/html", 10));
+        server.createContext("/page.html", exchange -> respond(exchange, 200, "text/html", 10));
+        server.createContext("/no-head.png", exchange -> {
+            requests.incrementAndGet();
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+            } else {
+                assertEquals("bytes=0-0", exchange.getRequestHeaders().getFirst("Range"));
+                exchange.getResponseHeaders().set("Content-Type", "image/png");
+                exchange.getResponseHeaders().set("Content-Range", "bytes 0-0/5000");
+                exchange.sendResponseHeaders(206, 1);
+                exchange.getResponseBody().write(0);
+            }
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        properties.getImages().setAllowPrivateAddresses(true);
+        properties.getImages().setRequestTimeout(Duration.ofSeconds(2));
+        imageCheckService = new ImageCheckService(cakeService, properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageCheckService.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void check_recordsStatusTypeAndSizeFromHead() {
+        ImageMetadata image = imageCheckService.check(baseUrl + "/ok.jpg", false).join();
+
+        assertEquals(200, image.status());
+        assertEquals("image/jpeg", image.contentType());
+        assertEquals(1234L, image.contentLength());
+        assertFalse(image.isBroken());
+        assertEquals(1, meterRegistry.get(ImageCheckService.CHECKS).tag("result", "working").counter().count());
+    }
+
+    @Test
+    void check_fallsBackToRangedGet_whenHeadIsRefused() {
+        ImageMetadata image = imageCheckService.check(baseUrl + "/no-head.png", false).join();
+
+        assertEquals(206, image.status());
+        assertEquals("image/png", image.contentType());
+        assertEquals(5000L, image.contentLength());
+        assertFalse(image.isBroken());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void check_reportsMissingImagesAndPagesThatAreNotImages() {
+        assertEquals("HTTP 404", imageCheckService.check(baseUrl + "/missing.jpg", false).join().problem());
+        assertEquals("not an image (text/html)", imageCheckService.check(baseUrl + "/page.html", false).join().problem());
+        assertEquals("not an http(s) URL", imageCheckService.check("img", false).join().problem());
+        assertEquals(3, meterRegistry.get(ImageCheckService.CHECKS).tag("result", "broken").counter().count());
+    }
+
+    @Test
+    void check_refusesPrivateAddressesUnlessAllowed() {
+        properties.getImages().setAllowPrivateAddresses(false);
+        ImageCheckService strict = new ImageCheckService(cakeService, properties, new SimpleMeterRegistry());
+
+        assertEquals("host is on a private network", strict.check(baseUrl + "/ok.jpg", false).join().problem());
+        assertEquals(0, requests.get());
+        strict.shutdown();
+    }
+
+    @Test
+    void isPrivate_coversUniqueLocalIpv6AndCarrierGradeNat() throws UnknownHostException {
+        assertTrue(imageCheckService.isPrivate("fd00:ec2::254"));
+        assertTrue(imageCheckService.isPrivate("fc00::1"));
+        assertTrue(imageCheckService.isPrivate("100.64.0.1"));
+        assertTrue(imageCheckService.isPrivate("100.127.255.254"));
+
+        assertFalse(imageCheckService.isPrivate("fe00::1"));
+        assertFalse(imageCheckService.isPrivate("2606:4700:4700::1111"));
+        assertFalse(imageCheckService.isPrivate("100.63.255.255"));
+        assertFalse(imageCheckService.isPrivate("100.128.0.1"));
+    }
+
+    @Test
+    void check_followsRedirectsToAnImage() {
+        server.createContext("/moved.jpg", exchange -> redirect(exchange, "/ok.jpg"));
+
+        ImageMetadata image = imageCheckService.check(baseUrl + "/moved.jpg", false).join();
+
+        assertEquals(200, image.status());
+        assertEquals(1234L, image.contentLength());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void check_refusesRedirectsOntoAPrivateNetwork() {
+        properties.getImages().setAllowPrivateAddresses(false);
+        // the stub stands in for a public host when reached by its address, and is private again as localhost
+        ImageCheckService strict = new ImageCheckService(cakeService, properties, new SimpleMeterRegistry()) {
+            @Override
+            boolean isPrivate(String host) throws UnknownHostException {
+                return !host.equals("127.0.0.1") && super.isPrivate(host);
+            }
+        };
+        server.createContext("/to-loopback.jpg", exchange -> redirect(exchange, baseUrl + "/ok.jpg"));
+        server.createContext("/loop.jpg", exchange -> redirect(exchange, "/loop.jpg"));
+        String publicUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        ImageMetadata image = strict.check(publicUrl + "/to-loopback.jpg", false).join();
+
+        assertTrue(image.isBroken());
+        assertEquals("redirected: host is on a private network", image.problem());
+        assertEquals(0, requests.get());
+        assertEquals("more than 5 redirects", strict.check(publicUrl + "/loop.jpg", false).join().problem());
+        strict.shutdown();
+    }
+
+    @Test
+    void check_fetchesEachUrlOnce() {
+        String url = baseUrl + "/ok.jpg";
+        ImageMetadata first = imageCheckService.check(url, false).join();
+
+        assertSame(first, imageCheckService.check(url, false).join());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void check_timesOutSlowHosts() {
+        properties.getImages().setRequestTimeout(Duration.ofMillis(200));
+        ImageCheckService impatient = new ImageCheckService(cakeService, properties, new SimpleMeterRegistry());
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow.jpg", exchange -> {
+            await(release);
+            respond(exchange, 200, "image/jpeg", 1);
+        });
+
+        assertEquals("timed out", impatient.check(baseUrl + "/slow.jpg", false).join().problem());
+        release.countDown();
+        impatient.shutdown();
+    }
+
+    @Test
+    void check_limitsRequestsInFlightToOneHost() {
+        properties.getImages().setPerHostConcurrency(2);
+        ImageCheckService limited = new ImageCheckService(cakeService, properties, new SimpleMeterRegistry());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        server.createContext("/busy", exchange -> {
+            mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(50);
+            inFlight.decrementAndGet();
+            respond(exchange, 200, "image/gif", 1);
+        });
+
+        List<CompletableFuture<ImageMetadata>> checks = IntStream.range(0, 8)
+                .mapToObj(i -> limited.check(baseUrl + "/busy/" + i + ".gif", false))
+                .toList();
+        checks.forEach(CompletableFuture::join);
+
+        assertEquals(2, mostInFlight.get());
+        // a host is only tracked while it has checks running or waiting
+        assertEquals(0, limited.hostsInFlight());
+        limited.shutdown();
+    }
+
+    @Test
+    void check_skipsRatherThanQueues_whenQueueIsFull() {
+        properties.getImages().setMaxQueued(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ImageCheckService small = new ImageCheckService(cakeService, properties, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/held.jpg", exchange -> {
+            await(release);
+            respond(exchange, 200, "image/jpeg", 1);
+        });
+
+        CompletableFuture<ImageMetadata> held = small.check(baseUrl + "/held.jpg", false);
+        CompletableFuture<ImageMetadata> skipped = small.check(baseUrl + "/ok.jpg", false);
+
+        assertTrue(skipped.isCompletedExceptionally());
+        assertEquals(1, registry.get(ImageCheckService.CHECKS).tag("result", "skipped").counter().count());
+        release.countDown();
+        assertFalse(held.join().isBroken());
+        // the skipped URL was not cached as a failure, so it is checked once there is room
+        assertFalse(small.check(baseUrl + "/ok.jpg", false).join().isBroken());
+        small.shutdown();
+    }
+
+    @Test
+    void onCakeChanged_checksNewImageWithoutBlocking_andLookupReportsIt() throws Exception {
+        String url = baseUrl + "/ok.jpg";
+        CakeEntity cake = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", url);
+
+        imageCheckService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 1, cake));
+        imageCheckService.check(url, false).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1234L, imageCheckService.lookup(url).orElseThrow().contentLength());
+        assertEquals(1, requests.get());
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, long size) throws IOException {
+        requests.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private static void redirect(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
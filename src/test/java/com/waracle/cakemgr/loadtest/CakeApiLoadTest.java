@@ -0,0 +1,209 @@
+package com.waracle.cakemgr.loadtest;
+
+import com.waracle.cakemgr.CakeManagerApplication;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares throughput and p99 latency of the read and write endpoints with platform and with virtual request
+ * threads, the virtual run under the {@code virtual} profile as shipped. Each mode boots the embedded application on
+ * its own in-memory H2 database with 1000 cakes and the read-through cache disabled, so every request does blocking
+ * JDBC work. Client and server share this JVM, so the
+ * numbers are for comparing the two modes on one machine rather than absolute capacity.
+ * <p>
+ * Only runs with {@code mvn -Pload-test test}; results are logged and written to target/load-test-results.csv.
+ */
+@Tag("load")
+class CakeApiLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CakeApiLoadTest.class);
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 400);
+    private static final Duration DURATION = Duration.parse(System.getProperty("loadtest.duration", "PT15S"));
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final int CAKES = 1000;
+
+    private record Result(String mode, String scenario, long requests, long errors, long conflicts, double throughput,
+                          double p50Millis, double p99Millis) {}
+
+    private record Samples(List<long[]> latencies, long errors, long conflicts) {}
+
+    private interface Call {
+        HttpRequest request(String baseUrl, int client, long iteration);
+    }
+
+    @Test
+    void compareThreadModes() throws Exception {
+        Map<String, Call> scenarios = new LinkedHashMap<>();
+        scenarios.put("GET getAllCakes", (url, client, i) -> get(url + "/rest/cakes/getAllCakes"));
+        scenarios.put("GET getCakeById", (url, client, i) ->
+                get(url + "/rest/cakes/getCakeById/" + ThreadLocalRandom.current().nextInt(1, CAKES + 1)));
+        scenarios.put("POST addNewCake", (url, client, i) -> HttpRequest.newBuilder(URI.create(url + "/rest/cakes/addNewCake"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(String.format(
+                        "{\"title\":\"load %d-%d-%d\",\"description\":\"load test\",\"imageUrl\":\"img\"}",
+                        System.nanoTime(), client, i)))
+                .build());
+        scenarios.put("PUT updateCake", (url, client, i) -> HttpRequest.newBuilder(URI.create(url + "/rest/cakes/updateCake/"
+                        + ThreadLocalRandom.current().nextInt(1, CAKES + 1) + "?description=updated-" + i))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build());
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : List.of("platform", "virtual")) {
+            try (ConfigurableApplicationContext context = start(mode)) {
+                String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+                HttpClient client = login(baseUrl);
+                for (Map.Entry<String, Call> scenario : scenarios.entrySet()) {
+                    run(client, baseUrl, scenario.getValue(), WARMUP);
+                    results.add(summarise(mode, scenario.getKey(), run(client, baseUrl, scenario.getValue(), DURATION)));
+                }
+            }
+        }
+
+        report(results);
+        results.forEach(result -> assertEquals(0, result.errors(), result.mode() + " " + result.scenario() + " had errors"));
+    }
+
+    private static ConfigurableApplicationContext start(String mode) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(CakeManagerApplication.class);
+        if (mode.equals("virtual")) {
+            // the profile as shipped, pool timeout included, rather than only the threads it switches on
+            builder.profiles("virtual");
+        }
+        // as arguments rather than default properties, which application.properties would override
+        ConfigurableApplicationContext context = builder
+                .logStartupInfo(false)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--cakemgr.seed.enabled=false",
+                        "--cakemgr.cache.enabled=false",
+                        "--cakemgr.response-cache.enabled=false",
+                        // every client logs in as the same chef; the limits would measure themselves, not the threads
+                        "--cakemgr.rate-limit.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.waracle.cakemgr.loadtest=INFO");
+        CakeJdbcRepository repository = context.getBean(CakeJdbcRepository.class);
+        List<CakeEntity> cakes = new ArrayList<>();
+        for (int i = 0; i < CAKES; i++) {
+            cakes.add(new CakeEntity(null, "Cake " + i, "Description of cake " + i, "https://images.example.com/" + i + ".jpg"));
+        }
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status -> repository.batchInsert(cakes));
+        return context;
+    }
+
+    private static HttpClient login(String baseUrl) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("username=headchef&password=waracle"))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertEquals(302, response.statusCode());
+        return client;
+    }
+
+    private static Samples run(HttpClient client, String baseUrl, Call call, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong conflicts = new AtomicLong();
+        List<long[]> perClient = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                int clientId = c;
+                clients.execute(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    for (long i = 0; System.nanoTime() < deadline; i++) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(call.request(baseUrl, clientId, i),
+                                    HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() == 409) {
+                                // a cake so contended that an update lost to other clients on every attempt
+                                conflicts.incrementAndGet();
+                            } else if (response.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    perClient.add(Arrays.copyOf(latencies, count));
+                });
+            }
+        }
+        return new Samples(perClient, errors.get(), conflicts.get());
+    }
+
+    private static Result summarise(String mode, String scenario, Samples samples) {
+        long[] all = samples.latencies().stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = DURATION.toNanos() / 1e9;
+        return new Result(mode, scenario, all.length, samples.errors(), samples.conflicts(), all.length / seconds,
+                percentile(all, 0.50), percentile(all, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+    }
+
+    private static void report(List<Result> results) throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%nLoad test: %d concurrent clients, %ds per scenario%n",
+                CLIENTS, DURATION.toSeconds()));
+        table.append(String.format("%-9s %-17s %10s %7s %9s %10s %9s %9s%n",
+                "mode", "scenario", "requests", "errors", "conflicts", "req/s", "p50 ms", "p99 ms"));
+        StringBuilder csv = new StringBuilder("mode,scenario,clients,requests,errors,conflicts,throughput_rps,p50_ms,p99_ms\n");
+        for (Result r : results) {
+            table.append(String.format("%-9s %-17s %10d %7d %9d %10.0f %9.2f %9.2f%n", r.mode(), r.scenario(),
+                    r.requests(), r.errors(), r.conflicts(), r.throughput(), r.p50Millis(), r.p99Millis()));
+            csv.append(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%.1f,%.3f,%.3f%n", r.mode(), r.scenario(), CLIENTS,
+                    r.requests(), r.errors(), r.conflicts(), r.throughput(), r.p50Millis(), r.p99Millis()));
+        }
+        LOG.info("{}", table);
+        Files.writeString(Path.of("target", "load-test-results.csv"), csv);
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+}
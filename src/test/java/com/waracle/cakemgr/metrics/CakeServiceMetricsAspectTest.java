@@ -0,0 +1,78 @@
+package com.waracle.cakemgr.metrics;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.exception.BatchTooLargeException;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.service.CakeService;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import com.waracle.cakemgr.service.SnapshotCakeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeServiceMetricsAspectTest {
+
+    @Mock
+    private CakeServiceImpl delegate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CakeService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        AspectJProxyFactory factory = new AspectJProxyFactory(new SnapshotCakeService(delegate, new CakeManagerProperties(), Optional.empty()));
+        factory.addAspect(new CakeServiceMetricsAspect(meterRegistry));
+        service = factory.getProxy();
+    }
+
+    @Test
+    void time_recordsEachCallByOperationLayerAndOutcome() {
+        assertEquals(List.of(), service.retrieveAllCakes());
+        assertThrows(RecordNotFoundException.class, () -> service.retrieveCakeById(1));
+        assertThrows(RecordNotFoundException.class, () -> service.retrieveCakeById(2));
+
+        assertEquals(1, count("retrieveAllCakes", "success"));
+        assertEquals(2, count("retrieveCakeById", "not-found"));
+    }
+
+    @Test
+    void time_recordsFailureAndRethrowsIt() throws RecordAlreadyExistsException {
+        RuntimeException failure = new IllegalStateException("database down");
+        when(delegate.addCakes(any())).thenThrow(failure);
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> service.addCakes(List.of())));
+        assertEquals(1, count("addCakes", "error"));
+    }
+
+    @Test
+    void outcome_mapsServiceExceptions() {
+        assertEquals("success", CakeServiceMetricsAspect.outcome(null));
+        assertEquals("conflict", CakeServiceMetricsAspect.outcome(new RecordAlreadyExistsException("taken")));
+        assertEquals("invalid", CakeServiceMetricsAspect.outcome(new BatchTooLargeException("too many")));
+        assertEquals("error", CakeServiceMetricsAspect.outcome(new RuntimeException()));
+    }
+
+    @Test
+    void layer_namesEachEngine() {
+        assertEquals("database", CakeServiceMetricsAspect.layer(delegate));
+        assertEquals("CakeEntity", CakeServiceMetricsAspect.layer(new CakeEntity()));
+    }
+
+    private long count(String operation, String outcome) {
+        return meterRegistry.get(CakeServiceMetricsAspect.TIMER)
+                .tags("operation", operation, "layer", "snapshot", "outcome", outcome)
+                .timer().count();
+    }
+}
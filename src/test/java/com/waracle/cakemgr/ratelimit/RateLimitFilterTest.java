@@ -0,0 +1,137 @@
+package com.waracle.cakemgr.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.security.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    private CakeManagerProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RequestRateLimiter limiter;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CakeManagerProperties();
+        properties.getRateLimit().setUser(new CakeManagerProperties.RateLimit.Limits(1, 3, 1, 1));
+        properties.getRateLimit().setChef(new CakeManagerProperties.RateLimit.Limits(1, 3, 1, 1));
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new RequestRateLimiter(properties, meterRegistry);
+        filter = new RateLimitFilter(limiter, new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void userOverTheirBurst_isRefusedWithRetryAfter_whileOtherUsersAreServed() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, perform("tester", Role.USER, "GET", "/rest/cakes/getCakeById/1").getStatus());
+        }
+
+        MockHttpServletResponse refused = perform("tester", Role.USER, "GET", "/rest/cakes/getCakeById/1");
+
+        assertEquals(429, refused.getStatus());
+        assertEquals("1", refused.getHeader("Retry-After"));
+        assertTrue(refused.getContentAsString().contains("'tester' is sending requests too quickly"));
+        assertEquals(200, perform("another", Role.USER, "GET", "/rest/cakes/getCakeById/1").getStatus());
+        assertEquals(1.0, meterRegistry.get(RequestRateLimiter.REJECTED).tag("role", "user").tag("limit", "rate")
+                .counter().count());
+    }
+
+    @Test
+    void tryAcquire_refillsAtTheConfiguredRate() {
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Duration.ZERO, limiter.tryAcquire("tester", Role.USER, now));
+        }
+        assertEquals(Duration.ofSeconds(1), limiter.tryAcquire("tester", Role.USER, now));
+
+        assertEquals(Duration.ofMillis(500), limiter.tryAcquire("tester", Role.USER, now + 500_000_000L));
+        assertEquals(Duration.ZERO, limiter.tryAcquire("tester", Role.USER, now + 1_000_000_000L));
+        // a long rest fills the bucket to its burst and no further
+        long later = now + 60_000_000_000L;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Duration.ZERO, limiter.tryAcquire("tester", Role.USER, later));
+        }
+        assertFalse(limiter.tryAcquire("tester", Role.USER, later).isZero());
+    }
+
+    @Test
+    void fullBulkhead_refusesThatRoleOnly_andIsFreedWhenTheRequestEnds() throws Exception {
+        RequestRateLimiter.Permit held = limiter.tryEnter(Role.USER, RequestRateLimiter.Kind.BULK_READ);
+        assertNotNull(held);
+
+        MockHttpServletResponse refused = perform("tester", Role.USER, "GET", "/rest/cakes/getAllCakes");
+        assertEquals(429, refused.getStatus());
+        assertEquals("1", refused.getHeader("Retry-After"));
+        assertEquals(200, perform("headchef", Role.CHEF, "GET", "/rest/cakes/getAllCakes").getStatus());
+        // other reads are not held back by the bulkhead
+        assertEquals(200, perform("tester", Role.USER, "GET", "/rest/cakes/getCakesPage").getStatus());
+
+        held.close();
+        held.close();
+        assertEquals(200, perform("another", Role.USER, "GET", "/rest/cakes/getAllCakes").getStatus());
+        assertEquals(0.0, meterRegistry.get(RequestRateLimiter.ACTIVE).tag("role", "user").tag("bulkhead", "bulk-read")
+                .gauge().value());
+    }
+
+    @Test
+    void streamedResponse_keepsItsBulkheadPlaceUntilComplete() throws Exception {
+        MockHttpServletRequest request = request("headchef", Role.CHEF, "DELETE", "/rest/cakes/deleteCakes");
+        request.setAsyncSupported(true);
+        FilterChain startsAsync = (req, res) -> req.startAsync();
+
+        filter.doFilter(request, new MockHttpServletResponse(), startsAsync);
+        assertNull(limiter.tryEnter(Role.CHEF, RequestRateLimiter.Kind.WRITE));
+
+        AsyncContext async = request.getAsyncContext();
+        ((MockAsyncContext) async).complete();
+        RequestRateLimiter.Permit permit = limiter.tryEnter(Role.CHEF, RequestRateLimiter.Kind.WRITE);
+        assertNotNull(permit);
+        permit.close();
+    }
+
+    @Test
+    void anonymousRequests_areNotLimited() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            SecurityContextHolder.getContext().setAuthentication(new AnonymousAuthenticationToken("key", "anonymous",
+                    AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("POST", "/login"), response, (req, res) -> {});
+            assertEquals(200, response.getStatus());
+        }
+    }
+
+    private MockHttpServletResponse perform(String username, Role role, String method, String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(username, role, method, uri), response, (req, res) -> {});
+        return response;
+    }
+
+    private MockHttpServletRequest request(String username, Role role, String method, String uri) {
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                username, null, AuthorityUtils.createAuthorityList("ROLE_" + role.name())));
+        return new MockHttpServletRequest(method, uri);
+    }
+}
@@ -0,0 +1,230 @@
+package com.waracle.cakemgr.repository;
+
+import com.waracle.cakemgr.entity.CakeEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the SQL statements each endpoint sends, through JPA and JDBC alike, with the read cache off so every
+ * request reaches the database, and runs EXPLAIN on each one that filters rows. A change that adds a query per
+ * cake, or a filter no index serves, fails here instead of surfacing as a slow endpoint on a large catalogue.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:querycount;DB_CLOSE_DELAY=-1",
+        "cakemgr.seed.enabled=false",
+        "cakemgr.images.enabled=false",
+        "cakemgr.cache.enabled=false",
+        "cakemgr.security.user-cache.enabled=false"
+})
+@AutoConfigureMockMvc
+class CakeQueryCountTest {
+
+    private static final int CAKES = 30;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StatementRecorder recorder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CakeJdbcRepository cakeJdbcRepository;
+
+    private List<CakeEntity> cakes;
+    private MockHttpSession session;
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        static StatementRecorder statementRecorder() {
+            return new StatementRecorder();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate.update("DELETE FROM CAKE");
+        cakes = IntStream.rangeClosed(1, CAKES)
+                .mapToObj(i -> new CakeEntity(null, "Cake " + i, "description " + i, "https://example.com/" + i + ".png"))
+                .toList();
+        cakeJdbcRepository.batchInsert(cakes);
+        session = (MockHttpSession) mockMvc.perform(post("/login").param("username", "headchef").param("password", "waracle"))
+                .andExpect(status().is3xxRedirection())
+                .andReturn().getRequest().getSession(false);
+    }
+
+    @Test
+    void login_readsOneEmployeeByUsername() throws Exception {
+        assertStatements(1, post("/login").param("username", "tester").param("password", "waracle"));
+    }
+
+    @Test
+    void reads_sendOneStatementWhateverTheCatalogueSize() throws Exception {
+        assertStatements(1, get("/rest/cakes/getAllCakes"));
+        assertStatements(1, get("/rest/cakes/getCakesPage").param("pageSize", "10"));
+        assertStatements(1, get("/rest/cakes/getCakeById/" + id(3)));
+        assertStatements(1, get("/rest/cakes/getCakeById/" + id(3)).header("If-None-Match", "\"cake-" + id(3) + "-0\""));
+        assertStatements(1, get("/rest/cakes/findCakesByTitle").param("title", "CAKE 7"));
+    }
+
+    @Test
+    void singleWrites_touchOnlyTheirOwnRow() throws Exception {
+        assertStatements(1, post("/rest/cakes/addNewCake").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"New cake\",\"description\":\"d\",\"imageUrl\":\"https://example.com/new.png\"}"));
+        assertStatements(2, put("/rest/cakes/updateCake/" + id(1)).param("description", "updated"));
+        assertStatements(2, delete("/rest/cakes/deleteCake/" + id(2)));
+    }
+
+    @Test
+    void bulkWrites_sendTheSameStatementsForAnyNumberOfCakes() throws Exception {
+        assertStatements(2, post("/rest/cakes/addNewCakes").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"title\":\"Bulk 1\",\"description\":\"d\",\"imageUrl\":\"i\"},"
+                        + "{\"title\":\"Bulk 2\",\"description\":\"d\",\"imageUrl\":\"i\"},"
+                        + "{\"title\":\"Cake 4\",\"description\":\"d\",\"imageUrl\":\"i\"}]"));
+        assertStatements(3, put("/rest/cakes/updateCakes").contentType(MediaType.APPLICATION_JSON)
+                .content(String.format("[{\"cakeId\":%d,\"title\":\"Renamed\"},{\"cakeId\":%d,\"description\":\"d\"}]", id(5), id(6))));
+        assertStatements(1, delete("/rest/cakes/deleteCakes").contentType(MediaType.APPLICATION_JSON)
+                .content(String.format("[%d,%d]", id(7), id(8))));
+    }
+
+    private int id(int number) {
+        return cakes.get(number - 1).getCakeId();
+    }
+
+    private void assertStatements(int expected, MockHttpServletRequestBuilder request) throws Exception {
+        List<StatementRecorder.Recorded> statements = recorder.record(() -> {
+            int status = mockMvc.perform(request.session(session)).andReturn().getResponse().getStatus();
+            assertFalse(status >= 400, () -> "request failed with " + status);
+        });
+        // ids come from CAKE_SEQ in blocks of 50, so whether a request fetches one depends on the requests before it
+        statements.removeIf(statement -> statement.sql().toUpperCase(Locale.ROOT).contains("NEXT VALUE FOR"));
+        assertEquals(expected, statements.size(), () -> "statements sent: " + statements);
+        for (StatementRecorder.Recorded statement : statements) {
+            if (statement.sql().toLowerCase(Locale.ROOT).contains(" where ")) {
+                String plan = jdbcTemplate.queryForObject("EXPLAIN " + statement.sql(), String.class,
+                        statement.parameters().values().toArray());
+                assertFalse(plan.contains("tableScan"), () -> "full table scan for " + statement.sql() + ":\n" + plan);
+            }
+        }
+    }
+
+    /**
+     * Wraps the data source so that every statement prepared on a thread that is recording is noted, with the
+     * parameters first bound to it.
+     */
+    static final class StatementRecorder implements BeanPostProcessor {
+
+        record Recorded(String sql, Map<Integer, Object> parameters) {
+            @Override
+            public String toString() {
+                return sql;
+            }
+        }
+
+        @FunctionalInterface
+        interface Action {
+            void run() throws Exception;
+        }
+
+        @FunctionalInterface
+        private interface AfterCall {
+            Object apply(Method method, Object[] args, Object result);
+        }
+
+        private final ThreadLocal<List<Recorded>> recording = new ThreadLocal<>();
+
+        List<Recorded> record(Action action) throws Exception {
+            List<Recorded> statements = new ArrayList<>();
+            recording.set(statements);
+            try {
+                action.run();
+            } finally {
+                recording.remove();
+            }
+            return statements;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource) {
+                return wrap(DataSource.class, dataSource, (method, args, result) -> method.getName().equals("getConnection")
+                        ? wrap(Connection.class, (Connection) result, this::onConnectionCall)
+                        : result);
+            }
+            return bean;
+        }
+
+        private Object onConnectionCall(Method method, Object[] args, Object result) {
+            List<Recorded> statements = recording.get();
+            if (statements == null) {
+                return result;
+            }
+            if (method.getName().equals("prepareStatement")) {
+                Recorded recorded = new Recorded((String) args[0], new TreeMap<>());
+                statements.add(recorded);
+                return wrap(PreparedStatement.class, (PreparedStatement) result, (call, callArgs, callResult) -> {
+                    if (call.getName().startsWith("set") && callArgs != null && callArgs.length >= 2
+                            && callArgs[0] instanceof Integer index) {
+                        // a batch binds every row; the first is enough to explain the statement
+                        recorded.parameters().putIfAbsent(index, callArgs[1]);
+                    }
+                    return callResult;
+                });
+            }
+            if (method.getName().equals("createStatement")) {
+                return wrap(Statement.class, (Statement) result, (call, callArgs, callResult) -> {
+                    if (call.getName().startsWith("execute") && callArgs != null && callArgs.length > 0
+                            && callArgs[0] instanceof String sql) {
+                        statements.add(new Recorded(sql, Map.of()));
+                    }
+                    return callResult;
+                });
+            }
+            return result;
+        }
+
+        private static <T> T wrap(Class<T> type, T target, AfterCall afterCall) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                try {
+                    return afterCall.apply(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }));
+        }
+    }
+}
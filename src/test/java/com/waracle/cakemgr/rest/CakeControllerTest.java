@@ -1,34 +1,75 @@
 package com.waracle.cakemgr.rest;
 
+import com.waracle.cakemgr.config.CakeManagerProperties;
 import com.waracle.cakemgr.config.SecurityConfig;
 import com.waracle.cakemgr.config.TestConfig;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.ImageMetadata;
 import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.exception.BatchTooLargeException;
+import com.waracle.cakemgr.exception.CakeUpdateConflictException;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
 import com.waracle.cakemgr.exception.CustomAccessDeniedHandler;
+import com.waracle.cakemgr.exception.FeedFullException;
 import com.waracle.cakemgr.exception.GlobalExceptionHandler;
 import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.feed.CakeChangeFeed;
+import com.waracle.cakemgr.image.ImageCheckService;
+import com.waracle.cakemgr.service.CakeSearchIndex;
 import com.waracle.cakemgr.service.CakeService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = CakeController.class,
             excludeFilters = @ComponentScan.Filter(
                 type = FilterType.ASSIGNABLE_TYPE,
                 classes = SecurityConfig.class))
-@Import({TestConfig.class, GlobalExceptionHandler.class})
+@Import({TestConfig.class, GlobalExceptionHandler.class, CakeResponseCache.class})
 class CakeControllerTest {
 
     @Autowired
@@ -37,9 +78,38 @@ class CakeControllerTest {
     @MockitoBean
     private CakeService cakeService;
 
+    @MockitoBean
+    private CakeSearchIndex cakeSearchIndex;
+
+    @MockitoBean
+    private ImageCheckService imageCheckService;
+
+    @MockitoBean
+    private CakeChangeFeed cakeChangeFeed;
+
     @MockitoBean
     private CustomAccessDeniedHandler customAccessDeniedHandler;
 
+    @Autowired
+    private CakeResponseCache cakeResponseCache;
+
+    // what the response cache needs, with its settings bound from application.properties as in the application
+    @TestConfiguration
+    @EnableConfigurationProperties({CakeManagerProperties.class, ServerProperties.class})
+    static class ResponseCacheConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    // every test starts at catalogue version 0, so nothing encoded by an earlier one may be sent
+    @BeforeEach
+    void setUp() {
+        cakeResponseCache.clear();
+    }
+
     @Test
     void getAllCakes_returnsOk() throws Exception {
 
@@ -54,6 +124,72 @@ class CakeControllerTest {
                 .andExpect(jsonPath("$[0].image").value("imageUrl"));
     }
 
+    @Test
+    void getAllCakes_returnsJsonByDefault() throws Exception {
+        when(cakeService.retrieveAllCakes()).thenReturn(Collections.singletonList(
+                new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl")));
+
+        mockMvc.perform(get("/rest/cakes/getAllCakes").header("Accept", "*/*"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$[0].cakeId").value(1));
+        mockMvc.perform(get("/rest/cakes/getAllCakes"))
+                .andExpect(header().string("Content-Type", "application/json"));
+    }
+
+    @Test
+    void getAllCakes_returnsOneArrayPerField_whenColumnarRequested() throws Exception {
+        when(cakeService.retrieveAllCakes()).thenReturn(List.of(
+                new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl"),
+                new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "carrotUrl")));
+
+        mockMvc.perform(get("/rest/cakes/getAllCakes").header("Accept", "application/vnd.cakemgr.columnar+json"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/vnd.cakemgr.columnar+json"))
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(jsonPath("$.cakeId[1]").value(2))
+                .andExpect(jsonPath("$.title[0]").value("Lemon Cheesecake"))
+                .andExpect(jsonPath("$.image[1]").value("carrotUrl"));
+    }
+
+    @Test
+    void getAllCakes_returnsCbor_whenRequested() throws Exception {
+        CakeEntity cake = new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl");
+        when(cakeService.retrieveAllCakes()).thenReturn(List.of(cake));
+
+        byte[] body = mockMvc.perform(get("/rest/cakes/getAllCakes").header("Accept", "application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(List.of(cake), new CBORMapper().readValue(body, new TypeReference<List<CakeEntity>>() {}));
+    }
+
+    @Test
+    void getAllCakes_sendsStoredGzip_andEncodesOncePerVersion() throws Exception {
+        when(cakeService.catalogueVersion()).thenReturn(4L);
+        List<CakeEntity> cakes = IntStream.range(0, 100)
+                .mapToObj(i -> new CakeEntity(i, "Cake " + i, "a cake numbered " + i, "image" + i + ".jpg"))
+                .toList();
+        when(cakeService.retrieveAllCakes()).thenReturn(cakes);
+
+        MvcResult gzipped = mockMvc.perform(get("/rest/cakes/getAllCakes").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+                .andReturn();
+        mockMvc.perform(get("/rest/cakes/getAllCakes").header("Accept-Encoding", "gzip;q=0, *"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", gzipped.getResponse().getHeader("ETag")))
+                .andExpect(jsonPath("$[99].title").value("Cake 99"));
+
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+            assertEquals(cakes, new ObjectMapper().readValue(body, new TypeReference<List<CakeEntity>>() {}));
+        }
+        verify(cakeService, times(1)).retrieveAllCakes();
+    }
+
     @Test
     void getAllCakes_returnsInternalServerError() throws Exception {
 
@@ -63,6 +199,107 @@ class CakeControllerTest {
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void getCakesPage_returnsCakesAndNextToken() throws Exception {
+        when(cakeService.retrieveCakePage("abc", 1)).thenReturn(new CakePage(Collections.singletonList(
+                new CakeEntity(2, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl")), "def"));
+
+        mockMvc.perform(get("/rest/cakes/getCakesPage")
+                        .param("continuationToken", "abc")
+                        .param("pageSize", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cakes[0].cakeId").value(2))
+                .andExpect(jsonPath("$.nextToken").value("def"));
+    }
+
+    @Test
+    void searchCakes_returnsRankedMatches() throws Exception {
+        when(cakeSearchIndex.search("lemon chee", 5)).thenReturn(Collections.singletonList(
+                new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl")));
+
+        mockMvc.perform(get("/rest/cakes/searchCakes")
+                        .param("query", "lemon chee")
+                        .param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].cakeId").value(1));
+    }
+
+    @Test
+    void searchCakes_returnsBadRequestWithoutQuery() throws Exception {
+        mockMvc.perform(get("/rest/cakes/searchCakes"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getImageStatus_returnsLastCheckResult() throws Exception {
+        when(cakeService.retrieveCakeById(1)).thenReturn(
+                new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl"));
+        when(imageCheckService.lookup("imageUrl")).thenReturn(Optional.of(
+                new ImageMetadata("imageUrl", 404, "text/html", 10L, Instant.now(), "HTTP 404")));
+
+        mockMvc.perform(get("/rest/cakes/getImageStatus/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.broken").value(true))
+                .andExpect(jsonPath("$.problem").value("HTTP 404"));
+    }
+
+    @Test
+    void getImageStatus_returnsAccepted_whenNotCheckedYet() throws Exception {
+        when(cakeService.retrieveCakeById(1)).thenReturn(
+                new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl"));
+        when(imageCheckService.lookup("imageUrl")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/rest/cakes/getImageStatus/1"))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    void streamChanges_resumesAfterLastEventId() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        when(cakeChangeFeed.subscribe("41")).thenReturn(emitter);
+
+        MvcResult result = mockMvc.perform(get("/rest/cakes/changes").header("Last-Event-ID", "41"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        emitter.send(SseEmitter.event().id("42").name("cake").data("{}"));
+        emitter.complete();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/event-stream"))
+                .andExpect(content().string("id:42\nevent:cake\ndata:{}\n\n"));
+    }
+
+    @Test
+    void streamChanges_returnsServiceUnavailable_whenFeedIsFull() throws Exception {
+        when(cakeChangeFeed.subscribe(null)).thenThrow(new FeedFullException("full"));
+
+        mockMvc.perform(get("/rest/cakes/changes").header("Accept", "text/event-stream"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"));
+    }
+
+    @Test
+    void streamAllCakes_writesOneJsonDocumentPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<CakeEntity> consumer = invocation.getArgument(0);
+            consumer.accept(new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl"));
+            consumer.accept(new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "imageUrl"));
+            return null;
+        }).when(cakeService).streamAllCakes(any());
+
+        MvcResult result = mockMvc.perform(get("/rest/cakes/streamAllCakes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"cakeId\":1,\"title\":\"Lemon Cheesecake\",\"desc\":\"a cheesecake made of lemon\",\"image\":\"imageUrl\"}\n"
+                                + "{\"cakeId\":2,\"title\":\"Carrot cake\",\"desc\":\"Bugs bunnys favourite\",\"image\":\"imageUrl\"}\n"));
+    }
+
     @Test
     void getCakeById_returnsOk() throws Exception {
         when(cakeService.retrieveCakeById(1)).thenReturn(new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl"));
@@ -85,7 +322,7 @@ class CakeControllerTest {
 
     @Test
     void updateCake_returnsOk() throws Exception {
-        when(cakeService.updateCake(1, "New Cake Title", null, null))
+        when(cakeService.updateCake(1, "New Cake Title", null, null, null))
                 .thenReturn(Collections.singletonList("title"));
 
         mockMvc.perform(put("/rest/cakes/updateCake/1")
@@ -117,4 +354,112 @@ class CakeControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").value("Cake with id '1' deleted successfully"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void addNewCakes_returnsPerItemResults() throws Exception {
+        when(cakeService.addCakes(any())).thenReturn(List.of(
+                BulkItemResult.applied(0, 51, BulkItemResult.Status.CREATED),
+                new BulkItemResult(1, null, BulkItemResult.Status.CONFLICT, "Cake with title 'Lemon Cheesecake' already exists")));
+
+        mockMvc.perform(post("/rest/cakes/addNewCakes")
+                        .contentType("application/json")
+                        .content("[{\"title\":\"Carrot cake\"},{\"title\":\"Lemon Cheesecake\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].cakeId").value(51))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("CONFLICT"));
+    }
+
+    @Test
+    void deleteCakes_passesIdsThrough() throws Exception {
+        when(cakeService.deleteCakes(List.of(1, 2))).thenReturn(List.of(
+                BulkItemResult.applied(0, 1, BulkItemResult.Status.DELETED),
+                new BulkItemResult(1, 2, BulkItemResult.Status.NOT_FOUND, "Cake with id '2' not found")));
+
+        mockMvc.perform(delete("/rest/cakes/deleteCakes")
+                        .contentType("application/json")
+                        .content("[1,2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+    }
+
+    @Test
+    void updateCakes_returnsPayloadTooLarge_whenBatchExceedsLimit() throws Exception {
+        when(cakeService.updateCakes(any())).thenThrow(new BatchTooLargeException("Batch of 2 items exceeds the limit of 1"));
+
+        mockMvc.perform(put("/rest/cakes/updateCakes")
+                        .contentType("application/json")
+                        .content("[{\"cakeId\":1,\"title\":\"a\"},{\"cakeId\":2,\"title\":\"b\"}]"))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void getAllCakes_returnsNotModifiedWithoutLoadingCakes_whenCatalogueUnchanged() throws Exception {
+        when(cakeService.catalogueVersion()).thenReturn(7L);
+        when(cakeService.retrieveAllCakes()).thenReturn(Collections.emptyList());
+
+        String etag = mockMvc.perform(get("/rest/cakes/getAllCakes"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/rest/cakes/getAllCakes").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+        when(cakeService.catalogueVersion()).thenReturn(8L);
+        mockMvc.perform(get("/rest/cakes/getAllCakes").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+
+        verify(cakeService, times(2)).retrieveAllCakes();
+    }
+
+    @Test
+    void getCakeById_returnsCakeETag_andNotModifiedFromVersionAlone() throws Exception {
+        CakeEntity cake = new CakeEntity(1, "Lemon Cheesecake", "a cheesecake made of lemon", "imageUrl", 3L);
+        when(cakeService.retrieveCakeById(1)).thenReturn(cake);
+        when(cakeService.cakeVersion(1)).thenReturn(3L);
+
+        mockMvc.perform(get("/rest/cakes/getCakeById/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"cake-1-3\""))
+                .andExpect(jsonPath("$.version").doesNotExist());
+        clearInvocations(cakeService);
+        mockMvc.perform(get("/rest/cakes/getCakeById/1").header("If-None-Match", "\"cake-1-3\""))
+                .andExpect(status().isNotModified());
+
+        verify(cakeService, never()).retrieveCakeById(anyInt());
+    }
+
+    @Test
+    void updateCake_passesIfMatchVersionThrough() throws Exception {
+        when(cakeService.updateCake(1, "New Cake Title", null, null, 3L)).thenReturn(Collections.singletonList("title"));
+
+        mockMvc.perform(put("/rest/cakes/updateCake/1")
+                        .param("title", "New Cake Title")
+                        .header("If-Match", "\"cake-1-3\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void updateCake_returnsPreconditionFailed_onStaleOrForeignIfMatch() throws Exception {
+        when(cakeService.updateCake(1, "New Cake Title", null, null, 2L))
+                .thenThrow(new CakeVersionMismatchException("Cake with id '1' is at version 3, not 2"));
+
+        mockMvc.perform(put("/rest/cakes/updateCake/1")
+                        .param("title", "New Cake Title")
+                        .header("If-Match", "\"cake-1-2\""))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/rest/cakes/updateCake/1")
+                        .param("title", "New Cake Title")
+                        .header("If-Match", "\"cake-2-3\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void updateCake_returnsConflict_whenAnUpdateWithoutIfMatchKeepsLosing() throws Exception {
+        when(cakeService.updateCake(1, "New Cake Title", null, null, null))
+                .thenThrow(new CakeUpdateConflictException("Cake with id '1' kept being changed by other requests; try again"));
+
+        mockMvc.perform(put("/rest/cakes/updateCake/1")
+                        .param("title", "New Cake Title"))
+                .andExpect(status().isConflict());
+    }
+}
@@ -0,0 +1,153 @@
+package com.waracle.cakemgr.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CakeResponseCacheTest {
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final ServerProperties serverProperties = new ServerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger reads = new AtomicInteger();
+    private CakeResponseCache cache;
+
+    private final List<CakeEntity> cakes = List.of(
+            new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "lemon.jpg", 0L),
+            new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "carrot.jpg", 3L));
+
+    @BeforeEach
+    void setUp() {
+        serverProperties.getCompression().setEnabled(true);
+        cache = new CakeResponseCache(new ObjectMapper(), properties, serverProperties, meterRegistry);
+    }
+
+    private Supplier<List<CakeEntity>> counted(List<CakeEntity> cakes) {
+        return () -> {
+            reads.incrementAndGet();
+            return cakes;
+        };
+    }
+
+    private double gets(String cache, String result) {
+        return meterRegistry.get("cache.gets").tags("cache", cache, "result", result).counter().count();
+    }
+
+    @Test
+    void catalogue_isEncodedOnceForConcurrentRequestsAtOneVersion() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CakeResponseCache.EncodedCatalogue>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                responses.add(executor.submit(() -> {
+                    start.await();
+                    return cache.catalogue(5, () -> {
+                        reads.incrementAndGet();
+                        sleep();
+                        return cakes;
+                    });
+                }));
+            }
+            start.countDown();
+        }
+
+        assertEquals(1, reads.get());
+        for (Future<CakeResponseCache.EncodedCatalogue> response : responses) {
+            assertSame(responses.getFirst().get(), response.get());
+        }
+        assertEquals(15.0, gets(CakeResponseCache.CATALOGUE_CACHE, "hit"));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void catalogue_isEncodedAgainAfterAWrite_butNotReplacedByAnOlderEncoding() {
+        CakeResponseCache.EncodedCatalogue second = cache.catalogue(2, counted(cakes));
+
+        // a request that read version 1 before the write is still answered from what is kept
+        assertSame(second, cache.catalogue(1, counted(cakes.subList(0, 1))));
+        assertEquals(2, cache.catalogue(1, counted(cakes)).version());
+        assertEquals(1, reads.get());
+
+        CakeResponseCache.EncodedCatalogue third = cache.catalogue(3, counted(cakes.subList(0, 1)));
+        assertEquals(2, reads.get());
+        assertEquals(3, third.version());
+        assertEquals("[{\"cakeId\":1,\"title\":\"Lemon cheesecake\",\"desc\":\"A cheesecake made of lemon\",\"image\":\"lemon.jpg\"}]",
+                new String(third.json(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void catalogue_isGzippedOnlyWhenTomcatWouldHaveCompressedIt() {
+        assertNull(cache.catalogue(1, counted(cakes)).gzip());
+
+        List<CakeEntity> many = IntStream.range(0, 100)
+                .mapToObj(i -> new CakeEntity(i, "Cake " + i, "a cake numbered " + i, "image" + i + ".jpg", 0L))
+                .toList();
+        CakeResponseCache.EncodedCatalogue large = cache.catalogue(2, counted(many));
+        assertNotNull(large.gzip());
+        assertTrue(large.gzip().length < large.json().length);
+
+        serverProperties.getCompression().setEnabled(false);
+        cache = new CakeResponseCache(new ObjectMapper(), properties, serverProperties, meterRegistry);
+        assertNull(cache.catalogue(2, counted(many)).gzip());
+    }
+
+    @Test
+    void catalogueOverTheLimit_isEncodedForEveryRequest() {
+        properties.getResponseCache().setMaxCatalogueSize(DataSize.ofBytes(64));
+        cache = new CakeResponseCache(new ObjectMapper(), properties, serverProperties, meterRegistry);
+
+        cache.catalogue(1, counted(cakes));
+        cache.catalogue(1, counted(cakes));
+        assertEquals(2, reads.get());
+
+        // back under the limit, it is kept again
+        cache.catalogue(2, counted(List.of()));
+        cache.catalogue(2, counted(List.of()));
+        assertEquals(3, reads.get());
+    }
+
+    @Test
+    void cake_isEncodedAgainOnlyWhenItsVersionMoves() {
+        CakeEntity carrot = cakes.get(1);
+        byte[] first = cache.cake(carrot);
+
+        assertSame(first, cache.cake(carrot));
+        CakeEntity renamed = new CakeEntity(2, "Carrot sponge", carrot.getDesc(), carrot.getImage(), 4L);
+        assertTrue(new String(cache.cake(renamed), StandardCharsets.UTF_8).contains("Carrot sponge"));
+        assertEquals(1.0, gets(CakeResponseCache.BY_ID_CACHE, "hit"));
+        assertEquals(2.0, gets(CakeResponseCache.BY_ID_CACHE, "miss"));
+
+        // a cake without a version, such as one not yet written behind, is never kept
+        CakeEntity unversioned = new CakeEntity(3, "Banana cake", "yellow", "banana.jpg");
+        assertNotSame(cache.cake(unversioned), cache.cake(unversioned));
+
+        cache.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 2, null));
+        assertNotSame(first, cache.cake(carrot));
+    }
+}
@@ -0,0 +1,166 @@
+package com.waracle.cakemgr.rest;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.exception.CustomAccessDeniedHandler;
+import com.waracle.cakemgr.exception.GlobalExceptionHandler;
+import com.waracle.cakemgr.security.Role;
+import com.waracle.cakemgr.security.TokenService;
+import com.waracle.cakemgr.service.CakeService;
+import com.waracle.cakemgr.transfer.CakeExporter;
+import com.waracle.cakemgr.transfer.CakeImporter;
+import com.waracle.cakemgr.transfer.CakeTransferFormat;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs with the application's own security rules, in token mode, so which role may import is checked as well as
+ * the formats: a token is the one way to sign a request in without a login form.
+ */
+@WebMvcTest(controllers = CakeTransferController.class,
+            properties = {"cakemgr.security.mode=token",
+                          "cakemgr.security.token.secret=0123456789abcdef0123456789abcdef"})
+@Import({TokenService.class, CakeImporter.class, CustomAccessDeniedHandler.class, GlobalExceptionHandler.class})
+class CakeTransferControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @MockitoBean
+    private CakeService cakeService;
+
+    @MockitoBean
+    private CakeExporter cakeExporter;
+
+    // only used by /auth/token, which is not under test
+    @MockitoBean
+    private UserDetailsService userDetailsService;
+
+    @TestConfiguration
+    @EnableConfigurationProperties(CakeManagerProperties.class)
+    static class TransferConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private MockHttpServletRequestBuilder as(Role role, MockHttpServletRequestBuilder request) {
+        return request.header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenService.issue("someone", role).token());
+    }
+
+    private static MockHttpServletRequestBuilder importing(String contentType, String document) {
+        return post("/rest/cakes/importCakes").contentType(contentType).content(document.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importCakes_isForChefsOnly() throws Exception {
+        String document = "{\"title\":\"Lemon cheesecake\",\"description\":\"lemony\",\"imageUrl\":\"lemon.jpg\"}\n";
+        when(cakeService.addCakes(anyList())).thenAnswer(invocation -> {
+            List<CakeEntityDTO> cakes = invocation.getArgument(0);
+            return IntStream.range(0, cakes.size())
+                    .mapToObj(i -> BulkItemResult.applied(i, i + 1, BulkItemResult.Status.CREATED))
+                    .toList();
+        });
+
+        mockMvc.perform(importing(MediaType.APPLICATION_NDJSON_VALUE, document))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(as(Role.USER, importing(MediaType.APPLICATION_NDJSON_VALUE, document)))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(cakeService);
+
+        mockMvc.perform(as(Role.CHEF, importing(MediaType.APPLICATION_NDJSON_VALUE, document)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"type\":\"DONE\",\"line\":null,\"message\":null,\"read\":1,\"imported\":1,\"rejected\":0}\n"));
+    }
+
+    @Test
+    void importCakes_rejectsABadCsvHeaderBeforeTheReportStarts() throws Exception {
+        mockMvc.perform(as(Role.CHEF, importing(CakeTransferFormat.CSV_VALUE, "name,flavour\nLemon,lemony\n")))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.error").exists());
+
+        verify(cakeService, never()).addCakes(anyList());
+    }
+
+    @Test
+    void importCakes_refusesOtherContentTypes() throws Exception {
+        mockMvc.perform(as(Role.CHEF, importing(MediaType.APPLICATION_JSON_VALUE, "[]")))
+                .andExpect(status().isUnsupportedMediaType())
+                .andExpect(header().exists(HttpHeaders.ACCEPT));
+        mockMvc.perform(as(Role.CHEF, importing(MediaType.TEXT_PLAIN_VALUE, "title,desc,image\n")))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verifyNoInteractions(cakeService);
+    }
+
+    @Test
+    void exportCakes_writesTheFormatTheClientAccepts() throws Exception {
+        doAnswer(invocation -> {
+            CakeTransferFormat format = invocation.getArgument(0);
+            OutputStream out = invocation.getArgument(1);
+            out.write(format.name().getBytes(StandardCharsets.UTF_8));
+            return 0L;
+        }).when(cakeExporter).export(any(), any());
+
+        for (CakeTransferFormat format : CakeTransferFormat.values()) {
+            MvcResult started = mockMvc.perform(as(Role.USER, get("/rest/cakes/exportCakes")
+                            .accept(format.mediaType())))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(started))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(format.mediaType()))
+                    .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + format.fileName() + "\""))
+                    .andExpect(content().string(format.name()));
+            verify(cakeExporter).export(eq(format), any());
+        }
+
+        mockMvc.perform(as(Role.USER, get("/rest/cakes/exportCakes").accept(MediaType.APPLICATION_XML)))
+                .andExpect(status().isNotAcceptable());
+    }
+}
@@ -0,0 +1,104 @@
+package com.waracle.cakemgr.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BearerTokenFilterTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private CakeManagerProperties properties;
+    private TokenService tokenService;
+    private BearerTokenFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CakeManagerProperties();
+        properties.getSecurity().getToken().setSecret(SECRET);
+        tokenService = new TokenService(properties, new ObjectMapper());
+        filter = new BearerTokenFilter(tokenService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    // the authentication the rest of the chain sees, or null if the request goes on anonymous
+    private Authentication filter(BearerTokenFilter filter, String token) throws Exception {
+        return filter(filter, token, DispatcherType.REQUEST);
+    }
+
+    private Authentication filter(BearerTokenFilter filter, String token, DispatcherType dispatch) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/cakes/getAllCakes");
+        request.setDispatcherType(dispatch);
+        request.addHeader("Authorization", "Bearer " + token);
+        Authentication[] seen = new Authentication[1];
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                seen[0] = SecurityContextHolder.getContext().getAuthentication();
+            }
+        });
+        return seen[0];
+    }
+
+    @Test
+    void validToken_authenticatesWithItsRole() throws Exception {
+        TokenService.IssuedToken issued = tokenService.issue("headchef", Role.CHEF);
+
+        Authentication authentication = filter(filter, issued.token());
+
+        assertNotNull(authentication);
+        assertEquals("headchef", authentication.getName());
+        assertEquals("ROLE_CHEF", authentication.getAuthorities().iterator().next().getAuthority());
+        assertEquals(issued.claims(), authentication.getDetails());
+    }
+
+    @Test
+    void asyncDispatch_isAuthenticatedAgain() throws Exception {
+        TokenService.IssuedToken issued = tokenService.issue("headchef", Role.CHEF);
+
+        // completes a streamed export or the change feed; nothing from the first dispatch is left to go on
+        Authentication authentication = filter(filter, issued.token(), DispatcherType.ASYNC);
+
+        assertNotNull(authentication);
+        assertEquals("headchef", authentication.getName());
+    }
+
+    @Test
+    void revokedToken_leavesTheRequestUnauthenticated() throws Exception {
+        TokenService.IssuedToken issued = tokenService.issue("headchef", Role.CHEF);
+        assertNotNull(filter(filter, issued.token()));
+
+        tokenService.revoke(issued.claims());
+
+        assertNull(filter(filter, issued.token()));
+    }
+
+    @Test
+    void revocation_isOnlyKnownToTheNodeThatReceivedIt() throws Exception {
+        BearerTokenFilter otherNode = new BearerTokenFilter(new TokenService(properties, new ObjectMapper()));
+        TokenService.IssuedToken issued = tokenService.issue("headchef", Role.CHEF);
+
+        tokenService.revoke(issued.claims());
+
+        // until the token expires, which is why cakemgr.security.token.ttl is kept short
+        assertNull(filter(filter, issued.token()));
+        assertNotNull(filter(otherNode, issued.token()));
+    }
+}
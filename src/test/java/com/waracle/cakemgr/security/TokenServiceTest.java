@@ -0,0 +1,88 @@
+package com.waracle.cakemgr.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private CakeManagerProperties properties;
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CakeManagerProperties();
+        properties.getSecurity().getToken().setSecret(SECRET);
+        tokenService = new TokenService(properties, new ObjectMapper());
+    }
+
+    @Test
+    void verify_returnsClaimsOfIssuedToken() {
+        TokenService.IssuedToken issued = tokenService.issue("headchef", Role.CHEF);
+
+        TokenClaims claims = tokenService.verify(issued.token());
+
+        assertEquals(issued.claims(), claims);
+        assertEquals("headchef", claims.sub());
+        assertEquals(Role.CHEF, claims.role());
+    }
+
+    @Test
+    void verify_rejectsTamperedPayload() {
+        String token = tokenService.issue("tester", Role.USER).token();
+        String forged = tokenService.issue("headchef", Role.CHEF).token();
+        String spliced = forged.substring(0, forged.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        assertNull(tokenService.verify(spliced));
+    }
+
+    @Test
+    void verify_rejectsTokenSignedWithAnotherKey() {
+        CakeManagerProperties other = new CakeManagerProperties();
+        other.getSecurity().getToken().setSecret("another-secret-another-secret-xx");
+        String token = new TokenService(other, new ObjectMapper()).issue("headchef", Role.CHEF).token();
+
+        assertNull(tokenService.verify(token));
+    }
+
+    @Test
+    void verify_rejectsMalformedToken() {
+        assertNull(tokenService.verify("not-a-token"));
+        assertNull(tokenService.verify("abc."));
+        assertNull(tokenService.verify("%%%.%%%"));
+    }
+
+    @Test
+    void verify_rejectsExpiredToken() {
+        properties.getSecurity().getToken().setTtl(Duration.ZERO);
+        TokenService shortLived = new TokenService(properties, new ObjectMapper());
+
+        assertNull(shortLived.verify(shortLived.issue("headchef", Role.CHEF).token()));
+    }
+
+    @Test
+    void revoke_rejectsTokenUntilItWouldHaveExpired() {
+        TokenService.IssuedToken revoked = tokenService.issue("headchef", Role.CHEF);
+        TokenService.IssuedToken kept = tokenService.issue("headchef", Role.CHEF);
+
+        tokenService.revoke(revoked.claims());
+
+        assertNull(tokenService.verify(revoked.token()));
+        assertNotNull(tokenService.verify(kept.token()));
+        assertEquals(1, tokenService.revokedCount());
+    }
+
+    @Test
+    void constructor_refusesShortSecret() {
+        properties.getSecurity().getToken().setSecret("too-short");
+
+        assertThrows(IllegalStateException.class, () -> new TokenService(properties, new ObjectMapper()));
+    }
+}
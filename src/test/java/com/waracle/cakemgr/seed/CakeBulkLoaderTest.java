@@ -0,0 +1,141 @@
+package com.waracle.cakemgr.seed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.repository.CakeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeBulkLoaderTest {
+
+    @Mock
+    private CakeJdbcRepository cakeJdbcRepository;
+
+    @Mock
+    private CakeRepository cakeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CakeBulkLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> callback = invocation.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(cakeJdbcRepository.findAllTitles()).thenReturn(new HashSet<>());
+        properties.getSeed().setBatchSize(2);
+        loader = new CakeBulkLoader(cakeJdbcRepository, cakeRepository, transactionTemplate, new ObjectMapper(), properties,
+                meterRegistry);
+    }
+
+    @Test
+    void load_insertsUniqueTitlesInBatches() throws IOException {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<CakeEntity> batch = invocation.getArgument(0);
+            assertTrue(batch.size() <= 2);
+            batch.forEach(c -> written.add(c.getTitle()));
+            return null;
+        }).when(cakeJdbcRepository).batchInsert(anyList());
+
+        BulkLoadResult result = loader.load(json("a", "b", "a", "c", "b", "d", "e"));
+
+        assertEquals(5, result.inserted());
+        assertEquals(2, result.duplicates());
+        assertEquals(0, result.rejected());
+        assertEquals(Set.of("a", "b", "c", "d", "e"), new HashSet<>(written));
+        verify(cakeJdbcRepository, times(3)).batchInsert(anyList());
+    }
+
+    @Test
+    void load_recordsEachPhaseOnce() throws IOException {
+        loader.load(json("a", "b", "c"));
+
+        for (String phase : List.of("download", "parse", "persist")) {
+            assertEquals(1, meterRegistry.get(CakeBulkLoader.PHASE_TIMER).tag("phase", phase).timer().count(), phase);
+        }
+    }
+
+    @Test
+    void load_treatsTitlesAlreadyInDatabaseAsDuplicates() throws IOException {
+        when(cakeJdbcRepository.findAllTitles()).thenReturn(new HashSet<>(Set.of("a")));
+
+        BulkLoadResult result = loader.load(json("a", "b"));
+
+        assertEquals(1, result.inserted());
+        assertEquals(1, result.duplicates());
+    }
+
+    @Test
+    void load_rejectsRowsMissingMandatoryFields() throws IOException {
+        String doc = "[{\"title\":\"a\",\"desc\":\"d\",\"image\":\"i\"},{\"title\":\"b\"}]";
+
+        BulkLoadResult result = loader.load(new ByteArrayInputStream(doc.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, result.inserted());
+        assertEquals(1, result.rejected());
+    }
+
+    @Test
+    void load_retriesRowByRowWhenBatchViolatesConstraint() throws IOException {
+        doThrow(new DataIntegrityViolationException("dup"))
+                .when(cakeJdbcRepository).batchInsert(argThat(batch -> batch.size() == 2
+                        || batch.get(0).getTitle().equals("b")));
+
+        BulkLoadResult result = loader.load(json("a", "b"));
+
+        assertEquals(1, result.inserted());
+        assertEquals(1, result.rejected());
+    }
+
+    @Test
+    void load_usesRepositoryInJpaMode() throws IOException {
+        properties.getSeed().setInsertMode(CakeManagerProperties.Seed.InsertMode.JPA);
+
+        loader.load(json("a", "b", "c"));
+
+        verify(cakeRepository, times(2)).saveAll(anyList());
+        verify(cakeJdbcRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void load_failsOnDocumentThatIsNotAnArray() {
+        InputStream doc = new ByteArrayInputStream("{\"title\":\"a\"}".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> loader.load(doc));
+    }
+
+    private static InputStream json(String... titles) {
+        StringJoiner joiner = new StringJoiner(",", "[", "]");
+        for (String title : titles) {
+            joiner.add(String.format("{\"title\":\"%s\",\"desc\":\"desc\",\"image\":\"img\"}", title));
+        }
+        return new ByteArrayInputStream(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeSeedRunnerTest {
+
+    @Mock
+    private CakeSeedSource cakeSeedSource;
+
+    @Mock
+    private CakeBulkLoader cakeBulkLoader;
+
+    @Mock
+    private CakeSnapshotStore snapshotStore;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final CakeSeedHealthIndicator healthIndicator = new CakeSeedHealthIndicator();
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CakeSeedRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        runner = new CakeSeedRunner(cakeSeedSource, cakeBulkLoader, snapshotStore, healthIndicator, eventPublisher, properties, meterRegistry);
+    }
+
+    @Test
+    void verifyLoadFromRemote_savesUniqueCakesToRepo() throws Exception {
+        BulkLoadResult result = new BulkLoadResult(5, 15, 0, Duration.ofMillis(10));
+        when(cakeSeedSource.open()).thenReturn(new CakeSeedSource.SeedDocument("classpath:cakes.json",
+                new ByteArrayInputStream(new byte[0])));
+        when(cakeBulkLoader.load(any())).thenReturn(result);
+
+        runner.loadFromRemote();
+
+        verify(cakeBulkLoader).load(any());
+        verify(eventPublisher).publishEvent(new CakeSeedCompletedEvent("classpath:cakes.json", result));
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        assertEquals(1, meterRegistry.get(CakeBulkLoader.PHASE_TIMER).tag("phase", "connect").timer().count());
+        verify(snapshotStore).exportSeed("classpath:cakes.json");
+    }
+
+    @Test
+    void seed_skipsSource_whenSnapshotIsCurrentAndDatabaseHoldsCatalogue() {
+        CakeSnapshotFile.Header snapshot = new CakeSnapshotFile.Header("https://cakes", Instant.now(), Instant.now());
+        when(snapshotStore.current()).thenReturn(Optional.of(snapshot));
+        when(snapshotStore.databaseHasCakes()).thenReturn(true);
+
+        runner.seed();
+
+        verifyNoInteractions(cakeSeedSource, eventPublisher);
+        verify(snapshotStore).adopt(snapshot);
+        assertEquals("CURRENT", healthIndicator.health().getDetails().get("state"));
+    }
+
+    @Test
+    void seed_restoresSnapshotIntoEmptyDatabase() throws Exception {
+        BulkLoadResult result = new BulkLoadResult(100_000, 0, 0, Duration.ofMillis(300));
+        when(snapshotStore.current()).thenReturn(Optional.of(
+                new CakeSnapshotFile.Header("https://cakes", Instant.now(), Instant.now())));
+        when(snapshotStore.restore()).thenReturn(result);
+
+        runner.seed();
+
+        verifyNoInteractions(cakeSeedSource);
+        verify(eventPublisher).publishEvent(new CakeSeedCompletedEvent("snapshot of https://cakes", result));
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+    }
+
+    @Test
+    void seed_readsSource_whenSnapshotCannotBeRestored() throws Exception {
+        when(snapshotStore.current()).thenReturn(Optional.of(
+                new CakeSnapshotFile.Header("https://cakes", Instant.now(), Instant.now())));
+        when(snapshotStore.restore()).thenThrow(new IOException("Snapshot is truncated"));
+        when(cakeSeedSource.open()).thenReturn(new CakeSeedSource.SeedDocument("https://cakes",
+                new ByteArrayInputStream(new byte[0])));
+        when(cakeBulkLoader.load(any())).thenReturn(new BulkLoadResult(5, 0, 0, Duration.ofMillis(10)));
+
+        runner.seed();
+
+        verify(cakeBulkLoader).load(any());
+        verify(snapshotStore).exportSeed("https://cakes");
+    }
+
+    @Test
+    void loadFromRemote_staysDownWhenSeedFails() throws Exception {
+        when(cakeSeedSource.open()).thenThrow(new IOException("unreachable"));
+
+        runner.loadFromRemote();
+
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+        assertEquals("FAILED", healthIndicator.health().getDetails().get("state"));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void healthIsDownBeforeSeedRuns() {
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+    }
+
+    @Test
+    void onApplicationReady_doesNothingWhenDisabled() {
+        properties.getSeed().setEnabled(false);
+
+        runner.onApplicationReady();
+
+        verifyNoInteractions(cakeSeedSource);
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+    }
+}
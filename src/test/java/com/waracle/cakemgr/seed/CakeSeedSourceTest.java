@@ -0,0 +1,115 @@
+package com.waracle.cakemgr.seed;
+
+import com.sun.net.httpserver.HttpServer;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CakeSeedSourceTest {
+
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+
+    private CakeSeedSource source;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+        properties.getSeed().setInitialBackoff(Duration.ofMillis(1));
+        properties.getSeed().setMaxAttempts(3);
+        source = new CakeSeedSource(new DefaultResourceLoader(), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void open_retriesUntilSourceResponds() throws Exception {
+        byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+        server.createContext("/cakes.json", exchange -> {
+            if (requests.incrementAndGet() < 3) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        properties.getSeed().setSource(url("/cakes.json"));
+
+        CakeSeedSource.SeedDocument document = source.open();
+
+        try (InputStream in = document.body()) {
+            assertEquals("[]", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(url("/cakes.json"), document.location());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void open_fallsBackToClasspathWhenSourceKeepsFailing() throws Exception {
+        server.createContext("/cakes.json", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        properties.getSeed().setSource(url("/cakes.json"));
+
+        CakeSeedSource.SeedDocument document = source.open();
+
+        try (InputStream in = document.body()) {
+            assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("Lemon cheesecake"));
+        }
+        assertEquals("classpath:cakes.json", document.location());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void open_namesTheMissingSettings_whenNeitherSourceNorFallbackIsSet() {
+        properties.getSeed().setSource(" ");
+        properties.getSeed().setFallback(null);
+
+        IOException ex = assertThrows(IOException.class, () -> source.open());
+        assertTrue(ex.getMessage().contains("cakemgr.seed.source"));
+        assertTrue(ex.getMessage().contains("cakemgr.seed.fallback"));
+    }
+
+    @Test
+    void open_timesOutOnSlowSource() {
+        server.createContext("/slow.json", exchange -> {
+            try {
+                Thread.sleep(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        properties.getSeed().setSource(url("/slow.json"));
+        properties.getSeed().setReadTimeout(Duration.ofMillis(100));
+        properties.getSeed().setMaxAttempts(1);
+        properties.getSeed().setFallback(null);
+
+        assertThrows(IOException.class, () -> source.open());
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,145 @@
+package com.waracle.cakemgr.seed;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.repository.CakeRepository;
+import com.waracle.cakemgr.service.CakeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeSnapshotStoreTest {
+
+    private static final String SOURCE = "https://cakes.example.com/cakes.json";
+
+    @Mock
+    private CakeService cakeService;
+
+    @Mock
+    private CakeJdbcRepository cakeJdbcRepository;
+
+    @Mock
+    private CakeRepository cakeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    private Path dir;
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<CakeEntity> catalogue = List.of(
+            new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 2L),
+            new CakeEntity(3, "Banana cake", "Donkey kongs favourite", "img", 0L),
+            new CakeEntity(5, "Carrot cake", "Bugs bunnys favourite", "img", 7L));
+
+    private CakeSnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            Consumer<CakeEntity> consumer = invocation.getArgument(0);
+            catalogue.forEach(consumer);
+            return null;
+        }).when(cakeService).streamAllCakes(any());
+        properties.getSeed().setSource(SOURCE);
+        properties.getSeed().setBatchSize(2);
+        properties.getSeed().getSnapshot().setEnabled(true);
+        properties.getSeed().getSnapshot().setPath(dir.resolve("cakes.snapshot").toString());
+        store = new CakeSnapshotStore(cakeService, cakeJdbcRepository, cakeRepository, transactionTemplate, properties,
+                meterRegistry);
+    }
+
+    @Test
+    void exportThenRestore_roundTripsIdsAndVersionsInBatches() throws IOException {
+        List<CakeEntity> restored = new ArrayList<>();
+        doAnswer(invocation -> restored.addAll(invocation.getArgument(0)))
+                .when(cakeJdbcRepository).batchInsertAtVersion(anyList());
+
+        store.exportSeed(SOURCE);
+        assertTrue(store.current().isPresent());
+        BulkLoadResult result = store.restore();
+
+        assertEquals(3, result.inserted());
+        assertEquals(catalogue, restored);
+        verify(cakeJdbcRepository, times(2)).batchInsertAtVersion(anyList());
+        verify(cakeJdbcRepository).restartIdsAfter(5);
+        assertEquals(1, meterRegistry.get(CakeBulkLoader.PHASE_TIMER).tag("phase", "restore").timer().count());
+    }
+
+    @Test
+    void onShutdown_keepsSeedTimeOfTheCatalogue() throws IOException {
+        Instant seededAt = Instant.parse("2026-01-01T00:00:00Z");
+        store.adopt(new CakeSnapshotFile.Header(SOURCE, seededAt, seededAt));
+
+        store.onShutdown();
+
+        CakeSnapshotFile.Header header = CakeSnapshotFile.readHeader(snapshotPath());
+        assertEquals(seededAt, header.seededAt());
+        assertTrue(header.exportedAt().isAfter(seededAt));
+    }
+
+    @Test
+    void onShutdown_writesNothingBeforeTheCatalogueIsKnown() {
+        store.onShutdown();
+
+        assertFalse(Files.exists(snapshotPath()));
+        verifyNoInteractions(cakeService);
+    }
+
+    @Test
+    void current_rejectsSnapshotThatIsTooOldOrFromAnotherSource() throws IOException {
+        Instant longAgo = Instant.now().minus(Duration.ofDays(2));
+        CakeSnapshotFile.write(snapshotPath(), new CakeSnapshotFile.Header(SOURCE, longAgo, longAgo), sink -> {});
+        assertTrue(store.current().isEmpty());
+
+        CakeSnapshotFile.write(snapshotPath(), new CakeSnapshotFile.Header("classpath:cakes.json", Instant.now(),
+                Instant.now()), sink -> {});
+        assertTrue(store.current().isEmpty());
+    }
+
+    @Test
+    void current_ignoresMissingOrUnreadableFile() throws IOException {
+        assertTrue(store.current().isEmpty());
+
+        Files.writeString(snapshotPath(), "not a snapshot");
+        assertTrue(store.current().isEmpty());
+    }
+
+    @Test
+    void restore_failsOnTruncatedSnapshot() throws IOException {
+        store.exportSeed(SOURCE);
+        byte[] bytes = Files.readAllBytes(snapshotPath());
+        Files.write(snapshotPath(), Arrays.copyOf(bytes, bytes.length - 12));
+
+        assertThrows(IOException.class, () -> store.restore());
+        verify(cakeJdbcRepository, never()).restartIdsAfter(anyInt());
+    }
+
+    private Path snapshotPath() {
+        return dir.resolve("cakes.snapshot");
+    }
+}
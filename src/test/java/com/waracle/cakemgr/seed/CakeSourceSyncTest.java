@@ -0,0 +1,230 @@
+package com.waracle.cakemgr.seed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import com.waracle.cakemgr.service.CakeService;
+import com.waracle.cakemgr.service.CakeServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class CakeSourceSyncTest {
+
+    @Mock
+    private CakeJdbcRepository repository;
+
+    @Mock
+    private CakeServiceImpl cakeService;
+
+    @Mock
+    private CakeService engine;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private HttpServer server;
+    private final AtomicReference<String> document = new AtomicReference<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CakeSourceSync sync;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "lemon.jpg", 0L);
+    private final CakeEntity victoria = new CakeEntity(2, "victoria sponge", "sponge with jam", "victoria.jpg", 0L);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            Consumer<Object> callback = invocation.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // a source that tags each document with its hash and honours If-None-Match
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/cakes.json", exchange -> {
+            byte[] body = document.get().getBytes(StandardCharsets.UTF_8);
+            String etag = "\"" + Integer.toHexString(document.get().hashCode()) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        CakeManagerProperties properties = new CakeManagerProperties();
+        properties.getSeed().setSource("http://localhost:" + server.getAddress().getPort() + "/cakes.json");
+        sync = new CakeSourceSync(new CakeSeedSource(new DefaultResourceLoader(), properties), repository,
+                cakeService, engine, transactionTemplate, new ObjectMapper(), properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private static String json(CakeEntity... cakes) {
+        StringBuilder json = new StringBuilder("[");
+        for (CakeEntity cake : cakes) {
+            json.append(json.length() > 1 ? "," : "")
+                    .append(String.format("{\"title\":\"%s\",\"desc\":\"%s\",\"image\":\"%s\"}",
+                            cake.getTitle(), cake.getDesc(), cake.getImage()));
+        }
+        return json.append("]").toString();
+    }
+
+    /**
+     * Applies the document to a catalogue that already holds it, as after the seed.
+     */
+    private void syncWithCatalogueHolding(CakeEntity... cakes) throws IOException {
+        document.set(json(cakes));
+        Map<String, Integer> ids = new HashMap<>();
+        Map<Integer, CakeEntity> stored = new HashMap<>();
+        for (CakeEntity cake : cakes) {
+            ids.put(cake.getTitle(), cake.getCakeId());
+            stored.put(cake.getCakeId(), cake);
+        }
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(ids);
+        when(repository.findByIds(anyCollection())).thenReturn(stored);
+
+        assertEquals(new CakeSourceSync.Result(false, 0, 0, 0), sync.refresh());
+        clearInvocations(repository, cakeService, engine);
+    }
+
+    @Test
+    void unchangedSource_costsOneNotModifiedAndNoDatabaseAccess() throws IOException {
+        syncWithCatalogueHolding(lemon, victoria);
+
+        assertEquals(CakeSourceSync.Result.NOT_MODIFIED, sync.refresh());
+
+        assertEquals(1, notModified.get());
+        verifyNoInteractions(repository, cakeService, engine);
+        assertEquals(1.0, meterRegistry.get(CakeSourceSync.REFRESHES).tag("result", "not-modified").counter().count());
+    }
+
+    @Test
+    void changedSource_appliesOnlyTheDifferences() throws IOException {
+        syncWithCatalogueHolding(lemon, victoria);
+        CakeEntity changedLemon = new CakeEntity(1, lemon.getTitle(), "Now with more lemon", lemon.getImage(), 0L);
+        CakeEntity carrot = new CakeEntity(null, "Carrot cake", "Bugs bunnys favourite", "carrot.jpg");
+        document.set(json(changedLemon, carrot));
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(Map.of(lemon.getTitle(), 1, victoria.getTitle(), 2));
+        when(repository.findByIds(anyCollection())).thenReturn(Map.of(1, lemon));
+        doAnswer(invocation -> {
+            List<CakeEntity> inserted = invocation.getArgument(0);
+            inserted.forEach(cake -> cake.setCakeId(3));
+            return null;
+        }).when(repository).batchInsert(any());
+        when(repository.batchUpdate(any())).thenReturn(new int[]{1});
+        when(repository.batchDelete(any())).thenReturn(new int[]{1});
+
+        assertEquals(new CakeSourceSync.Result(false, 1, 1, 1), sync.refresh());
+
+        // only the cakes the source changed are looked up, not the whole document
+        verify(repository).findIdsByTitle(List.of(lemon.getTitle(), carrot.getTitle(), victoria.getTitle()));
+        verify(repository).batchInsert(List.of(new CakeEntity(3, "Carrot cake", "Bugs bunnys favourite", "carrot.jpg")));
+        verify(repository).batchUpdate(List.of(
+                new CakeEntity(1, lemon.getTitle(), "Now with more lemon", lemon.getImage(), 1L)));
+        verify(repository).batchDelete(List.of(2));
+        verify(transactionTemplate, times(2)).executeWithoutResult(any());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CakeChangeEvent>> changes = ArgumentCaptor.forClass(List.class);
+        verify(cakeService).publishExternalChanges(changes.capture());
+        assertEquals(List.of(CakeChangeEvent.Type.ADDED, CakeChangeEvent.Type.UPDATED, CakeChangeEvent.Type.DELETED),
+                changes.getValue().stream().map(CakeChangeEvent::type).toList());
+    }
+
+    @Test
+    void changedSource_waitsForQueuedWritesBeforeComparing() throws IOException {
+        syncWithCatalogueHolding(lemon);
+        document.set(json(lemon, victoria));
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(Map.of());
+        when(repository.findByIds(anyCollection())).thenReturn(Map.of());
+
+        sync.refresh();
+
+        InOrder order = inOrder(engine, repository);
+        order.verify(engine).awaitQueuedWrites();
+        order.verify(repository).findIdsByTitle(anyCollection());
+    }
+
+    @Test
+    void cakeChangedWhileTheRefreshRuns_keepsTheChange() throws IOException {
+        syncWithCatalogueHolding(lemon, victoria);
+        CakeEntity changedLemon = new CakeEntity(1, lemon.getTitle(), "Now with more lemon", lemon.getImage(), 0L);
+        CakeEntity changedVictoria = new CakeEntity(2, victoria.getTitle(), "now with cream", victoria.getImage(), 0L);
+        document.set(json(changedLemon, changedVictoria));
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(Map.of(lemon.getTitle(), 1, victoria.getTitle(), 2));
+        when(repository.findByIds(anyCollection())).thenReturn(Map.of(1, lemon, 2, victoria));
+        // lemon moved past version 0 between the read and the update
+        when(repository.batchUpdate(any())).thenReturn(new int[]{0, 1});
+
+        assertEquals(new CakeSourceSync.Result(false, 0, 1, 0), sync.refresh());
+
+        verify(cakeService).publishExternalChanges(List.of(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 2,
+                new CakeEntity(2, victoria.getTitle(), "now with cream", victoria.getImage(), 1L))));
+    }
+
+    @Test
+    void cakeEditedLocally_isLeftAloneUntilTheSourceChangesIt() throws IOException {
+        syncWithCatalogueHolding(lemon, victoria);
+        CakeEntity carrot = new CakeEntity(null, "Carrot cake", "Bugs bunnys favourite", "carrot.jpg");
+        // lemon and victoria are listed as before, whatever the catalogue now holds for them
+        document.set(json(lemon, victoria, carrot));
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(Map.of());
+        when(repository.findByIds(anyCollection())).thenReturn(Map.of());
+
+        assertEquals(new CakeSourceSync.Result(false, 1, 0, 0), sync.refresh());
+
+        verify(repository).findIdsByTitle(List.of(carrot.getTitle()));
+        verify(repository, never()).batchUpdate(any());
+        verify(repository, never()).batchDelete(any());
+    }
+
+    @Test
+    void failedRefresh_keepsTheValidatorsSoTheNextOneReadsTheDocumentAgain() throws IOException {
+        syncWithCatalogueHolding(lemon);
+        document.set(json(lemon, victoria));
+        when(repository.findIdsByTitle(anyCollection())).thenThrow(new IllegalStateException("database is down"));
+
+        assertThrows(IllegalStateException.class, () -> sync.refresh());
+
+        reset(repository);
+        when(repository.findIdsByTitle(anyCollection())).thenReturn(Map.of());
+        when(repository.findByIds(anyCollection())).thenReturn(Map.of());
+        assertEquals(new CakeSourceSync.Result(false, 1, 0, 0), sync.refresh());
+        assertEquals(0, notModified.get());
+    }
+}
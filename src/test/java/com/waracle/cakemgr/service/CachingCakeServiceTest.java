@@ -0,0 +1,145 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CachingCakeServiceTest {
+
+    @Mock
+    private CakeServiceImpl delegate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CachingCakeService cachingService;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cachingService = new CachingCakeService(delegate, new CakeManagerProperties(), meterRegistry);
+    }
+
+    @Test
+    void retrieveCakeById_loadsOnceThenServesFromCache() {
+        when(delegate.findCakeById(1)).thenReturn(Optional.of(lemon));
+
+        assertSame(lemon, cachingService.retrieveCakeById(1));
+        assertSame(lemon, cachingService.retrieveCakeById(1));
+
+        verify(delegate, times(1)).findCakeById(1);
+    }
+
+    @Test
+    void retrieveCakeById_remembersMissingIdsUntilTheCakeIsAdded() {
+        when(delegate.findCakeById(9)).thenReturn(Optional.empty());
+
+        assertThrows(RecordNotFoundException.class, () -> cachingService.retrieveCakeById(9));
+        assertThrows(RecordNotFoundException.class, () -> cachingService.retrieveCakeById(9));
+        assertThrows(RecordNotFoundException.class, () -> cachingService.cakeVersion(9));
+        verify(delegate, times(1)).findCakeById(9);
+
+        CakeEntity added = new CakeEntity(9, "Banana cake", "d", "img");
+        when(delegate.findCakeById(9)).thenReturn(Optional.of(added));
+        cachingService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 9, added));
+
+        assertSame(added, cachingService.retrieveCakeById(9));
+    }
+
+    @Test
+    void retrieveAllCakes_servesSnapshotUntilCatalogueChanges() {
+        when(delegate.retrieveAllCakes()).thenReturn(List.of(lemon));
+
+        cachingService.retrieveAllCakes();
+        cachingService.retrieveAllCakes();
+        verify(delegate, times(1)).retrieveAllCakes();
+
+        cachingService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 2, new CakeEntity()));
+        cachingService.retrieveAllCakes();
+
+        verify(delegate, times(2)).retrieveAllCakes();
+        assertEquals(2.0, meterRegistry.get("cache.gets").tags("cache", "cakes.all", "result", "miss").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "cakes.all", "result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.evictions").tags("cache", "cakes.all").counter().count());
+    }
+
+    @Test
+    void onCakeChanged_evictsOnlyTheChangedCake() {
+        CakeEntity carrot = new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "img");
+        when(delegate.findCakeById(1)).thenReturn(Optional.of(lemon));
+        when(delegate.findCakeById(2)).thenReturn(Optional.of(carrot));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveCakeById(2);
+
+        cachingService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveCakeById(2);
+
+        verify(delegate, times(2)).findCakeById(1);
+        verify(delegate, times(1)).findCakeById(2);
+    }
+
+    @Test
+    void onCakesChanged_evictsCatalogueOnceAndOnlyChangedIds() {
+        CakeEntity carrot = new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "img");
+        when(delegate.findCakeById(1)).thenReturn(Optional.of(lemon));
+        when(delegate.findCakeById(2)).thenReturn(Optional.of(carrot));
+        when(delegate.retrieveAllCakes()).thenReturn(List.of(lemon, carrot));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveCakeById(2);
+        cachingService.retrieveAllCakes();
+
+        cachingService.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, null),
+                new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 3, new CakeEntity(3, "Banana cake", "d", "img")))));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveCakeById(2);
+        cachingService.retrieveAllCakes();
+
+        verify(delegate, times(2)).findCakeById(1);
+        verify(delegate, times(1)).findCakeById(2);
+        verify(delegate, times(2)).retrieveAllCakes();
+    }
+
+    @Test
+    void onSeedCompleted_evictsEverything() {
+        when(delegate.findCakeById(1)).thenReturn(Optional.of(lemon));
+        when(delegate.retrieveAllCakes()).thenReturn(List.of(lemon));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveAllCakes();
+
+        cachingService.onSeedCompleted(new CakeSeedCompletedEvent("classpath:cakes.json",
+                new BulkLoadResult(5, 0, 0, Duration.ZERO)));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveAllCakes();
+
+        verify(delegate, times(2)).findCakeById(1);
+        verify(delegate, times(2)).retrieveAllCakes();
+    }
+
+    @Test
+    void byIdCacheStatisticsAreExported() {
+        when(delegate.findCakeById(1)).thenReturn(Optional.of(lemon));
+        cachingService.retrieveCakeById(1);
+        cachingService.retrieveCakeById(1);
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "cakes.byId", "result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "cakes.byId", "result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,127 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeSearchIndexTest {
+
+    @Mock
+    private CakeServiceImpl cakeService;
+
+    private CakeSearchIndex searchIndex;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img");
+    private final CakeEntity carrot = new CakeEntity(2, "Carrot cake", "Bugs bunnys favourite", "img");
+    private final CakeEntity brulee = new CakeEntity(3, "Crème brûlée", "Custard with a burnt sugar top", "img");
+    private final CakeEntity lemonDrizzle = new CakeEntity(4, "Drizzle cake", "Sponge soaked in lemon syrup", "img");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            Consumer<CakeEntity> consumer = invocation.getArgument(0);
+            List.of(lemon, carrot, brulee, lemonDrizzle).forEach(consumer);
+            return null;
+        }).when(cakeService).streamAllCakes(any());
+        searchIndex = new CakeSearchIndex(cakeService, new CakeManagerProperties());
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void tokenize_foldsCaseAndAccentsAndSplitsOnPunctuation() {
+        assertEquals(List.of("creme", "brulee", "it", "s", "2nd"), CakeSearchIndex.tokenize("Crème BRÛLÉE: it's 2nd!"));
+        assertEquals(List.of(), CakeSearchIndex.tokenize("  --  "));
+    }
+
+    @Test
+    void search_ranksTitleMatchesAboveDescriptionMatches() {
+        assertEquals(List.of(lemon, lemonDrizzle), searchIndex.search("lemon", null));
+    }
+
+    @Test
+    void search_matchesPrefixesOfEveryWord() {
+        assertEquals(List.of(lemon), searchIndex.search("LEM chee", null));
+        assertEquals(List.of(brulee), searchIndex.search("creme bru", null));
+        assertEquals(List.of(), searchIndex.search("lemon carrot", null));
+    }
+
+    @Test
+    void search_matchesShortWordsOnlyWhole() {
+        assertEquals(List.of(brulee), searchIndex.search("a burnt", null));
+        assertEquals(List.of(), searchIndex.search("c", null));
+    }
+
+    @Test
+    void search_keepsOnlyTheTopResults() {
+        assertEquals(List.of(carrot), searchIndex.search("cake", 1));
+        assertEquals(List.of(), searchIndex.search("", null));
+    }
+
+    @Test
+    void onCakeChanged_reindexesUpdatedAndRemovesDeletedCakes() {
+        CakeEntity lime = new CakeEntity(1, "Lime cheesecake", "A cheesecake made of lime", "img");
+
+        searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lime));
+        searchIndex.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 4, null))));
+
+        assertEquals(List.of(), searchIndex.search("lemon", null));
+        assertEquals(List.of(lime), searchIndex.search("lim", null));
+    }
+
+    @Test
+    void onCakeChanged_ignoresACakeOlderThanTheOneIndexed() {
+        CakeEntity lime = new CakeEntity(1, "Lime cheesecake", "A cheesecake made of lime", "img", 4L);
+        CakeEntity stale = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 3L);
+
+        searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lime));
+        // read back for another node's change before this node's own one
+        searchIndex.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, stale))));
+
+        assertEquals(List.of(lime), searchIndex.search("lim", null));
+        assertEquals(List.of(lemonDrizzle), searchIndex.search("lemon", null));
+    }
+
+    @Test
+    void onCakeChanged_takesARestoredCakeEvenThoughItIsOlder() {
+        CakeEntity lime = new CakeEntity(1, "Lime cheesecake", "A cheesecake made of lime", "img", 4L);
+        CakeEntity stored = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 3L);
+
+        searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lime));
+        // the write to version 4 was refused by the database
+        searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, stored, true));
+
+        assertEquals(List.of(), searchIndex.search("lim", null));
+        assertEquals(List.of(stored, lemonDrizzle), searchIndex.search("lemon", null));
+    }
+
+    @Test
+    void rebuild_keepsChangesMadeWhileTheTableIsRead() {
+        CakeEntity birthday = new CakeEntity(5, "Birthday cake", "a yearly treat", "img");
+        doAnswer(invocation -> {
+            Consumer<CakeEntity> consumer = invocation.getArgument(0);
+            consumer.accept(lemon);
+            // committed after the read passed it
+            searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, birthday));
+            searchIndex.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, lemon));
+            return null;
+        }).when(cakeService).streamAllCakes(any());
+
+        searchIndex.rebuild();
+
+        assertEquals(List.of(birthday), searchIndex.search("birthday", null));
+        assertEquals(List.of(), searchIndex.search("lemon cheesecake", null));
+    }
+}
@@ -1,16 +1,42 @@
 package com.waracle.cakemgr.service;
 
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
 import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.dto.CakePatchDTO;
 import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.event.CakeSeedCompletedEvent;
+import com.waracle.cakemgr.exception.BatchTooLargeException;
+import com.waracle.cakemgr.exception.CakeUpdateConflictException;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+import com.waracle.cakemgr.exception.InvalidContinuationTokenException;
 import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
 import com.waracle.cakemgr.exception.RecordNotFoundException;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
 import com.waracle.cakemgr.repository.CakeRepository;
+import com.waracle.cakemgr.seed.BulkLoadResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import jakarta.persistence.EntityManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -20,18 +46,36 @@ class CakeServiceImplTest {
     @Mock
     private CakeRepository cakeRepository;
 
+    @Mock
+    private CakeJdbcRepository cakeJdbcRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private CakeManagerProperties properties = new CakeManagerProperties();
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private CakeServiceImpl cakeService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-    }
-
-    @Test
-    void verifyLoadFromRemote_savesUniqueCakesToRepo() {
-        cakeService.loadFromRemote();
-        verify(cakeRepository, times(5)).save(any(CakeEntity.class));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
     }
 
     @Test
@@ -53,6 +97,60 @@ class CakeServiceImplTest {
         assertTrue(ex.getMessage().contains("Failed to retrieve cakes"));
     }
 
+    @Test
+    void retrieveCakePage_returnsTokenWhenMoreRowsRemain() {
+        List<CakeEntity> rows = List.of(
+                new CakeEntity(1, "a", "d", "i"),
+                new CakeEntity(2, "b", "d", "i"),
+                new CakeEntity(3, "c", "d", "i"));
+        when(cakeRepository.findByCakeIdGreaterThanOrderByCakeIdAsc(0, Limit.of(3))).thenReturn(rows);
+
+        CakePage page = cakeService.retrieveCakePage(null, 2);
+
+        assertEquals(2, page.cakes().size());
+        assertEquals(2, CakeServiceImpl.decodeToken(page.nextToken()));
+    }
+
+    @Test
+    void retrieveCakePage_continuesFromTokenAndEndsWithoutToken() {
+        String token = CakeServiceImpl.encodeToken(2);
+        when(cakeRepository.findByCakeIdGreaterThanOrderByCakeIdAsc(2, Limit.of(101)))
+                .thenReturn(List.of(new CakeEntity(3, "c", "d", "i")));
+
+        CakePage page = cakeService.retrieveCakePage(token, null);
+
+        assertEquals(1, page.cakes().size());
+        assertNull(page.nextToken());
+    }
+
+    @Test
+    void retrieveCakePage_clampsPageSizeToMaximum() {
+        when(cakeRepository.findByCakeIdGreaterThanOrderByCakeIdAsc(0, Limit.of(1001))).thenReturn(List.of());
+
+        cakeService.retrieveCakePage(null, 50_000);
+
+        verify(cakeRepository).findByCakeIdGreaterThanOrderByCakeIdAsc(0, Limit.of(1001));
+    }
+
+    @Test
+    void retrieveCakePage_rejectsTamperedToken() {
+        assertThrows(InvalidContinuationTokenException.class, () -> cakeService.retrieveCakePage("not-a-token", null));
+    }
+
+    @Test
+    void streamAllCakes_detachesEachRowAfterConsuming() {
+        CakeEntity first = new CakeEntity(1, "a", "d", "i");
+        CakeEntity second = new CakeEntity(2, "b", "d", "i");
+        when(cakeRepository.streamAllOrderedById()).thenReturn(Stream.of(first, second));
+        List<CakeEntity> seen = new ArrayList<>();
+
+        cakeService.streamAllCakes(seen::add);
+
+        assertEquals(List.of(first, second), seen);
+        verify(entityManager).detach(first);
+        verify(entityManager).detach(second);
+    }
+
     @Test
     void retrieveCakeById_returnsCake() {
         CakeEntity cake = new CakeEntity();
@@ -68,7 +166,10 @@ class CakeServiceImplTest {
     void retrieveCakeById_throwsNotFound() {
         when(cakeRepository.findById(1)).thenReturn(Optional.empty());
 
-        assertThrows(RecordNotFoundException.class, () -> cakeService.retrieveCakeById(1));
+        RecordNotFoundException ex = assertThrows(RecordNotFoundException.class, () -> cakeService.retrieveCakeById(1));
+        assertEquals("Cake with id '1' not found", ex.getMessage());
+        // an everyday answer: capturing a stack trace for it would cost more than the lookup
+        assertEquals(0, ex.getStackTrace().length);
     }
 
     @Test
@@ -81,6 +182,18 @@ class CakeServiceImplTest {
         cakeService.addCake(dto);
 
         verify(cakeRepository).save(any(CakeEntity.class));
+        verify(eventPublisher).publishEvent(argThat((Object e) -> e instanceof CakeChangeEvent change
+                && change.type() == CakeChangeEvent.Type.ADDED && change.cake().getTitle().equals("Test")));
+    }
+
+    @Test
+    void addCake_publishesNoEvent_onIntegrityViolation() {
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Test");
+        when(cakeRepository.save(any())).thenThrow(new DataIntegrityViolationException(""));
+
+        assertThrows(RecordAlreadyExistsException.class, () -> cakeService.addCake(dto));
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -90,6 +203,8 @@ class CakeServiceImplTest {
         when(cakeRepository.save(any())).thenThrow(new DataIntegrityViolationException(""));
 
         assertThrows(RecordAlreadyExistsException.class, () -> cakeService.addCake(dto));
+        assertEquals(1, meterRegistry.get(CakeServiceImpl.CONFLICTS)
+                .tags("operation", "addCake", "cause", "constraint").counter().count());
     }
 
     @Test
@@ -101,6 +216,45 @@ class CakeServiceImplTest {
         assertThrows(RuntimeException.class, () -> cakeService.addCake(dto));
     }
 
+    @Test
+    void addCake_refusesKnownTitleWithoutTryingTheInsert() {
+        cakeService.publishChange(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 1, new CakeEntity(1, "Lemon", "d", "i")));
+        when(cakeJdbcRepository.findIdsByTitle(List.of("Lemon"))).thenReturn(Map.of("Lemon", 1));
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Lemon");
+
+        RecordAlreadyExistsException ex = assertThrows(RecordAlreadyExistsException.class, () -> cakeService.addCake(dto));
+
+        assertEquals(0, ex.getStackTrace().length);
+        verify(cakeRepository, never()).save(any());
+        assertEquals(1, meterRegistry.get(CakeServiceImpl.CONFLICTS)
+                .tags("operation", "addCake", "cause", "title").counter().count());
+    }
+
+    @Test
+    void addCake_insertsWithoutALookup_whenTheTitleFilterRulesTheTitleOut() throws RecordAlreadyExistsException {
+        cakeService.publishChange(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 1, new CakeEntity(1, "Lemon", "d", "i")));
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Carrot");
+
+        cakeService.addCake(dto);
+
+        verify(cakeJdbcRepository, never()).findIdsByTitle(any());
+        verify(cakeRepository).save(any());
+    }
+
+    @Test
+    void addCake_inserts_whenATitleTheFilterRemembersIsFreeAgain() throws RecordAlreadyExistsException {
+        cakeService.publishChange(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 1, new CakeEntity(1, "Lemon", "d", "i")));
+        when(cakeJdbcRepository.findIdsByTitle(List.of("Lemon"))).thenReturn(Map.of());
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Lemon");
+
+        cakeService.addCake(dto);
+
+        verify(cakeRepository).save(any());
+    }
+
     @Test
     void deleteCake_deletesCake() {
         CakeEntity cake = new CakeEntity();
@@ -110,6 +264,7 @@ class CakeServiceImplTest {
         cakeService.deleteCake(1);
 
         verify(cakeRepository).delete(cake);
+        verify(eventPublisher).publishEvent(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, cake));
     }
 
     @Test
@@ -140,6 +295,7 @@ class CakeServiceImplTest {
 
         assertTrue(updated.containsAll(List.of("title", "description", "imageUrl")));
         verify(cakeRepository).save(cake);
+        verify(eventPublisher).publishEvent(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, cake));
     }
 
     @Test
@@ -180,4 +336,216 @@ class CakeServiceImplTest {
 
         assertThrows(RecordNotFoundException.class, () -> cakeService.updateCake(1, "t", null, null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateCake_refusesTitleHeldByAnotherCake_butKeepsItsOwn() throws RecordAlreadyExistsException {
+        cakeService.publishChange(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 2, new CakeEntity(2, "Lemon", "d", "i")));
+        when(cakeJdbcRepository.findIdsByTitle(List.of("Lemon"))).thenReturn(Map.of("Lemon", 2));
+        when(cakeRepository.findById(1)).thenReturn(Optional.of(new CakeEntity(1, "Carrot", "d", "i")));
+        when(cakeRepository.findById(2)).thenReturn(Optional.of(new CakeEntity(2, "Lemon", "d", "i")));
+        when(cakeRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertThrows(RecordAlreadyExistsException.class, () -> cakeService.updateCake(1, "Lemon", null, null));
+        verify(cakeRepository, never()).save(any());
+
+        assertEquals(List.of("title", "description"), cakeService.updateCake(2, "Lemon", "new", null));
+    }
+
+    @Test
+    void addCakes_reportsConflictsAndInvalidItemsAndBatchesTheRest() throws RecordAlreadyExistsException {
+        when(cakeJdbcRepository.findIdsByTitle(any())).thenReturn(Map.of("Lemon", 7));
+        doAnswer(invocation -> {
+            invocation.<List<CakeEntity>>getArgument(0).forEach(cake -> cake.setCakeId(51));
+            return null;
+        }).when(cakeJdbcRepository).batchInsert(any());
+
+        List<BulkItemResult> results = cakeService.addCakes(List.of(
+                dto("Carrot", "desc", "img"), dto("Lemon", "desc", "img"), dto("Carrot", "again", "img"), dto("Banana", null, "img")));
+
+        assertEquals(List.of(BulkItemResult.Status.CREATED, BulkItemResult.Status.CONFLICT, BulkItemResult.Status.CONFLICT,
+                BulkItemResult.Status.INVALID), results.stream().map(BulkItemResult::status).toList());
+        assertEquals(51, results.getFirst().cakeId());
+        verify(cakeJdbcRepository).batchInsert(argThat(cakes -> cakes.size() == 1 && cakes.getFirst().getTitle().equals("Carrot")));
+        verify(eventPublisher).publishEvent(new CakeBatchChangeEvent(List.of(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 51,
+                new CakeEntity(51, "Carrot", "desc", "img")))));
+    }
+
+    @Test
+    void addCakes_throwsAlreadyExistsAndPublishesNothing_onConcurrentConflict() {
+        when(cakeJdbcRepository.findIdsByTitle(any())).thenReturn(Map.of());
+        doThrow(new DataIntegrityViolationException("")).when(cakeJdbcRepository).batchInsert(any());
+
+        assertThrows(RecordAlreadyExistsException.class, () -> cakeService.addCakes(List.of(dto("Carrot", "desc", "img"))));
+        verifyNoInteractions(eventPublisher);
+        assertEquals(1, meterRegistry.get(CakeServiceImpl.CONFLICTS)
+                .tags("operation", "addCakes", "cause", "constraint").counter().count());
+    }
+
+    @Test
+    void addCakes_rejectsBatchOverLimit() {
+        properties.getBulk().setMaxItems(1);
+
+        assertThrows(BatchTooLargeException.class, () -> cakeService.addCakes(List.of(dto("a", "d", "i"), dto("b", "d", "i"))));
+        verifyNoInteractions(cakeJdbcRepository);
+    }
+
+    @Test
+    void updateCakes_appliesPatchesInRequestOrder() throws RecordAlreadyExistsException {
+        when(cakeJdbcRepository.findByIds(any())).thenReturn(new HashMap<>(Map.of(
+                1, new CakeEntity(1, "X", "d1", "i1", 0L),
+                2, new CakeEntity(2, "Y", "d2", "i2", 4L))));
+        when(cakeJdbcRepository.findIdsByTitle(any())).thenReturn(Map.of("X", 1));
+        when(cakeJdbcRepository.batchUpdate(any())).thenReturn(new int[]{1, 1});
+
+        List<BulkItemResult> results = cakeService.updateCakes(List.of(
+                patch(1, "Z", null), patch(2, "X", "new"), patch(3, null, "d"), patch(2, "Z", null), patch(1, null, null)));
+
+        assertEquals(List.of(BulkItemResult.Status.UPDATED, BulkItemResult.Status.UPDATED, BulkItemResult.Status.NOT_FOUND,
+                BulkItemResult.Status.CONFLICT, BulkItemResult.Status.INVALID), results.stream().map(BulkItemResult::status).toList());
+        // cake 1 gave up "X" earlier in the batch, so cake 2 may take it; untouched fields keep their stored values
+        verify(cakeJdbcRepository).batchUpdate(List.of(new CakeEntity(1, "Z", "d1", "i1", 1L), new CakeEntity(2, "X", "new", "i2", 5L)));
+        verify(eventPublisher).publishEvent(argThat((Object e) -> e instanceof CakeBatchChangeEvent batch && batch.changes().size() == 2));
+    }
+
+    @Test
+    void updateCakes_reportsRowsChangedOrDeletedSinceTheyWereRead() throws RecordAlreadyExistsException {
+        when(cakeJdbcRepository.findIdsByTitle(any())).thenReturn(Map.of());
+        when(cakeJdbcRepository.batchUpdate(any())).thenReturn(new int[]{0, 0});
+        // read again only for the rows the batch missed: cake 1 is still there, cake 2 is gone
+        when(cakeJdbcRepository.findByIds(List.of(1, 2))).thenReturn(
+                new HashMap<>(Map.of(1, new CakeEntity(1, "X", "d1", "i1", 0L), 2, new CakeEntity(2, "Y", "d2", "i2", 4L))),
+                Map.of(1, new CakeEntity(1, "X", "changed", "i1", 1L)));
+
+        List<BulkItemResult> results = cakeService.updateCakes(List.of(patch(1, null, "new"), patch(2, null, "new")));
+
+        assertEquals(List.of(BulkItemResult.Status.CONFLICT, BulkItemResult.Status.NOT_FOUND),
+                results.stream().map(BulkItemResult::status).toList());
+        verify(eventPublisher, never()).publishEvent(any(CakeBatchChangeEvent.class));
+    }
+
+    @Test
+    void deleteCakes_usesUpdateCountsWithoutReadingRows() {
+        when(cakeJdbcRepository.batchDelete(List.of(1, 2))).thenReturn(new int[]{1, 0});
+
+        List<BulkItemResult> results = cakeService.deleteCakes(Arrays.asList(1, 2, null));
+
+        assertEquals(List.of(BulkItemResult.Status.DELETED, BulkItemResult.Status.NOT_FOUND, BulkItemResult.Status.INVALID),
+                results.stream().map(BulkItemResult::status).toList());
+        verifyNoInteractions(cakeRepository);
+        verify(eventPublisher).publishEvent(new CakeBatchChangeEvent(List.of(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, null))));
+    }
+
+    private static CakeEntityDTO dto(String title, String description, String imageUrl) {
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle(title);
+        dto.setDescription(description);
+        dto.setImageUrl(imageUrl);
+        return dto;
+    }
+
+    private static CakePatchDTO patch(Integer id, String title, String description) {
+        CakePatchDTO patch = new CakePatchDTO();
+        patch.setCakeId(id);
+        patch.setTitle(title);
+        patch.setDescription(description);
+        return patch;
+    }
+
+    @Test
+    void updateCake_throwsVersionMismatch_whenIfMatchVersionIsStale() {
+        when(cakeRepository.findById(1)).thenReturn(Optional.of(new CakeEntity(1, "t", "d", "i", 3L)));
+
+        assertThrows(CakeVersionMismatchException.class, () -> cakeService.updateCake(1, "new", null, null, 2L));
+        verify(cakeRepository, never()).save(any());
+    }
+
+    @Test
+    void updateCake_throwsVersionMismatch_whenChangedConcurrently() {
+        when(cakeRepository.findById(1)).thenReturn(Optional.of(new CakeEntity(1, "t", "d", "i", 3L)));
+        when(cakeRepository.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(CakeEntity.class, 1));
+
+        assertThrows(CakeVersionMismatchException.class, () -> cakeService.updateCake(1, "new", null, null, 3L));
+        verifyNoInteractions(eventPublisher);
+        assertEquals(0, cakeService.catalogueVersion());
+        assertEquals(1, meterRegistry.get(CakeServiceImpl.CONFLICTS)
+                .tags("operation", "updateCake", "cause", "version").counter().count());
+    }
+
+    @Test
+    void updateCake_withoutIfMatch_readsAgainAndWins_whenChangedConcurrently() throws RecordAlreadyExistsException {
+        CakeEntity moved = new CakeEntity(1, "t", "d", "i", 4L);
+        when(cakeRepository.findById(1))
+                .thenReturn(Optional.of(new CakeEntity(1, "t", "d", "i", 3L)))
+                .thenReturn(Optional.of(moved));
+        when(cakeRepository.save(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(CakeEntity.class, 1))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertEquals(List.of("description"), cakeService.updateCake(1, null, "new", null, null));
+
+        verify(cakeRepository, times(2)).save(any());
+        assertEquals("new", moved.getDesc());
+        verify(eventPublisher).publishEvent(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, moved));
+        assertTrue(meterRegistry.find(CakeServiceImpl.CONFLICTS).counters().isEmpty());
+    }
+
+    @Test
+    void updateCake_withoutIfMatch_answersConflict_whenItKeepsLosing() {
+        when(cakeRepository.findById(1)).thenAnswer(invocation -> Optional.of(new CakeEntity(1, "t", "d", "i", 3L)));
+        when(cakeRepository.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(CakeEntity.class, 1));
+
+        assertThrows(CakeUpdateConflictException.class, () -> cakeService.updateCake(1, "new", null, null, null));
+        verify(cakeRepository, times(3)).save(any());
+        verifyNoInteractions(eventPublisher);
+        assertEquals(1, meterRegistry.get(CakeServiceImpl.CONFLICTS)
+                .tags("operation", "updateCake", "cause", "version").counter().count());
+    }
+
+    @Test
+    void catalogueVersion_isBumpedByEveryCommittedChange() throws RecordAlreadyExistsException {
+        when(cakeRepository.findById(1)).thenReturn(Optional.of(new CakeEntity(1, "t", "d", "i", 0L)));
+        when(cakeRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cakeJdbcRepository.batchDelete(any())).thenReturn(new int[]{1});
+
+        cakeService.addCake(dto("new", "d", "i"));
+        cakeService.updateCake(1, null, "d2", null);
+        cakeService.deleteCakes(List.of(1));
+        cakeService.onSeedCompleted(new CakeSeedCompletedEvent("classpath:cakes.json", new BulkLoadResult(5, 0, 0, Duration.ZERO)));
+
+        assertEquals(4, cakeService.catalogueVersion());
+    }
+
+    @Test
+    void catalogueSizeGauge_countsOnceAndFollowsChanges() throws RecordAlreadyExistsException {
+        when(cakeRepository.count()).thenReturn(5L);
+        when(cakeRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cakeJdbcRepository.batchDelete(any())).thenReturn(new int[]{1, 1});
+        cakeService.onApplicationReady();
+
+        cakeService.addCake(dto("new", "d", "i"));
+        cakeService.deleteCakes(List.of(1, 2));
+        cakeService.publishExternalChanges(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 7, new CakeEntity(7, "t", "d", "i", 0L)),
+                new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 3, new CakeEntity(3, "u", "d", "i", 1L))));
+
+        Gauge size = meterRegistry.get("cakes.catalogue.size").gauge();
+        assertEquals(5.0, size.value());
+        assertEquals(5.0, size.value());
+        verify(cakeRepository, times(1)).count();
+
+        // a reload is counted again rather than trusted to its result
+        when(cakeRepository.count()).thenReturn(40L);
+        cakeService.onSeedCompleted(new CakeSeedCompletedEvent("classpath:cakes.json", new BulkLoadResult(35, 0, 0, Duration.ZERO)));
+        assertEquals(40.0, size.value());
+    }
+
+    @Test
+    void cakeVersion_readsScalarVersion() {
+        when(cakeRepository.findVersionById(1)).thenReturn(Optional.of(3L));
+        when(cakeRepository.findVersionById(2)).thenReturn(Optional.empty());
+
+        assertEquals(3L, cakeService.cakeVersion(1));
+        assertThrows(RecordNotFoundException.class, () -> cakeService.cakeVersion(2));
+        verify(cakeRepository, never()).findById(any());
+    }
+}
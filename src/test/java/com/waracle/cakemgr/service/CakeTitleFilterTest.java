@@ -0,0 +1,34 @@
+package com.waracle.cakemgr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CakeTitleFilterTest {
+
+    @Test
+    void mightContain_isNeverWrongAboutAnAddedTitle_andRarelyWrongAboutOthers() {
+        CakeTitleFilter filter = new CakeTitleFilter();
+        IntStream.range(0, 100_000).forEach(i -> filter.add("Cake " + i));
+
+        assertTrue(IntStream.range(0, 100_000).allMatch(i -> filter.mightContain("Cake " + i)));
+        long falseMaybes = IntStream.range(0, 100_000).filter(i -> filter.mightContain("Pie " + i)).count();
+        assertTrue(falseMaybes < 100, () -> falseMaybes + " false maybes");
+    }
+
+    @Test
+    void rebuild_forgetsTitlesThatAreGone() {
+        CakeTitleFilter filter = new CakeTitleFilter();
+        filter.add("Lemon cheesecake");
+        filter.add("Carrot cake");
+
+        filter.rebuild(sink -> List.of("Carrot cake", "Banana cake").forEach(sink));
+
+        assertFalse(filter.mightContain("Lemon cheesecake"));
+        assertTrue(filter.mightContain("Carrot cake"));
+        assertTrue(filter.mightContain("Banana cake"));
+    }
+}
@@ -0,0 +1,203 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.exception.WriteQueueFullException;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CakeWriteBehindQueueTest {
+
+    @Mock
+    private CakeServiceImpl cakeService;
+
+    @Mock
+    private CakeJdbcRepository cakeJdbcRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CakeWriteBehindQueue queue;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 3L);
+    private final CakeEntity carrot = new CakeEntity(5, "Carrot cake", "Bugs bunnys favourite", "img", 0L);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> callback = invocation.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        properties.getService().getWriteBehind().setMaxAttempts(2);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        queue.shutdown();
+    }
+
+    @Test
+    void flush_insertsNewCakeOnceWithItsLatestState() {
+        start();
+        CakeEntity renamed = new CakeEntity(7, "Party cake", "a yearly treat", "img", 1L);
+
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 7, new CakeEntity(7, "Birthday cake", "a yearly treat", "img", 0L)));
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 7, renamed));
+        queue.awaitFlushed();
+
+        verify(cakeJdbcRepository).batchInsertAtVersion(List.of(renamed));
+        verify(cakeJdbcRepository, never()).batchUpdateToVersion(anyList());
+        assertEquals(1, meterRegistry.get(CakeWriteBehindQueue.COALESCED).counter().count());
+    }
+
+    @Test
+    void flush_deletesAndMovesChangedTitlesAsideBeforeWriting() {
+        CakeEntity storedCarrot = new CakeEntity(5, "Lemon cheesecake", "Bugs bunnys favourite", "img", 0L);
+        CakeEntity storedLemon = new CakeEntity(1, "Carrot cake", "A cheesecake made of lemon", "img", 2L);
+        CakeEntity storedBanana = new CakeEntity(3, "Banana cake", "Donkey kongs favourite", "img", 0L);
+        when(cakeJdbcRepository.findByIds(anyList())).thenReturn(Map.of(1, storedLemon, 5, storedCarrot, 3, storedBanana));
+        start();
+
+        // lemon and carrot swap titles and banana goes, all within one flush
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 5, carrot));
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 3, storedBanana));
+        queue.awaitFlushed();
+
+        InOrder inOrder = inOrder(cakeJdbcRepository);
+        inOrder.verify(cakeJdbcRepository).batchDelete(List.of(3));
+        inOrder.verify(cakeJdbcRepository).batchMoveTitlesAside(List.of(1, 5));
+        inOrder.verify(cakeJdbcRepository).batchUpdateToVersion(List.of(lemon, carrot));
+        verify(cakeJdbcRepository, never()).batchInsertAtVersion(anyList());
+    }
+
+    @Test
+    void flush_writesLargeFlushesInJdbcBatches() {
+        properties.getService().getWriteBehind().setBatchSize(2);
+        properties.getService().getWriteBehind().setFlushInterval(Duration.ofSeconds(10));
+        start();
+
+        for (int id = 10; id < 15; id++) {
+            enqueue(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, id, new CakeEntity(id, "cake " + id, "d", "img", 0L)));
+        }
+        queue.awaitFlushed();
+
+        verify(cakeJdbcRepository, atLeast(3)).batchInsertAtVersion(argThat(batch -> batch.size() <= 2));
+    }
+
+    @Test
+    void flush_skipsDeleteOfCakeThatNeverReachedTheDatabase() {
+        start();
+
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, carrot));
+        queue.awaitFlushed();
+
+        verify(cakeJdbcRepository, never()).batchInsertAtVersion(anyList());
+        verify(cakeJdbcRepository, never()).batchDelete(anyList());
+    }
+
+    @Test
+    void flush_discardsOnlyTheRefusedWrite_andRestoresItsStoredState() {
+        CakeEntity storedLemon = new CakeEntity(1, "Lemon cheesecake", "old", "img", 2L);
+        when(cakeJdbcRepository.findByIds(anyList())).thenReturn(Map.of(1, storedLemon));
+        doThrow(new DataIntegrityViolationException("TITLE"))
+                .when(cakeJdbcRepository).batchInsertAtVersion(argThat(batch -> batch.contains(carrot)));
+        properties.getService().getWriteBehind().setFlushInterval(Duration.ofSeconds(10));
+        start();
+
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon));
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+        queue.awaitFlushed();
+
+        verify(cakeJdbcRepository, times(3)).batchUpdateToVersion(List.of(lemon));
+        verify(cakeService).publishChange(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, null));
+        verify(cakeService, never()).publishChange(argThat(change -> change.cakeId() == 1));
+        assertEquals(1, meterRegistry.get(CakeWriteBehindQueue.DROPPED).counter().count());
+    }
+
+    @Test
+    void flush_restoresTheStoredRow_whenARefusedUpdateWasAlreadyShownAtALaterVersion() {
+        CakeEntity storedLemon = new CakeEntity(1, "Lemon cheesecake", "old", "img", 2L);
+        when(cakeJdbcRepository.findByIds(anyList())).thenReturn(Map.of(1, storedLemon));
+        // another node took the title first
+        doThrow(new DataIntegrityViolationException("TITLE")).when(cakeJdbcRepository).batchUpdateToVersion(anyList());
+        start();
+        SnapshotCakeService snapshot = new SnapshotCakeService(cakeService, properties, Optional.of(queue));
+        doAnswer(invocation -> {
+            snapshot.onCakeChanged(invocation.getArgument(0));
+            return null;
+        }).when(cakeService).publishChange(any());
+        snapshot.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 1, storedLemon));
+
+        // as accepted: shown at version 3 straight away, written later
+        CakeChangeEvent accepted = new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, lemon);
+        snapshot.onCakeChanged(accepted);
+        enqueue(accepted);
+        queue.awaitFlushed();
+
+        verify(cakeService).publishChange(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, storedLemon, true));
+        assertEquals(List.of(storedLemon), snapshot.retrieveAllCakes());
+        assertEquals(1, meterRegistry.get(CakeWriteBehindQueue.DROPPED).counter().count());
+    }
+
+    @Test
+    void reserve_turnsWriterAway_whenQueueStaysFull() {
+        properties.getService().getWriteBehind().setMaxPending(1);
+        properties.getService().getWriteBehind().setEnqueueTimeout(Duration.ofMillis(50));
+        start();
+
+        try (CakeWriteBehindQueue.Slot held = queue.reserve()) {
+            assertThrows(WriteQueueFullException.class, () -> queue.reserve());
+        }
+        // closing an unused slot gives its room back
+        assertDoesNotThrow(() -> queue.reserve().close());
+    }
+
+    @Test
+    void shutdown_flushesEverythingQueued() throws InterruptedException {
+        properties.getService().getWriteBehind().setFlushInterval(Duration.ofMinutes(1));
+        start();
+
+        enqueue(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 5, carrot));
+        queue.shutdown();
+
+        verify(cakeJdbcRepository).batchInsertAtVersion(List.of(carrot));
+        try (CakeWriteBehindQueue.Slot slot = queue.reserve()) {
+            assertThrows(WriteQueueFullException.class,
+                    () -> slot.enqueue(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, carrot)));
+        }
+    }
+
+    private void start() {
+        queue = new CakeWriteBehindQueue(cakeService, cakeJdbcRepository, transactionTemplate, properties, meterRegistry);
+    }
+
+    private void enqueue(CakeChangeEvent change) {
+        try (CakeWriteBehindQueue.Slot slot = queue.reserve()) {
+            slot.enqueue(change);
+        }
+    }
+}
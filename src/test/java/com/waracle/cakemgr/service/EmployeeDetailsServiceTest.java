@@ -1,11 +1,16 @@
 package com.waracle.cakemgr.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.EmployeeLogin;
 import com.waracle.cakemgr.entity.EmployeeEntity;
+import com.waracle.cakemgr.event.EmployeeChangeEvent;
 import com.waracle.cakemgr.security.Role;
 import com.waracle.cakemgr.repository.EmployeeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.*;
 import org.mockito.*;
+import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
@@ -20,21 +25,21 @@ class EmployeeDetailsServiceTest {
     @Mock
     private EmployeeRepository repo;
 
-    @InjectMocks
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private EmployeeDetailsService service;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        service = new EmployeeDetailsService(repo, properties, meterRegistry);
     }
 
     @Test
     void loadUserByUsername_returnsUserDetails() {
-        EmployeeEntity emp = new EmployeeEntity();
-        emp.setUsername("tester");
-        emp.setRole(Role.USER);
-
-        when(repo.findByUsername("tester")).thenReturn(Optional.of(emp));
+        when(repo.findLoginByUsername("tester")).thenReturn(Optional.of(new EmployeeLogin("tester", Role.USER)));
 
         UserDetails user = service.loadUserByUsername("tester");
 
@@ -44,13 +49,13 @@ class EmployeeDetailsServiceTest {
 
     @Test
     void loadUserByUsername_throwsIfNotFound() {
-        when(repo.findByUsername("unknown")).thenReturn(Optional.empty());
+        when(repo.findLoginByUsername("unknown")).thenReturn(Optional.empty());
         assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("unknown"));
     }
 
     @Test
     void init_importsEmployeesIfRepoEmpty() {
-        EmployeeDetailsService spyService = Mockito.spy(new EmployeeDetailsService(repo));
+        EmployeeDetailsService spyService = Mockito.spy(new EmployeeDetailsService(repo, properties, meterRegistry));
         when(repo.count()).thenReturn(0L);
         doNothing().when(spyService).importEmployeesFromJson();
 
@@ -61,7 +66,7 @@ class EmployeeDetailsServiceTest {
 
     @Test
     void init_skipsImportIfRepoNotEmpty() {
-        EmployeeDetailsService spyService = Mockito.spy(new EmployeeDetailsService(repo));
+        EmployeeDetailsService spyService = Mockito.spy(new EmployeeDetailsService(repo, properties, meterRegistry));
         when(repo.count()).thenReturn(2L);
 
         spyService.init();
@@ -83,13 +88,69 @@ class EmployeeDetailsServiceTest {
         InputStream is = new ByteArrayInputStream(json);
         when(cl.getResourceAsStream("employees.json")).thenReturn(is);
 
-        EmployeeDetailsService testService = new EmployeeDetailsService(repo);
+        EmployeeDetailsService testService = new EmployeeDetailsService(repo, properties, meterRegistry);
 
         testService.importEmployeesFromJson();
 
         verify(repo, times(2)).save(any(EmployeeEntity.class));
     }
 
+    @Test
+    void loadUserByUsername_servesRepeatLookupsFromCache() {
+        when(repo.findLoginByUsername("tester")).thenReturn(Optional.of(new EmployeeLogin("tester", Role.USER)));
+
+        service.loadUserByUsername("tester");
+        service.loadUserByUsername("tester");
+
+        verify(repo, times(1)).findLoginByUsername("tester");
+        assertEquals(0.5, meterRegistry.get("cache.hit.ratio").tag("cache", "employees.auth").gauge().value());
+    }
+
+    @Test
+    void loadUserByUsername_returnsFreshUserWithPasswordAfterCredentialsWereErased() {
+        when(repo.findLoginByUsername("tester")).thenReturn(Optional.of(new EmployeeLogin("tester", Role.USER)));
+
+        UserDetails first = service.loadUserByUsername("tester");
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = service.loadUserByUsername("tester");
+
+        assertNotSame(first, second);
+        assertEquals("{noop}waracle", second.getPassword());
+    }
+
+    @Test
+    void loadUserByUsername_remembersUnknownUsers() {
+        when(repo.findLoginByUsername("unknown")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("unknown"));
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("unknown"));
+
+        verify(repo, times(1)).findLoginByUsername("unknown");
+    }
+
+    @Test
+    void onEmployeeChanged_clearsCachedAndUnknownUsers() {
+        when(repo.findLoginByUsername("newchef")).thenReturn(Optional.empty());
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("newchef"));
+        when(repo.findLoginByUsername("newchef")).thenReturn(Optional.of(new EmployeeLogin("newchef", Role.CHEF)));
+
+        service.onEmployeeChanged(new EmployeeChangeEvent("newchef"));
+
+        assertEquals("newchef", service.loadUserByUsername("newchef").getUsername());
+    }
+
+    @Test
+    void loadUserByUsername_queriesEveryTime_whenCacheDisabled() {
+        properties.getSecurity().getUserCache().setEnabled(false);
+        EmployeeDetailsService uncached = new EmployeeDetailsService(repo, properties, meterRegistry);
+        when(repo.findLoginByUsername("tester")).thenReturn(Optional.of(new EmployeeLogin("tester", Role.USER)));
+
+        uncached.loadUserByUsername("tester");
+        uncached.loadUserByUsername("tester");
+
+        verify(repo, times(2)).findLoginByUsername("tester");
+    }
+
     private EmployeeEntity createEmployee(int id, String username, Role role) {
         EmployeeEntity e = new EmployeeEntity();
         e.setEmployeeId(id);
@@ -0,0 +1,221 @@
+package com.waracle.cakemgr.service;
+
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakePage;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.event.CakeBatchChangeEvent;
+import com.waracle.cakemgr.event.CakeChangeEvent;
+import com.waracle.cakemgr.exception.CakeVersionMismatchException;
+import com.waracle.cakemgr.exception.InvalidCakeException;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.exception.RecordNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SnapshotCakeServiceTest {
+
+    @Mock
+    private CakeServiceImpl delegate;
+
+    @Mock
+    private CakeWriteBehindQueue writeBehind;
+
+    private SnapshotCakeService snapshotService;
+
+    private final CakeEntity lemon = new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "img", 2L);
+    private final CakeEntity carrot = new CakeEntity(5, "Carrot cake", "Bugs bunnys favourite", "img");
+    private final CakeEntity banana = new CakeEntity(3, "Banana cake", "Donkey kongs favourite", "img");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(delegate.retrieveAllCakes()).thenReturn(new ArrayList<>(List.of(lemon, carrot, banana)));
+        snapshotService = new SnapshotCakeService(delegate, new CakeManagerProperties(), Optional.empty());
+        snapshotService.reload();
+        clearInvocations(delegate);
+    }
+
+    private CakeWriteBehindQueue.Slot useWriteBehind() {
+        CakeWriteBehindQueue.Slot slot = mock(CakeWriteBehindQueue.Slot.class);
+        when(writeBehind.reserve()).thenReturn(slot);
+        doAnswer(invocation -> {
+            snapshotService.onCakeChanged(invocation.getArgument(0));
+            return null;
+        }).when(delegate).publishChange(any());
+        snapshotService = new SnapshotCakeService(delegate, new CakeManagerProperties(), Optional.of(writeBehind));
+        snapshotService.reload();
+        clearInvocations(delegate, writeBehind);
+        return slot;
+    }
+
+    @Test
+    void retrieveAllCakes_returnsSnapshotInIdOrderWithoutTouchingDatabase() {
+        assertEquals(List.of(lemon, banana, carrot), snapshotService.retrieveAllCakes());
+        assertThrows(UnsupportedOperationException.class, () -> snapshotService.retrieveAllCakes().clear());
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void retrieveCakeById_looksUpSnapshot() {
+        assertSame(banana, snapshotService.retrieveCakeById(3));
+        assertThrows(RecordNotFoundException.class, () -> snapshotService.retrieveCakeById(4));
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void retrieveCakePage_pagesThroughSnapshot() {
+        CakePage first = snapshotService.retrieveCakePage(null, 2);
+        CakePage second = snapshotService.retrieveCakePage(first.nextToken(), 2);
+
+        assertEquals(List.of(lemon, banana), first.cakes());
+        assertEquals(List.of(carrot), second.cakes());
+        assertNull(second.nextToken());
+    }
+
+    @Test
+    void addCake_rejectsKnownTitleWithoutWriting() throws RecordAlreadyExistsException {
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Carrot cake");
+
+        assertThrows(RecordAlreadyExistsException.class, () -> snapshotService.addCake(dto));
+        verify(delegate, never()).addCake(any());
+    }
+
+    @Test
+    void addCake_writesThroughAndSwapsInNewSnapshot() throws RecordAlreadyExistsException {
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Birthday cake");
+        CakeEntity birthday = new CakeEntity(4, "Birthday cake", "a yearly treat", "img");
+        doAnswer(invocation -> {
+            snapshotService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 4, birthday));
+            return null;
+        }).when(delegate).addCake(dto);
+        List<CakeEntity> before = snapshotService.retrieveAllCakes();
+
+        snapshotService.addCake(dto);
+
+        assertEquals(List.of(lemon, banana, birthday, carrot), snapshotService.retrieveAllCakes());
+        assertEquals(3, before.size());
+    }
+
+    @Test
+    void updateCake_rejectsTitleOwnedByAnotherCake() throws RecordAlreadyExistsException {
+        assertThrows(RecordAlreadyExistsException.class, () -> snapshotService.updateCake(1, "Carrot cake", null, null));
+        verify(delegate, never()).updateCake(anyInt(), any(), any(), any(), any());
+    }
+
+    @Test
+    void updateCake_allowsKeepingOwnTitle() throws RecordAlreadyExistsException {
+        snapshotService.updateCake(1, "Lemon cheesecake", "new", null);
+
+        verify(delegate).updateCake(1, "Lemon cheesecake", "new", null, null);
+    }
+
+    @Test
+    void updateCake_rejectsStaleVersionWithoutWriting() throws RecordAlreadyExistsException {
+        assertThrows(CakeVersionMismatchException.class, () -> snapshotService.updateCake(1, null, "new", null, 1L));
+        verify(delegate, never()).updateCake(anyInt(), any(), any(), any(), any());
+        assertEquals(2L, snapshotService.cakeVersion(1));
+    }
+
+    @Test
+    void updateCake_throwsNotFoundForUnknownId() {
+        assertThrows(RecordNotFoundException.class, () -> snapshotService.updateCake(9, "t", null, null));
+    }
+
+    @Test
+    void addCake_withWriteBehind_appliesAndQueuesWithoutWritingThrough() throws RecordAlreadyExistsException {
+        CakeWriteBehindQueue.Slot slot = useWriteBehind();
+        when(writeBehind.nextId()).thenReturn(4);
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Birthday cake");
+        dto.setDescription("a yearly treat");
+        dto.setImageUrl("img");
+
+        snapshotService.addCake(dto);
+
+        CakeEntity birthday = new CakeEntity(4, "Birthday cake", "a yearly treat", "img", 0L);
+        CakeChangeEvent added = new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 4, birthday);
+        verify(slot).enqueue(added);
+        verify(delegate).publishChange(added);
+        verify(delegate, never()).addCake(any());
+        assertEquals(List.of(lemon, banana, birthday, carrot), snapshotService.retrieveAllCakes());
+        assertThrows(RecordAlreadyExistsException.class, () -> snapshotService.addCake(dto));
+        assertThrows(InvalidCakeException.class, () -> snapshotService.addCake(new CakeEntityDTO()));
+    }
+
+    @Test
+    void updateCake_withWriteBehind_bumpsVersionAndChecksItUnderTheLock() throws RecordAlreadyExistsException {
+        CakeWriteBehindQueue.Slot slot = useWriteBehind();
+
+        assertEquals(List.of("description"), snapshotService.updateCake(1, null, "new", null, 2L));
+
+        assertEquals(3L, snapshotService.cakeVersion(1));
+        assertEquals("new", snapshotService.retrieveCakeById(1).getDesc());
+        verify(slot).enqueue(argThat(change -> change.cake().getVersion() == 3L));
+        assertThrows(CakeVersionMismatchException.class, () -> snapshotService.updateCake(1, null, "newer", null, 2L));
+        verify(delegate, never()).updateCake(anyInt(), any(), any(), any(), any());
+    }
+
+    @Test
+    void bulkWrites_withWriteBehind_waitForQueuedWritesFirst() throws RecordAlreadyExistsException {
+        useWriteBehind();
+
+        snapshotService.deleteCakes(List.of(1));
+
+        InOrder inOrder = inOrder(writeBehind, delegate);
+        inOrder.verify(writeBehind).awaitFlushed();
+        inOrder.verify(delegate).deleteCakes(List.of(1));
+    }
+
+    @Test
+    void onCakeChanged_reindexesRenamedTitleAndRemovesDeletedCake() {
+        CakeEntity renamed = new CakeEntity(1, "Lime cheesecake", "A cheesecake made of lime", "img");
+
+        snapshotService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, renamed));
+        snapshotService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 5, carrot));
+
+        assertEquals(List.of(renamed, banana), snapshotService.retrieveAllCakes());
+        assertThrows(RecordNotFoundException.class, () -> snapshotService.deleteCake(5));
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Lemon cheesecake");
+        assertDoesNotThrow(() -> snapshotService.addCake(dto));
+    }
+
+    @Test
+    void onCakesChanged_appliesWholeBatchInOrder() {
+        CakeEntity birthday = new CakeEntity(4, "Birthday cake", "a yearly treat", "img");
+        CakeEntity renamedBirthday = new CakeEntity(4, "Party cake", "a yearly treat", "img");
+
+        snapshotService.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.ADDED, 4, birthday),
+                new CakeChangeEvent(CakeChangeEvent.Type.DELETED, 1, null),
+                new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 4, renamedBirthday))));
+
+        assertEquals(List.of(banana, renamedBirthday, carrot), snapshotService.retrieveAllCakes());
+        CakeEntityDTO dto = new CakeEntityDTO();
+        dto.setTitle("Birthday cake");
+        assertDoesNotThrow(() -> snapshotService.addCake(dto));
+    }
+
+    @Test
+    void cakeChanges_olderThanTheHeldVersionAreIgnored() {
+        // lemon is at version 2; another node's change read back before a later one here must not roll it back
+        CakeEntity stale = new CakeEntity(1, "Lemon tart", "An older lemon", "img", 1L);
+
+        snapshotService.onCakeChanged(new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, stale));
+        snapshotService.onCakesChanged(new CakeBatchChangeEvent(List.of(
+                new CakeChangeEvent(CakeChangeEvent.Type.UPDATED, 1, stale))));
+
+        assertSame(lemon, snapshotService.retrieveCakeById(1));
+    }
+}
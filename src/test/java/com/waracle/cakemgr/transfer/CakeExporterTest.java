@@ -0,0 +1,87 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.entity.CakeEntity;
+import com.waracle.cakemgr.repository.CakeJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+class CakeExporterTest {
+
+    @Mock
+    private CakeJdbcRepository repository;
+
+    private CakeExporter exporter;
+
+    private final List<CakeEntity> cakes = List.of(
+            new CakeEntity(1, "Lemon cheesecake", "A cheesecake made of lemon", "lemon.jpg", 0L),
+            new CakeEntity(2, "Carrot, \"the\" cake", "Bugs bunnys\r\nfavourite", "carrot.jpg", 3L));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        exporter = new CakeExporter(repository, new ObjectMapper());
+        doAnswer(invocation -> {
+            Consumer<CakeEntity> consumer = invocation.getArgument(0);
+            cakes.forEach(consumer);
+            return null;
+        }).when(repository).forEachCake(any());
+    }
+
+    @Test
+    void csv_quotesOnlyFieldsThatNeedIt() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, exporter.export(CakeTransferFormat.CSV, out));
+
+        assertEquals("""
+                id,title,desc,image\r
+                1,Lemon cheesecake,A cheesecake made of lemon,lemon.jpg\r
+                2,"Carrot, ""the"" cake","Bugs bunnys\r
+                favourite",carrot.jpg\r
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ndjson_writesOneCakePerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exporter.export(CakeTransferFormat.NDJSON, out);
+
+        assertEquals("""
+                {"cakeId":1,"title":"Lemon cheesecake","desc":"A cheesecake made of lemon","image":"lemon.jpg"}
+                {"cakeId":2,"title":"Carrot, \\"the\\" cake","desc":"Bugs bunnys\\r\\nfavourite","image":"carrot.jpg"}
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void export_readsBackAsTheSameCakes() throws IOException {
+        for (CakeTransferFormat format : CakeTransferFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            exporter.export(format, out);
+
+            CakeRowReader rows = CakeRowReader.of(format, new ByteArrayInputStream(out.toByteArray()), new ObjectMapper());
+            List<String> titles = new ArrayList<>();
+            for (CakeRowReader.Row row = rows.next(); row != null; row = rows.next()) {
+                assertEquals(cakes.get(titles.size()).getDesc(), row.cake().getDescription());
+                assertEquals(cakes.get(titles.size()).getImage(), row.cake().getImageUrl());
+                titles.add(row.cake().getTitle());
+            }
+            assertEquals(cakes.stream().map(CakeEntity::getTitle).toList(), titles, format.name());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.waracle.cakemgr.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waracle.cakemgr.config.CakeManagerProperties;
+import com.waracle.cakemgr.dto.BulkItemResult;
+import com.waracle.cakemgr.dto.CakeEntityDTO;
+import com.waracle.cakemgr.dto.CakeImportEvent;
+import com.waracle.cakemgr.exception.InvalidCakeException;
+import com.waracle.cakemgr.exception.RecordAlreadyExistsException;
+import com.waracle.cakemgr.service.CakeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CakeImporterTest {
+
+    @Mock
+    private CakeService cakeService;
+
+    private final CakeManagerProperties properties = new CakeManagerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<CakeImportEvent> events = new ArrayList<>();
+    private CakeImporter importer;
+
+    @BeforeEach
+    void setUp() throws RecordAlreadyExistsException {
+        MockitoAnnotations.openMocks(this);
+        properties.getTransfer().setBatchSize(2);
+        // one batch at a time, so batches reach the service in document order
+        properties.getTransfer().setMaxInFlight(1);
+        properties.getTransfer().setProgressInterval(1000);
+        importer = new CakeImporter(cakeService, new ObjectMapper(), properties, meterRegistry);
+        when(cakeService.addCakes(any())).thenAnswer(invocation -> created(invocation.getArgument(0)));
+    }
+
+    private static List<BulkItemResult> created(List<CakeEntityDTO> cakes) {
+        return IntStream.range(0, cakes.size())
+                .mapToObj(i -> BulkItemResult.applied(i, 100 + i, BulkItemResult.Status.CREATED))
+                .toList();
+    }
+
+    private static InputStream document(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CakeEntityDTO cake(String title, String description, String imageUrl) {
+        CakeEntityDTO cake = new CakeEntityDTO();
+        cake.setTitle(title);
+        cake.setDescription(description);
+        cake.setImageUrl(imageUrl);
+        return cake;
+    }
+
+    private List<CakeImportEvent> errors() {
+        return events.stream().filter(event -> event.type() == CakeImportEvent.Type.ERROR).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CakeEntityDTO> added() throws RecordAlreadyExistsException {
+        ArgumentCaptor<List<CakeEntityDTO>> batches = ArgumentCaptor.forClass(List.class);
+        verify(cakeService, atLeast(0)).addCakes(batches.capture());
+        return batches.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    void ndjson_addsGoodLinesInBatchesAndReportsBadOnesByLine() throws IOException, RecordAlreadyExistsException {
+        String document = """
+                {"cakeId":7,"title":"Lemon cheesecake","desc":"A cheesecake made of lemon","image":"lemon.jpg"}
+                {"title":"Banana cake",
+
+                {"title":"Carrot cake","desc":"Bugs bunnys favourite","image":"carrot.jpg"}
+                [1, 2]
+                {"title":"Birthday cake","desc":"a yearly treat","image":"birthday.jpg"}
+                """;
+
+        CakeImportEvent done = importer.importCakes(document(document), CakeTransferFormat.NDJSON, events::add);
+
+        assertEquals(List.of(cake("Lemon cheesecake", "A cheesecake made of lemon", "lemon.jpg"),
+                cake("Carrot cake", "Bugs bunnys favourite", "carrot.jpg"),
+                cake("Birthday cake", "a yearly treat", "birthday.jpg")), added());
+        verify(cakeService, times(2)).addCakes(any());
+        assertEquals(List.of(2L, 5L), errors().stream().map(CakeImportEvent::line).toList());
+        assertEquals(new CakeImportEvent(CakeImportEvent.Type.DONE, null, null, 5, 3, 2), done);
+        assertEquals(done, events.getLast());
+    }
+
+    @Test
+    void ndjson_overlongLineIsRejectedWithoutLosingTheNext() throws IOException, RecordAlreadyExistsException {
+        String document = "{\"title\":\"" + "x".repeat(NdjsonRowReader.MAX_LINE_LENGTH) + "\"}\r\n"
+                + "{\"title\":\"Carrot cake\",\"desc\":\"Bugs bunnys favourite\",\"image\":\"carrot.jpg\"}\r\n";
+
+        importer.importCakes(document(document), CakeTransferFormat.NDJSON, events::add);
+
+        assertEquals(List.of(cake("Carrot cake", "Bugs bunnys favourite", "carrot.jpg")), added());
+        assertEquals(1L, errors().getFirst().line());
+        assertTrue(errors().getFirst().message().contains("longer than"));
+    }
+
+    @Test
+    void csv_readsQuotedFieldsAndColumnsInAnyOrder() throws IOException, RecordAlreadyExistsException {
+        String document = "\uFEFFimage,Title,id,desc\r\n"
+                + "lemon.jpg,Lemon cheesecake,1,A cheesecake made of lemon\r\n"
+                + "carrot.jpg,\"Carrot, \"\"the\"\" cake\",2,\"Bugs bunnys\nfavourite\"\r\n"
+                + "\r\n"
+                + "birthday.jpg,Birthday cake\r\n"
+                + "banana.jpg,\"Banana cake\"x,4,yellow\n"
+                + "victoria.jpg,Victoria sponge,5,sponge with jam";
+
+        CakeImportEvent done = importer.importCakes(document(document), CakeTransferFormat.CSV, events::add);
+
+        assertEquals(List.of(cake("Lemon cheesecake", "A cheesecake made of lemon", "lemon.jpg"),
+                cake("Carrot, \"the\" cake", "Bugs bunnys\nfavourite", "carrot.jpg"),
+                cake("Victoria sponge", "sponge with jam", "victoria.jpg")), added());
+        // the carrot cake spans lines 3 and 4, so the rows after it are numbered on from line 5
+        assertEquals(List.of(6L, 7L), errors().stream().map(CakeImportEvent::line).toList());
+        assertEquals(new CakeImportEvent(CakeImportEvent.Type.DONE, null, null, 5, 3, 2), done);
+    }
+
+    @Test
+    void csv_headerWithoutTheColumnsIsRefusedBeforeAnythingIsImported() throws RecordAlreadyExistsException {
+        String document = "name,description\nLemon cheesecake,A cheesecake made of lemon\n";
+
+        assertThrows(InvalidCakeException.class,
+                () -> importer.importCakes(document(document), CakeTransferFormat.CSV, events::add));
+
+        verify(cakeService, never()).addCakes(any());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void rowsRefusedByTheBulkAdd_areReportedByLine() throws IOException, RecordAlreadyExistsException {
+        doReturn(List.of(
+                BulkItemResult.applied(0, 100, BulkItemResult.Status.CREATED),
+                new BulkItemResult(1, null, BulkItemResult.Status.CONFLICT, "Cake with title 'Lemon cheesecake' already exists")))
+                .when(cakeService).addCakes(any());
+        String document = "title,desc,image\nCarrot cake,Bugs bunnys favourite,carrot.jpg\nLemon cheesecake,again,lemon.jpg\n";
+
+        CakeImportEvent done = importer.importCakes(document(document), CakeTransferFormat.CSV, events::add);
+
+        assertEquals(1, errors().size());
+        assertEquals(3L, errors().getFirst().line());
+        assertEquals("Cake with title 'Lemon cheesecake' already exists", errors().getFirst().message());
+        assertEquals(new CakeImportEvent(CakeImportEvent.Type.DONE, null, null, 2, 1, 1), done);
+        assertEquals(1.0, meterRegistry.get(CakeImporter.ROWS).tag("result", "imported").counter().count());
+        assertEquals(1.0, meterRegistry.get(CakeImporter.ROWS).tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    void batchRefusedByAConcurrentWrite_isTriedAgain() throws IOException, RecordAlreadyExistsException {
+        doThrow(RecordAlreadyExistsException.forTitle("Carrot cake"))
+                .doAnswer(invocation -> created(invocation.getArgument(0)))
+                .when(cakeService).addCakes(any());
+        String document = "title,desc,image\nCarrot cake,Bugs bunnys favourite,carrot.jpg\n";
+
+        CakeImportEvent done = importer.importCakes(document(document), CakeTransferFormat.CSV, events::add);
+
+        verify(cakeService, times(2)).addCakes(any());
+        assertEquals(new CakeImportEvent(CakeImportEvent.Type.DONE, null, null, 1, 1, 0), done);
+    }
+
+    @Test
+    void reading_waitsWhileTheWindowOfBatchesIsFull() throws IOException, RecordAlreadyExistsException {
+        properties.getTransfer().setMaxInFlight(2);
+        properties.getTransfer().setProgressInterval(10);
+        AtomicInteger writing = new AtomicInteger();
+        AtomicInteger mostWriting = new AtomicInteger();
+        doAnswer(invocation -> {
+            mostWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            writing.decrementAndGet();
+            return created(invocation.getArgument(0));
+        }).when(cakeService).addCakes(any());
+        StringBuilder document = new StringBuilder("title,desc,image\n");
+        IntStream.range(0, 40).forEach(i -> document.append("Cake ").append(i).append(",desc,image.jpg\n"));
+
+        CakeImportEvent done = importer.importCakes(document(document.toString()), CakeTransferFormat.CSV, events::add);
+
+        assertEquals(2, mostWriting.get());
+        assertEquals(new CakeImportEvent(CakeImportEvent.Type.DONE, null, null, 40, 40, 0), done);
+        List<CakeImportEvent> progress = events.stream().filter(event -> event.type() == CakeImportEvent.Type.PROGRESS).toList();
+        assertEquals(List.of(10L, 20L, 30L, 40L), progress.stream().map(CakeImportEvent::read).toList());
+    }
+
+    @Test
+    void failedBatch_stopsTheImportAndSaysSo() throws IOException, RecordAlreadyExistsException {
+        doThrow(new IllegalStateException("database is down")).when(cakeService).addCakes(any());
+        String document = "title,desc,image\nCarrot cake,Bugs bunnys favourite,carrot.jpg\n";
+
+        CakeImportEvent done = importer.importCakes(document(document), CakeTransferFormat.CSV, events::add);
+
+        assertEquals(CakeImportEvent.Type.FAILED, done.type());
+        assertEquals("Import stopped: database is down", done.message());
+        assertEquals(0, done.imported());
+    }
+}